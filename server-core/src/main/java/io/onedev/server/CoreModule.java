@@ -164,15 +164,23 @@ import io.onedev.server.entitymanager.impl.DefaultSettingManager;
 import io.onedev.server.entitymanager.impl.DefaultSshKeyManager;
 import io.onedev.server.entitymanager.impl.DefaultUserAuthorizationManager;
 import io.onedev.server.entitymanager.impl.DefaultUserManager;
+import io.onedev.server.git.DefaultGitTransportManager;
+import io.onedev.server.git.DefaultRepositoryMaintenanceManager;
 import io.onedev.server.git.GitFilter;
 import io.onedev.server.git.GitSshCommandCreator;
+import io.onedev.server.git.GitTransportManager;
+import io.onedev.server.git.RepositoryMaintenanceManager;
 import io.onedev.server.git.config.GitConfig;
 import io.onedev.server.git.hookcallback.GitPostReceiveCallback;
 import io.onedev.server.git.hookcallback.GitPreReceiveCallback;
+import io.onedev.server.infomanager.BlameInfoManager;
 import io.onedev.server.infomanager.CommitInfoManager;
+import io.onedev.server.infomanager.DefaultBlameInfoManager;
 import io.onedev.server.infomanager.DefaultCommitInfoManager;
+import io.onedev.server.infomanager.DefaultEnvironmentPool;
 import io.onedev.server.infomanager.DefaultPullRequestInfoManager;
 import io.onedev.server.infomanager.DefaultUserInfoManager;
+import io.onedev.server.infomanager.EnvironmentPool;
 import io.onedev.server.infomanager.PullRequestInfoManager;
 import io.onedev.server.infomanager.UserInfoManager;
 import io.onedev.server.maintenance.ApplyDatabaseConstraints;
@@ -233,6 +241,8 @@ import io.onedev.server.security.DefaultRememberMeManager;
 import io.onedev.server.security.DefaultWebSecurityManager;
 import io.onedev.server.security.FilterChainConfigurator;
 import io.onedev.server.security.SecurityUtils;
+import io.onedev.server.security.permission.DefaultPermissionIndexManager;
+import io.onedev.server.security.permission.PermissionIndexManager;
 import io.onedev.server.security.realm.AbstractAuthorizingRealm;
 import io.onedev.server.ssh.DefaultKeyPairProvider;
 import io.onedev.server.ssh.DefaultSshAuthenticator;
@@ -243,6 +253,8 @@ import io.onedev.server.storage.AttachmentStorageManager;
 import io.onedev.server.storage.DefaultAttachmentStorageManager;
 import io.onedev.server.storage.DefaultStorageManager;
 import io.onedev.server.storage.StorageManager;
+import io.onedev.server.util.diff.DefaultDiffCacheManager;
+import io.onedev.server.util.diff.DiffCacheManager;
 import io.onedev.server.util.jackson.ObjectMapperConfigurator;
 import io.onedev.server.util.jackson.ObjectMapperProvider;
 import io.onedev.server.util.jackson.git.GitObjectMapperConfigurator;
@@ -375,7 +387,12 @@ public class CoreModule extends AbstractPluginModule {
 		bind(CodeCommentReplyManager.class).to(DefaultCodeCommentReplyManager.class);
 		bind(AttachmentStorageManager.class).to(DefaultAttachmentStorageManager.class);
 		bind(PullRequestInfoManager.class).to(DefaultPullRequestInfoManager.class);
+		bind(BlameInfoManager.class).to(DefaultBlameInfoManager.class);
+		bind(EnvironmentPool.class).to(DefaultEnvironmentPool.class);
 		bind(WorkExecutor.class).to(DefaultWorkExecutor.class);
+		bind(GitTransportManager.class).to(DefaultGitTransportManager.class);
+		bind(RepositoryMaintenanceManager.class).to(DefaultRepositoryMaintenanceManager.class);
+		bind(DiffCacheManager.class).to(DefaultDiffCacheManager.class);
 		bind(PullRequestNotificationManager.class);
 		bind(CommitNotificationManager.class);
 		bind(BuildNotificationManager.class);
@@ -520,6 +537,7 @@ public class CoreModule extends AbstractPluginModule {
 	
 	private void configureSecurity() {
 		contributeFromPackage(Realm.class, AbstractAuthorizingRealm.class);
+		bind(PermissionIndexManager.class).to(DefaultPermissionIndexManager.class);
 		
 		bind(RememberMeManager.class).to(DefaultRememberMeManager.class);
 		bind(WebSecurityManager.class).to(DefaultWebSecurityManager.class);
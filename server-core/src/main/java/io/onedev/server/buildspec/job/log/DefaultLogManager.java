@@ -1,35 +1,33 @@
 package io.onedev.server.buildspec.job.log;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.locks.Lock;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.antlr.v4.runtime.tree.TerminalNode;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
+import org.quartz.ScheduleBuilder;
+import org.quartz.SimpleScheduleBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,11 +42,16 @@ import io.onedev.server.buildspec.job.log.instruction.LogInstructionParser.Instr
 import io.onedev.server.buildspec.job.log.instruction.LogInstructionParser.ParamContext;
 import io.onedev.server.entitymanager.BuildManager;
 import io.onedev.server.event.build.BuildFinished;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
 import io.onedev.server.model.Build;
 import io.onedev.server.model.support.inputspec.SecretInput;
 import io.onedev.server.persistence.annotation.Sessional;
 import io.onedev.server.storage.StorageManager;
+import io.onedev.server.util.ServerConfig;
 import io.onedev.server.util.SimpleLogger;
+import io.onedev.server.util.schedule.SchedulableTask;
+import io.onedev.server.util.schedule.TaskScheduler;
 import io.onedev.server.web.websocket.WebSocketManager;
 
 @Singleton
@@ -60,11 +63,15 @@ public class DefaultLogManager implements LogManager {
 
 	private static final int MAX_CACHE_ENTRIES = 10000;
 	
-	private static final String LOG_FILE = "build.log";
+	private static final String LEGACY_LOG_FILE = "build.log";
 	
 	private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormat.forPattern("HH:mm:ss");	
 	
 	private static final Pattern EOL_PATTERN = Pattern.compile("\r?\n");
+	
+	private static final String SECRET_MASK = Matcher.quoteReplacement(SecretInput.MASK);
+	
+	private static final long RATE_WINDOW = 5000;
 
 	private final StorageManager storageManager;
 	
@@ -72,19 +79,200 @@ public class DefaultLogManager implements LogManager {
 	
 	private final BuildManager buildManager;
 	
+	private final TaskScheduler taskScheduler;
+	
+	private final ServerConfig serverConfig;
+	
+	private final ExecutorService executorService;
+	
 	private final Map<Long, LogSnippet> recentSnippets = new ConcurrentHashMap<>();
 	
+	private final Map<Long, PendingLog> pendingLogs = new ConcurrentHashMap<>();
+	
+	private String flushTaskId;
+	
 	@Inject
 	public DefaultLogManager(StorageManager storageManager, WebSocketManager webSocketManager, 
-			BuildManager buildManager) {
+			BuildManager buildManager, TaskScheduler taskScheduler, ServerConfig serverConfig, 
+			ExecutorService executorService) {
 		this.storageManager = storageManager;
 		this.webSocketManager = webSocketManager;
 		this.buildManager = buildManager;
+		this.taskScheduler = taskScheduler;
+		this.serverConfig = serverConfig;
+		this.executorService = executorService;
+	}
+	
+	private IndexedLogFile getLogFile(Long projectId, Long buildNumber) {
+		return new IndexedLogFile(storageManager.getBuildDir(projectId, buildNumber));
+	}
+	
+	private LogIndex getLogIndex(Long projectId, Long buildNumber) {
+		return new LogIndex(storageManager.getBuildDir(projectId, buildNumber));
+	}
+	
+	/**
+	 * Convert log file written as a stream of serialized log entries by previous versions 
+	 * into the indexed format
+	 */
+	private void migrateIfNecessary(Long buildId, Long projectId, Long buildNumber) {
+		File legacyLogFile = new File(storageManager.getBuildDir(projectId, buildNumber), LEGACY_LOG_FILE);
+		if (legacyLogFile.exists()) {
+			Lock lock = LockUtils.getReadWriteLock(getLockKey(buildId)).writeLock();
+			lock.lock();
+			try {
+				if (legacyLogFile.exists()) {
+					try {
+						getLogFile(projectId, buildNumber).migrate(legacyLogFile);
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
 	}
 	
-	private File getLogFile(Long projectId, Long buildNumber) {
-		File buildDir = storageManager.getBuildDir(projectId, buildNumber);
-		return new File(buildDir, LOG_FILE);
+	private void migrateIfNecessary(Build build) {
+		migrateIfNecessary(build.getId(), build.getProject().getId(), build.getNumber());
+	}
+	
+	/**
+	 * Write pending log entries of specified build and notify log observers at most once 
+	 * for all written entries
+	 */
+	private void flush(Long buildId) {
+		PendingLog pendingLog = pendingLogs.get(buildId);
+		if (pendingLog != null) {
+			Lock lock = LockUtils.getReadWriteLock(getLockKey(buildId)).writeLock();
+			lock.lock();
+			try {
+				write(buildId, pendingLog);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+	
+	@Override
+	public double getLoggingRate(Build build) {
+		PendingLog pendingLog = pendingLogs.get(build.getId());
+		if (pendingLog != null)
+			return pendingLog.getLinesPerSecond();
+		else
+			return 0;
+	}
+	
+	/**
+	 * Write pending log entries. Caller should hold write lock of the build log, so that 
+	 * concurrently drained batches keep their order
+	 */
+	private void write(Long buildId, PendingLog pendingLog) {
+		List<JobLogEntry> entries = pendingLog.drain();
+		if (!entries.isEmpty()) {
+			LogSnippet snippet = recentSnippets.get(buildId);
+			if (snippet == null) {
+				migrateIfNecessary(buildId, pendingLog.projectId, pendingLog.buildNumber);
+				if (!getLogFile(pendingLog.projectId, pendingLog.buildNumber).exists())	{
+					getLogIndex(pendingLog.projectId, pendingLog.buildNumber).delete();
+					snippet = new LogSnippet();
+					recentSnippets.put(buildId, snippet);
+				}
+			}
+			if (snippet != null) {
+				snippet.entries.addAll(mask(entries, pendingLog.secretPattern));
+				if (snippet.entries.size() > MAX_CACHE_ENTRIES) {
+					List<JobLogEntry> entriesToFlush = new ArrayList<>();
+					while (snippet.entries.size() > MIN_CACHE_ENTRIES) 
+						entriesToFlush.add(snippet.entries.remove(0));
+					try {
+						getLogFile(pendingLog.projectId, pendingLog.buildNumber).append(entriesToFlush);
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+					snippet.offset += entriesToFlush.size();
+				}
+				
+				webSocketManager.notifyObservableChange(Build.getLogWebSocketObservable(buildId));
+			}
+		}
+	}
+	
+	/**
+	 * Mask secrets in a batch of log entries. The whole batch is scanned once, and only 
+	 * entries containing secrets are rewritten
+	 */
+	private List<JobLogEntry> mask(List<JobLogEntry> entries, @Nullable Pattern secretPattern) {
+		if (secretPattern == null)
+			return entries;
+		
+		StringBuilder batch = new StringBuilder();
+		int[] ends = new int[entries.size()];
+		for (int i=0; i<entries.size(); i++) {
+			batch.append(entries.get(i).getMessage());
+			ends[i] = batch.length();
+		}
+		
+		List<JobLogEntry> maskedEntries = null;
+		Matcher matcher = secretPattern.matcher(batch);
+		int index = 0;
+		while (matcher.find()) {
+			while (ends[index] <= matcher.start())
+				index++;
+			if (maskedEntries == null)
+				maskedEntries = new ArrayList<>(entries);
+			/* 
+			 * A match spanning multiple entries might hide secrets inside these entries, 
+			 * so all entries touched by the match are masked individually 
+			 */
+			for (int i=index; i==index || ends[i-1] < matcher.end(); i++) {
+				JobLogEntry entry = entries.get(i);
+				String message = secretPattern.matcher(entry.getMessage()).replaceAll(SECRET_MASK);
+				maskedEntries.set(i, new JobLogEntry(entry.getDate(), message));
+			}
+		}
+		return maskedEntries != null? maskedEntries: entries;
+	}
+	
+	@Listen
+	public void on(SystemStarted event) {
+		int flushInterval = serverConfig.getBuildLogFlushInterval();
+		if (flushInterval != 0) {
+			flushTaskId = taskScheduler.schedule(new SchedulableTask() {
+				
+				@Override
+				public ScheduleBuilder<?> getScheduleBuilder() {
+					return SimpleScheduleBuilder.simpleSchedule()
+							.withIntervalInMilliseconds(flushInterval).repeatForever();
+				}
+				
+				@Override
+				public void execute() {
+					for (Long buildId: pendingLogs.keySet()) {
+						try {
+							flush(buildId);
+						} catch (Exception e) {
+							logger.error("Error flushing build log", e);
+						}
+					}
+				}
+				
+			});
+		}
+	}
+	
+	@Listen
+	public void on(SystemStopping event) {
+		if (flushTaskId != null)
+			taskScheduler.unschedule(flushTaskId);
+		for (Long buildId: pendingLogs.keySet()) {
+			try {
+				flush(buildId);
+			} catch (Exception e) {
+				logger.error("Error flushing build log", e);
+			}
+		}
 	}
 	
 	@Override
@@ -94,43 +282,25 @@ public class DefaultLogManager implements LogManager {
 		Long buildNumber = build.getNumber();
 		Collection<String> secretValuesToMask = build.getSecretValuesToMask();
 		secretValuesToMask.addAll(jobSecretsToMask);
+		
+		PendingLog pendingLog = new PendingLog(projectId, buildNumber, secretValuesToMask);
+		Lock lock = LockUtils.getReadWriteLock(getLockKey(buildId)).writeLock();
+		lock.lock();
+		try {
+			// Replace under the lock so that entries added to previous pending log are not lost
+			PendingLog prevPendingLog = pendingLogs.put(buildId, pendingLog);
+			if (prevPendingLog != null)
+				write(buildId, prevPendingLog);
+		} finally {
+			lock.unlock();
+		}
+		
 		return new SimpleLogger() {
 			
 			private void doLog(String message) {
-				for (String maskSecret: secretValuesToMask)
-					message = StringUtils.replace(message, maskSecret, SecretInput.MASK);
-				
-				Lock lock = LockUtils.getReadWriteLock(getLockKey(buildId)).writeLock();
-				lock.lock();
-				try {
-					LogSnippet snippet = recentSnippets.get(buildId);
-					if (snippet == null) {
-						File logFile = getLogFile(projectId, buildNumber);
-						if (!logFile.exists())	{
-							snippet = new LogSnippet();
-							recentSnippets.put(buildId, snippet);
-						}
-					}
-					if (snippet != null) {
-						snippet.entries.add(new JobLogEntry(new Date(), message));
-						if (snippet.entries.size() > MAX_CACHE_ENTRIES) {
-							File logFile = getLogFile(projectId, buildNumber);
-							try (ObjectOutputStream oos = newOutputStream(logFile)) {
-								while (snippet.entries.size() > MIN_CACHE_ENTRIES) {
-									JobLogEntry entry = snippet.entries.remove(0);
-									oos.writeObject(entry);
-									snippet.offset++;
-								}
-							} catch (IOException e) {
-								throw new RuntimeException(e);
-							}
-						}
-						
-						webSocketManager.notifyObservableChange(Build.getLogWebSocketObservable(buildId));
-					}
-				} finally {
-					lock.unlock();
-				}
+				pendingLog.add(new JobLogEntry(new Date(), message));
+				if (serverConfig.getBuildLogFlushInterval() == 0)
+					flush(buildId);
 			}
 			
 			@Override
@@ -190,6 +360,8 @@ public class DefaultLogManager implements LogManager {
 
 	@Override
 	public boolean matches(Build build, Pattern pattern) {
+		flush(build.getId());
+		migrateIfNecessary(build);
 		Lock lock = LockUtils.getReadWriteLock(getLockKey(build.getId())).readLock();
 		lock.lock();
 		try {
@@ -203,21 +375,33 @@ public class DefaultLogManager implements LogManager {
 				}
 			}
 			
-			File logFile = getLogFile(build.getProject().getId(), build.getNumber());
-			
-			if (logFile.exists()) {
-				try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
-					while (true) {
-						JobLogEntry entry  = (JobLogEntry) ois.readObject();
-						if ((build.getRetryDate() == null || !entry.getDate().before(build.getRetryDate())) 
-								&& pattern.matcher(entry.getMessage()).find()) {
-							return true;
+			IndexedLogFile logFile = getLogFile(build.getProject().getId(), build.getNumber());
+			try {
+				List<Integer> candidates = null;
+				if (snippet == null)
+					candidates = getLogIndex(build.getProject().getId(), build.getNumber()).query(pattern);
+				if (candidates != null) {
+					for (int from: candidates) {
+						for (JobLogEntry entry: logFile.read(from, LogIndex.CHUNK_SIZE)) {
+							if ((build.getRetryDate() == null || !entry.getDate().before(build.getRetryDate())) 
+									&& pattern.matcher(entry.getMessage()).find()) {
+								return true;
+							}
+						}
+					}
+				} else {
+					try (IndexedLogFile.Reader reader = logFile.openReader(0)) {
+						JobLogEntry entry;
+						while ((entry = reader.read()) != null) {
+							if ((build.getRetryDate() == null || !entry.getDate().before(build.getRetryDate())) 
+									&& pattern.matcher(entry.getMessage()).find()) {
+								return true;
+							}
 						}
 					}
-				} catch (EOFException e) {
-				} catch (IOException|ClassNotFoundException e) {
-					throw new RuntimeException(e);
 				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
 			}
 			return false;
 		} finally {
@@ -225,44 +409,20 @@ public class DefaultLogManager implements LogManager {
 		}
 	}
 	
-	private List<JobLogEntry> readLogEntries(File logFile, int from, int count) {
-		List<JobLogEntry> entries = new ArrayList<>();
-		if (logFile.exists()) {
-			try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
-				int numOfReadEntries = 0;
-				while (numOfReadEntries < from) {
-					ois.readObject();
-					numOfReadEntries++;
-				}
-				while (count == 0 || numOfReadEntries - from < count) {
-					entries.add((JobLogEntry) ois.readObject());
-					numOfReadEntries++;
-				}
-			} catch (EOFException e) {
-			} catch (IOException | ClassNotFoundException e) {
-				throw new RuntimeException(e);
-			}
+	private List<JobLogEntry> readLogEntries(IndexedLogFile logFile, int from, int count) {
+		try {
+			return logFile.read(from, count);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
 		}
-		return entries;
 	}
 	
-	private LogSnippet readLogSnippetReversely(File logFile, int count) {
-		LogSnippet snippet = new LogSnippet();
-		if (logFile.exists()) {
-			try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
-				while (true) {
-					snippet.entries.add((JobLogEntry) ois.readObject());
-					if (snippet.entries.size() > count) {
-						snippet.entries.remove(0);
-						snippet.offset ++;
-					}
-				}
-			} catch (EOFException e) {
-			} catch (IOException | ClassNotFoundException e) {
-				throw new RuntimeException(e);
-			}
+	private LogSnippet readLogSnippetReversely(IndexedLogFile logFile, int count) {
+		try {
+			return logFile.readTail(count);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
 		}
-		return snippet;
 	}
 	
 	private List<JobLogEntry> readLogEntries(List<JobLogEntry> cachedEntries, int from, int count) {
@@ -279,10 +439,12 @@ public class DefaultLogManager implements LogManager {
 	@Sessional
 	@Override
 	public List<JobLogEntry> readLogEntries(Build build, int from, int count) {
+		flush(build.getId());
+		migrateIfNecessary(build);
 		Lock lock = LockUtils.getReadWriteLock(getLockKey(build.getId())).readLock();
 		lock.lock();
 		try {
-			File logFile = getLogFile(build.getProject().getId(), build.getNumber());
+			IndexedLogFile logFile = getLogFile(build.getProject().getId(), build.getNumber());
 			LogSnippet snippet = recentSnippets.get(build.getId());
 			if (snippet != null) {
 				if (from >= snippet.offset) {
@@ -307,10 +469,12 @@ public class DefaultLogManager implements LogManager {
 	@Sessional
 	@Override
 	public LogSnippet readLogSnippetReversely(Build build, int count) {
+		flush(build.getId());
+		migrateIfNecessary(build);
 		Lock lock = LockUtils.getReadWriteLock(getLockKey(build.getId())).readLock();
 		lock.lock();
 		try {
-			File logFile = getLogFile(build.getProject().getId(), build.getNumber());
+			IndexedLogFile logFile = getLogFile(build.getProject().getId(), build.getNumber());
 			LogSnippet recentSnippet = recentSnippets.get(build.getId());
 			if (recentSnippet != null) {
 				LogSnippet snippet = new LogSnippet();
@@ -331,38 +495,22 @@ public class DefaultLogManager implements LogManager {
 		}
 	}
 	
-	private ObjectOutputStream newOutputStream(File logFile) {
-		try {
-			if (logFile.exists()) {
-				return new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true))) {
-
-					@Override
-					protected void writeStreamHeader() throws IOException {
-						reset();
-					}
-					
-				};
-			} else {
-				return new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(logFile)));
-			}
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-	}
-	
 	@Sessional
 	@Listen
 	public void on(BuildFinished event) {
 		Build build = event.getBuild();
+		migrateIfNecessary(build);
 		Lock lock = LockUtils.getReadWriteLock(getLockKey(build.getId())).writeLock();
 		lock.lock();
 		try {
+			// Remove under the lock so that entries added before removal are all written
+			PendingLog pendingLog = pendingLogs.remove(build.getId());
+			if (pendingLog != null)
+				write(build.getId(), pendingLog);
 			LogSnippet snippet = recentSnippets.remove(build.getId());
 			if (snippet != null) {
-				File logFile = getLogFile(build.getProject().getId(), build.getNumber());
-				try (ObjectOutputStream oos = newOutputStream(logFile)) {
-					for (JobLogEntry entry: snippet.entries)
-						oos.writeObject(entry);
+				try {
+					getLogFile(build.getProject().getId(), build.getNumber()).append(snippet.entries);
 				} catch (IOException e) {
 					throw new RuntimeException(e);
 				} 
@@ -370,6 +518,46 @@ public class DefaultLogManager implements LogManager {
 		} finally {
 			lock.unlock();
 		}
+		
+		Long buildId = build.getId();
+		Long projectId = build.getProject().getId();
+		Long buildNumber = build.getNumber();
+		executorService.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					buildLogIndex(buildId, projectId, buildNumber);
+				} catch (Exception e) {
+					logger.error("Error indexing build log", e);
+				}
+			}
+			
+		});
+	}
+	
+	private void buildLogIndex(Long buildId, Long projectId, Long buildNumber) throws IOException {
+		LogIndex logIndex = getLogIndex(projectId, buildNumber);
+		
+		// Build index with read lock so that log can still be viewed meanwhile 
+		Lock lock = LockUtils.getReadWriteLock(getLockKey(buildId)).readLock();
+		lock.lock();
+		try {
+			if (recentSnippets.containsKey(buildId)) 
+				return;
+			logIndex.build(getLogFile(projectId, buildNumber));
+		} finally {
+			lock.unlock();
+		}
+		
+		lock = LockUtils.getReadWriteLock(getLockKey(buildId)).writeLock();
+		lock.lock();
+		try {
+			if (!recentSnippets.containsKey(buildId))
+				logIndex.install();
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	@Override
@@ -377,9 +565,75 @@ public class DefaultLogManager implements LogManager {
 		return new LogStream(build);
 	}
 
+	private static class PendingLog {
+		
+		final Long projectId;
+		
+		final Long buildNumber;
+		
+		final Pattern secretPattern;
+		
+		private List<JobLogEntry> entries = new ArrayList<>();
+		
+		private long windowStart = System.currentTimeMillis();
+		
+		private long windowLines;
+		
+		private double linesPerSecond;
+		
+		PendingLog(Long projectId, Long buildNumber, Collection<String> secretValuesToMask) {
+			this.projectId = projectId;
+			this.buildNumber = buildNumber;
+			
+			// Longer secrets come first so that they are masked entirely
+			List<String> secrets = new ArrayList<>();
+			for (String secret: secretValuesToMask) {
+				if (StringUtils.isNotEmpty(secret))
+					secrets.add(Pattern.quote(secret));
+			}
+			secrets.sort(Comparator.comparingInt(String::length).reversed());
+			if (!secrets.isEmpty())
+				secretPattern = Pattern.compile(StringUtils.join(secrets, "|"));
+			else
+				secretPattern = null;
+		}
+		
+		synchronized void add(JobLogEntry entry) {
+			entries.add(entry);
+			rollRateWindow();
+			windowLines++;
+		}
+		
+		synchronized List<JobLogEntry> drain() {
+			List<JobLogEntry> drained = entries;
+			entries = new ArrayList<>();
+			return drained;
+		}
+		
+		/*
+		 * Lines are counted when added instead of when written, so that the rate does not 
+		 * depend on flush interval. Rate of last complete window is reported, and a build 
+		 * stopping logging gets its rate decreased at next check
+		 */
+		private void rollRateWindow() {
+			long elapsed = System.currentTimeMillis() - windowStart;
+			if (elapsed >= RATE_WINDOW) {
+				linesPerSecond = windowLines * 1000.0 / elapsed;
+				windowStart += elapsed;
+				windowLines = 0;
+			}
+		}
+		
+		synchronized double getLinesPerSecond() {
+			rollRateWindow();
+			return linesPerSecond;
+		}
+		
+	}
+	
 	class LogStream extends InputStream {
 
-		private ObjectInputStream ois;
+		private IndexedLogFile.Reader reader;
 		
 		private final Lock lock;
 
@@ -390,13 +644,12 @@ public class DefaultLogManager implements LogManager {
 		private int pos = 0;
 		
 		public LogStream(Build build) {
+			flush(build.getId());
+			migrateIfNecessary(build);
 			lock = LockUtils.getReadWriteLock(getLockKey(build.getId())).readLock();
 			lock.lock();
 			try {
-				File logFile = getLogFile(build.getProject().getId(), build.getNumber());
-				
-				if (logFile.exists())
-					ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+				reader = getLogFile(build.getProject().getId(), build.getNumber()).openReader(0);
 				
 				LogSnippet snippet = recentSnippets.get(build.getId());
 				if (snippet != null) {
@@ -430,20 +683,17 @@ public class DefaultLogManager implements LogManager {
 		@Override
 		public int read() throws IOException {
 			if (pos == buffer.length) {
-				if (ois != null) {
-					try {
-						buffer = (renderAsText((JobLogEntry) ois.readObject()) + "\n").getBytes(StandardCharsets.UTF_8);
-					} catch (EOFException e) {
-						IOUtils.closeQuietly(ois);
-						ois = null;
-						if (recentBuffer != null) {
-							buffer = recentBuffer;
-							recentBuffer = null;
-						} else {
-							return -1;
-						}
-					} catch (ClassNotFoundException e) {
-						throw new RuntimeException(e);
+				JobLogEntry entry = reader != null? reader.read(): null;
+				if (entry != null) {
+					buffer = (renderAsText(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+				} else if (reader != null) {
+					reader.close();
+					reader = null;
+					if (recentBuffer != null) {
+						buffer = recentBuffer;
+						recentBuffer = null;
+					} else {
+						return -1;
 					}
 				} else if (recentBuffer != null) {
 					buffer = recentBuffer;
@@ -460,7 +710,8 @@ public class DefaultLogManager implements LogManager {
 		
 		@Override
 		public void close() throws IOException {
-			IOUtils.closeQuietly(ois);
+			if (reader != null)
+				reader.close();
 			lock.unlock();
 		}
 				
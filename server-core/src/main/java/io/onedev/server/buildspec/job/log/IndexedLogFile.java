@@ -0,0 +1,287 @@
+package io.onedev.server.buildspec.job.log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.IOUtils;
+
+import io.onedev.commons.utils.FileUtils;
+
+/**
+ * Append-only storage of build log entries. Entries are written to a data file, and offset of
+ * each entry is recorded in a sidecar index file of fixed-size slots, so that reading entry
+ * <tt>n</tt> or the tail of the log does not need to scan from start of the log.
+ * <p>
+ * Both files start with a header containing a magic number and format version. Index slots of
+ * appended entries are only written after their data is synced to disk, and only entries
+ * recorded in index file are considered part of the log, so a crash in the middle of appending
+ * never exposes partially written entries.
+ * <p>
+ * This class is not thread-safe. Callers should protect access with build log lock.
+ */
+class IndexedLogFile {
+
+	static final String DATA_FILE = "build-log.data";
+
+	static final String INDEX_FILE = "build-log.index";
+
+	static final int VERSION = 1;
+
+	private static final int MAGIC = 0x4f444c47;
+
+	private static final int HEADER_SIZE = 8;
+
+	private static final int INDEX_SLOT_SIZE = 8;
+
+	private static final int MIGRATION_BATCH_SIZE = 10000;
+
+	private final File dataFile;
+
+	private final File indexFile;
+
+	IndexedLogFile(File buildDir) {
+		dataFile = new File(buildDir, DATA_FILE);
+		indexFile = new File(buildDir, INDEX_FILE);
+	}
+
+	boolean exists() {
+		return indexFile.exists();
+	}
+
+	void delete() {
+		FileUtils.deleteFile(indexFile);
+		FileUtils.deleteFile(dataFile);
+	}
+
+	/**
+	 * @return
+	 * 			number of log entries in this file
+	 */
+	int count() {
+		long length = indexFile.length() - HEADER_SIZE;
+		if (length > 0)
+			return (int) (length / INDEX_SLOT_SIZE);
+		else
+			return 0;
+	}
+
+	void append(Collection<JobLogEntry> entries) throws IOException {
+		prepare(dataFile);
+		prepare(indexFile);
+
+		int count = count();
+		long indexLength = HEADER_SIZE + (long)count * INDEX_SLOT_SIZE;
+		if (indexFile.length() != indexLength) {
+			// Discard partially written slot left by an interrupted append
+			try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+				raf.setLength(indexLength);
+			}
+		}
+
+		long offset = getDataLength(count);
+		if (dataFile.length() != offset) {
+			// Discard data of entries not recorded in index file, as entries are read sequentially
+			try (RandomAccessFile raf = new RandomAccessFile(dataFile, "rw")) {
+				raf.setLength(offset);
+			}
+		}
+
+		long[] offsets = new long[entries.size()];
+
+		/*
+		 * Data of the whole batch is synced to disk before any slot is written to index file,
+		 * as otherwise index stream might spill slots pointing to data not yet written
+		 */
+		FileOutputStream dataFileOut = new FileOutputStream(dataFile, true);
+		try (DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(dataFileOut))) {
+			int index = 0;
+			for (JobLogEntry entry: entries) {
+				offsets[index++] = offset;
+				offset += writeEntry(dataOut, entry);
+			}
+			dataOut.flush();
+			dataFileOut.getFD().sync();
+		}
+
+		try (DataOutputStream indexOut = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(indexFile, true)))) {
+			for (long each: offsets)
+				indexOut.writeLong(each);
+		}
+	}
+
+	/**
+	 * Replace content of this file with entries of specified log file written as a stream of
+	 * serialized log entries by previous versions, and delete that file afterwards
+	 */
+	void migrate(File legacyLogFile) throws IOException {
+		delete();
+		List<JobLogEntry> entries = new ArrayList<>();
+		try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(legacyLogFile)))) {
+			while (true) {
+				entries.add((JobLogEntry) ois.readObject());
+				if (entries.size() == MIGRATION_BATCH_SIZE) {
+					append(entries);
+					entries.clear();
+				}
+			}
+		} catch (EOFException e) {
+		} catch (ClassNotFoundException e) {
+			throw new RuntimeException(e);
+		}
+		append(entries);
+		FileUtils.deleteFile(legacyLogFile);
+	}
+
+	/**
+	 * Read log entries starting from specified index
+	 *
+	 * @param from
+	 * 			index of the log entry to start read
+	 * @param count
+	 * 			number of log entries to read. Use <tt>0</tt> to read all entries since <tt>from</tt>
+	 */
+	List<JobLogEntry> read(int from, int count) throws IOException {
+		List<JobLogEntry> entries = new ArrayList<>();
+		try (Reader reader = openReader(from)) {
+			JobLogEntry entry;
+			while ((count == 0 || entries.size() < count) && (entry = reader.read()) != null)
+				entries.add(entry);
+		}
+		return entries;
+	}
+
+	LogSnippet readTail(int count) throws IOException {
+		LogSnippet snippet = new LogSnippet();
+		snippet.offset = Math.max(0, count() - count);
+		if (count != 0)
+			snippet.entries.addAll(read(snippet.offset, 0));
+		return snippet;
+	}
+
+	Reader openReader(int from) throws IOException {
+		return new Reader(from);
+	}
+
+	/*
+	 * Get length of data file containing specified number of leading entries
+	 */
+	private long getDataLength(int count) throws IOException {
+		if (count != 0) {
+			long offset;
+			try (RandomAccessFile raf = new RandomAccessFile(indexFile, "r")) {
+				raf.seek(HEADER_SIZE + (long)(count-1) * INDEX_SLOT_SIZE);
+				offset = raf.readLong();
+			}
+			try (RandomAccessFile raf = new RandomAccessFile(dataFile, "r")) {
+				raf.seek(offset + Long.BYTES);
+				return offset + Long.BYTES + Integer.BYTES + raf.readInt();
+			}
+		} else {
+			return HEADER_SIZE;
+		}
+	}
+
+	private void prepare(File file) throws IOException {
+		if (file.length() == 0) {
+			try (DataOutputStream os = new DataOutputStream(new FileOutputStream(file))) {
+				os.writeInt(MAGIC);
+				os.writeInt(VERSION);
+			}
+		}
+	}
+
+	private void checkHeader(RandomAccessFile raf, File file) throws IOException {
+		if (raf.length() < HEADER_SIZE || raf.readInt() != MAGIC)
+			throw new IOException("Malformed build log file: " + file.getAbsolutePath());
+		int version = raf.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported build log version (file: " + file.getAbsolutePath()
+					+ ", version: " + version + ")");
+		}
+	}
+
+	private int writeEntry(DataOutputStream os, JobLogEntry entry) throws IOException {
+		byte[] bytes = entry.getMessage().getBytes(StandardCharsets.UTF_8);
+		os.writeLong(entry.getDate().getTime());
+		os.writeInt(bytes.length);
+		os.write(bytes);
+		return 12 + bytes.length;
+	}
+
+	private JobLogEntry readEntry(DataInputStream is) throws IOException {
+		Date date = new Date(is.readLong());
+		byte[] bytes = new byte[is.readInt()];
+		is.readFully(bytes);
+		return new JobLogEntry(date, new String(bytes, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Sequential reader of log entries starting at specified index. Entries appended after
+	 * the reader is opened will not be returned
+	 */
+	class Reader implements Closeable {
+
+		private DataInputStream is;
+
+		private int remaining;
+
+		Reader(int from) throws IOException {
+			remaining = count() - from;
+			if (from >= 0 && remaining > 0) {
+				long offset;
+				try (RandomAccessFile raf = new RandomAccessFile(indexFile, "r")) {
+					checkHeader(raf, indexFile);
+					raf.seek(HEADER_SIZE + (long)from * INDEX_SLOT_SIZE);
+					offset = raf.readLong();
+				}
+				RandomAccessFile raf = new RandomAccessFile(dataFile, "r");
+				try {
+					checkHeader(raf, dataFile);
+					raf.seek(offset);
+					is = new DataInputStream(new BufferedInputStream(Channels.newInputStream(raf.getChannel())));
+				} catch (Exception e) {
+					raf.close();
+					throw e;
+				}
+			} else {
+				remaining = 0;
+			}
+		}
+
+		@Nullable
+		JobLogEntry read() throws IOException {
+			if (remaining > 0) {
+				remaining--;
+				return readEntry(is);
+			} else {
+				return null;
+			}
+		}
+
+		@Override
+		public void close() {
+			IOUtils.closeQuietly(is);
+		}
+
+	}
+
+}
@@ -0,0 +1,200 @@
+package io.onedev.server.buildspec.job.log;
+
+import static io.onedev.server.search.code.IndexConstants.NGRAM_SIZE;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.search.code.NGramAnalyzer;
+import io.onedev.server.search.code.query.NGramLuceneQuery;
+import io.onedev.server.search.code.query.TooGeneralQueryException;
+import io.onedev.server.search.code.query.regex.RegexLiterals;
+
+/**
+ * N-gram index of a finished build log. Log entries are indexed in chunks of
+ * {@link #CHUNK_SIZE} entries, and querying the index with a pattern returns index of first
+ * entry of chunks which may contain matches of the pattern. Caller should verify entries of
+ * returned chunks with the pattern, as n-grams only narrow down candidates.
+ * <p>
+ * Index is built into a temporary directory and then installed via {@link #install()}, so that
+ * the installed index is always complete.
+ */
+class LogIndex {
+
+	private static final Logger logger = LoggerFactory.getLogger(LogIndex.class);
+
+	static final int CHUNK_SIZE = 128;
+
+	private static final String INDEX_DIR = "build-log-index";
+
+	private static final String VERSION_FILE = "INDEX_VERSION";
+
+	private static final String VERSION = "1";
+
+	private static final String FIELD_FROM = "from";
+
+	private static final String FIELD_TEXT = "text";
+
+	private final File indexDir;
+
+	private final File buildingDir;
+
+	LogIndex(File buildDir) {
+		indexDir = new File(buildDir, INDEX_DIR);
+		buildingDir = new File(buildDir, INDEX_DIR + ".building");
+	}
+
+	boolean exists() {
+		File versionFile = new File(indexDir, VERSION_FILE);
+		if (versionFile.exists()) {
+			try {
+				return FileUtils.readFileToString(versionFile, StandardCharsets.UTF_8).trim().equals(VERSION);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		} else {
+			return false;
+		}
+	}
+
+	void delete() {
+		FileUtils.deleteDir(indexDir);
+		FileUtils.deleteDir(buildingDir);
+	}
+
+	/**
+	 * Build index of specified log file into a temporary directory. Call {@link #install()}
+	 * afterwards to make the index available for query
+	 */
+	void build(IndexedLogFile logFile) throws IOException {
+		FileUtils.deleteDir(buildingDir);
+		FileUtils.createDir(buildingDir);
+		IndexWriterConfig writerConfig = new IndexWriterConfig(new NGramAnalyzer(NGRAM_SIZE, NGRAM_SIZE));
+		writerConfig.setOpenMode(OpenMode.CREATE);
+		try (	Directory directory = FSDirectory.open(buildingDir.toPath());
+				IndexWriter writer = new IndexWriter(directory, writerConfig);
+				IndexedLogFile.Reader reader = logFile.openReader(0)) {
+			int from = 0;
+			StringBuilder text = new StringBuilder();
+			int count = 0;
+			JobLogEntry entry;
+			while ((entry = reader.read()) != null) {
+				text.append(entry.getMessage()).append("\n");
+				if (++count == CHUNK_SIZE) {
+					addChunk(writer, from, text.toString());
+					from += count;
+					count = 0;
+					text = new StringBuilder();
+				}
+			}
+			if (count != 0)
+				addChunk(writer, from, text.toString());
+			writer.commit();
+		}
+		FileUtils.writeFile(new File(buildingDir, VERSION_FILE), VERSION);
+	}
+
+	void install() throws IOException {
+		FileUtils.deleteDir(indexDir);
+		if (!buildingDir.renameTo(indexDir))
+			throw new IOException("Unable to install build log index: " + indexDir.getAbsolutePath());
+	}
+
+	private void addChunk(IndexWriter writer, int from, String text) throws IOException {
+		Document document = new Document();
+		document.add(new StoredField(FIELD_FROM, from));
+		document.add(new TextField(FIELD_TEXT, text, Store.NO));
+		writer.addDocument(document);
+	}
+
+	@Nullable
+	private Query getQuery(Pattern pattern) {
+		if ((pattern.flags() & Pattern.COMMENTS) != 0)
+			return null;
+		try {
+			if ((pattern.flags() & Pattern.LITERAL) != 0) {
+				if (pattern.pattern().length() >= NGRAM_SIZE)
+					return new NGramLuceneQuery(FIELD_TEXT, pattern.pattern(), NGRAM_SIZE);
+				else
+					return null;
+			} else {
+				return new RegexLiterals(pattern.pattern()).asNGramQuery(FIELD_TEXT, NGRAM_SIZE);
+			}
+		} catch (TooGeneralQueryException e) {
+			return null;
+		} catch (Exception e) {
+			logger.debug("Error extracting literals from pattern: " + pattern.pattern(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Get chunks possibly containing matches of specified pattern
+	 *
+	 * @return
+	 * 			ascending index of first entry of candidate chunks, or <tt>null</tt> if the
+	 * 			index can not be used to narrow down candidates of specified pattern
+	 */
+	@Nullable
+	List<Integer> query(Pattern pattern) throws IOException {
+		Query query = getQuery(pattern);
+		if (query != null && exists()) {
+			try (	Directory directory = FSDirectory.open(indexDir.toPath());
+					IndexReader reader = DirectoryReader.open(directory)) {
+				IndexSearcher searcher = new IndexSearcher(reader);
+				List<Integer> candidates = new ArrayList<>();
+				searcher.search(query, new SimpleCollector() {
+
+					private int docBase;
+
+					@Override
+					public void collect(int doc) throws IOException {
+						candidates.add(searcher.doc(docBase+doc).getField(FIELD_FROM).numericValue().intValue());
+					}
+
+					@Override
+					protected void doSetNextReader(LeafReaderContext context) throws IOException {
+						docBase = context.docBase;
+					}
+
+					@Override
+					public boolean needsScores() {
+						return false;
+					}
+
+				});
+				Collections.sort(candidates);
+				return candidates;
+			}
+		} else {
+			return null;
+		}
+	}
+
+}
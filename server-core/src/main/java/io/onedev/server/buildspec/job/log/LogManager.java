@@ -45,4 +45,15 @@ public interface LogManager {
 	
 	InputStream openLogStream(Build build);
 	
+	/**
+	 * Get recent logging throughput of specified build
+	 * 
+	 * @param build
+	 * 			build to get logging throughput of
+	 * @return
+	 * 			number of log lines written per second recently, or <tt>0</tt> if the build 
+	 * 			is not logging 
+	 */
+	double getLoggingRate(Build build);
+	
 }
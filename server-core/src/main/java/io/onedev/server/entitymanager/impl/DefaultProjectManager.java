@@ -87,6 +87,7 @@ import io.onedev.server.search.entity.EntitySort.Direction;
 import io.onedev.server.search.entity.project.ProjectQuery;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.security.permission.AccessProject;
+import io.onedev.server.util.ServerConfig;
 import io.onedev.server.util.patternset.PatternSet;
 import io.onedev.server.util.schedule.SchedulableTask;
 import io.onedev.server.util.schedule.TaskScheduler;
@@ -121,6 +122,8 @@ public class DefaultProjectManager extends BaseEntityManager<Project>
     
     private final UserAuthorizationManager userAuthorizationManager;
     
+    private final ServerConfig serverConfig;
+    
     private final String gitReceiveHook;
     
 	private final Map<Long, Repository> repositoryCache = new ConcurrentHashMap<>();
@@ -135,7 +138,7 @@ public class DefaultProjectManager extends BaseEntityManager<Project>
     		SettingManager settingManager, TransactionManager transactionManager, 
     		SessionManager sessionManager, ListenerRegistry listenerRegistry, 
     		TaskScheduler taskScheduler, UserAuthorizationManager userAuthorizationManager, 
-    		RoleManager roleManager) {
+    		RoleManager roleManager, ServerConfig serverConfig) {
     	super(dao);
     	
         this.commitInfoManager = commitInfoManager;
@@ -149,6 +152,7 @@ public class DefaultProjectManager extends BaseEntityManager<Project>
         this.taskScheduler = taskScheduler;
         this.userAuthorizationManager = userAuthorizationManager;
         this.roleManager = roleManager;
+        this.serverConfig = serverConfig;
         
         try (InputStream is = getClass().getClassLoader().getResourceAsStream("git-receive-hook")) {
         	Preconditions.checkNotNull(is);
@@ -292,7 +296,34 @@ public class DefaultProjectManager extends BaseEntityManager<Project>
        	userAuthorizationManager.save(authorization);
     	
         FileUtils.cleanDir(to.getGitDir());
-        new CloneCommand(to.getGitDir()).mirror(true).from(from.getGitDir().getAbsolutePath()).call();
+        if (serverConfig.isForkSharingObjects()) {
+        	new CloneCommand(to.getGitDir()).mirror(true).shared(true).from(from.getGitDir().getAbsolutePath()).call();
+        	
+        	/*
+        	 * Borrow objects of fork parents directly instead of via alternates of alternates. 
+        	 * This way git does not need to follow nested alternates, and all forks depending 
+        	 * on a project can be found by checking their own alternates when the project is 
+        	 * deleted 
+        	 */
+        	List<File> alternates = new ArrayList<>(GitUtils.getAlternates(from.getGitDir()));
+        	alternates.add(getObjectsDir(from));
+        	GitUtils.setAlternates(to.getGitDir(), alternates);
+        	
+        	// Objects no longer reachable in parent may still be used by the fork
+        	try {
+	        	StoredConfig config = from.getRepository().getConfig();
+	        	if (!"never".equals(config.getString(ConfigConstants.CONFIG_GC_SECTION, null, 
+	        			ConfigConstants.CONFIG_KEY_PRUNEEXPIRE))) {
+	        		config.setString(ConfigConstants.CONFIG_GC_SECTION, null, 
+	        				ConfigConstants.CONFIG_KEY_PRUNEEXPIRE, "never");
+	        		config.save();
+	        	}
+        	} catch (IOException e) {
+        		throw new RuntimeException(e);
+        	}
+        } else {
+        	new CloneCommand(to.getGitDir()).mirror(true).from(from.getGitDir().getAbsolutePath()).call();
+        }
         checkSanity(to);
         commitInfoManager.cloneInfo(from, to);
         avatarManager.copyAvatar(from, to);
@@ -300,6 +331,14 @@ public class DefaultProjectManager extends BaseEntityManager<Project>
         listenerRegistry.post(new ProjectCreated(to));
 	}
 
+	private File getObjectsDir(Project project) {
+		try {
+			return new File(project.getGitDir(), "objects").getCanonicalFile();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
 	private boolean isGitHookValid(File gitDir, String hookName) {
         File hookFile = new File(gitDir, "hooks/" + hookName);
         if (!hookFile.exists()) 
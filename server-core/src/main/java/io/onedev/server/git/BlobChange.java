@@ -1,5 +1,6 @@
 package io.onedev.server.git;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -13,17 +14,22 @@ import org.apache.wicket.Component;
 import org.apache.wicket.ajax.AjaxRequestTarget;
 import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.TreeWalk;
 
 import com.google.common.base.Preconditions;
 
 import io.onedev.commons.jsyntax.Tokenized;
 import io.onedev.commons.utils.PlanarRange;
+import io.onedev.server.OneDev;
 import io.onedev.server.code.CodeProblem;
+import io.onedev.server.git.exception.ObjectNotFoundException;
 import io.onedev.server.model.CodeComment;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.support.Mark;
 import io.onedev.server.util.Pair;
 import io.onedev.server.util.diff.DiffBlock;
+import io.onedev.server.util.diff.DiffCacheManager;
 import io.onedev.server.util.diff.DiffMatchPatch.Operation;
 import io.onedev.server.util.diff.DiffUtils;
 import io.onedev.server.util.diff.WhitespaceOption;
@@ -41,15 +47,35 @@ public abstract class BlobChange implements Serializable {
 	
 	protected final BlobIdent newBlobIdent;
 	
+	private ObjectId oldBlobId;
+	
+	private ObjectId newBlobId;
+	
 	private transient List<DiffBlock<Tokenized>> diffBlocks;
 	
-	public BlobChange(ChangeType type, BlobIdent oldBlobIdent, BlobIdent newBlobIdent, 
-			WhitespaceOption whitespaceOption) {
+	/**
+	 * @param oldBlobId
+	 * 			id of old blob if already known, for instance from the tree walk or diff entry 
+	 * 			producing this change. Pass <tt>null</tt> to look it up from old blob ident 
+	 * 			when needed
+	 * @param newBlobId
+	 * 			id of new blob if already known, or <tt>null</tt> to look it up from new blob 
+	 * 			ident when needed
+	 */
+	public BlobChange(ChangeType type, BlobIdent oldBlobIdent, @Nullable ObjectId oldBlobId, 
+			BlobIdent newBlobIdent, @Nullable ObjectId newBlobId, WhitespaceOption whitespaceOption) {
 		this.type = type;
 		this.oldBlobIdent = oldBlobIdent;
+		this.oldBlobId = oldBlobId;
 		this.newBlobIdent = newBlobIdent;
+		this.newBlobId = newBlobId;
 		this.whitespaceOption = whitespaceOption;
 	}
+	
+	public BlobChange(ChangeType type, BlobIdent oldBlobIdent, BlobIdent newBlobIdent, 
+			WhitespaceOption whitespaceOption) {
+		this(type, oldBlobIdent, null, newBlobIdent, null, whitespaceOption);
+	}
 
 	public ChangeType getType() {
 		return type;
@@ -71,55 +97,69 @@ public abstract class BlobChange implements Serializable {
 		return newBlobIdent.path != null? newBlobIdent.path: oldBlobIdent.path;
 	}
 	
+	public ObjectId getOldBlobId() {
+		Preconditions.checkNotNull(oldBlobIdent.path);
+		if (oldBlobId == null)
+			oldBlobId = getBlobId(oldBlobIdent);
+		return oldBlobId;
+	}
+	
+	public ObjectId getNewBlobId() {
+		Preconditions.checkNotNull(newBlobIdent.path);
+		if (newBlobId == null)
+			newBlobId = getBlobId(newBlobIdent);
+		return newBlobId;
+	}
+	
+	/*
+	 * Look up blob id from tree of the revision, without loading blob content 
+	 */
+	private ObjectId getBlobId(BlobIdent blobIdent) {
+		RevCommit commit = getProject().getRevCommit(blobIdent.revision, true);
+		try {
+			TreeWalk treeWalk = TreeWalk.forPath(getProject().getRepository(), blobIdent.path, commit.getTree());
+			if (treeWalk == null) {
+				throw new ObjectNotFoundException("Unable to find blob path '" + blobIdent.path 
+						+ "' in revision '" + blobIdent.revision + "'");
+			}
+			return treeWalk.getObjectId(0);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
 	public List<DiffBlock<Tokenized>> getDiffBlocks() {
 		if (diffBlocks == null) {
 			try {
+				ObjectId oldBlobId = ObjectId.zeroId();
+				ObjectId newBlobId = ObjectId.zeroId();
+				String oldFileName = "a.txt";
+				String newFileName = "b.txt";
+				WhitespaceOption whitespaceOption = WhitespaceOption.DEFAULT;
 				if (type == ChangeType.ADD || type == ChangeType.COPY) {
-					if (getNewText() != null) {
-						List<String> newLines = getNewText().getLines();
-						if (newLines.size() <= DiffUtils.MAX_DIFF_SIZE) {
-							List<String> oldLines = new ArrayList<>();
-							diffBlocks = DiffUtils.diff(
-									oldLines, "a.txt", 
-									newLines, newBlobIdent.isFile()?newBlobIdent.path:"b.txt", 
-									WhitespaceOption.DEFAULT);
-						} else {
-							diffBlocks = new ArrayList<>();
-						}
-					} else {
-						diffBlocks = new ArrayList<>();
-					}
+					newBlobId = getNewBlobId();
+					if (newBlobIdent.isFile())
+						newFileName = newBlobIdent.path;
 				} else if (type == ChangeType.DELETE) {
-					if (getOldText() != null) {
-						List<String> oldLines = getOldText().getLines();
-						if (oldLines.size() <= DiffUtils.MAX_DIFF_SIZE) {
-							List<String> newLines = new ArrayList<>();
-							diffBlocks = DiffUtils.diff(
-									oldLines, oldBlobIdent.isFile()?oldBlobIdent.path:"a.txt", 
-									newLines, "b.txt", 
-									WhitespaceOption.DEFAULT);
-						} else {
-							diffBlocks = new ArrayList<>();
-						}
-					} else {
-						diffBlocks = new ArrayList<>();
-					}
+					oldBlobId = getOldBlobId();
+					if (oldBlobIdent.isFile())
+						oldFileName = oldBlobIdent.path;
 				} else {
-					if (getOldText() != null && getNewText() != null) {
-						List<String> oldLines = getOldText().getLines();
-						List<String> newLines = getNewText().getLines();
-						if (oldLines.size() + newLines.size() <= DiffUtils.MAX_DIFF_SIZE) {
-							diffBlocks = DiffUtils.diff(
-									oldLines, oldBlobIdent.isFile()?newBlobIdent.path:"a.txt", 
-									newLines, newBlobIdent.isFile()?newBlobIdent.path:"b.txt", 
-									whitespaceOption);
-						} else { 
-							diffBlocks = new ArrayList<>();
-						}
-					} else {
-						diffBlocks = new ArrayList<>();
-					}
+					oldBlobId = getOldBlobId();
+					newBlobId = getNewBlobId();
+					if (oldBlobIdent.isFile())
+						oldFileName = newBlobIdent.path;
+					if (newBlobIdent.isFile())
+						newFileName = newBlobIdent.path;
+					whitespaceOption = this.whitespaceOption;
 				}
+				
+				String finalOldFileName = oldFileName;
+				String finalNewFileName = newFileName;
+				WhitespaceOption finalWhitespaceOption = whitespaceOption;
+				diffBlocks = OneDev.getInstance(DiffCacheManager.class).getDiffBlocks(
+						oldBlobId, oldFileName, newBlobId, newFileName, whitespaceOption, 
+						()->calcDiffBlocks(finalOldFileName, finalNewFileName, finalWhitespaceOption));
 			} catch (Exception e) {
 				throw new RuntimeException("Error calculating diff of file: " + getPath(), e);
 			}
@@ -127,6 +167,32 @@ public abstract class BlobChange implements Serializable {
 		return diffBlocks;
 	}
 	
+	private List<DiffBlock<Tokenized>> calcDiffBlocks(String oldFileName, String newFileName, 
+			WhitespaceOption whitespaceOption) {
+		List<String> oldLines;
+		List<String> newLines;
+		if (type == ChangeType.ADD || type == ChangeType.COPY) {
+			oldLines = new ArrayList<>();
+			Blob.Text newText = getNewText();
+			newLines = newText!=null?newText.getLines():null;
+		} else if (type == ChangeType.DELETE) {
+			Blob.Text oldText = getOldText();
+			oldLines = oldText!=null?oldText.getLines():null;
+			newLines = new ArrayList<>();
+		} else {
+			Blob.Text oldText = getOldText();
+			oldLines = oldText!=null?oldText.getLines():null;
+			Blob.Text newText = getNewText();
+			newLines = newText!=null?newText.getLines():null;
+		}
+		if (oldLines != null && newLines != null 
+				&& oldLines.size() + newLines.size() <= DiffUtils.MAX_DIFF_SIZE) {
+			return DiffUtils.diff(oldLines, oldFileName, newLines, newFileName, whitespaceOption);
+		} else {
+			return new ArrayList<>();
+		}
+	}
+	
 	public int getAdditions() {
 		int additions = 0;
 		for (DiffBlock<Tokenized> diff: getDiffBlocks()) {
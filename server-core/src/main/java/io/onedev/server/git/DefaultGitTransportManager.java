@@ -0,0 +1,133 @@
+package io.onedev.server.git;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.security.SecurityUtils;
+import io.onedev.server.util.RunningStats;
+import io.onedev.server.util.ServerConfig;
+
+@Singleton
+public class DefaultGitTransportManager implements GitTransportManager {
+
+	/*
+	 * Number of threads is bounded by admission control below, so the pool itself 
+	 * does not need to queue 
+	 */
+	private final ExecutorService executorService = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 
+			60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+	
+	private final ServerConfig serverConfig;
+	
+	private final LinkedList<Transport> queue = new LinkedList<>();
+	
+	private final Map<Long, Integer> projectRunningCounts = new HashMap<>();
+	
+	private final RunningStats waitStats = new RunningStats();
+	
+	private int runningCount;
+	
+	@Inject
+	public DefaultGitTransportManager(ServerConfig serverConfig) {
+		this.serverConfig = serverConfig;
+	}
+	
+	@Override
+	public Future<?> submit(Long projectId, Runnable transport) {
+		Transport future = new Transport(projectId, SecurityUtils.inheritSubject(transport));
+		synchronized (this) {
+			queue.add(future);
+			dispatch();
+		}
+		return future;
+	}
+	
+	private synchronized void dispatch() {
+		for (Iterator<Transport> it = queue.iterator(); 
+				it.hasNext() && runningCount < serverConfig.getGitTransportConcurrency();) {
+			Transport transport = it.next();
+			int projectRunningCount = projectRunningCounts.getOrDefault(transport.projectId, 0);
+			if (projectRunningCount < serverConfig.getGitTransportProjectConcurrency()) {
+				it.remove();
+				runningCount++;
+				projectRunningCounts.put(transport.projectId, projectRunningCount+1);
+				waitStats.record(System.currentTimeMillis() - transport.submitTime);
+				executorService.execute(transport);
+			}
+		}
+	}
+	
+	private synchronized void onFinished(Transport transport) {
+		runningCount--;
+		int projectRunningCount = projectRunningCounts.get(transport.projectId) - 1;
+		if (projectRunningCount != 0)
+			projectRunningCounts.put(transport.projectId, projectRunningCount);
+		else
+			projectRunningCounts.remove(transport.projectId);
+		dispatch();
+	}
+	
+	@Override
+	public synchronized int getRunningCount() {
+		return runningCount;
+	}
+
+	@Override
+	public synchronized int getQueuedCount() {
+		return queue.size();
+	}
+
+	@Override
+	public RunningStats getWaitStats() {
+		return waitStats;
+	}
+
+	@Listen
+	public void on(SystemStopping event) {
+		executorService.shutdown();
+	}
+	
+	private class Transport extends FutureTask<Void> {
+
+		private final Long projectId;
+		
+		private final long submitTime = System.currentTimeMillis();
+		
+		public Transport(Long projectId, Runnable runnable) {
+			super(runnable, null);
+			this.projectId = projectId;
+		}
+
+		@Override
+		public void run() {
+			try {
+				super.run();
+			} finally {
+				onFinished(this);
+			}
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			synchronized (DefaultGitTransportManager.this) {
+				queue.remove(this);
+			}
+			return super.cancel(mayInterruptIfRunning);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,369 @@
+package io.onedev.server.git;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.joda.time.DateTimeConstants;
+import org.quartz.ScheduleBuilder;
+import org.quartz.SimpleScheduleBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.git.command.GitCommand;
+import io.onedev.server.git.command.PruneCommand;
+import io.onedev.server.git.command.RepackCommand;
+import io.onedev.server.git.command.WriteCommitGraphCommand;
+import io.onedev.server.git.config.GitConfig;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.SessionManager;
+import io.onedev.server.util.Pair;
+import io.onedev.server.util.ServerConfig;
+import io.onedev.server.util.concurrent.PrioritizedRunnable;
+import io.onedev.server.util.schedule.SchedulableTask;
+import io.onedev.server.util.schedule.TaskScheduler;
+import io.onedev.server.util.work.WorkExecutor;
+
+/**
+ * Checks object storage of all repositories periodically, and runs git maintenance for
+ * repositories exceeding thresholds:
+ * <ul>
+ * <li>Repack all objects into a single pack if there are too many packs or loose objects.
+ * Reachability bitmap is written along with the pack unless the repository borrows objects
+ * via alternates, in which case git can not write bitmaps
+ * <li>Write commit-graph if it is missing or older than newest pack
+ * </ul>
+ * Repositories whose objects are borrowed by forks (marked by <tt>gc.pruneExpire=never</tt>)
+ * are never pruned, and objects becoming unreachable while repacking are kept as loose
+ * objects for all repositories, so that forks and concurrent pushes never lose objects.
+ */
+@Singleton
+public class DefaultRepositoryMaintenanceManager implements RepositoryMaintenanceManager, SchedulableTask {
+
+	private static final Logger logger = LoggerFactory.getLogger(DefaultRepositoryMaintenanceManager.class);
+
+	private static final int PRIORITY = 200;
+
+	private static final int PACKS_THRESHOLD = 20;
+
+	private static final int LOOSE_OBJECTS_THRESHOLD = 1000;
+
+	private static final long COMMIT_GRAPH_MAX_AGE = DateTimeConstants.MILLIS_PER_DAY;
+
+	private static final String PRUNE_EXPIRE = "2.weeks.ago";
+
+	private static final GitVersion COMMIT_GRAPH_MIN_VERSION = new GitVersion("2.19.0");
+
+	private final ProjectManager projectManager;
+
+	private final SessionManager sessionManager;
+
+	private final WorkExecutor workExecutor;
+
+	private final TaskScheduler taskScheduler;
+
+	private final ServerConfig serverConfig;
+
+	private final Provider<GitConfig> gitConfigProvider;
+
+	private final Map<Long, RepositoryMaintenanceStatus> statuses = new ConcurrentHashMap<>();
+
+	private final Map<Long, MaintenanceWork> pendingWorks = new LinkedHashMap<>();
+
+	private final Map<Long, MaintenanceWork> runningWorks = new ConcurrentHashMap<>();
+
+	private volatile Pair<String, GitVersion> gitVersion;
+
+	private String taskId;
+
+	@Inject
+	public DefaultRepositoryMaintenanceManager(ProjectManager projectManager, SessionManager sessionManager,
+			WorkExecutor workExecutor, TaskScheduler taskScheduler, ServerConfig serverConfig,
+			Provider<GitConfig> gitConfigProvider) {
+		this.projectManager = projectManager;
+		this.sessionManager = sessionManager;
+		this.workExecutor = workExecutor;
+		this.taskScheduler = taskScheduler;
+		this.serverConfig = serverConfig;
+		this.gitConfigProvider = gitConfigProvider;
+	}
+
+	@Listen
+	public void on(SystemStarted event) {
+		taskId = taskScheduler.schedule(this);
+	}
+
+	@Listen
+	public void on(SystemStopping event) {
+		if (taskId != null)
+			taskScheduler.unschedule(taskId);
+	}
+
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project) {
+			Long projectId = event.getEntity().getId();
+			synchronized (pendingWorks) {
+				pendingWorks.remove(projectId);
+			}
+			statuses.remove(projectId);
+		}
+	}
+
+	@Override
+	public boolean isCommitGraphSupported() {
+		String gitExe = gitConfigProvider.get().getExecutable();
+		Pair<String, GitVersion> gitVersion = this.gitVersion;
+		if (gitVersion == null || !gitVersion.getFirst().equals(gitExe)) {
+			try {
+				gitVersion = new Pair<>(gitExe, GitCommand.getVersion(gitExe));
+			} catch (Exception e) {
+				logger.error("Error checking git version", e);
+				gitVersion = new Pair<>(gitExe, null);
+			}
+			this.gitVersion = gitVersion;
+		}
+		return gitVersion.getSecond() != null
+				&& gitVersion.getSecond().isNotOlderThan(COMMIT_GRAPH_MIN_VERSION);
+	}
+
+	private RepositoryMaintenanceStatus getOrCreateStatus(Long projectId) {
+		return statuses.computeIfAbsent(projectId, key->new RepositoryMaintenanceStatus(projectId));
+	}
+
+	/*
+	 * Check statistics of repository of specified project and queue maintenance work if
+	 * necessary. Should be called with lock of pending works held
+	 */
+	private void check(Project project, boolean force) {
+		Long projectId = project.getId();
+		if (pendingWorks.containsKey(projectId) || runningWorks.containsKey(projectId))
+			return;
+
+		File gitDir = project.getGitDir();
+		RepositoryStats stats = RepositoryStats.of(gitDir);
+		RepositoryMaintenanceStatus status = getOrCreateStatus(projectId);
+		status.setStats(stats);
+
+		boolean borrowing = !GitUtils.getAlternates(gitDir).isEmpty();
+		boolean writeBitmap = !borrowing && !status.bitmapRefused;
+
+		boolean repack;
+		if (force) {
+			repack = stats.getPacks() != 0 || stats.getLooseObjects() != 0;
+		} else {
+			repack = stats.getPacks() >= PACKS_THRESHOLD
+					|| stats.getLooseObjects() - status.looseObjectsAfterRepack >= LOOSE_OBJECTS_THRESHOLD
+					|| writeBitmap && stats.getPacks() != 0 && !stats.hasBitmap();
+		}
+
+		boolean writeCommitGraph = false;
+		if ((repack || stats.getPacks() != 0) && isCommitGraphSupported()) {
+			long commitGraphTime = stats.getCommitGraphTime();
+			writeCommitGraph = force || repack || commitGraphTime < stats.getLastPackTime()
+					|| stats.getLooseObjects() != 0 && System.currentTimeMillis() - commitGraphTime > COMMIT_GRAPH_MAX_AGE;
+		}
+
+		if (repack || writeCommitGraph) {
+			StoredConfig config = project.getRepository().getConfig();
+			boolean lending = "never".equals(config.getString(ConfigConstants.CONFIG_GC_SECTION, null,
+					ConfigConstants.CONFIG_KEY_PRUNEEXPIRE));
+			pendingWorks.put(projectId, new MaintenanceWork(project.getName(), gitDir, repack,
+					writeBitmap, !lending, writeCommitGraph));
+			status.setPending(true);
+		}
+	}
+
+	@Override
+	public void execute() {
+		try {
+			sessionManager.run(new Runnable() {
+
+				@Override
+				public void run() {
+					for (Project project: projectManager.query()) {
+						try {
+							synchronized (pendingWorks) {
+								check(project, false);
+							}
+						} catch (Exception e) {
+							logger.error("Error checking repository of project '" + project.getName() + "'", e);
+						}
+					}
+				}
+
+			});
+			dispatch();
+		} catch (Exception e) {
+			logger.error("Error checking repositories for maintenance", e);
+		}
+	}
+
+	@Override
+	public void maintain(Project project) {
+		synchronized (pendingWorks) {
+			check(project, true);
+		}
+		dispatch();
+	}
+
+	/*
+	 * Start pending maintenance works in queuing order as long as number of running works
+	 * is under the limit
+	 */
+	private void dispatch() {
+		synchronized (pendingWorks) {
+			for (Iterator<Map.Entry<Long, MaintenanceWork>> it = pendingWorks.entrySet().iterator(); it.hasNext();) {
+				if (runningWorks.size() >= serverConfig.getRepositoryMaintenanceConcurrency())
+					break;
+				Map.Entry<Long, MaintenanceWork> entry = it.next();
+				it.remove();
+				Long projectId = entry.getKey();
+				MaintenanceWork work = entry.getValue();
+				RepositoryMaintenanceStatus status = getOrCreateStatus(projectId);
+				status.setPending(false);
+				status.setRunning(true);
+				runningWorks.put(projectId, work);
+				workExecutor.execute(new PrioritizedRunnable(PRIORITY) {
+
+					@Override
+					public void run() {
+						try {
+							doMaintain(work, status);
+						} finally {
+							synchronized (pendingWorks) {
+								runningWorks.remove(projectId);
+								status.setRunning(false);
+							}
+							dispatch();
+						}
+					}
+
+				});
+			}
+		}
+	}
+
+	private void doMaintain(MaintenanceWork work, RepositoryMaintenanceStatus status) {
+		long time = System.currentTimeMillis();
+		List<String> tasks = new ArrayList<>();
+		try {
+			if (work.repack) {
+				new RepackCommand(work.gitDir).loosenUnreachable(true).delete(true).local(true)
+						.writeBitmap(work.writeBitmap).call();
+				tasks.add(work.writeBitmap?"repack with bitmap":"repack");
+				if (work.prune) {
+					new PruneCommand(work.gitDir).expire(PRUNE_EXPIRE).call();
+					tasks.add("prune");
+				}
+			}
+			if (work.writeCommitGraph) {
+				new WriteCommitGraphCommand(work.gitDir).call();
+				tasks.add("commit-graph");
+			}
+
+			RepositoryStats stats = RepositoryStats.of(work.gitDir);
+			if (work.repack) {
+				status.looseObjectsAfterRepack = stats.getLooseObjects();
+				if (work.writeBitmap && !stats.hasBitmap()) {
+					logger.warn("Unable to write bitmap for repository of project '{}'", work.projectName);
+					status.bitmapRefused = true;
+				}
+			}
+			status.setStats(stats);
+			status.setLastError(null);
+			logger.debug("Maintained repository of project '{}' ({})", work.projectName, stats);
+		} catch (Exception e) {
+			logger.error("Error maintaining repository of project '" + work.projectName + "'", e);
+			status.setLastError(e.getMessage());
+		} finally {
+			status.setLastRunDate(new Date(time));
+			status.setLastRunDuration(System.currentTimeMillis() - time);
+			status.setLastRunTasks(String.join(", ", tasks));
+		}
+	}
+
+	@Override
+	public List<RepositoryMaintenanceStatus> getStatuses() {
+		// Take sort keys first as statuses may change while sorting
+		Map<RepositoryMaintenanceStatus, Long> sortKeys = new HashMap<>();
+		for (RepositoryMaintenanceStatus status: statuses.values()) {
+			long sortKey;
+			if (status.isRunning())
+				sortKey = Long.MIN_VALUE;
+			else if (status.isPending())
+				sortKey = Long.MIN_VALUE + 1;
+			else if (status.getLastRunDate() != null)
+				sortKey = -status.getLastRunDate().getTime();
+			else
+				sortKey = 0;
+			sortKeys.put(status, sortKey);
+		}
+		List<RepositoryMaintenanceStatus> statuses = new ArrayList<>(sortKeys.keySet());
+		Collections.sort(statuses, new Comparator<RepositoryMaintenanceStatus>() {
+
+			@Override
+			public int compare(RepositoryMaintenanceStatus o1, RepositoryMaintenanceStatus o2) {
+				return sortKeys.get(o1).compareTo(sortKeys.get(o2));
+			}
+
+		});
+		return statuses;
+	}
+
+	@Override
+	public RepositoryMaintenanceStatus getStatus(Project project) {
+		return statuses.get(project.getId());
+	}
+
+	@Override
+	public ScheduleBuilder<?> getScheduleBuilder() {
+		return SimpleScheduleBuilder.repeatHourlyForever();
+	}
+
+	private static class MaintenanceWork {
+
+		final String projectName;
+
+		final File gitDir;
+
+		final boolean repack;
+
+		final boolean writeBitmap;
+
+		final boolean prune;
+
+		final boolean writeCommitGraph;
+
+		MaintenanceWork(String projectName, File gitDir, boolean repack, boolean writeBitmap,
+				boolean prune, boolean writeCommitGraph) {
+			this.projectName = projectName;
+			this.gitDir = gitDir;
+			this.repack = repack;
+			this.writeBitmap = writeBitmap;
+			this.prune = prune;
+			this.writeCommitGraph = writeCommitGraph;
+		}
+
+	}
+
+}
@@ -15,12 +15,12 @@ public class GitContributor implements Serializable {
 	
 	private final GitContribution totalContribution;
 	
-	private final Map<Day, Integer> dailyContributions;
+	private final Map<Day, Integer> contributions;
 	
-	public GitContributor(PersonIdent author, GitContribution totalContribution, Map<Day, Integer> dailyContributions) {
+	public GitContributor(PersonIdent author, GitContribution totalContribution, Map<Day, Integer> contributions) {
 		this.author = author;
 		this.totalContribution = totalContribution;
-		this.dailyContributions = dailyContributions;
+		this.contributions = contributions;
 	}
 
 	public PersonIdent getAuthor() {
@@ -31,8 +31,13 @@ public class GitContributor implements Serializable {
 		return totalContribution;
 	}
 
-	public Map<Day, Integer> getDailyContributions() {
-		return dailyContributions;
+	/**
+	 * @return
+	 * 			contributions over time, keyed by first day of the time bucket they are 
+	 * 			rolled up into
+	 */
+	public Map<Day, Integer> getContributions() {
+		return contributions;
 	}
 
 }
@@ -47,16 +47,12 @@ import io.onedev.server.security.CodePullAuthorizationSource;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.storage.StorageManager;
 import io.onedev.server.util.ServerConfig;
-import io.onedev.server.util.concurrent.PrioritizedRunnable;
-import io.onedev.server.util.work.WorkExecutor;
 
 @Singleton
 public class GitFilter implements Filter {
 	
 	private static final Logger logger = LoggerFactory.getLogger(GitFilter.class);
 
-	private static final int PRIORITY = 2;
-	
 	private static final String INFO_REFS = "info/refs";
 	
 	private final OneDev oneDev;
@@ -65,7 +61,7 @@ public class GitFilter implements Filter {
 	
 	private final ProjectManager projectManager;
 	
-	private final WorkExecutor workExecutor;
+	private final GitTransportManager gitTransportManager;
 	
 	private final ServerConfig serverConfig;
 	
@@ -77,12 +73,12 @@ public class GitFilter implements Filter {
 	
 	@Inject
 	public GitFilter(OneDev oneDev, StorageManager storageManager, ProjectManager projectManager, 
-			WorkExecutor workExecutor, ServerConfig serverConfig, SettingManager settingManager,
+			GitTransportManager gitTransportManager, ServerConfig serverConfig, SettingManager settingManager,
 			SessionManager sessionManager, Set<CodePullAuthorizationSource> codePullAuthorizationSources) {
 		this.oneDev = oneDev;
 		this.storageManager = storageManager;
 		this.projectManager = projectManager;
-		this.workExecutor = workExecutor;
+		this.gitTransportManager = gitTransportManager;
 		this.serverConfig = serverConfig;
 		this.settingManager = settingManager;
 		this.sessionManager = sessionManager;
@@ -117,6 +113,7 @@ public class GitFilter implements Filter {
 	
 	protected void processPacks(final HttpServletRequest request, final HttpServletResponse response) 
 			throws ServletException, IOException, InterruptedException, ExecutionException {
+		Long projectId;
 		File gitDir;
 		boolean upload;
 		Map<String, String> environments = new HashMap<>();
@@ -150,6 +147,7 @@ public class GitFilter implements Filter {
 			environments.put("GITPLEX_USER_ID", SecurityUtils.getUserId().toString());
 			environments.put("GITPLEX_REPOSITORY_ID", project.getId().toString());
 			
+			projectId = project.getId();
 			gitDir = storageManager.getProjectGitDir(project.getId());
 
 			if (GitSmartHttpTools.isUploadPack(request)) {
@@ -165,7 +163,7 @@ public class GitFilter implements Filter {
 		}
 		
 		if (upload) {
-			workExecutor.submit(new PrioritizedRunnable(PRIORITY) {
+			gitTransportManager.submit(projectId, new Runnable() {
 				
 				@Override
 				public void run() {
@@ -203,7 +201,7 @@ public class GitFilter implements Filter {
 				
 			}).get();
 		} else {
-			workExecutor.submit(new PrioritizedRunnable(PRIORITY) {
+			gitTransportManager.submit(projectId, new Runnable() {
 				
 				@Override
 				public void run() {
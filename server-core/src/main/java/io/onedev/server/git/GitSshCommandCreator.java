@@ -36,8 +36,6 @@ import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.ssh.SshAuthenticator;
 import io.onedev.server.ssh.SshCommandCreator;
 import io.onedev.server.util.ServerConfig;
-import io.onedev.server.util.concurrent.PrioritizedRunnable;
-import io.onedev.server.util.work.WorkExecutor;
 
 @Singleton
 public class GitSshCommandCreator implements SshCommandCreator {
@@ -54,17 +52,17 @@ public class GitSshCommandCreator implements SshCommandCreator {
 	
 	private final SshAuthenticator authenticator;
 	
-	private final WorkExecutor workExecutor;
+	private final GitTransportManager gitTransportManager;
 	
 	@Inject
 	public GitSshCommandCreator(ServerConfig serverConfig, SettingManager settingManager, 
 			ProjectManager projectManager, SessionManager sessionManager, 
-			WorkExecutor workExecutor, SshAuthenticator authenticator) {
+			GitTransportManager gitTransportManager, SshAuthenticator authenticator) {
 		this.serverConfig = serverConfig;
 		this.settingManager = settingManager;
 		this.projectManager = projectManager;
 		this.sessionManager = sessionManager;
-		this.workExecutor = workExecutor;
+		this.gitTransportManager = gitTransportManager;
 		this.authenticator = authenticator;
 	}
 	
@@ -119,8 +117,6 @@ public class GitSshCommandCreator implements SshCommandCreator {
 
 	private abstract class GitSshCommand implements Command, SessionAware {
 		
-		private static final int PRIORITY = 2;
-
 		final String command;
 		
 		InputStream inputStream;
@@ -159,6 +155,7 @@ public class GitSshCommandCreator implements SshCommandCreator {
 		public void start(Environment env) throws IOException {
 			ThreadContext.bind(SecurityUtils.asSubject(authenticator.getPublicKeyOwnerId(session)));
 			
+            Long projectId;
             File gitDir;
             Map<String, String> gitEnvs;
             
@@ -177,13 +174,14 @@ public class GitSshCommandCreator implements SshCommandCreator {
             		return;
             	} 
 
+                projectId = project.getId();
                 gitDir = project.getGitDir();
                 gitEnvs = buildGitEnvs(project);
             } finally {                
                 sessionManager.closeSession();
             }
 			
-			commandFuture = workExecutor.submit(new PrioritizedRunnable(PRIORITY) {
+			commandFuture = gitTransportManager.submit(projectId, new Runnable() {
 				
 				@Override
 				public void run() {
@@ -0,0 +1,40 @@
+package io.onedev.server.git;
+
+import java.util.concurrent.Future;
+
+import io.onedev.server.util.RunningStats;
+
+/**
+ * Runs git transports (upload-pack and receive-pack over http or ssh) in threads separated 
+ * from {@link io.onedev.server.util.work.WorkExecutor}, so that long running clones and pushes 
+ * do not starve cpu intensive background works
+ */
+public interface GitTransportManager {
+	
+	/**
+	 * Submit a git transport of specified project. The transport will be started when both 
+	 * global and per project concurrency limits permit. Transports waiting for admission are 
+	 * started in submission order, except that transports of a project at its limit do not 
+	 * block transports of other projects
+	 * 
+	 * @param projectId
+	 * 			id of the project to run transport against
+	 * @param transport
+	 * 			the transport to run 
+	 * @return
+	 * 			future of the transport. Cancelling the future removes the transport from 
+	 * 			admission queue if it is not started yet
+	 */
+	Future<?> submit(Long projectId, Runnable transport);
+	
+	int getRunningCount();
+	
+	int getQueuedCount();
+	
+	/**
+	 * @return
+	 * 			statistics of milliseconds transports wait for admission
+	 */
+	RunningStats getWaitStats();
+	
+}
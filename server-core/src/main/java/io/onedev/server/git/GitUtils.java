@@ -2,6 +2,8 @@ package io.onedev.server.git;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -51,9 +53,11 @@ import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.Iterables;
 
+import io.onedev.commons.utils.FileUtils;
 import io.onedev.commons.utils.PathUtils;
 import io.onedev.server.git.command.FetchCommand;
 import io.onedev.server.git.command.IsAncestorCommand;
+import io.onedev.server.git.command.RepackCommand;
 import io.onedev.server.git.exception.ObsoleteCommitException;
 import io.onedev.server.git.exception.RefUpdateException;
 
@@ -479,6 +483,75 @@ public class GitUtils {
     	return new File(gitDir, "objects").exists();
     }
     
+    /**
+     * Get alternate object directories of specified repository, as recorded in 
+     * <tt>objects/info/alternates</tt>. Relative paths are resolved against the objects 
+     * directory of the repository
+     */
+    public static List<File> getAlternates(File gitDir) {
+    	File objectsDir = new File(gitDir, "objects");
+    	File alternatesFile = new File(objectsDir, "info/alternates");
+    	List<File> alternates = new ArrayList<>();
+    	if (alternatesFile.exists()) {
+    		try {
+	    		for (String line: FileUtils.readLines(alternatesFile, StandardCharsets.UTF_8)) {
+	    			line = line.trim();
+	    			if (line.length() != 0 && !line.startsWith("#")) {
+	    				File alternate = new File(line);
+	    				if (!alternate.isAbsolute())
+	    					alternate = new File(objectsDir, line);
+	    				alternates.add(alternate.getCanonicalFile());
+	    			}
+	    		}
+    		} catch (IOException e) {
+    			throw new RuntimeException(e);
+    		}
+    	}
+    	return alternates;
+    }
+    
+    /**
+     * Set alternate object directories of specified repository. Paths are recorded relative 
+     * to the objects directory if possible, so that they remain valid when the storage 
+     * directory is moved
+     */
+    public static void setAlternates(File gitDir, List<File> alternates) {
+    	File objectsDir = new File(gitDir, "objects");
+    	File alternatesFile = new File(objectsDir, "info/alternates");
+    	try {
+	    	if (!alternates.isEmpty()) {
+	    		Path objectsPath = objectsDir.getCanonicalFile().toPath();
+	    		List<String> lines = new ArrayList<>();
+	    		for (File alternate: alternates) {
+	    			Path alternatePath = alternate.getCanonicalFile().toPath();
+	    			try {
+	    				lines.add(objectsPath.relativize(alternatePath).toString().replace('\\', '/'));
+	    			} catch (IllegalArgumentException e) {
+	    				// paths on different drives can not be relativized 
+	    				lines.add(alternatePath.toString());
+	    			}
+	    		}
+	    		FileUtils.createDir(alternatesFile.getParentFile());
+	    		FileUtils.writeLines(alternatesFile, StandardCharsets.UTF_8.name(), lines, "\n");
+	    	} else if (alternatesFile.exists()) {
+	    		FileUtils.deleteFile(alternatesFile);
+	    	}
+    	} catch (IOException e) {
+    		throw new RuntimeException(e);
+    	}
+    }
+    
+    /**
+     * Copy objects borrowed from alternate object directories into specified repository and 
+     * stop using alternates, so that the repository no longer depends on other repositories
+     */
+    public static void dissociate(File gitDir) {
+    	if (!getAlternates(gitDir).isEmpty()) {
+    		new RepackCommand(gitDir).all(true).delete(true).call();
+    		setAlternates(gitDir, new ArrayList<>());
+    	}
+    }
+    
 	public static RefUpdate getRefUpdate(Repository repository, String refName) {
 		try {
 			return repository.updateRef(refName);
@@ -0,0 +1,33 @@
+package io.onedev.server.git;
+
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import io.onedev.server.model.Project;
+
+public interface RepositoryMaintenanceManager {
+
+	/**
+	 * Get maintenance status of repositories checked since server start. Running and
+	 * pending maintenances are listed first, followed by most recently maintained ones
+	 */
+	List<RepositoryMaintenanceStatus> getStatuses();
+
+	@Nullable
+	RepositoryMaintenanceStatus getStatus(Project project);
+
+	/**
+	 * Check statistics of repository of specified project, and schedule maintenance
+	 * regardless of thresholds. Maintenance tasks not supported by the repository or the
+	 * git executable are still skipped
+	 */
+	void maintain(Project project);
+
+	/**
+	 * @return
+	 * 			whether or not the git executable supports writing commit-graph
+	 */
+	boolean isCommitGraphSupported();
+
+}
@@ -0,0 +1,122 @@
+package io.onedev.server.git;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.annotation.Nullable;
+
+/**
+ * Maintenance status of repository of a project since server start.
+ */
+public class RepositoryMaintenanceStatus implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Long projectId;
+
+	private volatile RepositoryStats stats;
+
+	private volatile boolean pending;
+
+	private volatile boolean running;
+
+	private volatile Date lastRunDate;
+
+	private volatile long lastRunDuration;
+
+	private volatile String lastRunTasks;
+
+	private volatile String lastError;
+
+	// Estimated loose objects right after last repack, mostly unreachable ones not expired yet
+	volatile int looseObjectsAfterRepack;
+
+	// Whether or not git refuses to write bitmap for the repository, for instance due to kept packs
+	volatile boolean bitmapRefused;
+
+	RepositoryMaintenanceStatus(Long projectId) {
+		this.projectId = projectId;
+	}
+
+	public Long getProjectId() {
+		return projectId;
+	}
+
+	/**
+	 * @return
+	 * 			statistics of the repository when it is last checked or maintained
+	 */
+	@Nullable
+	public RepositoryStats getStats() {
+		return stats;
+	}
+
+	void setStats(RepositoryStats stats) {
+		this.stats = stats;
+	}
+
+	public boolean isPending() {
+		return pending;
+	}
+
+	void setPending(boolean pending) {
+		this.pending = pending;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	void setRunning(boolean running) {
+		this.running = running;
+	}
+
+	@Nullable
+	public Date getLastRunDate() {
+		return lastRunDate;
+	}
+
+	void setLastRunDate(Date lastRunDate) {
+		this.lastRunDate = lastRunDate;
+	}
+
+	/**
+	 * @return
+	 * 			duration of last maintenance in milliseconds
+	 */
+	public long getLastRunDuration() {
+		return lastRunDuration;
+	}
+
+	void setLastRunDuration(long lastRunDuration) {
+		this.lastRunDuration = lastRunDuration;
+	}
+
+	/**
+	 * @return
+	 * 			description of tasks performed in last maintenance
+	 */
+	@Nullable
+	public String getLastRunTasks() {
+		return lastRunTasks;
+	}
+
+	void setLastRunTasks(String lastRunTasks) {
+		this.lastRunTasks = lastRunTasks;
+	}
+
+	/**
+	 * @return
+	 * 			error message of last maintenance, or <tt>null</tt> if last maintenance
+	 * 			is successful
+	 */
+	@Nullable
+	public String getLastError() {
+		return lastError;
+	}
+
+	void setLastError(@Nullable String lastError) {
+		this.lastError = lastError;
+	}
+
+}
@@ -0,0 +1,129 @@
+package io.onedev.server.git;
+
+import java.io.File;
+import java.io.Serializable;
+
+/**
+ * Object storage statistics of a git repository. Statistics are gathered by listing
+ * files of the objects directory without reading any object, so that all repositories
+ * can be checked frequently. Number of loose objects is estimated from a single fan-out
+ * directory the same way as <tt>git gc --auto</tt>.
+ */
+public class RepositoryStats implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String SAMPLE_LOOSE_DIR = "17";
+
+	private final int looseObjects;
+
+	private final int packs;
+
+	private final long packSize;
+
+	private final boolean bitmap;
+
+	private final long lastPackTime;
+
+	private final long commitGraphTime;
+
+	private RepositoryStats(int looseObjects, int packs, long packSize, boolean bitmap,
+			long lastPackTime, long commitGraphTime) {
+		this.looseObjects = looseObjects;
+		this.packs = packs;
+		this.packSize = packSize;
+		this.bitmap = bitmap;
+		this.lastPackTime = lastPackTime;
+		this.commitGraphTime = commitGraphTime;
+	}
+
+	public static RepositoryStats of(File gitDir) {
+		File objectsDir = new File(gitDir, "objects");
+
+		int looseObjects = 0;
+		String[] sampleFiles = new File(objectsDir, SAMPLE_LOOSE_DIR).list();
+		if (sampleFiles != null) {
+			for (String fileName: sampleFiles) {
+				if (fileName.length() == 38)
+					looseObjects++;
+			}
+		}
+		looseObjects *= 256;
+
+		int packs = 0;
+		long packSize = 0;
+		boolean bitmap = false;
+		long lastPackTime = 0;
+		File[] packFiles = new File(objectsDir, "pack").listFiles();
+		if (packFiles != null) {
+			for (File file: packFiles) {
+				if (file.getName().endsWith(".pack")) {
+					packs++;
+					packSize += file.length();
+					lastPackTime = Math.max(lastPackTime, file.lastModified());
+				} else if (file.getName().endsWith(".bitmap")) {
+					bitmap = true;
+				}
+			}
+		}
+
+		File infoDir = new File(objectsDir, "info");
+		long commitGraphTime = new File(infoDir, "commit-graph").lastModified();
+		if (commitGraphTime == 0)
+			commitGraphTime = new File(infoDir, "commit-graphs/commit-graph-chain").lastModified();
+
+		return new RepositoryStats(looseObjects, packs, packSize, bitmap, lastPackTime, commitGraphTime);
+	}
+
+	/**
+	 * @return
+	 * 			estimated number of loose objects
+	 */
+	public int getLooseObjects() {
+		return looseObjects;
+	}
+
+	public int getPacks() {
+		return packs;
+	}
+
+	/**
+	 * @return
+	 * 			total size of pack files in bytes
+	 */
+	public long getPackSize() {
+		return packSize;
+	}
+
+	/**
+	 * @return
+	 * 			whether or not a pack of the repository has reachability bitmap index
+	 */
+	public boolean hasBitmap() {
+		return bitmap;
+	}
+
+	/**
+	 * @return
+	 * 			modification time of newest pack, or <tt>0</tt> if there is no pack
+	 */
+	public long getLastPackTime() {
+		return lastPackTime;
+	}
+
+	/**
+	 * @return
+	 * 			modification time of commit-graph, or <tt>0</tt> if commit-graph does not exist
+	 */
+	public long getCommitGraphTime() {
+		return commitGraphTime;
+	}
+
+	@Override
+	public String toString() {
+		return "loose objects: ~" + looseObjects + ", packs: " + packs + ", pack size: "
+				+ packSize/1024 + "KB, bitmap: " + (bitmap?"yes":"no") + ", commit-graph: "
+				+ (commitGraphTime!=0?"yes":"no");
+	}
+
+}
@@ -41,6 +41,40 @@ public abstract class GitCommand<V> {
 		this(gitDir, null);
 	}
 	
+	/**
+	 * Get version of specified git executable
+	 * 
+	 * @return
+	 * 			version of the git executable, or <tt>null</tt> if version can not be 
+	 * 			determined from output of the executable
+	 */
+	@Nullable
+	public static GitVersion getVersion(String gitExe) {
+		final String[] version = new String[]{null};
+		
+		new Commandline(gitExe).addArgs("--version").execute(new LineConsumer() {
+
+			@Override
+			public void consume(String line) {
+				if (line.startsWith("git version "))
+					version[0] = line.substring("git version ".length());
+			}
+			
+		}, new LineConsumer() {
+
+			@Override
+			public void consume(String line) {
+				logger.error(line);
+			}
+			
+		}).checkReturnCode();
+		
+		if (version[0] != null)
+			return new GitVersion(version[0]);
+		else
+			return null;
+	}
+	
 	/**
 	 * Check if there are any errors with git command line. 
 	 *
@@ -51,30 +85,10 @@ public abstract class GitCommand<V> {
 	 */
 	public static String checkError(String gitExe) {
 		try {
-			final String[] version = new String[]{null};
-			
-			new Commandline(gitExe).addArgs("--version").execute(new LineConsumer() {
-	
-				@Override
-				public void consume(String line) {
-					if (line.startsWith("git version "))
-						version[0] = line.substring("git version ".length());
-				}
-				
-			}, new LineConsumer() {
-
-				@Override
-				public void consume(String line) {
-					logger.error(line);
-				}
-				
-			}).checkReturnCode();
-
-			if (version[0] == null)
+			GitVersion gitVersion = getVersion(gitExe);
+			if (gitVersion == null)
 				return "Unable to determine git version of '" + gitExe + "'";
 			
-			GitVersion gitVersion = new GitVersion(version[0]);
-			
 			if (gitVersion.isOlderThan(new GitVersion(MIN_VERSION)))
 				return "Version of git is " + gitVersion + ". OneDev requires at least " + MIN_VERSION;
 			
@@ -0,0 +1,57 @@
+package io.onedev.server.git.command;
+
+import java.io.File;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.commons.utils.command.Commandline;
+import io.onedev.commons.utils.command.LineConsumer;
+
+public class PruneCommand extends GitCommand<Void> {
+
+	private static final Logger logger = LoggerFactory.getLogger(PruneCommand.class);
+	
+	private String expire;
+	
+	public PruneCommand(File gitDir) {
+		super(gitDir);
+	}
+
+	/**
+	 * Only prune unreachable loose objects older than specified time, for instance 
+	 * <tt>2.weeks.ago</tt>
+	 */
+	public PruneCommand expire(@Nullable String expire) {
+		this.expire = expire;
+		return this;
+	}
+	
+	@Override
+	public Void call() {
+		Commandline cmd = cmd().addArgs("prune");
+		if (expire != null)
+			cmd.addArgs("--expire", expire);
+		
+		cmd.execute(new LineConsumer() {
+
+			@Override
+			public void consume(String line) {
+				logger.trace(line);
+			}
+			
+		}, new LineConsumer() {
+
+			@Override
+			public void consume(String line) {
+				logger.error(line);
+			}
+			
+		}).checkReturnCode();
+		
+		return null;
+	}
+
+}
@@ -0,0 +1,106 @@
+package io.onedev.server.git.command;
+
+import java.io.File;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.commons.utils.command.Commandline;
+import io.onedev.commons.utils.command.LineConsumer;
+
+public class RepackCommand extends GitCommand<Void> {
+
+	private static final Logger logger = LoggerFactory.getLogger(RepackCommand.class);
+	
+	private boolean all;
+	
+	private boolean loosenUnreachable;
+	
+	private boolean delete;
+	
+	private boolean local;
+	
+	private boolean writeBitmap;
+	
+	public RepackCommand(File gitDir) {
+		super(gitDir);
+	}
+
+	/**
+	 * Pack all objects into a single pack. Objects borrowed from alternate object 
+	 * directories are also packed unless {@link #local(boolean)} is specified 
+	 */
+	public RepackCommand all(boolean all) {
+		this.all = all;
+		return this;
+	}
+	
+	/**
+	 * Same as {@link #all(boolean)}, except that unreachable objects in removed packs 
+	 * become loose objects instead of being dropped, so that they can be pruned later 
+	 * with an expiration
+	 */
+	public RepackCommand loosenUnreachable(boolean loosenUnreachable) {
+		this.loosenUnreachable = loosenUnreachable;
+		return this;
+	}
+	
+	/**
+	 * Remove redundant packs and loose objects after packing
+	 */
+	public RepackCommand delete(boolean delete) {
+		this.delete = delete;
+		return this;
+	}
+	
+	/**
+	 * Do not pack objects borrowed from alternate object directories
+	 */
+	public RepackCommand local(boolean local) {
+		this.local = local;
+		return this;
+	}
+	
+	/**
+	 * Write reachability bitmap index along with the pack. Only works when all objects 
+	 * are packed into a single pack
+	 */
+	public RepackCommand writeBitmap(boolean writeBitmap) {
+		this.writeBitmap = writeBitmap;
+		return this;
+	}
+	
+	@Override
+	public Void call() {
+		Commandline cmd = cmd().addArgs("repack", "-q");
+		if (loosenUnreachable)
+			cmd.addArgs("-A");
+		else if (all)
+			cmd.addArgs("-a");
+		if (delete)
+			cmd.addArgs("-d");
+		if (local)
+			cmd.addArgs("-l");
+		if (writeBitmap)
+			cmd.addArgs("-b");
+		
+		cmd.execute(new LineConsumer() {
+
+			@Override
+			public void consume(String line) {
+				logger.trace(line);
+			}
+			
+		}, new LineConsumer() {
+
+			@Override
+			public void consume(String line) {
+				logger.error(line);
+			}
+			
+		}).checkReturnCode();
+		
+		return null;
+	}
+
+}
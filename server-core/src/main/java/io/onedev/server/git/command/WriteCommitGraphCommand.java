@@ -0,0 +1,42 @@
+package io.onedev.server.git.command;
+
+import java.io.File;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.commons.utils.command.LineConsumer;
+
+/**
+ * Write commit-graph file of all commits reachable from refs. Requires git 2.19 or higher
+ */
+public class WriteCommitGraphCommand extends GitCommand<Void> {
+
+	private static final Logger logger = LoggerFactory.getLogger(WriteCommitGraphCommand.class);
+	
+	public WriteCommitGraphCommand(File gitDir) {
+		super(gitDir);
+	}
+
+	@Override
+	public Void call() {
+		cmd().addArgs("commit-graph", "write", "--reachable").execute(new LineConsumer() {
+
+			@Override
+			public void consume(String line) {
+				logger.trace(line);
+			}
+			
+		}, new LineConsumer() {
+
+			@Override
+			public void consume(String line) {
+				logger.error(line);
+			}
+			
+		}).checkReturnCode();
+		
+		return null;
+	}
+
+}
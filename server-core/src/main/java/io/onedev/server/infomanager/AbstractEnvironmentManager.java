@@ -8,16 +8,12 @@ import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nullable;
 
 import org.eclipse.jgit.lib.ObjectId;
 
-import io.onedev.commons.launcher.loader.Listen;
 import io.onedev.commons.utils.FileUtils;
-import io.onedev.server.event.system.SystemStopping;
 import jetbrains.exodus.ArrayByteIterable;
 import jetbrains.exodus.ByteIterable;
 import jetbrains.exodus.env.Environment;
@@ -36,7 +32,18 @@ public abstract class AbstractEnvironmentManager {
 	
 	private static final int MEMORY_USAGE_PERCENT = 25;
 	
-	private final Map<String, Environment> envs = new ConcurrentHashMap<>();
+	/*
+	 * Log cache is shared by all environments and is created with settings of the first 
+	 * opened environment. Size it explicitly as a budget of all environments, instead of 
+	 * relying on defaults of whichever environment happens to be opened first
+	 */
+	private static final long LOG_CACHE_MEMORY = Runtime.getRuntime().maxMemory() / 100 * MEMORY_USAGE_PERCENT;
+	
+	private final EnvironmentPool envPool;
+	
+	public AbstractEnvironmentManager(EnvironmentPool envPool) {
+		this.envPool = envPool;
+	}
 	
 	protected void checkVersion(String envKey) {
 		File versionFile = new File(getEnvDir(envKey), VERSION_FILE);
@@ -70,20 +77,16 @@ public abstract class AbstractEnvironmentManager {
 	}
 	
 	protected Environment getEnv(String envKey) {
-		Environment env = envs.get(envKey);
-		if (env == null) synchronized (envs) {
-			env = envs.get(envKey);
-			if (env == null) {
-				checkVersion(envKey);
-				EnvironmentConfig config = new EnvironmentConfig();
-				config.setEnvCloseForcedly(true);
-				config.setMemoryUsagePercentage(MEMORY_USAGE_PERCENT);
-				config.setLogFileSize(getLogFileSize());
-				env = Environments.newInstance(getEnvDir(envKey), config);
-				envs.put(envKey, env);
-			}
-		}
-		return env;
+		File envDir = getEnvDir(envKey);
+		return envPool.getEnv(envDir, () -> {
+			checkVersion(envKey);
+			EnvironmentConfig config = new EnvironmentConfig();
+			config.setEnvCloseForcedly(true);
+			config.setLogCacheShared(true);
+			config.setMemoryUsage(LOG_CACHE_MEMORY);
+			config.setLogFileSize(getLogFileSize());
+			return Environments.newInstance(envDir, config);
+		});
 	}
 	
 	protected Store getStore(Environment env, String storeName) {
@@ -96,20 +99,7 @@ public abstract class AbstractEnvironmentManager {
 	}
 
 	protected void removeEnv(String envKey) {
-		synchronized (envs) {
-			Environment env = envs.remove(envKey);
-			if (env != null)
-				env.close();
-		}
-	}
-
-	@Listen
-	public void on(SystemStopping event) {
-		synchronized (envs) {
-			for (Environment env: envs.values())
-				env.close();
-			envs.clear();
-		}
+		envPool.removeEnv(getEnvDir(envKey));
 	}
 
 	@Nullable 
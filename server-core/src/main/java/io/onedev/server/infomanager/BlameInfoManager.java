@@ -0,0 +1,25 @@
+package io.onedev.server.infomanager;
+
+import java.util.Collection;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import io.onedev.commons.utils.LinearRange;
+import io.onedev.server.git.BlameBlock;
+import io.onedev.server.model.Project;
+
+public interface BlameInfoManager {
+
+	/**
+	 * Get blame of specified file. Blame is served from persisted blame info if possible,
+	 * otherwise it is calculated and persisted, so that blame of subsequent commits
+	 * touching the file can be derived from it when they are pushed
+	 *
+	 * @param range
+	 * 			0-indexed and inclusive from and to, <tt>null</tt> to get blame of the whole file
+	 */
+	Collection<BlameBlock> getBlame(Project project, ObjectId commitId, String path, @Nullable LinearRange range);
+
+}
@@ -0,0 +1,68 @@
+package io.onedev.server.infomanager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+/**
+ * Progress of commit information collection of a project. Total number of commits grows
+ * as more commit ranges are discovered during collection, so the estimated remaining
+ * time is only a rough indication.
+ */
+public class CollectingProgress {
+
+	private final long startTime = System.currentTimeMillis();
+
+	private final AtomicInteger total = new AtomicInteger(0);
+
+	private final AtomicInteger processed = new AtomicInteger(0);
+
+	void addTotal(int count) {
+		total.addAndGet(count);
+	}
+
+	int onProcessed() {
+		return processed.incrementAndGet();
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * @return
+	 * 			number of commits discovered so far to be processed
+	 */
+	public int getTotal() {
+		return total.get();
+	}
+
+	/**
+	 * @return
+	 * 			number of commits processed so far
+	 */
+	public int getProcessed() {
+		return processed.get();
+	}
+
+	/**
+	 * @return
+	 * 			estimated remaining time in milliseconds, or <tt>null</tt> if not known yet
+	 */
+	@Nullable
+	public Long getEta() {
+		int processed = getProcessed();
+		int total = getTotal();
+		if (processed != 0 && total >= processed)
+			return (System.currentTimeMillis() - startTime) * (total - processed) / processed;
+		else
+			return null;
+	}
+
+	@Override
+	public String toString() {
+		Long eta = getEta();
+		return getProcessed() + "/" + getTotal() + " commits" + (eta != null? ", eta: " + eta/1000 + "s": "");
+	}
+
+}
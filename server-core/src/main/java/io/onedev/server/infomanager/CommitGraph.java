@@ -0,0 +1,403 @@
+package io.onedev.server.infomanager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Stack;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdOwnerMap;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.commons.utils.FileUtils;
+
+/**
+ * Compact commit graph of a project. Each known commit is assigned a dense int id in
+ * topological order, that is, parents always get smaller ids than their children. Parents
+ * are kept in int arrays along with generation number of each commit, so that descendants
+ * can be computed with a single sweep over ids into a bit set, and reachability between two
+ * commits can be checked by walking parents with generation number pruning.
+ * <p>
+ * The graph is persisted to an append-only file. Commits are appended when new refs are
+ * collected, and a partially written record left by a crash is discarded when loading.
+ */
+class CommitGraph {
+
+	private static final Logger logger = LoggerFactory.getLogger(CommitGraph.class);
+
+	private static final String FILE_NAME = "commit-graph";
+
+	private static final int MAGIC = 0x4f444347;
+
+	private static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 8;
+
+	private final File file;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final ObjectIdOwnerMap<Node> nodes = new ObjectIdOwnerMap<>();
+
+	private Node[] nodeArray = new Node[1024];
+
+	private int[] generations = new int[1024];
+
+	// Parents of commit with id i are parentIds[parentStarts[i]...parentStarts[i+1])
+	private int[] parentStarts = new int[1025];
+
+	private int[] parentIds = new int[1024];
+
+	private int count;
+
+	CommitGraph(File dir) {
+		file = new File(dir, FILE_NAME);
+		if (file.exists()) {
+			try {
+				load();
+			} catch (Exception e) {
+				logger.error("Error loading commit graph, will rebuild: " + file.getAbsolutePath(), e);
+				clear();
+				FileUtils.deleteFile(file);
+			}
+		}
+	}
+
+	private void clear() {
+		nodes.clear();
+		count = 0;
+		parentStarts[0] = 0;
+	}
+
+	private void load() throws IOException {
+		long validLength = HEADER_SIZE;
+		try (DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (is.readInt() != MAGIC)
+				throw new IOException("Malformed commit graph file");
+			int version = is.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported commit graph version: " + version);
+			byte[] commitBytes = new byte[20];
+			while (true) {
+				try {
+					is.readFully(commitBytes);
+					int parentCount = is.readInt();
+					int[] parents = new int[parentCount];
+					for (int i=0; i<parentCount; i++)
+						parents[i] = is.readInt();
+					add(ObjectId.fromRaw(commitBytes), parents);
+					validLength += 20 + Integer.BYTES * (1 + parentCount);
+				} catch (EOFException e) {
+					break;
+				}
+			}
+		}
+		if (file.length() != validLength) {
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(validLength);
+			}
+		}
+	}
+
+	private int add(AnyObjectId commitId, int[] parents) {
+		int id = count;
+		if (id == nodeArray.length) {
+			nodeArray = Arrays.copyOf(nodeArray, id*2);
+			generations = Arrays.copyOf(generations, id*2);
+			parentStarts = Arrays.copyOf(parentStarts, id*2+1);
+		}
+		int parentStart = parentStarts[id];
+		if (parentStart + parents.length > parentIds.length)
+			parentIds = Arrays.copyOf(parentIds, Math.max(parentIds.length*2, parentStart + parents.length));
+
+		int generation = 1;
+		for (int i=0; i<parents.length; i++) {
+			if (parents[i] < 0 || parents[i] >= id)
+				throw new IllegalStateException("Parent commit should be added before child commit");
+			parentIds[parentStart+i] = parents[i];
+			generation = Math.max(generation, generations[parents[i]] + 1);
+		}
+		Node node = new Node(commitId, id);
+		nodes.add(node);
+		nodeArray[id] = node;
+		generations[id] = generation;
+		parentStarts[id+1] = parentStart + parents.length;
+		count++;
+		return id;
+	}
+
+	private int getId(AnyObjectId commitId) {
+		Node node = nodes.get(commitId);
+		return node != null? node.id: -1;
+	}
+
+	/**
+	 * Add specified commit and all its ancestors not in the graph yet
+	 *
+	 * @return
+	 * 			number of commits added
+	 */
+	int update(Repository repository, ObjectId commitId) throws IOException {
+		lock.readLock().lock();
+		try {
+			if (getId(commitId) != -1)
+				return 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		// Find commits not in the graph yet, ordering them so that parents come before children.
+		// Use stack instead of recursion to avoid StackOverflowException
+		List<RevCommit> newCommits = new ArrayList<>();
+		try (RevWalk revWalk = new RevWalk(repository)) {
+			revWalk.setRetainBody(false);
+			RevFlag expanded = revWalk.newFlag("expanded");
+			RevFlag added = revWalk.newFlag("added");
+			Stack<RevCommit> stack = new Stack<>();
+			stack.push(revWalk.parseCommit(commitId));
+			while (!stack.isEmpty()) {
+				RevCommit current = stack.peek();
+				if (!current.has(expanded)) {
+					current.add(expanded);
+					revWalk.parseHeaders(current);
+					for (RevCommit parent: current.getParents()) {
+						if (!parent.has(added) && getIdSafely(parent) == -1)
+							stack.push(parent);
+					}
+				} else {
+					stack.pop();
+					if (!current.has(added)) {
+						current.add(added);
+						newCommits.add(current);
+					}
+				}
+			}
+		}
+
+		lock.writeLock().lock();
+		try (DataOutputStream os = openForAppend()) {
+			int addedCount = 0;
+			for (RevCommit commit: newCommits) {
+				if (getId(commit) != -1)
+					continue;
+				int[] parents = new int[commit.getParentCount()];
+				for (int i=0; i<parents.length; i++)
+					parents[i] = getId(commit.getParent(i));
+				add(commit, parents);
+
+				byte[] commitBytes = new byte[20];
+				commit.copyRawTo(commitBytes, 0);
+				os.write(commitBytes);
+				os.writeInt(parents.length);
+				for (int parent: parents)
+					os.writeInt(parent);
+				addedCount++;
+			}
+			return addedCount;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return
+	 * 			number of commits in the graph
+	 */
+	int getCount() {
+		lock.readLock().lock();
+		try {
+			return count;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private int getIdSafely(AnyObjectId commitId) {
+		lock.readLock().lock();
+		try {
+			return getId(commitId);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private DataOutputStream openForAppend() throws IOException {
+		if (file.length() == 0) {
+			try (DataOutputStream os = new DataOutputStream(new FileOutputStream(file))) {
+				os.writeInt(MAGIC);
+				os.writeInt(VERSION);
+			}
+		}
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+	}
+
+	/**
+	 * Get descendants of specified commits, including specified commits themselves
+	 *
+	 * @return
+	 * 			descendant commits, or <tt>null</tt> if some of specified commits are not in
+	 * 			the graph yet
+	 */
+	@Nullable
+	Collection<ObjectId> getDescendants(Collection<ObjectId> ancestors) {
+		lock.readLock().lock();
+		try {
+			BitSet descendants = new BitSet(count);
+			int from = count;
+			for (ObjectId ancestor: ancestors) {
+				int id = getId(ancestor);
+				if (id == -1)
+					return null;
+				descendants.set(id);
+				from = Math.min(from, id);
+			}
+
+			// Children always have larger ids than their parents, so a single sweep finds
+			// all descendants
+			for (int id=from+1; id<count; id++) {
+				for (int i=parentStarts[id]; i<parentStarts[id+1]; i++) {
+					if (descendants.get(parentIds[i])) {
+						descendants.set(id);
+						break;
+					}
+				}
+			}
+			return new CommitSet(Arrays.copyOf(nodeArray, count), descendants);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Check if specified ancestor commit is reachable from specified descendant commit
+	 *
+	 * @return
+	 * 			whether or not ancestor is reachable from descendant, or <tt>null</tt> if some
+	 * 			of specified commits are not in the graph yet
+	 */
+	@Nullable
+	Boolean isAncestor(ObjectId ancestor, ObjectId descendant) {
+		lock.readLock().lock();
+		try {
+			int ancestorId = getId(ancestor);
+			int descendantId = getId(descendant);
+			if (ancestorId == -1 || descendantId == -1)
+				return null;
+			int ancestorGeneration = generations[ancestorId];
+			BitSet visited = new BitSet(count);
+			Stack<Integer> stack = new Stack<>();
+			stack.push(descendantId);
+			visited.set(descendantId);
+			while (!stack.isEmpty()) {
+				int id = stack.pop();
+				if (id == ancestorId)
+					return true;
+				// Commits with generation not larger than the ancestor can not reach it
+				if (generations[id] <= ancestorGeneration)
+					continue;
+				for (int i=parentStarts[id]; i<parentStarts[id+1]; i++) {
+					int parentId = parentIds[i];
+					if (!visited.get(parentId)) {
+						visited.set(parentId);
+						stack.push(parentId);
+					}
+				}
+			}
+			return false;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private static class Node extends ObjectIdOwnerMap.Entry {
+
+		private final int id;
+
+		Node(AnyObjectId commitId, int id) {
+			super(commitId);
+			this.id = id;
+		}
+
+	}
+
+	/**
+	 * Read-only set of commits backed by a bit set over commit ids
+	 */
+	private class CommitSet extends AbstractCollection<ObjectId> {
+
+		private final Node[] nodes;
+
+		private final BitSet bits;
+
+		CommitSet(Node[] nodes, BitSet bits) {
+			this.nodes = nodes;
+			this.bits = bits;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (o instanceof AnyObjectId) {
+				// Commits are never removed from the graph, so ids stay valid
+				int id = getIdSafely((AnyObjectId) o);
+				return id != -1 && bits.get(id);
+			} else {
+				return false;
+			}
+		}
+
+		@Override
+		public Iterator<ObjectId> iterator() {
+			return new Iterator<ObjectId>() {
+
+				private int next = bits.nextSetBit(0);
+
+				@Override
+				public boolean hasNext() {
+					return next != -1;
+				}
+
+				@Override
+				public ObjectId next() {
+					if (next == -1)
+						throw new NoSuchElementException();
+					ObjectId commitId = nodes[next].copy();
+					next = bits.nextSetBit(next+1);
+					return commitId;
+				}
+
+			};
+		}
+
+		@Override
+		public int size() {
+			return bits.cardinality();
+		}
+
+	}
+
+}
@@ -4,6 +4,8 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
 import org.eclipse.jgit.lib.ObjectId;
 
 import io.onedev.server.git.GitContribution;
@@ -32,12 +34,42 @@ public interface CommitInfoManager {
 	 * @param ancestors
 	 * 			for which commits to get descendants
 	 * @return
-	 * 			descendant commits
+	 * 			read-only collection of descendant commits
 	 */
 	Collection<ObjectId> getDescendants(Project project, Collection<ObjectId> ancestors);
 	
+	/**
+	 * Check if specified ancestor commit is reachable from specified descendant commit
+	 * 
+	 * @return
+	 * 			<tt>true</tt> if ancestor is reachable from descendant, or if they are the same commit
+	 */
+	boolean isAncestor(Project project, ObjectId ancestor, ObjectId descendant);
+	
 	void cloneInfo(Project from, Project to);
 	
+	/**
+	 * Get progress of commit information collection of specified project
+	 * 
+	 * @return
+	 * 			collection progress, or <tt>null</tt> if specified project is not collecting 
+	 * 			commit information at the moment
+	 */
+	@Nullable
+	CollectingProgress getCollectingProgress(Project project);
+	
+	/**
+	 * @return
+	 * 			number of projects collecting commit information
+	 */
+	int getCollectingCount();
+	
+	/**
+	 * @return
+	 * 			number of projects waiting to collect commit information
+	 */
+	int getPendingCollectingCount();
+	
 	Collection<String> getHistoryPaths(Project project, String path);
 	
 	/**
@@ -64,7 +96,9 @@ public interface CommitInfoManager {
 	 * @param toDay
 	 * 			to day
 	 * @return
-	 * 			list of top user contributors, reversely ordered by number of contributions 
+	 * 			list of top user contributors, reversely ordered by number of contributions. 
+	 * 			Contributions of each contributor over time are rolled up by bucket returned 
+	 * 			from {@link TimeBucket#forRange(int, int)}
 	 */
 	List<GitContributor> getTopContributors(Project project, int top, GitContribution.Type type, int fromDay, int toDay);
 
@@ -77,6 +111,34 @@ public interface CommitInfoManager {
 	 * 			line statistics data
 	 */
 	Map<Day, Map<String, Integer>> getLineIncrements(Project project);
+	
+	/**
+	 * Get source code line statistics over time, rolled up by specified time bucket
+	 * 
+	 * @param project
+	 * 			project to get line stats for
+	 * @param bucket
+	 * 			time bucket to roll up line stats
+	 * @return
+	 * 			map of first day of bucket to line increments of languages in the bucket
+	 */
+	Map<Day, Map<String, Integer>> getLineIncrements(Project project, TimeBucket bucket);
+	
+	/**
+	 * Get contributions of users in specified day range. Contributions are calculated from 
+	 * monthly, weekly and daily rollups, so cost mainly depends on number of months in the 
+	 * range instead of number of commits
+	 * 
+	 * @param project
+	 * 			project to get contributions for
+	 * @param fromDay
+	 * 			from day
+	 * @param toDay
+	 * 			to day
+	 * @return
+	 * 			map of user to contribution in the range
+	 */
+	Map<NameAndEmail, GitContribution> getContributions(Project project, int fromDay, int toDay);
 
 	Collection<ObjectId> getFixCommits(Project project, Long issueNumber);
 	
@@ -0,0 +1,706 @@
+package io.onedev.server.infomanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.LinearRange;
+import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.event.RefUpdated;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.git.BlameBlock;
+import io.onedev.server.git.BlameCommit;
+import io.onedev.server.git.GitUtils;
+import io.onedev.server.git.command.BlameCommand;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.SessionManager;
+import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.storage.StorageManager;
+import io.onedev.server.util.concurrent.Prioritized;
+import io.onedev.server.util.diff.DiffUtils;
+import io.onedev.server.util.diff.HistogramDiff;
+import io.onedev.server.util.work.BatchWorkManager;
+import io.onedev.server.util.work.BatchWorker;
+import jetbrains.exodus.ArrayByteIterable;
+import jetbrains.exodus.ByteIterable;
+import jetbrains.exodus.env.Cursor;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.Store;
+import jetbrains.exodus.env.Transaction;
+import jetbrains.exodus.env.TransactionalComputable;
+import jetbrains.exodus.env.TransactionalExecutable;
+
+/**
+ * Blame of a file is persisted against the commit last modifying the file. Blame of a commit
+ * is derived from persisted blames of its parents by diffing file content: lines matched in
+ * a parent inherit blame of that parent, and other lines are blamed to the commit itself.
+ * This is done in background for pushed commits touching files blamed before, and git blame
+ * is only run if blames of parents are not available, for instance when file is renamed.
+ * <p>
+ * Only a bounded number of most recent blames are kept for each path, and commit metadata is
+ * reference counted by stored blames, so that storage does not grow with history. Blames are
+ * also only stored for a bounded number of paths.
+ */
+@Singleton
+public class DefaultBlameInfoManager extends AbstractEnvironmentManager implements BlameInfoManager {
+
+	private static final Logger logger = LoggerFactory.getLogger(DefaultBlameInfoManager.class);
+
+	private static final int INFO_VERSION = 2;
+
+	private static final long LOG_FILE_SIZE = 256*1024;
+
+	private static final int MAX_PUSHED_COMMITS = 1000;
+
+	private static final int MAX_BLAMED_PATHS = 10000;
+
+	private static final int MAX_BLAMES_PER_PATH = 20;
+
+	private static final int MAX_BLOB_SIZE = 32*1024*1024;
+
+	private static final String INFO_DIR = "blame";
+
+	private static final String BLAMES_STORE = "blames";
+
+	private static final String COMMITS_STORE = "commits";
+
+	private static final String PATHS_STORE = "paths";
+
+	private static final int PRIORITY = 200;
+
+	private final StorageManager storageManager;
+
+	private final ProjectManager projectManager;
+
+	private final BatchWorkManager batchWorkManager;
+
+	private final SessionManager sessionManager;
+
+	@Inject
+	public DefaultBlameInfoManager(ProjectManager projectManager, StorageManager storageManager,
+			BatchWorkManager batchWorkManager, SessionManager sessionManager, EnvironmentPool envPool) {
+		super(envPool);
+		this.projectManager = projectManager;
+		this.storageManager = storageManager;
+		this.batchWorkManager = batchWorkManager;
+		this.sessionManager = sessionManager;
+	}
+
+	private BatchWorker getBatchWorker(Long projectId) {
+		return new BatchWorker("project-" + projectId + "-updateBlameInfo") {
+
+			@Override
+			public void doWorks(Collection<Prioritized> works) {
+				sessionManager.run(new Runnable() {
+
+					@Override
+					public void run() {
+						Project project = projectManager.get(projectId);
+						if (project != null) {
+							for (Prioritized work: works)
+								update(project, (UpdatingWork) work);
+						}
+					}
+
+				});
+			}
+
+		};
+	}
+
+	@Override
+	public Collection<BlameBlock> getBlame(Project project, ObjectId commitId, String path,
+			@Nullable LinearRange range) {
+		Environment env = getEnv(project.getId().toString());
+		Repository repository = project.getRepository();
+		try (RevWalk revWalk = new RevWalk(repository)) {
+			ObjectId lastCommitId = getLastModifyingCommit(repository, commitId, path);
+			if (lastCommitId != null) {
+				ObjectId[] blame = readBlame(env, lastCommitId, path);
+				if (blame == null) {
+					RevCommit lastCommit = revWalk.parseCommit(lastCommitId);
+					blame = deriveBlame(env, repository, revWalk, lastCommit, path);
+					if (blame != null) {
+						writeBlame(env, lastCommit, path, blame, getBlameCommits(lastCommit));
+					} else if (range == null) {
+						// Git blame of whole file is only run if whole file is requested. Blame of 
+						// some lines, for instance to find their authors, is cheaper to calculate 
+						// with git blame of that range below
+						Collection<BlameBlock> blocks = new BlameCommand(project.getGitDir())
+								.commitHash(lastCommitId.name()).file(path).call();
+						blame = toBlame(blocks);
+						if (blame != null) {
+							Map<ObjectId, BlameCommit> commits = new HashMap<>();
+							for (BlameBlock block: blocks)
+								commits.put(ObjectId.fromString(block.getCommit().getHash()), block.getCommit());
+							writeBlame(env, lastCommit, path, blame, commits);
+						}
+					}
+				}
+				if (blame != null) {
+					Collection<BlameBlock> blocks = toBlocks(env, blame, range);
+					if (blocks != null)
+						return blocks;
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		return new BlameCommand(project.getGitDir()).commitHash(commitId.name()).file(path).range(range).call();
+	}
+
+	/*
+	 * Blame of a commit is the same as blame of the commit last modifying the file, following
+	 * the parent with identical file content in case of merge commits
+	 */
+	@Nullable
+	private ObjectId getLastModifyingCommit(Repository repository, ObjectId commitId, String path)
+			throws IOException {
+		try (RevWalk revWalk = new RevWalk(repository)) {
+			revWalk.setTreeFilter(AndTreeFilter.create(PathFilter.create(path), TreeFilter.ANY_DIFF));
+			revWalk.markStart(revWalk.parseCommit(commitId));
+			RevCommit commit = revWalk.next();
+			return commit != null? commit.copy(): null;
+		}
+	}
+
+	@Nullable
+	private ObjectId[] deriveBlame(Environment env, Repository repository, RevWalk revWalk,
+			RevCommit commit, String path) throws IOException {
+		ObjectId blobId = getBlobId(repository, commit, path);
+		if (blobId == null)
+			return null;
+		List<String> lines = readLines(repository, blobId);
+		if (lines == null)
+			return null;
+
+		ObjectId[] blame = new ObjectId[lines.size()];
+		if (commit.getParentCount() != 0) {
+			boolean fileInParents = false;
+			for (RevCommit parent: commit.getParents()) {
+				revWalk.parseHeaders(parent);
+				ObjectId parentBlobId = getBlobId(repository, parent, path);
+				if (parentBlobId != null) {
+					fileInParents = true;
+					ObjectId[] parentBlame = readBlame(env, parent, path);
+					if (parentBlame == null) {
+						ObjectId lastCommitId = getLastModifyingCommit(repository, parent, path);
+						if (lastCommitId != null)
+							parentBlame = readBlame(env, lastCommitId, path);
+					}
+					if (parentBlame == null)
+						return null;
+					List<String> parentLines = readLines(repository, parentBlobId);
+					if (parentLines == null || parentLines.size() != parentBlame.length)
+						return null;
+					inheritBlame(parentLines, parentBlame, lines, blame);
+				}
+			}
+
+			// File might be renamed, and we leave it to git blame to follow renames
+			if (!fileInParents)
+				return null;
+		}
+
+		ObjectId commitId = commit.copy();
+		for (int i=0; i<blame.length; i++) {
+			if (blame[i] == null)
+				blame[i] = commitId;
+		}
+		return blame;
+	}
+
+	@Nullable
+	private ObjectId getBlobId(Repository repository, RevCommit commit, String path) throws IOException {
+		try (TreeWalk treeWalk = TreeWalk.forPath(repository, path, commit.getTree())) {
+			if (treeWalk != null && (treeWalk.getRawMode(0) & FileMode.TYPE_MASK) == FileMode.TYPE_FILE)
+				return treeWalk.getObjectId(0);
+			else
+				return null;
+		}
+	}
+
+	/*
+	 * Lines are matched with histogram diff, while git blame uses Myers diff by default. Both 
+	 * produce the same matches if lines can only be matched in one optimal way. Otherwise, for 
+	 * instance when a block of repeated lines is inserted, histogram diff prefers to match 
+	 * unique lines and may attribute some repeated lines to a different commit than git 
+	 * blame does. Either attribution is a valid blame, and histogram diff is used as it is 
+	 * also what is used to show diffs, so that blame agrees with lines shown as changed
+	 */
+	private void inheritBlame(List<String> parentLines, ObjectId[] parentBlame,
+			List<String> lines, ObjectId[] blame) {
+		Map<String, Integer> ids = new HashMap<>();
+		int[] matches = HistogramDiff.diff(intern(parentLines, ids), intern(lines, ids), ids.size());
+		for (int i=0; i<matches.length; i++) {
+			if (matches[i] != -1 && blame[matches[i]] == null)
+				blame[matches[i]] = parentBlame[i];
+		}
+	}
+
+	private int[] intern(List<String> lines, Map<String, Integer> ids) {
+		int[] result = new int[lines.size()];
+		for (int i=0; i<result.length; i++) {
+			Integer id = ids.get(lines.get(i));
+			if (id == null) {
+				id = ids.size();
+				ids.put(lines.get(i), id);
+			}
+			result[i] = id;
+		}
+		return result;
+	}
+
+	/*
+	 * Split lines the same way as git blame. Content is decoded as ISO-8859-1 so that line
+	 * comparison is byte exact regardless of file encoding
+	 */
+	@Nullable
+	private List<String> readLines(Repository repository, ObjectId blobId) throws IOException {
+		ObjectLoader loader = repository.open(blobId, Constants.OBJ_BLOB);
+		if (loader.getSize() > MAX_BLOB_SIZE)
+			return null;
+		String content = new String(loader.getCachedBytes(), StandardCharsets.ISO_8859_1);
+		List<String> lines = new ArrayList<>();
+		int start = 0;
+		for (int i=0; i<content.length(); i++) {
+			if (content.charAt(i) == '\n') {
+				lines.add(content.substring(start, i));
+				start = i+1;
+			}
+		}
+		if (start < content.length())
+			lines.add(content.substring(start));
+		if (lines.size() > DiffUtils.MAX_DIFF_SIZE)
+			return null;
+		return lines;
+	}
+
+	private Map<ObjectId, BlameCommit> getBlameCommits(RevCommit commit) {
+		Map<ObjectId, BlameCommit> commits = new HashMap<>();
+		commits.put(commit.copy(), new BlameCommit(commit.name(), commit.getCommitterIdent(),
+				commit.getAuthorIdent(), commit.getShortMessage()));
+		return commits;
+	}
+
+	@Nullable
+	private ObjectId[] toBlame(Collection<BlameBlock> blocks) {
+		int lineCount = 0;
+		for (BlameBlock block: blocks) {
+			for (LinearRange range: block.getRanges())
+				lineCount = Math.max(lineCount, range.getTo()+1);
+		}
+		ObjectId[] blame = new ObjectId[lineCount];
+		for (BlameBlock block: blocks) {
+			ObjectId commitId = ObjectId.fromString(block.getCommit().getHash());
+			for (LinearRange range: block.getRanges())
+				Arrays.fill(blame, range.getFrom(), range.getTo()+1, commitId);
+		}
+		for (ObjectId commitId: blame) {
+			if (commitId == null)
+				return null;
+		}
+		return blame;
+	}
+
+	@Nullable
+	private Collection<BlameBlock> toBlocks(Environment env, ObjectId[] blame, @Nullable LinearRange range) {
+		Store commitsStore = getStore(env, COMMITS_STORE);
+		int from, to;
+		if (range != null) {
+			from = range.getFrom();
+			to = Math.min(range.getTo(), blame.length-1);
+		} else {
+			from = 0;
+			to = blame.length-1;
+		}
+		return env.computeInReadonlyTransaction(new TransactionalComputable<Collection<BlameBlock>>() {
+
+			@Override
+			public Collection<BlameBlock> compute(Transaction txn) {
+				Map<ObjectId, BlameBlock> blocks = new LinkedHashMap<>();
+				int begin = from;
+				while (begin <= to) {
+					int end = begin;
+					while (end < to && blame[end+1].equals(blame[begin]))
+						end++;
+					BlameBlock block = blocks.get(blame[begin]);
+					if (block == null) {
+						byte[] bytes = readBytes(commitsStore, txn, new CommitByteIterable(blame[begin]));
+						if (bytes == null)
+							return null;
+						block = new BlameBlock(readBlameCommit(bytes), new ArrayList<>());
+						blocks.put(blame[begin], block);
+					}
+					block.getRanges().add(new LinearRange(begin, end));
+					begin = end+1;
+				}
+				return blocks.values();
+			}
+
+		});
+	}
+
+	private ByteIterable getBlameKey(ObjectId commitId, String path) {
+		byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+		byte[] keyBytes = new byte[20 + pathBytes.length];
+		commitId.copyRawTo(keyBytes, 0);
+		System.arraycopy(pathBytes, 0, keyBytes, 20, pathBytes.length);
+		return new ArrayByteIterable(keyBytes);
+	}
+
+	@Nullable
+	private ObjectId[] readBlame(Environment env, ObjectId commitId, String path) {
+		Store blamesStore = getStore(env, BLAMES_STORE);
+		byte[] bytes = env.computeInReadonlyTransaction(new TransactionalComputable<byte[]>() {
+
+			@Override
+			public byte[] compute(Transaction txn) {
+				return readBytes(blamesStore, txn, getBlameKey(commitId, path));
+			}
+
+		});
+		if (bytes != null) {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			ObjectId[] blame = new ObjectId[buffer.getInt()];
+			byte[] commitBytes = new byte[20];
+			int line = 0;
+			while (buffer.hasRemaining()) {
+				buffer.get(commitBytes);
+				ObjectId blameCommitId = ObjectId.fromRaw(commitBytes);
+				int lineCount = buffer.getInt();
+				Arrays.fill(blame, line, line+lineCount, blameCommitId);
+				line += lineCount;
+			}
+			return blame;
+		} else {
+			return null;
+		}
+	}
+
+	/*
+	 * Get distinct commits referenced by blame stored in specified bytes
+	 */
+	private Set<ObjectId> getReferencedCommits(byte[] blameBytes) {
+		Set<ObjectId> commitIds = new HashSet<>();
+		ByteBuffer buffer = ByteBuffer.wrap(blameBytes);
+		buffer.getInt();
+		byte[] commitBytes = new byte[20];
+		while (buffer.hasRemaining()) {
+			buffer.get(commitBytes);
+			commitIds.add(ObjectId.fromRaw(commitBytes));
+			buffer.getInt();
+		}
+		return commitIds;
+	}
+
+	/*
+	 * Commit metadata is stored with number of blames referencing it
+	 */
+	private BlameCommit readBlameCommit(byte[] bytes) {
+		return (BlameCommit) SerializationUtils.deserialize(Arrays.copyOfRange(bytes, Integer.BYTES, bytes.length));
+	}
+
+	private byte[] getCommitBytes(int refCount, byte[] blameCommitBytes) {
+		return ByteBuffer.allocate(Integer.BYTES + blameCommitBytes.length)
+				.putInt(refCount).put(blameCommitBytes).array();
+	}
+
+	private List<ObjectId> readBlamedCommits(Store pathsStore, Transaction txn, ByteIterable pathKey) {
+		List<ObjectId> commitIds = new ArrayList<>();
+		byte[] bytes = readBytes(pathsStore, txn, pathKey);
+		if (bytes != null) {
+			for (int i=0; i<bytes.length/20; i++)
+				commitIds.add(ObjectId.fromRaw(bytes, i*20));
+		}
+		return commitIds;
+	}
+
+	/*
+	 * Blame is stored as runs of lines blamed to same commit. Paths store maps each blamed 
+	 * path to commits its blames are stored against, in the order of storing, so that oldest 
+	 * blames can be removed once there are too many
+	 */
+	private void writeBlame(Environment env, ObjectId commitId, String path, ObjectId[] blame,
+			Map<ObjectId, BlameCommit> commits) {
+		int runs = 0;
+		for (int i=0; i<blame.length; i++) {
+			if (i == 0 || !blame[i].equals(blame[i-1]))
+				runs++;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + runs*(20+Integer.BYTES));
+		buffer.putInt(blame.length);
+		byte[] commitBytes = new byte[20];
+		int begin = 0;
+		while (begin < blame.length) {
+			int end = begin+1;
+			while (end < blame.length && blame[end].equals(blame[begin]))
+				end++;
+			blame[begin].copyRawTo(commitBytes, 0);
+			buffer.put(commitBytes);
+			buffer.putInt(end-begin);
+			begin = end;
+		}
+		byte[] blameBytes = buffer.array();
+
+		Store blamesStore = getStore(env, BLAMES_STORE);
+		Store commitsStore = getStore(env, COMMITS_STORE);
+		Store pathsStore = getStore(env, PATHS_STORE);
+		env.executeInTransaction(new TransactionalExecutable() {
+
+			@Override
+			public void execute(Transaction txn) {
+				ByteIterable blameKey = getBlameKey(commitId, path);
+				if (blamesStore.get(txn, blameKey) != null)
+					return;
+
+				ByteIterable pathKey = new StringByteIterable(path);
+				List<ObjectId> blamedCommits = readBlamedCommits(pathsStore, txn, pathKey);
+				if (blamedCommits.isEmpty() && pathsStore.count(txn) >= MAX_BLAMED_PATHS)
+					return;
+
+				Map<ObjectId, byte[]> referencedCommits = new HashMap<>();
+				for (ObjectId blameCommitId: getReferencedCommits(blameBytes)) {
+					byte[] bytes = readBytes(commitsStore, txn, new CommitByteIterable(blameCommitId));
+					if (bytes != null) {
+						int refCount = ByteBuffer.wrap(bytes).getInt();
+						bytes = getCommitBytes(refCount+1, Arrays.copyOfRange(bytes, Integer.BYTES, bytes.length));
+					} else {
+						BlameCommit blameCommit = commits.get(blameCommitId);
+						// Blame of parent referencing this commit might be removed since 
+						// blame is derived, it will be calculated again next time
+						if (blameCommit == null)
+							return;
+						bytes = getCommitBytes(1, SerializationUtils.serialize(blameCommit));
+					}
+					referencedCommits.put(blameCommitId, bytes);
+				}
+
+				blamesStore.put(txn, blameKey, new ArrayByteIterable(blameBytes));
+				for (Map.Entry<ObjectId, byte[]> entry: referencedCommits.entrySet()) {
+					commitsStore.put(txn, new CommitByteIterable(entry.getKey()),
+							new ArrayByteIterable(entry.getValue()));
+				}
+
+				blamedCommits.add(commitId);
+				while (blamedCommits.size() > MAX_BLAMES_PER_PATH)
+					removeBlame(blamesStore, commitsStore, txn, blamedCommits.remove(0), path);
+				writeCommits(pathsStore, txn, pathKey, blamedCommits);
+			}
+
+		});
+	}
+
+	private void removeBlame(Store blamesStore, Store commitsStore, Transaction txn, ObjectId commitId, String path) {
+		ByteIterable blameKey = getBlameKey(commitId, path);
+		byte[] blameBytes = readBytes(blamesStore, txn, blameKey);
+		if (blameBytes != null) {
+			for (ObjectId blameCommitId: getReferencedCommits(blameBytes)) {
+				ByteIterable commitKey = new CommitByteIterable(blameCommitId);
+				byte[] bytes = readBytes(commitsStore, txn, commitKey);
+				if (bytes != null) {
+					int refCount = ByteBuffer.wrap(bytes).getInt();
+					if (refCount > 1) {
+						bytes = getCommitBytes(refCount-1, Arrays.copyOfRange(bytes, Integer.BYTES, bytes.length));
+						commitsStore.put(txn, commitKey, new ArrayByteIterable(bytes));
+					} else {
+						commitsStore.delete(txn, commitKey);
+					}
+				}
+			}
+			blamesStore.delete(txn, blameKey);
+		}
+	}
+
+	private Collection<String> readBlamedPaths(Environment env) {
+		Store pathsStore = getStore(env, PATHS_STORE);
+		return env.computeInReadonlyTransaction(new TransactionalComputable<Collection<String>>() {
+
+			@Override
+			public Collection<String> compute(Transaction txn) {
+				Collection<String> blamedPaths = new HashSet<>();
+				Cursor cursor = pathsStore.openCursor(txn);
+				try {
+					while (cursor.getNext()) {
+						ByteIterable key = cursor.getKey();
+						blamedPaths.add(new String(key.getBytesUnsafe(), 0, key.getLength(), StandardCharsets.UTF_8));
+					}
+				} finally {
+					cursor.close();
+				}
+				return blamedPaths;
+			}
+
+		});
+	}
+
+	/*
+	 * Derive blames of pushed commits for files blamed before, so that blame of new commits
+	 * can be served without running git blame
+	 */
+	private void update(Project project, UpdatingWork work) {
+		Environment env = getEnv(project.getId().toString());
+		Collection<String> blamedPaths = readBlamedPaths(env);
+		if (blamedPaths.isEmpty())
+			return;
+
+		logger.debug("Updating blame info (project: {})...", project);
+
+		Repository repository = project.getRepository();
+		try (RevWalk revWalk = new RevWalk(repository)) {
+			RevCommit newCommit = GitUtils.parseCommit(revWalk, work.getNewCommitId());
+			if (newCommit == null)
+				return;
+			revWalk.markStart(newCommit);
+			RevCommit oldCommit = GitUtils.parseCommit(revWalk, work.getOldCommitId());
+			if (oldCommit != null)
+				revWalk.markUninteresting(oldCommit);
+			revWalk.sort(RevSort.TOPO, true);
+			revWalk.sort(RevSort.REVERSE, true);
+
+			List<RevCommit> commits = new ArrayList<>();
+			for (RevCommit commit: revWalk) {
+				commits.add(commit);
+				if (commits.size() > MAX_PUSHED_COMMITS) {
+					logger.debug("Too many pushed commits, blame info will be calculated on demand (project: {})",
+							project);
+					return;
+				}
+			}
+
+			for (RevCommit commit: commits) {
+				if (commit.getParentCount() == 0)
+					continue;
+				try (TreeWalk treeWalk = new TreeWalk(repository)) {
+					treeWalk.setRecursive(true);
+					treeWalk.setFilter(AndTreeFilter.create(
+							PathFilterGroup.createFromStrings(blamedPaths), TreeFilter.ANY_DIFF));
+					treeWalk.addTree(commit.getTree());
+					for (RevCommit parent: commit.getParents()) {
+						revWalk.parseHeaders(parent);
+						treeWalk.addTree(parent.getTree());
+					}
+					while (treeWalk.next()) {
+						if ((treeWalk.getRawMode(0) & FileMode.TYPE_MASK) != FileMode.TYPE_FILE)
+							continue;
+
+						// Merge commit keeping file of a parent does not own the blame
+						boolean sameAsParent = false;
+						for (int i=1; i<treeWalk.getTreeCount(); i++) {
+							if (treeWalk.idEqual(0, i)) {
+								sameAsParent = true;
+								break;
+							}
+						}
+						String path = treeWalk.getPathString();
+						if (!sameAsParent && readBlame(env, commit, path) == null) {
+							ObjectId[] blame = deriveBlame(env, repository, revWalk, commit, path);
+							if (blame != null)
+								writeBlame(env, commit, path, blame, getBlameCommits(commit));
+						}
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		logger.debug("Updated blame info (project: {})", project);
+	}
+
+	@Sessional
+	@Listen
+	public void on(RefUpdated event) {
+		if (!event.getOldCommitId().equals(ObjectId.zeroId())
+				&& !event.getNewCommitId().equals(ObjectId.zeroId())
+				&& event.getRefName().startsWith(Constants.R_HEADS)) {
+			UpdatingWork work = new UpdatingWork(PRIORITY, event.getOldCommitId(), event.getNewCommitId());
+			batchWorkManager.submit(getBatchWorker(event.getProject().getId()), work);
+		}
+	}
+
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project) {
+			Long projectId = event.getEntity().getId();
+			removeEnv(projectId.toString());
+		}
+	}
+
+	@Override
+	protected File getEnvDir(String envKey) {
+		File infoDir = new File(storageManager.getProjectInfoDir(Long.valueOf(envKey)), INFO_DIR);
+		if (!infoDir.exists())
+			FileUtils.createDir(infoDir);
+		return infoDir;
+	}
+
+	@Override
+	protected int getEnvVersion() {
+		return INFO_VERSION;
+	}
+
+	@Override
+	protected long getLogFileSize() {
+		return LOG_FILE_SIZE;
+	}
+
+	static class UpdatingWork extends Prioritized {
+
+		private final ObjectId oldCommitId;
+
+		private final ObjectId newCommitId;
+
+		public UpdatingWork(int priority, ObjectId oldCommitId, ObjectId newCommitId) {
+			super(priority);
+			this.oldCommitId = oldCommitId;
+			this.newCommitId = newCommitId;
+		}
+
+		public ObjectId getOldCommitId() {
+			return oldCommitId;
+		}
+
+		public ObjectId getNewCommitId() {
+			return newCommitId;
+		}
+
+	}
+
+}
@@ -6,18 +6,22 @@ import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
@@ -39,9 +43,13 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 import io.onedev.commons.launcher.loader.Listen;
 import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.LockUtils;
 import io.onedev.commons.utils.PathUtils;
 import io.onedev.commons.utils.StringUtils;
 import io.onedev.server.entitymanager.ProjectManager;
@@ -67,9 +75,10 @@ import io.onedev.server.util.ElementPumper;
 import io.onedev.server.util.IssueUtils;
 import io.onedev.server.util.NameAndEmail;
 import io.onedev.server.util.Pair;
+import io.onedev.server.util.ServerConfig;
 import io.onedev.server.util.concurrent.Prioritized;
-import io.onedev.server.util.work.BatchWorkManager;
-import io.onedev.server.util.work.BatchWorker;
+import io.onedev.server.util.concurrent.PrioritizedRunnable;
+import io.onedev.server.util.work.WorkExecutor;
 import jetbrains.exodus.ArrayByteIterable;
 import jetbrains.exodus.ByteIterable;
 import jetbrains.exodus.backup.BackupStrategy;
@@ -86,18 +95,25 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 
 	private static final Logger logger = LoggerFactory.getLogger(DefaultCommitInfoManager.class);
 	
-	private static final int INFO_VERSION = 11;
+	private static final int INFO_VERSION = 12;
 	
 	private static final long LOG_FILE_SIZE = 256*1024;
 	
 	private static final int COLLECT_BATCH_SIZE = 10000;
 	
+	private static final int COLLECT_TRANSACTION_SIZE = 1000;
+	
+	private static final int PROGRESS_LOG_INTERVAL = 10000;
+	
 	private static final int MAX_COLLECTING_FILES = 50000;
 	
 	private static final int MAX_HISTORY_PATHS = 100;
 	
 	private static final int MAX_COMMIT_FILES = 100;
 	
+	// Commit graphs take roughly 100 bytes per commit on heap
+	private static final int MAX_CACHED_GRAPH_COMMITS = 2000000;
+	
 	private static final String INFO_DIR = "commit";
 	
 	private static final String DEFAULT_STORE = "default";
@@ -118,7 +134,9 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 	
 	private static final String INDEX_TO_USER_STORE = "indexToUser";
 	
-	private static final String DAILY_CONTRIBUTIONS_STORE = "dailyContributions";
+	private static final String EMAIL_TO_USERS_STORE = "emailToUsers";
+	
+	private static final Map<TimeBucket, String> CONTRIBUTIONS_STORES = new EnumMap<>(TimeBucket.class);
 	
 	private static final ByteIterable NEXT_PATH_INDEX_KEY = new StringByteIterable("nextPathIndex");
 	
@@ -130,7 +148,7 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 	
 	private static final ByteIterable LAST_COMMIT_OF_CONTRIBS_KEY = new StringByteIterable("lastCommitOfContribs");
 	
-	private static final ByteIterable LINE_STATS_KEY = new StringByteIterable("lineStats");
+	private static final Map<TimeBucket, ByteIterable> LINE_STATS_KEYS = new EnumMap<>(TimeBucket.class);
 	
 	private static final ByteIterable USERS_KEY = new StringByteIterable("users");
 	
@@ -144,6 +162,16 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 	
 	private static final Map<String, String> PROGRAMMING_LANGUAGES = new HashMap<>();
 	
+	static {
+		CONTRIBUTIONS_STORES.put(TimeBucket.DAY, "dailyContributions");
+		CONTRIBUTIONS_STORES.put(TimeBucket.WEEK, "weeklyContributions");
+		CONTRIBUTIONS_STORES.put(TimeBucket.MONTH, "monthlyContributions");
+		
+		LINE_STATS_KEYS.put(TimeBucket.DAY, new StringByteIterable("lineStats"));
+		LINE_STATS_KEYS.put(TimeBucket.WEEK, new StringByteIterable("weeklyLineStats"));
+		LINE_STATS_KEYS.put(TimeBucket.MONTH, new StringByteIterable("monthlyLineStats"));
+	}
+	
 	static {
 		PROGRAMMING_LANGUAGES.put("java", "Java");
 		
@@ -276,7 +304,9 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 	
 	private final StorageManager storageManager;
 	
-	private final BatchWorkManager batchWorkManager;
+	private final WorkExecutor workExecutor;
+	
+	private final ServerConfig serverConfig;
 	
 	private final ProjectManager projectManager;
 	
@@ -284,17 +314,29 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 	
 	private final Map<Long, List<String>> filesCache = new ConcurrentHashMap<>();
 	
+	private final Cache<Long, CommitGraph> commitGraphs = CacheBuilder.newBuilder()
+			.maximumWeight(MAX_CACHED_GRAPH_COMMITS)
+			.weigher((Long projectId, CommitGraph graph) -> graph.getCount() + 1)
+			.build();
+	
 	private final Map<Long, Integer> totalCommitCountCache = new ConcurrentHashMap<>();
 	
 	private final Map<Long, List<NameAndEmail>> usersCache = new ConcurrentHashMap<>();
 	
+	private final Map<Long, List<CollectingWork>> pendingWorks = new LinkedHashMap<>();
+	
+	private final Map<Long, CollectingProgress> collectingProgresses = new ConcurrentHashMap<>();
+	
 	@Inject
 	public DefaultCommitInfoManager(ProjectManager projectManager, StorageManager storageManager, 
-			BatchWorkManager batchWorkManager, SessionManager sessionManager) {
+			WorkExecutor workExecutor, SessionManager sessionManager, ServerConfig serverConfig, 
+			EnvironmentPool envPool) {
+		super(envPool);
 		this.projectManager = projectManager;
 		this.storageManager = storageManager;
-		this.batchWorkManager = batchWorkManager;
+		this.workExecutor = workExecutor;
 		this.sessionManager = sessionManager;
+		this.serverConfig = serverConfig;
 	}
 	
 	private boolean isCommitCollected(byte[] commitBytes) {
@@ -305,9 +347,51 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		return commitBytes != null && commitBytes.length % 20 != 0;
 	}
 	
-	private void doCollect(Project project, ObjectId commitId, String refName) {
+	private String getCommitGraphLockName(Long projectId) {
+		return "commit-graph:" + projectId;
+	}
+	
+	private CommitGraph loadCommitGraph(Long projectId) {
+		return new CommitGraph(storageManager.getProjectInfoDir(projectId));
+	}
+	
+	/*
+	 * Graphs of least recently used projects are evicted to bound heap usage, and will be 
+	 * loaded from graph file again when needed. Loading and updating a graph are guarded 
+	 * by the same lock, so that a graph is never loaded while an evicted instance is still 
+	 * appending to the file 
+	 */
+	private CommitGraph getCommitGraph(Long projectId) {
+		try {
+			return commitGraphs.get(projectId, () -> LockUtils.call(getCommitGraphLockName(projectId), 
+					() -> loadCommitGraph(projectId)));
+		} catch (ExecutionException e) {
+			Throwables.throwIfUnchecked(e.getCause());
+			throw new RuntimeException(e.getCause());
+		}
+	}
+	
+	private void updateCommitGraph(Project project, ObjectId commitId) {
+		Long projectId = project.getId();
+		LockUtils.call(getCommitGraphLockName(projectId), () -> {
+			// Do not load through the cache while holding the lock, as a concurrent cache 
+			// loader may be waiting for the same lock
+			CommitGraph graph = commitGraphs.getIfPresent(projectId);
+			if (graph == null)
+				graph = loadCommitGraph(projectId);
+			graph.update(project.getRepository(), commitId);
+			
+			// Put even if nothing is added, so that cache weight reflects current size
+			commitGraphs.put(projectId, graph);
+			return null;
+		});
+	}
+	
+	private void doCollect(Project project, ObjectId commitId, String refName, CollectingProgress progress) {
 		logger.debug("Collecting commit information (project: {}, ref: {})...", project.getName(), refName);
 		
+		updateCommitGraph(project, commitId);
+		
 		Environment env = getEnv(project.getId().toString());
 		Store defaultStore = getStore(env, DEFAULT_STORE);
 		Store commitsStore = getStore(env, COMMITS_STORE);
@@ -318,6 +402,7 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		Store userToIndexStore = getStore(env, USER_TO_INDEX_STORE);
 		Store indexToUserStore = getStore(env, INDEX_TO_USER_STORE);
 		Store fixCommitsStore = getStore(env, FIX_COMMITS_STORE);
+		Store emailToUsersStore = getStore(env, EMAIL_TO_USERS_STORE);
 		
 		Repository repository = project.getRepository();
 
@@ -347,7 +432,7 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		});
 		
 		if (!isCommitCollected(result.getFirst())) {
-			processCommitRange(project, commitId, result.getSecond(), new CommitRangeProcessor() {
+			processCommitRange(project, commitId, result.getSecond(), progress, new CommitRangeProcessor() {
 
 				@Override
 				public void process(ObjectId untilCommitId, ObjectId sinceCommitId) {
@@ -356,30 +441,72 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 						@SuppressWarnings("unchecked")
 						@Override
 						public void execute(Transaction txn) {
-							AtomicInteger totalCommitCount = new AtomicInteger(readInt(defaultStore, txn, COMMIT_COUNT_KEY, 0));
-							
+							AtomicInteger totalCommitCount = new AtomicInteger();
 							NextIndex nextIndex = new NextIndex();
-							nextIndex.user = readInt(defaultStore, txn, NEXT_USER_INDEX_KEY, 0);
-							nextIndex.path = readInt(defaultStore, txn, NEXT_PATH_INDEX_KEY, 0);
-							
 							Map<Long, Integer> commitCountCache = new HashMap<>();
+							Set<NameAndEmail> users = new HashSet<>();
+							Map<String, Long> files = new HashMap<>();
 							
-							Set<NameAndEmail> users;
-							byte[] userBytes = readBytes(defaultStore, txn, USERS_KEY);
-							if (userBytes != null)
-								users = (Set<NameAndEmail>) SerializationUtils.deserialize(userBytes);
-							else
-								users = new HashSet<>();
-
-							Map<String, Long> files;
-							byte[] fileBytes = readBytes(defaultStore, txn, FILES_KEY);
-							if (fileBytes != null)
-								files = (Map<String, Long>) SerializationUtils.deserialize(fileBytes);
-							else
-								files = new HashMap<>();
+							Runnable readCollected = new Runnable() {
+
+								@Override
+								public void run() {
+									totalCommitCount.set(readInt(defaultStore, txn, COMMIT_COUNT_KEY, 0));
+									
+									nextIndex.user = readInt(defaultStore, txn, NEXT_USER_INDEX_KEY, 0);
+									nextIndex.path = readInt(defaultStore, txn, NEXT_PATH_INDEX_KEY, 0);
+									
+									commitCountCache.clear();
+									
+									users.clear();
+									byte[] userBytes = readBytes(defaultStore, txn, USERS_KEY);
+									if (userBytes != null)
+										users.addAll((Set<NameAndEmail>) SerializationUtils.deserialize(userBytes));
+
+									files.clear();
+									byte[] fileBytes = readBytes(defaultStore, txn, FILES_KEY);
+									if (fileBytes != null)
+										files.putAll((Map<String, Long>) SerializationUtils.deserialize(fileBytes));
+								}
+								
+							};
+							readCollected.run();
+							
+							Runnable writeCollected = new Runnable() {
+
+								@Override
+								public void run() {
+									writeInt(defaultStore, txn, COMMIT_COUNT_KEY, totalCommitCount.get());
+									
+									writeInt(defaultStore, txn, NEXT_USER_INDEX_KEY, nextIndex.user);
+									writeInt(defaultStore, txn, NEXT_PATH_INDEX_KEY, nextIndex.path);
+									
+									byte[] bytesOfUsers = SerializationUtils.serialize((Serializable) users);
+									defaultStore.put(txn, USERS_KEY, new ArrayByteIterable(bytesOfUsers));
+									
+									if (files.size() > MAX_COLLECTING_FILES) {
+										List<String> fileList = new ArrayList<>(files.keySet());
+										fileList.sort((file1, file2)->files.get(file1).compareTo(files.get(file2)));
+										for (int i=0; i<fileList.size() - MAX_COLLECTING_FILES; i++)
+											files.remove(fileList.get(i));
+									}
+									byte[] bytesOfFiles = SerializationUtils.serialize((Serializable) files);
+									defaultStore.put(txn, FILES_KEY, new ArrayByteIterable(bytesOfFiles));
+									
+									for (Map.Entry<Long, Integer> entry: commitCountCache.entrySet()) 
+										writeInt(commitCountsStore, txn, new LongByteIterable(entry.getKey()), entry.getValue());
+									commitCountCache.clear();
+								}
+								
+							};
 
 							new ElementPumper<GitCommit>() {
 
+								/*
+								 * Commits processed since information is last flushed 
+								 */
+								private final List<GitCommit> chunk = new ArrayList<>();
+								
 								@Override
 								public void generate(Consumer<GitCommit> consumer) {
 									List<String> revisions = new ArrayList<>();
@@ -400,8 +527,7 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 									}.revisions(revisions).fields(fields).call();
 								}
 
-								@Override
-								public void process(GitCommit currentCommit) {
+								private void collect(GitCommit currentCommit) {
 									ObjectId currentCommitId = ObjectId.fromString(currentCommit.getHash());
 									ByteIterable currentCommitKey = new CommitByteIterable(currentCommitId);
 									byte[] currentCommitBytes = readBytes(commitsStore, txn, currentCommitKey);
@@ -474,6 +600,15 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 												userIndex = nextIndex.user++;
 												writeInt(userToIndexStore, txn, authorKey, userIndex);
 												indexToUserStore.put(txn, new IntByteIterable(userIndex), authorKey);
+												if (nameAndEmail.getEmailAddress() != null) {
+													ByteIterable emailKey = new StringByteIterable(nameAndEmail.getEmailAddress());
+													byte[] userIndexBytes = readBytes(emailToUsersStore, txn, emailKey);
+													if (userIndexBytes == null)
+														userIndexBytes = new byte[0];
+													byte[] newUserIndexBytes = Arrays.copyOf(userIndexBytes, userIndexBytes.length+Integer.BYTES);
+													ByteBuffer.wrap(newUserIndexBytes, userIndexBytes.length, Integer.BYTES).putInt(userIndex);
+													emailToUsersStore.put(txn, emailKey, new ArrayByteIterable(newUserIndexBytes));
+												}
 											}
 											
 											for (FileChange change: currentCommit.getFileChanges()) {
@@ -532,32 +667,52 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 										}											
 									}
 								}
+								
+								@Override
+								public void process(GitCommit currentCommit) {
+									collect(currentCommit);
+									chunk.add(currentCommit);
+									
+									int processed = progress.onProcessed();
+									if (processed % COLLECT_TRANSACTION_SIZE == 0) {
+										/*
+										 * Commit collected information periodically so that a large history does not 
+										 * hold a huge write transaction, and statistics are updated while collecting. 
+										 * This is safe as a commit is marked as collected in same transaction writing 
+										 * its information, and collected commits are skipped if the range is processed 
+										 * again 
+										 */
+										writeCollected.run();
+										while (!txn.flush()) {
+											/*
+											 * Flush fails if database is changed by another transaction since this 
+											 * transaction begins or is last flushed. Revert to the latest database 
+											 * snapshot and collect this chunk of commits again
+											 */
+											txn.revert();
+											readCollected.run();
+											for (GitCommit commit: chunk)
+												collect(commit);
+											writeCollected.run();
+										}
+										chunk.clear();
+										totalCommitCountCache.remove(project.getId());
+										usersCache.remove(project.getId());
+										filesCache.remove(project.getId());
+									}
+									if (processed % PROGRESS_LOG_INTERVAL == 0) {
+										logger.info("Collecting commit information (project: {}, progress: {})", 
+												project.getName(), progress);
+									}
+								}
 
 							}.pump();
 
-							writeInt(defaultStore, txn, COMMIT_COUNT_KEY, totalCommitCount.get());
+							writeCollected.run();
 							totalCommitCountCache.remove(project.getId());
-							
-							writeInt(defaultStore, txn, NEXT_USER_INDEX_KEY, nextIndex.user);
-							writeInt(defaultStore, txn, NEXT_PATH_INDEX_KEY, nextIndex.path);
-							
-							userBytes = SerializationUtils.serialize((Serializable) users);
-							defaultStore.put(txn, USERS_KEY, new ArrayByteIterable(userBytes));
 							usersCache.remove(project.getId());
-							
-							if (files.size() > MAX_COLLECTING_FILES) {
-								List<String> fileList = new ArrayList<>(files.keySet());
-								fileList.sort((file1, file2)->files.get(file1).compareTo(files.get(file2)));
-								for (int i=0; i<fileList.size() - MAX_COLLECTING_FILES; i++)
-									files.remove(fileList.get(i));
-							}
-							fileBytes = SerializationUtils.serialize((Serializable) files);
-							defaultStore.put(txn, FILES_KEY, new ArrayByteIterable(fileBytes));
 							filesCache.remove(project.getId());
 							
-							for (Map.Entry<Long, Integer> entry: commitCountCache.entrySet()) 
-								writeInt(commitCountsStore, txn, new LongByteIterable(entry.getKey()), entry.getValue());
-							
 							defaultStore.put(txn, LAST_COMMIT_KEY, new CommitByteIterable(untilCommitId));
 						}
 					});
@@ -578,7 +733,9 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		Environment env = getEnv(project.getId().toString());
 		Store defaultStore = getStore(env, DEFAULT_STORE);
 		Store userToIndexStore = getStore(env, USER_TO_INDEX_STORE);
-		Store dailyContributionsStore = getStore(env, DAILY_CONTRIBUTIONS_STORE);	
+		Map<TimeBucket, Store> contributionsStores = new EnumMap<>(TimeBucket.class);
+		for (Map.Entry<TimeBucket, String> entry: CONTRIBUTIONS_STORES.entrySet())
+			contributionsStores.put(entry.getKey(), getStore(env, entry.getValue()));
 		
 		Repository repository = project.getRepository();
 		
@@ -603,7 +760,7 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 			}
 		});
 	
-		processCommitRange(project, commitId, lastCommitId, new CommitRangeProcessor() {
+		processCommitRange(project, commitId, lastCommitId, null, new CommitRangeProcessor() {
 
 			@Override
 			public void process(ObjectId untilCommitId, ObjectId sinceCommitId) {
@@ -614,7 +771,15 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 						Map<Integer, GitContribution> overallContributions = 
 								deserializeContributions(readBytes(defaultStore, txn, OVERALL_CONTRIBUTIONS_KEY));
 						
-						Map<Integer, Map<Integer, GitContribution>> dailyContributionsCache = new HashMap<>();
+						/*
+						 * Contributions are rolled up into weekly and monthly buckets besides daily 
+						 * buckets, so that contributions over a long period can be calculated by 
+						 * reading a few buckets
+						 */
+						Map<TimeBucket, Map<Integer, Map<Integer, GitContribution>>> contributionsCache = 
+								new EnumMap<>(TimeBucket.class);
+						for (TimeBucket bucket: TimeBucket.values())
+							contributionsCache.put(bucket, new HashMap<>());
 						
 						new ElementPumper<GitCommit>() {
 
@@ -654,23 +819,30 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 										int userIndex = readInt(userToIndexStore, txn, authorKey, -1);
 										Preconditions.checkState(userIndex != -1);
 
-										Map<Integer, GitContribution> contributionsOnDay = dailyContributionsCache.get(dayValue);
-										if (contributionsOnDay == null) {
-											contributionsOnDay = deserializeContributions(readBytes(
-													dailyContributionsStore, txn, new IntByteIterable(dayValue)));
-											dailyContributionsCache.put(dayValue, contributionsOnDay);
+										for (TimeBucket bucket: TimeBucket.values()) {
+											int bucketKey = bucket.getKey(dayValue);
+											Map<Integer, Map<Integer, GitContribution>> cache = contributionsCache.get(bucket);
+											Map<Integer, GitContribution> contributionsInBucket = cache.get(bucketKey);
+											if (contributionsInBucket == null) {
+												contributionsInBucket = deserializeContributions(readBytes(
+														contributionsStores.get(bucket), txn, new IntByteIterable(bucketKey)));
+												cache.put(bucketKey, contributionsInBucket);
+											}
+											updateContribution(contributionsInBucket, userIndex, currentCommit);
 										}
-										updateContribution(contributionsOnDay, userIndex, currentCommit);
 									}
 								}
 							}
 
 						}.pump();
 						
-						for (Map.Entry<Integer, Map<Integer, GitContribution>> entry: dailyContributionsCache.entrySet()) {
-							byte[] bytesOfContributionsOnDay = serializeContributions(entry.getValue());
-							dailyContributionsStore.put(txn, new IntByteIterable(entry.getKey()), 
-									new ArrayByteIterable(bytesOfContributionsOnDay));
+						for (TimeBucket bucket: TimeBucket.values()) {
+							Store contributionsStore = contributionsStores.get(bucket);
+							for (Map.Entry<Integer, Map<Integer, GitContribution>> entry: contributionsCache.get(bucket).entrySet()) {
+								byte[] bytesOfContributionsInBucket = serializeContributions(entry.getValue());
+								contributionsStore.put(txn, new IntByteIterable(entry.getKey()), 
+										new ArrayByteIterable(bytesOfContributionsInBucket));
+							}
 						}
 						defaultStore.put(txn, OVERALL_CONTRIBUTIONS_KEY, 
 								new ArrayByteIterable(serializeContributions(overallContributions)));
@@ -712,43 +884,35 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		});
 
 		if (lastCommitId == null) {
+			/*
+			 * Calculate line statistics of whole history outside of transaction, so that the 
+			 * write transaction is only held while saving the result
+			 */
+			Map<TimeBucket, Map<Integer, Map<String, Integer>>> lineStats = new EnumMap<>(TimeBucket.class);
+			for (TimeBucket bucket: TimeBucket.values())
+				lineStats.put(bucket, new HashMap<>());
+			
+			List<String> revisions = new ArrayList<>();
+			revisions.add(commitId.name());
+
+			EnumSet<LogCommand.Field> fields = EnumSet.of(
+					LogCommand.Field.COMMIT_DATE, 
+					LogCommand.Field.LINE_CHANGES);
+			
+			new LogCommand(project.getGitDir()) {
+
+				@Override
+				protected void consume(GitCommit commit) {
+					updateLineStats(commit, lineStats);
+				}
+				
+			}.firstParent(true).revisions(revisions).fields(fields).call();
+			
 			env.executeInTransaction(new TransactionalExecutable() {
 				
 				@Override
 				public void execute(Transaction txn) {
-					Map<Integer, Map<String, Integer>> lineStats = new HashMap<>();
-					
-					new ElementPumper<GitCommit>() {
-
-						@Override
-						public void generate(Consumer<GitCommit> consumer) {
-							List<String> revisions = new ArrayList<>();
-							revisions.add(commitId.name());
-
-							EnumSet<LogCommand.Field> fields = EnumSet.of(
-									LogCommand.Field.COMMIT_DATE, 
-									LogCommand.Field.LINE_CHANGES);
-							
-							new LogCommand(project.getGitDir()) {
-
-								@Override
-								protected void consume(GitCommit commit) {
-									consumer.accept(commit);
-								}
-								
-							}.firstParent(true).revisions(revisions).fields(fields).call();
-						}
-
-						@Override
-						public void process(GitCommit currentCommit) {
-							updateLineStats(txn, currentCommit, lineStats);
-						}
-						
-					}.pump();
-					
-					byte[] bytesOfLineStats = SerializationUtils.serialize((Serializable) lineStats);
-					defaultStore.put(txn, LINE_STATS_KEY, new ArrayByteIterable(bytesOfLineStats));
-					
+					writeLineStats(defaultStore, txn, lineStats);
 					defaultStore.put(txn, LAST_COMMIT_OF_LINE_STATS_KEY, new CommitByteIterable(commitId));
 				}
 				
@@ -756,17 +920,11 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		} else {
 			env.executeInTransaction(new TransactionalExecutable() {
 				
-				@SuppressWarnings("unchecked")
 				@Override
 				public void execute(Transaction txn) {
-					Map<Integer, Map<String, Integer>> lineStats;
-					byte[] bytesOfLineStats = readBytes(defaultStore, txn, LINE_STATS_KEY);
-					if (bytesOfLineStats != null) {
-						lineStats = (Map<Integer, Map<String, Integer>>) SerializationUtils.deserialize(
-								bytesOfLineStats);
-					} else {
-						lineStats = new HashMap<>();
-					}
+					Map<TimeBucket, Map<Integer, Map<String, Integer>>> lineStats = new EnumMap<>(TimeBucket.class);
+					for (TimeBucket bucket: TimeBucket.values())
+						lineStats.put(bucket, readLineStats(defaultStore, txn, bucket));
 					
 					ListNumStatsCommand command = new ListNumStatsCommand(project.getGitDir());
 					List<FileChange> fileChanges = command.fromRev(lastCommitId.name()).toRev(commitId.name()).call();
@@ -774,10 +932,8 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 					GitCommit gitCommit = new GitCommit(revCommit.name(), null, null, revCommit.getAuthorIdent(), 
 							revCommit.getCommitterIdent().getWhen(), null, null, fileChanges);
 					
-					updateLineStats(txn, gitCommit, lineStats);
-
-					bytesOfLineStats = SerializationUtils.serialize((Serializable) lineStats);
-					defaultStore.put(txn, LINE_STATS_KEY, new ArrayByteIterable(bytesOfLineStats));
+					updateLineStats(gitCommit, lineStats);
+					writeLineStats(defaultStore, txn, lineStats);
 					
 					defaultStore.put(txn, LAST_COMMIT_OF_LINE_STATS_KEY, new CommitByteIterable(commitId));
 				}
@@ -787,8 +943,8 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		}		
 	}
 	
-	private void processCommitRange(Project project, ObjectId untilCommitId, 
-			@Nullable ObjectId sinceCommitId, CommitRangeProcessor commitRangeProcessor) {
+	private void processCommitRange(Project project, ObjectId untilCommitId, @Nullable ObjectId sinceCommitId, 
+			@Nullable CollectingProgress progress, CommitRangeProcessor commitRangeProcessor) {
 		RevListCommand revList = new RevListCommand(project.getGitDir());
 		List<String> revisions = new ArrayList<>();
 		revisions.add(untilCommitId.name());
@@ -799,6 +955,8 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		List<ObjectId> historyIds = new ArrayList<>();
 		for (String commitHash: revList.call()) 
 			historyIds.add(ObjectId.fromString(commitHash));
+		if (progress != null)
+			progress.addTotal(historyIds.size());
 		
 		revList = new RevListCommand(project.getGitDir());
 		revList.revisions(revisions).order(null).firstParent(true);
@@ -840,14 +998,26 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		}		
 	}
 		
-	private void updateLineStats(Transaction txn, GitCommit currentCommit, Map<Integer, Map<String, Integer>> lineStats) {		
-		int dayValue = new Day(currentCommit.getCommitDate()).getValue();
-		
-		Map<String, Integer> lineStatsOnDay = lineStats.get(dayValue);
-		if (lineStatsOnDay == null) {
-			lineStatsOnDay = new HashMap<>();
-			lineStats.put(dayValue, lineStatsOnDay);
+	@SuppressWarnings("unchecked")
+	private Map<Integer, Map<String, Integer>> readLineStats(Store store, Transaction txn, TimeBucket bucket) {
+		byte[] bytesOfLineStats = readBytes(store, txn, LINE_STATS_KEYS.get(bucket));
+		if (bytesOfLineStats != null) 
+			return (Map<Integer, Map<String, Integer>>) SerializationUtils.deserialize(bytesOfLineStats);
+		else 
+			return new HashMap<>();
+	}
+	
+	private void writeLineStats(Store store, Transaction txn, 
+			Map<TimeBucket, Map<Integer, Map<String, Integer>>> lineStats) {
+		for (Map.Entry<TimeBucket, Map<Integer, Map<String, Integer>>> entry: lineStats.entrySet()) {
+			byte[] bytesOfLineStats = SerializationUtils.serialize((Serializable) entry.getValue());
+			store.put(txn, LINE_STATS_KEYS.get(entry.getKey()), new ArrayByteIterable(bytesOfLineStats));
 		}
+	}
+	
+	private void updateLineStats(GitCommit currentCommit, 
+			Map<TimeBucket, Map<Integer, Map<String, Integer>>> lineStats) {		
+		int dayValue = new Day(currentCommit.getCommitDate()).getValue();
 		
 		Map<String, Integer> languageLines = new HashMap<>();
 		for (FileChange change: currentCommit.getFileChanges()) {
@@ -865,13 +1035,21 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 			}
 		}
 		
-		for (Map.Entry<String, Integer> entry: languageLines.entrySet()) {
-			String language = entry.getKey();
-			Integer lines = entry.getValue();
-			Integer accumulatedLines = lineStatsOnDay.get(language);
-			if (accumulatedLines != null)
-				lines += accumulatedLines;
-			lineStatsOnDay.put(language, lines);
+		for (Map.Entry<TimeBucket, Map<Integer, Map<String, Integer>>> bucketEntry: lineStats.entrySet()) {
+			int bucketKey = bucketEntry.getKey().getKey(dayValue);
+			Map<String, Integer> lineStatsInBucket = bucketEntry.getValue().get(bucketKey);
+			if (lineStatsInBucket == null) {
+				lineStatsInBucket = new HashMap<>();
+				bucketEntry.getValue().put(bucketKey, lineStatsInBucket);
+			}
+			for (Map.Entry<String, Integer> entry: languageLines.entrySet()) {
+				String language = entry.getKey();
+				Integer lines = entry.getValue();
+				Integer accumulatedLines = lineStatsInBucket.get(language);
+				if (accumulatedLines != null)
+					lines += accumulatedLines;
+				lineStatsInBucket.put(language, lines);
+			}
 		}
 	}
 	
@@ -889,7 +1067,7 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 	
 	private void updateCommitCount(Store store, Transaction txn, 
 			Map<Long, Integer> commitCountCache, int userIndex, int pathIndex) {
-		long commitCountKey = (userIndex<<32)|pathIndex;
+		long commitCountKey = getCommitCountKey(userIndex, pathIndex);
 		
 		Integer commitCountOfPathByUser = commitCountCache.get(commitCountKey);
 		if (commitCountOfPathByUser == null)
@@ -969,6 +1147,11 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 
 	@Override
 	public Map<Day, Map<String, Integer>> getLineIncrements(Project project) {
+		return getLineIncrements(project, TimeBucket.DAY);
+	}
+	
+	@Override
+	public Map<Day, Map<String, Integer>> getLineIncrements(Project project, TimeBucket bucket) {
 		Environment env = getEnv(project.getId().toString());
 		Store store = getStore(env, DEFAULT_STORE);
 
@@ -977,14 +1160,8 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 			@Override
 			public Map<Day, Map<String, Integer>> compute(Transaction txn) {
 				Map<Day, Map<String, Integer>> lineIncrements = new HashMap<>();
-				byte[] bytes = readBytes(store, txn, LINE_STATS_KEY);
-				if (bytes != null) {
-					@SuppressWarnings("unchecked")
-					Map<Integer, Map<String, Integer>> storedMap = 
-							(Map<Integer, Map<String, Integer>>) SerializationUtils.deserialize(bytes);
-					for (Map.Entry<Integer, Map<String, Integer>> entry: storedMap.entrySet())
-						lineIncrements.put(new Day(entry.getKey()), entry.getValue());
-				} 
+				for (Map.Entry<Integer, Map<String, Integer>> entry: readLineStats(store, txn, bucket).entrySet())
+					lineIncrements.put(new Day(entry.getKey()), entry.getValue());
 				return lineIncrements;
 			}
 			
@@ -1008,31 +1185,66 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 	public int getCommitCount(Project project, User user, String path) {
 		if (user.getEmail() != null) {
 			Environment env = getEnv(project.getId().toString());
-			Store emailToIndexStore = getStore(env, USER_TO_INDEX_STORE);
+			Store emailToUsersStore = getStore(env, EMAIL_TO_USERS_STORE);
 			Store pathToIndexStore = getStore(env, PATH_TO_INDEX_STORE);
-			Store commitCountStore = getStore(env, COMMIT_COUNTS_STORE);
+			Store commitCountsStore = getStore(env, COMMIT_COUNTS_STORE);
 			return env.computeInReadonlyTransaction(new TransactionalComputable<Integer>() {
 
 				@Override
 				public Integer compute(Transaction txn) {
-					int userIndex = readInt(emailToIndexStore, txn, new StringByteIterable(user.getEmail()), -1);
-					if (userIndex != -1) {
-						int pathIndex = readInt(pathToIndexStore, txn, new StringByteIterable(path), -1);
-						if (pathIndex != -1) {
-							long commitCountKey = (userIndex<<32)|pathIndex;
-							return readInt(commitCountStore, txn, new LongByteIterable(commitCountKey), 0);
-						} 
-					} 
-					return 0;
+					int[] userIndexes = readUserIndexes(emailToUsersStore, txn, user.getEmail());
+					return getCommitCount(pathToIndexStore, commitCountsStore, txn, userIndexes, path);
 				}
+				
 			});
 		} else {
 			return 0;
 		}
 	}
 	
+	private int[] readUserIndexes(Store emailToUsersStore, Transaction txn, String email) {
+		byte[] bytes = readBytes(emailToUsersStore, txn, new StringByteIterable(email));
+		if (bytes != null) {
+			int[] userIndexes = new int[bytes.length/Integer.BYTES];
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			for (int i=0; i<userIndexes.length; i++)
+				userIndexes[i] = buffer.getInt();
+			return userIndexes;
+		} else {
+			return new int[0];
+		}
+	}
+	
+	/*
+	 * Commit counts of a path include commits touching any file under it, as counts of all 
+	 * parent directories are updated when collecting commits 
+	 */
+	private int getCommitCount(Store pathToIndexStore, Store commitCountsStore, Transaction txn, 
+			int[] userIndexes, String path) {
+		int commitCount = 0;
+		if (userIndexes.length != 0) {
+			int pathIndex = readInt(pathToIndexStore, txn, new StringByteIterable(path), -1);
+			if (pathIndex != -1) {
+				for (int userIndex: userIndexes) {
+					ByteIterable commitCountKey = new LongByteIterable(getCommitCountKey(userIndex, pathIndex));
+					commitCount += readInt(commitCountsStore, txn, commitCountKey, 0);
+				}
+			}
+		}
+		return commitCount;
+	}
+	
+	private long getCommitCountKey(int userIndex, int pathIndex) {
+		return ((long)userIndex<<32) | pathIndex;
+	}
+	
 	@Override
 	public Collection<ObjectId> getDescendants(Project project, Collection<ObjectId> ancestors) {
+		Collection<ObjectId> descendants = getCommitGraph(project.getId()).getDescendants(ancestors);
+		if (descendants != null)
+			return descendants;
+		
+		// Fall back to commits store if some ancestors are not in commit graph yet 
 		Environment env = getEnv(project.getId().toString());
 		final Store store = getStore(env, COMMITS_STORE);
 
@@ -1076,40 +1288,112 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		});
 	}
 
+	@Override
+	public boolean isAncestor(Project project, ObjectId ancestor, ObjectId descendant) {
+		Boolean isAncestor = getCommitGraph(project.getId()).isAncestor(ancestor, descendant);
+		if (isAncestor != null)
+			return isAncestor;
+		else
+			return GitUtils.isMergedInto(project.getRepository(), null, ancestor, descendant);
+	}
+	
 	@Listen
 	public void on(EntityRemoved event) {
 		if (event.getEntity() instanceof Project) {
 			Long projectId = event.getEntity().getId();
 			removeEnv(projectId.toString());
+			commitGraphs.invalidate(projectId);
 			filesCache.remove(projectId);
 			totalCommitCountCache.remove(projectId);
 			usersCache.remove(projectId);
+			synchronized (pendingWorks) {
+				pendingWorks.remove(projectId);
+			}
 		}
 	}
 	
-	private BatchWorker getBatchWorker(Long projectId) {
-		return new BatchWorker("project-" + projectId + "-collectCommitInfo") {
+	private void submit(Long projectId, Collection<CollectingWork> works) {
+		synchronized (pendingWorks) {
+			List<CollectingWork> worksOfProject = pendingWorks.get(projectId);
+			if (worksOfProject == null) {
+				worksOfProject = new ArrayList<>();
+				pendingWorks.put(projectId, worksOfProject);
+			}
+			worksOfProject.addAll(works);
+		}
+		dispatch();
+	}
+	
+	/*
+	 * Start collecting pending projects in submission order as long as number of collecting 
+	 * projects is under the limit. Works of a single project are never collected concurrently, 
+	 * and works submitted while a project is collecting are picked up after current collection 
+	 * finishes
+	 */
+	private void dispatch() {
+		synchronized (pendingWorks) {
+			for (Iterator<Map.Entry<Long, List<CollectingWork>>> it = pendingWorks.entrySet().iterator(); it.hasNext();) {
+				if (collectingProgresses.size() >= serverConfig.getCommitInfoCollectConcurrency())
+					break;
+				Map.Entry<Long, List<CollectingWork>> entry = it.next();
+				Long projectId = entry.getKey();
+				if (!collectingProgresses.containsKey(projectId)) {
+					it.remove();
+					List<CollectingWork> works = entry.getValue();
+					CollectingProgress progress = new CollectingProgress();
+					collectingProgresses.put(projectId, progress);
+					workExecutor.execute(new PrioritizedRunnable(PRIORITY) {
 
-			@Override
-			public void doWorks(Collection<Prioritized> works) {
-				sessionManager.run(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								sessionManager.run(new Runnable() {
 
-					@Override
-					public void run() {
-						Project project = projectManager.load(projectId);
-						List<CollectingWork> collectingWorks = new ArrayList<>();
-						for (Object work: works)
-							collectingWorks.add((CollectingWork)work);
-						Collections.sort(collectingWorks, new CommitTimeComparator());
+									@Override
+									public void run() {
+										Project project = projectManager.load(projectId);
+										Collections.sort(works, new CommitTimeComparator());
+										for (CollectingWork work: works) 
+											doCollect(project, work.getCommit().copy(), work.getRefName(), progress);
+									}
+									
+								});
+							} catch (Exception e) {
+								logger.error("Error collecting commit information", e);
+							} finally {
+								synchronized (pendingWorks) {
+									collectingProgresses.remove(projectId);
+								}
+								dispatch();
+							}
+						}
 						
-						for (CollectingWork work: collectingWorks) 
-							doCollect(project, work.getCommit().copy(), work.getRefName());
-					}
-					
-				});
+					});
+				}
 			}
-			
-		};		
+		}
+	}
+	
+	@Override
+	public CollectingProgress getCollectingProgress(Project project) {
+		return collectingProgresses.get(project.getId());
+	}
+	
+	@Override
+	public int getCollectingCount() {
+		return collectingProgresses.size();
+	}
+
+	@Override
+	public int getPendingCollectingCount() {
+		synchronized (pendingWorks) {
+			int count = 0;
+			for (Long projectId: pendingWorks.keySet()) {
+				if (!collectingProgresses.containsKey(projectId))
+					count++;
+			}
+			return count;
+		}
 	}
 	
 	private void collect(Project project) {
@@ -1128,10 +1412,7 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 			throw new RuntimeException(e);
 		}
 
-		Collections.sort(works, new CommitTimeComparator());
-		
-		for (CollectingWork work: works)
-			batchWorkManager.submit(getBatchWorker(project.getId()), work);
+		submit(project.getId(), works);
 	}
 
 	@Sessional
@@ -1153,7 +1434,7 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 				RevCommit commit = GitUtils.parseCommit(revWalk, event.getNewCommitId());
 				if (commit != null) {
 					CollectingWork work = new CollectingWork(PRIORITY, commit, event.getRefName());
-					batchWorkManager.submit(getBatchWorker(event.getProject().getId()), work);
+					submit(event.getProject().getId(), Collections.singletonList(work));
 				}
 			}
 		}
@@ -1318,37 +1599,17 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 	public List<GitContributor> getTopContributors(Project project, int top, GitContribution.Type type, 
 			int fromDay, int toDay) {
 		Environment env = getEnv(project.getId().toString());
-		Store defaultStore = getStore(env, DEFAULT_STORE);
 		Store indexToUserStore = getStore(env, INDEX_TO_USER_STORE);
-		Store dailyContributionsStore = getStore(env, DAILY_CONTRIBUTIONS_STORE);
+		Map<TimeBucket, Store> contributionsStores = new EnumMap<>(TimeBucket.class);
+		for (Map.Entry<TimeBucket, String> entry: CONTRIBUTIONS_STORES.entrySet())
+			contributionsStores.put(entry.getKey(), getStore(env, entry.getValue()));
 		
 		return env.computeInReadonlyTransaction(new TransactionalComputable<List<GitContributor>>() {
 
 			@Override
 			public List<GitContributor> compute(Transaction txn) {
-				Map<Integer, GitContribution> overallContributions = 
-						deserializeContributions(readBytes(defaultStore, txn, OVERALL_CONTRIBUTIONS_KEY));
-				Map<Integer, GitContribution> totalContributions = new HashMap<>();
-				for (int dayValue: overallContributions.keySet()) {
-					if (dayValue >= fromDay && dayValue <= toDay) {
-						ByteIterable dayKey = new IntByteIterable(dayValue);
-						Map<Integer, GitContribution> contributionsOnDay = 
-								deserializeContributions(readBytes(dailyContributionsStore, txn, dayKey));
-						for (Map.Entry<Integer, GitContribution> entry: contributionsOnDay.entrySet()) {
-							Integer userIndex = entry.getKey();
-							GitContribution totalContribution = totalContributions.get(userIndex);
-							if (totalContribution == null) {
-								totalContribution = entry.getValue();
-							} else {
-								totalContribution = new GitContribution(
-										totalContribution.getCommits() + entry.getValue().getCommits(), 
-										totalContribution.getAdditions() + entry.getValue().getAdditions(), 
-										totalContribution.getDeletions() + entry.getValue().getDeletions());
-							}
-							totalContributions.put(userIndex, totalContribution);
-						}
-					}
-				}
+				Map<Integer, GitContribution> totalContributions = 
+						getContributions(contributionsStores, txn, fromDay, toDay);
 				
 				List<Integer> topUserIndexes = new ArrayList<>(totalContributions.keySet());
 				Collections.sort(topUserIndexes, new Comparator<Integer>() {
@@ -1372,13 +1633,15 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 				
 				Map<Integer, Map<Day, Integer>> userContributions = new HashMap<>();
 				
-				for (int dayValue: overallContributions.keySet()) {
-					if (dayValue >= fromDay && dayValue <= toDay) {
-						ByteIterable dayKey = new IntByteIterable(dayValue);
-						Map<Integer, GitContribution> contributionsOnDay = 
-								deserializeContributions(readBytes(dailyContributionsStore, txn, dayKey));
-						Day day = new Day(dayValue);
-						for (Map.Entry<Integer, GitContribution> entry: contributionsOnDay.entrySet()) {
+				// Read rollups of the bucket used to chart the range, instead of every day in the range 
+				TimeBucket bucket = TimeBucket.forRange(fromDay, toDay);
+				Store store = contributionsStores.get(bucket);
+				for (int bucketKey: bucket.getKeys(fromDay, toDay)) {
+					byte[] bytes = readBytes(store, txn, new IntByteIterable(bucketKey));
+					if (bytes != null) {
+						Map<Integer, GitContribution> contributionsInBucket = deserializeContributions(bytes);
+						Day day = new Day(bucketKey);
+						for (Map.Entry<Integer, GitContribution> entry: contributionsInBucket.entrySet()) {
 							Integer userIndex = entry.getKey();
 							if (topUserIndexSet.contains(userIndex)) {
 								Map<Day, Integer> contributionsByUser = userContributions.get(userIndex);
@@ -1414,6 +1677,60 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		});
 	}
 
+	/*
+	 * Sum up contributions of users in specified day range by reading monthly, weekly and 
+	 * daily rollups covering the range 
+	 */
+	private Map<Integer, GitContribution> getContributions(Map<TimeBucket, Store> contributionsStores, 
+			Transaction txn, int fromDay, int toDay) {
+		Map<Integer, GitContribution> totalContributions = new HashMap<>();
+		for (Pair<TimeBucket, Integer> bucket: TimeBucket.split(fromDay, toDay)) {
+			Store store = contributionsStores.get(bucket.getFirst());
+			ByteIterable bucketKey = new IntByteIterable(bucket.getSecond());
+			for (Map.Entry<Integer, GitContribution> entry: 
+					deserializeContributions(readBytes(store, txn, bucketKey)).entrySet()) {
+				Integer userIndex = entry.getKey();
+				GitContribution totalContribution = totalContributions.get(userIndex);
+				if (totalContribution == null) {
+					totalContribution = entry.getValue();
+				} else {
+					totalContribution = new GitContribution(
+							totalContribution.getCommits() + entry.getValue().getCommits(), 
+							totalContribution.getAdditions() + entry.getValue().getAdditions(), 
+							totalContribution.getDeletions() + entry.getValue().getDeletions());
+				}
+				totalContributions.put(userIndex, totalContribution);
+			}
+		}
+		return totalContributions;
+	}
+	
+	@Sessional
+	@Override
+	public Map<NameAndEmail, GitContribution> getContributions(Project project, int fromDay, int toDay) {
+		Environment env = getEnv(project.getId().toString());
+		Store indexToUserStore = getStore(env, INDEX_TO_USER_STORE);
+		Map<TimeBucket, Store> contributionsStores = new EnumMap<>(TimeBucket.class);
+		for (Map.Entry<TimeBucket, String> entry: CONTRIBUTIONS_STORES.entrySet())
+			contributionsStores.put(entry.getKey(), getStore(env, entry.getValue()));
+		
+		return env.computeInReadonlyTransaction(new TransactionalComputable<Map<NameAndEmail, GitContribution>>() {
+
+			@Override
+			public Map<NameAndEmail, GitContribution> compute(Transaction txn) {
+				Map<NameAndEmail, GitContribution> contributions = new HashMap<>();
+				for (Map.Entry<Integer, GitContribution> entry: 
+						getContributions(contributionsStores, txn, fromDay, toDay).entrySet()) {
+					byte[] userBytes = readBytes(indexToUserStore, txn, new IntByteIterable(entry.getKey()));
+					if (userBytes != null)
+						contributions.put((NameAndEmail) SerializationUtils.deserialize(userBytes), entry.getValue());
+				}
+				return contributions;
+			}
+			
+		});
+	}
+	
 	private Map<Integer, GitContribution> deserializeContributions(byte[] bytes) {
 		if (bytes != null) {
 			Map<Integer, GitContribution> contributions = new HashMap<>();
@@ -1486,44 +1803,63 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		if (users.size() <= 1)
 			return;
 		
-		Map<User, Long> commitCounts = new HashMap<>();
-		for (User user: users)
-			commitCounts.put(user, 0L);
+		Environment env = getEnv(project.getId().toString());
+		Store emailToUsersStore = getStore(env, EMAIL_TO_USERS_STORE);
+		Store pathToIndexStore = getStore(env, PATH_TO_INDEX_STORE);
+		Store commitCountsStore = getStore(env, COMMIT_COUNTS_STORE);
+		
+		Map<User, Long> commitCounts = env.computeInReadonlyTransaction(new TransactionalComputable<Map<User, Long>>() {
 
-		int count = 0;
-		for (String path: files) {
-			int addedCommitCount = addCommitCounts(project, commitCounts, path);
-			while (addedCommitCount == 0) {
-				if (path.contains("/")) {
-					path = StringUtils.substringBeforeLast(path, "/");
-					addedCommitCount = addCommitCounts(project, commitCounts, path);
-				} else {
-					addCommitCounts(project, commitCounts, "");
-					break;
+			@Override
+			public Map<User, Long> compute(Transaction txn) {
+				Map<User, int[]> userIndexes = new HashMap<>();
+				Map<User, Long> counts = new HashMap<>();
+				for (User user: users) {
+					if (user.getEmail() != null)
+						userIndexes.put(user, readUserIndexes(emailToUsersStore, txn, user.getEmail()));
+					else
+						userIndexes.put(user, new int[0]);
+					counts.put(user, 0L);
+				}
+				
+				int count = 0;
+				for (String path: files) {
+					int addedCommitCount = addCommitCounts(counts, userIndexes, txn, 
+							pathToIndexStore, commitCountsStore, path);
+					while (addedCommitCount == 0) {
+						if (path.contains("/")) {
+							path = StringUtils.substringBeforeLast(path, "/");
+							addedCommitCount = addCommitCounts(counts, userIndexes, txn, 
+									pathToIndexStore, commitCountsStore, path);
+						} else {
+							addCommitCounts(counts, userIndexes, txn, pathToIndexStore, commitCountsStore, "");
+							break;
+						}
+					}
+					if (++count >= MAX_COMMIT_FILES)
+						break;
 				}
+				return counts;
 			}
-			if (++count >= MAX_COMMIT_FILES)
-				break;
-		}
+			
+		});
 
 		Collections.sort(users, new Comparator<User>() {
 
 			@Override
 			public int compare(User o1, User o2) {
-				if (commitCounts.get(o1) < commitCounts.get(o2))
-					return 1;
-				else
-					return -1;
+				return commitCounts.get(o2).compareTo(commitCounts.get(o1));
 			}
 			
 		});
 	}
 	
-	private int addCommitCounts(Project project, Map<User, Long> commitCounts, String path) {
+	private int addCommitCounts(Map<User, Long> commitCounts, Map<User, int[]> userIndexes, Transaction txn, 
+			Store pathToIndexStore, Store commitCountsStore, String path) {
 		int addedCommitCount = 0;
 		for (Map.Entry<User, Long> entry: commitCounts.entrySet()) {
-			User user = entry.getKey();
-			int commitCount = getCommitCount(project, user, path);
+			int commitCount = getCommitCount(pathToIndexStore, commitCountsStore, txn, 
+					userIndexes.get(entry.getKey()), path);
 			entry.setValue(entry.getValue() + commitCount);
 			addedCommitCount += commitCount;
 		}
@@ -0,0 +1,283 @@
+package io.onedev.server.infomanager;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.quartz.ScheduleBuilder;
+import org.quartz.SimpleScheduleBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.util.ServerConfig;
+import io.onedev.server.util.schedule.SchedulableTask;
+import io.onedev.server.util.schedule.TaskScheduler;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.Transaction;
+
+/**
+ * Environments are handed out as proxies tracking usage of the underlying environment. An
+ * underlying environment is only closed when no call is running against it, no transaction
+ * begun from it is still open, and it has not been accessed for a grace period.
+ * <p>
+ * Transactions are handed out as is, since stores only accept transactions of the underlying
+ * implementation. Stores are not tracked and are bound to the underlying environment they are
+ * opened from, so they should be obtained right before being used and never be kept across
+ * operations. Otherwise they might refer to a closed environment if the environment is
+ * evicted and reopened in between.
+ */
+@Singleton
+public class DefaultEnvironmentPool implements EnvironmentPool, SchedulableTask {
+
+	private static final Logger logger = LoggerFactory.getLogger(DefaultEnvironmentPool.class);
+
+	private static final long IDLE_TIMEOUT = 600000L;
+
+	private static final long EVICTION_GRACE_PERIOD = 60000L;
+
+	private static final int IDLE_CHECK_INTERVAL = 60;
+
+	private final ServerConfig serverConfig;
+
+	private final TaskScheduler taskScheduler;
+
+	private final Map<File, PooledEnv> envs = new ConcurrentHashMap<>();
+
+	private final AtomicLong hitCount = new AtomicLong(0);
+
+	private final AtomicLong missCount = new AtomicLong(0);
+
+	private final AtomicLong evictionCount = new AtomicLong(0);
+
+	private String taskId;
+
+	@Inject
+	public DefaultEnvironmentPool(ServerConfig serverConfig, TaskScheduler taskScheduler) {
+		this.serverConfig = serverConfig;
+		this.taskScheduler = taskScheduler;
+	}
+
+	@Override
+	public Environment getEnv(File envDir, Supplier<Environment> opener) {
+		PooledEnv pooledEnv = envs.get(envDir);
+		if (pooledEnv == null) synchronized (envs) {
+			pooledEnv = envs.get(envDir);
+			if (pooledEnv == null) {
+				pooledEnv = new PooledEnv(opener);
+				envs.put(envDir, pooledEnv);
+			}
+		}
+		return pooledEnv.getProxy();
+	}
+
+	@Override
+	public void removeEnv(File envDir) {
+		synchronized (envs) {
+			PooledEnv pooledEnv = envs.remove(envDir);
+			if (pooledEnv != null)
+				pooledEnv.close();
+		}
+	}
+
+	@Override
+	public int getOpenCount() {
+		int count = 0;
+		for (PooledEnv pooledEnv: envs.values()) {
+			if (pooledEnv.isOpen())
+				count++;
+		}
+		return count;
+	}
+
+	@Override
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	@Override
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/*
+	 * Close least recently used environments exceeding pool capacity. Environments accessed
+	 * within the grace period are never closed, so pool may temporarily exceed its capacity
+	 */
+	private void evict() {
+		synchronized (envs) {
+			List<PooledEnv> openEnvs = new ArrayList<>();
+			for (PooledEnv pooledEnv: envs.values()) {
+				if (pooledEnv.isOpen())
+					openEnvs.add(pooledEnv);
+			}
+			int excess = openEnvs.size() - serverConfig.getInfoEnvPoolSize();
+			if (excess > 0) {
+				openEnvs.sort(Comparator.comparingLong(PooledEnv::getLastAccess));
+				long idleSince = System.currentTimeMillis() - EVICTION_GRACE_PERIOD;
+				for (PooledEnv pooledEnv: openEnvs) {
+					if (excess == 0)
+						break;
+					if (pooledEnv.closeIfIdle(idleSince)) {
+						evictionCount.incrementAndGet();
+						excess--;
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void execute() {
+		try {
+			long idleSince = System.currentTimeMillis() - IDLE_TIMEOUT;
+			for (PooledEnv pooledEnv: envs.values()) {
+				if (pooledEnv.closeIfIdle(idleSince))
+					evictionCount.incrementAndGet();
+			}
+		} catch (Exception e) {
+			logger.error("Error closing idle environments", e);
+		}
+	}
+
+	@Override
+	public ScheduleBuilder<?> getScheduleBuilder() {
+		return SimpleScheduleBuilder.repeatSecondlyForever(IDLE_CHECK_INTERVAL);
+	}
+
+	@Listen
+	public void on(SystemStarted event) {
+		taskId = taskScheduler.schedule(this);
+	}
+
+	@Listen
+	public void on(SystemStopping event) {
+		if (taskId != null)
+			taskScheduler.unschedule(taskId);
+		synchronized (envs) {
+			for (PooledEnv pooledEnv: envs.values())
+				pooledEnv.close();
+			envs.clear();
+		}
+	}
+
+	private class PooledEnv implements InvocationHandler {
+
+		private final Supplier<Environment> opener;
+
+		private final Environment proxy;
+
+		private Environment env;
+
+		private int running;
+
+		// Transactions begun explicitly, which pin the environment until they are finished
+		private final List<Transaction> transactions = new ArrayList<>();
+
+		private volatile long lastAccess;
+
+		PooledEnv(Supplier<Environment> opener) {
+			this.opener = opener;
+			proxy = (Environment) Proxy.newProxyInstance(Environment.class.getClassLoader(),
+					new Class<?>[] {Environment.class}, this);
+		}
+
+		Environment getProxy() {
+			return proxy;
+		}
+
+		long getLastAccess() {
+			return lastAccess;
+		}
+
+		synchronized boolean isOpen() {
+			return env != null;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getDeclaringClass() == Object.class) {
+				switch (method.getName()) {
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				default:
+					return "Pooled environment";
+				}
+			}
+
+			boolean opened = false;
+			Environment env;
+			synchronized (this) {
+				if (this.env == null) {
+					missCount.incrementAndGet();
+					this.env = opener.get();
+					opened = true;
+				} else {
+					hitCount.incrementAndGet();
+				}
+				env = this.env;
+				running++;
+				lastAccess = System.currentTimeMillis();
+			}
+			if (opened)
+				evict();
+			try {
+				Object result = method.invoke(env, args);
+				if (result instanceof Transaction) {
+					synchronized (this) {
+						transactions.add((Transaction) result);
+					}
+				}
+				return result;
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			} finally {
+				synchronized (this) {
+					running--;
+					lastAccess = System.currentTimeMillis();
+				}
+			}
+		}
+
+		synchronized boolean closeIfIdle(long idleSince) {
+			transactions.removeIf(Transaction::isFinished);
+			if (env != null && running == 0 && transactions.isEmpty() && lastAccess < idleSince) {
+				close();
+				return true;
+			} else {
+				return false;
+			}
+		}
+
+		synchronized void close() {
+			Environment env = this.env;
+			this.env = null;
+			transactions.clear();
+			if (env != null)
+				env.close();
+		}
+
+	}
+
+}
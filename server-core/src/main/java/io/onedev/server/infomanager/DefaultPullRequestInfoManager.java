@@ -77,7 +77,8 @@ public class DefaultPullRequestInfoManager extends AbstractEnvironmentManager
 	@Inject
 	public DefaultPullRequestInfoManager(TransactionManager transactionManager, ProjectManager projectManager, 
 			StorageManager storageManager, PullRequestUpdateManager pullRequestUpdateManager, 
-			BatchWorkManager batchWorkManager, SessionManager sessionManager) {
+			BatchWorkManager batchWorkManager, SessionManager sessionManager, EnvironmentPool envPool) {
+		super(envPool);
 		this.projectManager = projectManager;
 		this.storageManager = storageManager;
 		this.pullRequestUpdateManager = pullRequestUpdateManager;
@@ -51,7 +51,8 @@ public class DefaultUserInfoManager extends AbstractEnvironmentManager implement
 	private final StorageManager storageManager;
 	
 	@Inject
-	public DefaultUserInfoManager(StorageManager storageManager) {
+	public DefaultUserInfoManager(StorageManager storageManager, EnvironmentPool envPool) {
+		super(envPool);
 		this.storageManager = storageManager;
 	}
 	
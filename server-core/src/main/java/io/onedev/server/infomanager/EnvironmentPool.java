@@ -0,0 +1,60 @@
+package io.onedev.server.infomanager;
+
+import java.io.File;
+import java.util.function.Supplier;
+
+import jetbrains.exodus.env.Environment;
+
+/**
+ * Pool of Xodus environments shared by all info managers. Number of environments kept open
+ * is bounded, and environments not used for a while are closed and transparently reopened
+ * when accessed again.
+ */
+public interface EnvironmentPool {
+
+	/**
+	 * Get environment of specified directory
+	 *
+	 * @param envDir
+	 * 			directory of the environment
+	 * @param opener
+	 * 			opener to open the environment if it is not open yet or has been closed
+	 * 			by the pool
+	 * @return
+	 * 			environment handle which opens the underlying environment on demand. The
+	 * 			underlying environment is kept open while transactions begun from the handle
+	 * 			are not finished. Stores obtained from the handle should not be kept across
+	 * 			operations
+	 */
+	Environment getEnv(File envDir, Supplier<Environment> opener);
+
+	/**
+	 * Close environment of specified directory and remove it from the pool
+	 */
+	void removeEnv(File envDir);
+
+	/**
+	 * @return
+	 * 			number of environments currently open
+	 */
+	int getOpenCount();
+
+	/**
+	 * @return
+	 * 			number of environment accesses served by an already open environment
+	 */
+	long getHitCount();
+
+	/**
+	 * @return
+	 * 			number of environment accesses requiring the environment to be opened
+	 */
+	long getMissCount();
+
+	/**
+	 * @return
+	 * 			number of environments closed due to idle or pool capacity
+	 */
+	long getEvictionCount();
+
+}
@@ -0,0 +1,144 @@
+package io.onedev.server.infomanager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.DateTimeConstants;
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+
+import io.onedev.server.util.Day;
+import io.onedev.server.util.Pair;
+
+/**
+ * Time bucket of commit statistics. A bucket is identified by value of its first day,
+ * that is, the day itself, Monday of the week, or first day of the month.
+ */
+public enum TimeBucket {
+
+	DAY {
+
+		@Override
+		LocalDate getStart(LocalDate date) {
+			return date;
+		}
+
+		@Override
+		LocalDate getNext(LocalDate start) {
+			return start.plusDays(1);
+		}
+
+	},
+	WEEK {
+
+		@Override
+		LocalDate getStart(LocalDate date) {
+			return date.withDayOfWeek(DateTimeConstants.MONDAY);
+		}
+
+		@Override
+		LocalDate getNext(LocalDate start) {
+			return start.plusWeeks(1);
+		}
+
+	},
+	MONTH {
+
+		@Override
+		LocalDate getStart(LocalDate date) {
+			return date.withDayOfMonth(1);
+		}
+
+		@Override
+		LocalDate getNext(LocalDate start) {
+			return start.plusMonths(1);
+		}
+
+	};
+
+	private static final int MAX_DAY_BUCKETS = 366;
+	
+	private static final int MAX_WEEK_BUCKETS = 260;
+	
+	abstract LocalDate getStart(LocalDate date);
+
+	abstract LocalDate getNext(LocalDate start);
+
+	/**
+	 * Get bucket containing specified day
+	 *
+	 * @param dayValue
+	 * 			value of the day as returned by {@link Day#getValue()}
+	 * @return
+	 * 			value of first day of the bucket
+	 */
+	public int getKey(int dayValue) {
+		return toDayValue(getStart(toLocalDate(dayValue)));
+	}
+
+	/**
+	 * Get keys of buckets overlapping specified day range
+	 *
+	 * @return
+	 * 			value of first day of each bucket, in ascending order
+	 */
+	public List<Integer> getKeys(int fromDay, int toDay) {
+		List<Integer> keys = new ArrayList<>();
+		LocalDate end = toLocalDate(toDay);
+		for (LocalDate current = getStart(toLocalDate(fromDay)); !current.isAfter(end); current = getNext(current))
+			keys.add(toDayValue(current));
+		return keys;
+	}
+
+	/**
+	 * Get finest bucket to chart statistics of specified day range, while keeping number of
+	 * data points manageable
+	 */
+	public static TimeBucket forRange(int fromDay, int toDay) {
+		int days = Days.daysBetween(toLocalDate(fromDay), toLocalDate(toDay)).getDays() + 1;
+		if (days <= MAX_DAY_BUCKETS)
+			return DAY;
+		else if (days <= MAX_WEEK_BUCKETS * 7)
+			return WEEK;
+		else
+			return MONTH;
+	}
+
+	private static LocalDate toLocalDate(int dayValue) {
+		Day day = new Day(dayValue);
+		return new LocalDate(day.getYear(), day.getMonthOfYear()+1, day.getDayOfMonth());
+	}
+
+	private static int toDayValue(LocalDate date) {
+		return new Day(date.getYear(), date.getMonthOfYear()-1, date.getDayOfMonth()).getValue();
+	}
+
+	/**
+	 * Split specified day range into least number of buckets practically. Whole months are
+	 * covered by month buckets, and remaining days by week buckets not crossing month
+	 * boundary and day buckets, so that number of buckets only grows with number of
+	 * months in the range
+	 *
+	 * @return
+	 * 			list of bucket and value of first day of the bucket
+	 */
+	static List<Pair<TimeBucket, Integer>> split(int fromDay, int toDay) {
+		List<Pair<TimeBucket, Integer>> buckets = new ArrayList<>();
+		LocalDate current = toLocalDate(fromDay);
+		LocalDate end = toLocalDate(toDay).plusDays(1);
+		while (current.isBefore(end)) {
+			TimeBucket bucket = DAY;
+			if (current.getDayOfMonth() == 1 && !MONTH.getNext(current).isAfter(end)) {
+				bucket = MONTH;
+			} else if (current.getDayOfWeek() == DateTimeConstants.MONDAY) {
+				LocalDate next = WEEK.getNext(current);
+				if (!next.isAfter(end) && next.minusDays(1).getMonthOfYear() == current.getMonthOfYear())
+					bucket = WEEK;
+			}
+			buckets.add(new Pair<>(bucket, toDayValue(current)));
+			current = bucket.getNext(current);
+		}
+		return buckets;
+	}
+
+}
@@ -31,7 +31,6 @@ import io.onedev.commons.launcher.loader.ManagedSerializedForm;
 import io.onedev.commons.utils.ExceptionUtils;
 import io.onedev.commons.utils.FileUtils;
 import io.onedev.commons.utils.StringUtils;
-import io.onedev.commons.utils.ZipUtils;
 import io.onedev.server.OneDev;
 import io.onedev.server.entitymanager.RoleManager;
 import io.onedev.server.entitymanager.SettingManager;
@@ -279,9 +278,8 @@ public class DefaultDataManager implements DataManager, Serializable {
 						File backupDir = new File(Bootstrap.getSiteDir(), Upgrade.DB_BACKUP_DIR);
 						FileUtils.createDir(backupDir);
 						persistManager.exportData(tempDir);
-						File backupFile = new File(backupDir, 
-								DateTimeFormat.forPattern(Upgrade.BACKUP_DATETIME_FORMAT).print(new DateTime()) + ".zip");
-						ZipUtils.zip(tempDir, backupFile);
+						String timestamp = DateTimeFormat.forPattern(Upgrade.BACKUP_DATETIME_FORMAT).print(new DateTime());
+						IncrementalBackup.backup(tempDir, backupDir, timestamp, backupSetting.getMaxIncrementalBackups());
 					} catch (Exception e) {
 						notifyBackupError(e);
 						throw ExceptionUtils.unchecked(e);
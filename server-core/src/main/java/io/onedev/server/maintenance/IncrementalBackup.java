@@ -0,0 +1,662 @@
+package io.onedev.server.maintenance;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.annotation.Nullable;
+
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.XMLWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hashing;
+
+import io.onedev.commons.utils.ExceptionUtils;
+import io.onedev.commons.utils.ExplicitException;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.ZipUtils;
+import io.onedev.server.migration.DataMigrator;
+import io.onedev.server.migration.MigrationHelper;
+import io.onedev.server.migration.VersionedXmlDoc;
+
+/**
+ * Incremental database backup. A full backup is zip of the exported data directory as
+ * usual. An incremental backup only contains rows added or changed since previous backup
+ * in the same data file format, plus ids of deleted rows of each table, and refers to
+ * previous backup as its base.
+ * <p>
+ * To detect changed rows without keeping anything in memory, a digest file recording id
+ * and hash of all rows ordered by table and id is kept alongside the latest backup, and
+ * is compared with rows of new export table by table. Rows are exported in id order, so
+ * this is a simple merge.
+ */
+public class IncrementalBackup {
+
+	private static final Logger logger = LoggerFactory.getLogger(IncrementalBackup.class);
+
+	private static final String MANIFEST_FILE = "backup.properties";
+
+	private static final String PROP_BASE = "base";
+
+	private static final String PROP_DEPTH = "depth";
+
+	private static final String DELETED_FILE_SUFFIX = "s.deleted";
+
+	private static final String DIGEST_FILE_SUFFIX = ".digest";
+
+	private static final int BATCH_SIZE = 1000;
+
+	private static final Pattern DATA_FILE_PATTERN = Pattern.compile("(\\w+)s\\.xml(\\.(\\d+))?");
+
+	/**
+	 * Create backup file from exported data directory. A full backup will be created if
+	 * there is no digest of previous backup, if data version changes, or if specified
+	 * number of incremental backups have already been created after last full backup.
+	 *
+	 * @param exportDir
+	 * 			directory containing exported data
+	 * @param backupDir
+	 * 			directory to put backup file and digest file
+	 * @param timestamp
+	 * 			timestamp of the backup, used as name of backup file
+	 * @param maxIncrements
+	 * 			max number of incremental backups after a full backup, use 0 to always
+	 * 			create full backup
+	 * @return
+	 * 			created backup file
+	 */
+	public static File backup(File exportDir, File backupDir, String timestamp, int maxIncrements) {
+		return backup(exportDir, backupDir, timestamp, maxIncrements, MigrationHelper.getVersion(DataMigrator.class));
+	}
+
+	static File backup(File exportDir, File backupDir, String timestamp, int maxIncrements, String dataVersion) {
+		File backupFile = new File(backupDir, timestamp + ".zip");
+		File digestFile = new File(backupDir, timestamp + DIGEST_FILE_SUFFIX);
+		File tempDigestFile = new File(backupDir, timestamp + DIGEST_FILE_SUFFIX + ".tmp");
+
+		DigestReader baseDigest = null;
+		File latestDigestFile = getLatestDigestFile(backupDir);
+		if (latestDigestFile != null && maxIncrements > 0) {
+			baseDigest = new DigestReader(latestDigestFile);
+			if (!baseDigest.dataVersion.equals(dataVersion) || baseDigest.depth >= maxIncrements
+					|| !new File(backupDir, baseDigest.backupName).exists()) {
+				baseDigest.close();
+				baseDigest = null;
+			}
+		}
+
+		File incrementDir = baseDigest != null? FileUtils.createTempDir("increment"): null;
+		try {
+			int depth = baseDigest != null? baseDigest.depth + 1: 0;
+			try (DigestWriter digestWriter = new DigestWriter(tempDigestFile, dataVersion, backupFile.getName(), depth)) {
+				Set<String> tables = new TreeSet<>(getTables(exportDir));
+				for (String table: tables) {
+					if (baseDigest != null) {
+						while (baseDigest.table != null && baseDigest.table.compareTo(table) < 0) {
+							// table no longer has any rows
+							try (DeletedWriter deletedWriter = new DeletedWriter(incrementDir, baseDigest.table)) {
+								for (; baseDigest.id != -1; baseDigest.nextEntry())
+									deletedWriter.write(baseDigest.id);
+							}
+							baseDigest.nextTable();
+						}
+					}
+					diffTable(exportDir, table, baseDigest, digestWriter, incrementDir);
+				}
+				if (baseDigest != null) {
+					for (; baseDigest.table != null; baseDigest.nextTable()) {
+						try (DeletedWriter deletedWriter = new DeletedWriter(incrementDir, baseDigest.table)) {
+							for (; baseDigest.id != -1; baseDigest.nextEntry())
+								deletedWriter.write(baseDigest.id);
+						}
+					}
+				}
+			}
+
+			if (incrementDir != null) {
+				Properties manifest = new Properties();
+				manifest.setProperty(PROP_BASE, baseDigest.backupName);
+				manifest.setProperty(PROP_DEPTH, String.valueOf(depth));
+				try (OutputStream os = new FileOutputStream(new File(incrementDir, MANIFEST_FILE))) {
+					manifest.store(os, null);
+				}
+				ZipUtils.zip(incrementDir, backupFile);
+				logger.info("Created incremental database backup (base: {}, depth: {})", baseDigest.backupName, depth);
+			} else {
+				ZipUtils.zip(exportDir, backupFile);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			if (baseDigest != null)
+				baseDigest.close();
+			if (incrementDir != null)
+				FileUtils.deleteDir(incrementDir);
+		}
+
+		// Only digest of latest backup is needed. Also clean up temp digest files left by 
+		// failed backups
+		for (File file: backupDir.listFiles()) {
+			if (file.getName().endsWith(DIGEST_FILE_SUFFIX) 
+					|| file.getName().endsWith(DIGEST_FILE_SUFFIX + ".tmp") && !file.equals(tempDigestFile)) {
+				FileUtils.deleteFile(file);
+			}
+		}
+		if (!tempDigestFile.renameTo(digestFile))
+			throw new RuntimeException("Unable to rename file: " + tempDigestFile.getAbsolutePath());
+
+		return backupFile;
+	}
+
+	private static void diffTable(File exportDir, String table, @Nullable DigestReader baseDigest,
+			DigestWriter digestWriter, @Nullable File incrementDir) throws IOException {
+		boolean inBase = baseDigest != null && table.equals(baseDigest.table);
+		digestWriter.writeTable(table);
+		try (	DataFileWriter changedWriter = incrementDir != null? new DataFileWriter(incrementDir, table): null;
+				DeletedWriter deletedWriter = incrementDir != null? new DeletedWriter(incrementDir, table): null) {
+			for (File file: getDataFiles(exportDir, table)) {
+				VersionedXmlDoc.readElements(file, new Consumer<Element>() {
+
+					@Override
+					public void accept(Element element) {
+						long id = getId(element);
+						long hash = Hashing.murmur3_128().hashString(element.asXML(), StandardCharsets.UTF_8).asLong();
+						digestWriter.writeEntry(id, hash);
+						if (inBase) {
+							for (; baseDigest.id != -1 && baseDigest.id < id; baseDigest.nextEntry())
+								deletedWriter.write(baseDigest.id);
+							if (baseDigest.id == id) {
+								if (baseDigest.hash != hash)
+									changedWriter.write(element);
+								baseDigest.nextEntry();
+							} else {
+								changedWriter.write(element);
+							}
+						} else if (changedWriter != null) {
+							changedWriter.write(element);
+						}
+					}
+
+				});
+			}
+			if (inBase) {
+				for (; baseDigest.id != -1; baseDigest.nextEntry())
+					deletedWriter.write(baseDigest.id);
+				baseDigest.nextTable();
+			}
+		}
+		digestWriter.endTable();
+	}
+
+	/**
+	 * Restore data directory from specified backup file. If it is an incremental backup,
+	 * its base backups will be located in same directory and applied in order.
+	 *
+	 * @param backupFile
+	 * 			full or incremental backup file
+	 * @param dataDir
+	 * 			directory to restore data into
+	 */
+	public static void restore(File backupFile, File dataDir) {
+		List<File> chain = new ArrayList<>();
+		for (File file = backupFile; file != null;) {
+			chain.add(0, file);
+			Properties manifest = readManifest(file);
+			if (manifest != null) {
+				file = new File(file.getParentFile(), manifest.getProperty(PROP_BASE));
+				if (!file.exists())
+					throw new ExplicitException("Unable to find base backup file: " + file.getAbsolutePath());
+			} else {
+				file = null;
+			}
+		}
+
+		ZipUtils.unzip(chain.get(0), dataDir);
+		for (File increment: chain.subList(1, chain.size())) {
+			logger.info("Applying incremental backup {}...", increment.getName());
+			File incrementDir = FileUtils.createTempDir("increment");
+			try {
+				ZipUtils.unzip(increment, incrementDir);
+				applyIncrement(incrementDir, dataDir);
+			} finally {
+				FileUtils.deleteDir(incrementDir);
+			}
+		}
+	}
+
+	@Nullable
+	private static Properties readManifest(File backupFile) {
+		try (ZipFile zipFile = new ZipFile(backupFile)) {
+			ZipEntry entry = zipFile.getEntry(MANIFEST_FILE);
+			if (entry != null) {
+				Properties manifest = new Properties();
+				try (InputStream is = zipFile.getInputStream(entry)) {
+					manifest.load(is);
+				}
+				return manifest;
+			} else {
+				return null;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/*
+	 * Changed rows and deleted ids of a table in an increment are in id order, so they are
+	 * merged with rows of the table as streams
+	 */
+	private static void applyIncrement(File incrementDir, File dataDir) throws IOException {
+		Set<String> tables = new HashSet<>(getTables(incrementDir));
+		for (File file: incrementDir.listFiles()) {
+			if (file.getName().endsWith(DELETED_FILE_SUFFIX))
+				tables.add(file.getName().substring(0, file.getName().length() - DELETED_FILE_SUFFIX.length()));
+		}
+
+		for (String table: tables) {
+			File tableDir = FileUtils.createTempDir("table");
+			try {
+				try (	ChangedReader changedReader = new ChangedReader(getDataFiles(incrementDir, table));
+						DeletedReader deletedReader = new DeletedReader(new File(incrementDir, table + DELETED_FILE_SUFFIX));
+						DataFileWriter writer = new DataFileWriter(tableDir, table)) {
+					for (File file: getDataFiles(dataDir, table)) {
+						VersionedXmlDoc.readElements(file, new Consumer<Element>() {
+
+							@Override
+							public void accept(Element element) {
+								long id = getId(element);
+								for (; changedReader.id != -1 && changedReader.id < id; changedReader.nextEntry())
+									writer.write(changedReader.element);
+								while (deletedReader.id != -1 && deletedReader.id < id)
+									deletedReader.nextEntry();
+								if (changedReader.id == id) {
+									writer.write(changedReader.element);
+									changedReader.nextEntry();
+								} else if (deletedReader.id != id) {
+									writer.write(element);
+								}
+							}
+
+						});
+					}
+					for (; changedReader.id != -1; changedReader.nextEntry())
+						writer.write(changedReader.element);
+				}
+				for (File file: getDataFiles(dataDir, table))
+					FileUtils.deleteFile(file);
+				for (File file: tableDir.listFiles())
+					FileUtils.copyFile(file, new File(dataDir, file.getName()));
+			} finally {
+				FileUtils.deleteDir(tableDir);
+			}
+		}
+	}
+
+	private static long getId(Element element) {
+		return Long.parseLong(element.elementTextTrim("id"));
+	}
+
+	private static Set<String> getTables(File dir) {
+		Set<String> tables = new HashSet<>();
+		for (File file: dir.listFiles()) {
+			Matcher matcher = DATA_FILE_PATTERN.matcher(file.getName());
+			if (matcher.matches())
+				tables.add(matcher.group(1));
+		}
+		return tables;
+	}
+
+	/*
+	 * Get data files of specified table in batch order, so that rows are read in id order
+	 */
+	private static List<File> getDataFiles(File dir, String table) {
+		Map<Integer, File> dataFiles = new TreeMap<>();
+		for (File file: dir.listFiles()) {
+			Matcher matcher = DATA_FILE_PATTERN.matcher(file.getName());
+			if (matcher.matches() && matcher.group(1).equals(table))
+				dataFiles.put(matcher.group(3) != null? Integer.parseInt(matcher.group(3)): 1, file);
+		}
+		return new ArrayList<>(dataFiles.values());
+	}
+
+	@Nullable
+	private static File getLatestDigestFile(File backupDir) {
+		List<File> digestFiles = new ArrayList<>();
+		for (File file: backupDir.listFiles()) {
+			if (file.getName().endsWith(DIGEST_FILE_SUFFIX))
+				digestFiles.add(file);
+		}
+		return digestFiles.stream().max(Comparator.comparing(File::getName)).orElse(null);
+	}
+
+	private static class DigestReader implements Closeable {
+
+		private final DataInputStream is;
+
+		private final String dataVersion;
+
+		private final String backupName;
+
+		private final int depth;
+
+		private String table;
+
+		private long id;
+
+		private long hash;
+
+		DigestReader(File file) {
+			try {
+				is = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				dataVersion = is.readUTF();
+				backupName = is.readUTF();
+				depth = is.readInt();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			nextTable();
+		}
+
+		/*
+		 * Move to next table and its first entry. Table will be set to null if there are
+		 * no more tables
+		 */
+		void nextTable() {
+			try {
+				if (is.readBoolean()) {
+					table = is.readUTF();
+					nextEntry();
+				} else {
+					table = null;
+					id = -1;
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		/*
+		 * Move to next entry of current table. Id will be set to -1 if there are no more
+		 * entries in current table
+		 */
+		void nextEntry() {
+			try {
+				id = is.readLong();
+				if (id != -1)
+					hash = is.readLong();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public void close() {
+			try {
+				is.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+	}
+
+	private static class DigestWriter implements Closeable {
+
+		private final DataOutputStream os;
+
+		DigestWriter(File file, String dataVersion, String backupName, int depth) throws IOException {
+			os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			os.writeUTF(dataVersion);
+			os.writeUTF(backupName);
+			os.writeInt(depth);
+		}
+
+		void writeTable(String table) throws IOException {
+			os.writeBoolean(true);
+			os.writeUTF(table);
+		}
+
+		void writeEntry(long id, long hash) {
+			try {
+				os.writeLong(id);
+				os.writeLong(hash);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		void endTable() throws IOException {
+			os.writeLong(-1);
+		}
+
+		@Override
+		public void close() throws IOException {
+			os.writeBoolean(false);
+			os.close();
+		}
+
+	}
+
+	/*
+	 * Read changed rows of a table in an increment. Only rows of current data file are
+	 * loaded into memory, which is at most BATCH_SIZE rows
+	 */
+	private static class ChangedReader implements Closeable {
+
+		private final Iterator<File> files;
+
+		private final Deque<Element> elements = new ArrayDeque<>();
+
+		private Element element;
+
+		private long id;
+
+		ChangedReader(List<File> files) {
+			this.files = files.iterator();
+			nextEntry();
+		}
+
+		/*
+		 * Move to next row. Id will be set to -1 if there are no more rows
+		 */
+		void nextEntry() {
+			while (elements.isEmpty() && files.hasNext())
+				VersionedXmlDoc.readElements(files.next(), elements::add);
+			element = elements.poll();
+			id = element != null? getId(element): -1;
+		}
+
+		@Override
+		public void close() {
+			elements.clear();
+		}
+
+	}
+
+	/*
+	 * Read ids of deleted rows of a table written by DeletedWriter
+	 */
+	private static class DeletedReader implements Closeable {
+
+		private final BufferedReader reader;
+
+		private long id;
+
+		DeletedReader(File file) throws IOException {
+			if (file.exists()) {
+				reader = new BufferedReader(new InputStreamReader(
+						new FileInputStream(file), StandardCharsets.UTF_8));
+			} else {
+				reader = null;
+			}
+			nextEntry();
+		}
+
+		/*
+		 * Move to next id. Id will be set to -1 if there are no more ids
+		 */
+		void nextEntry() {
+			id = -1;
+			if (reader != null) {
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						if (line.trim().length() != 0) {
+							id = Long.parseLong(line.trim());
+							break;
+						}
+					}
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (reader != null)
+				reader.close();
+		}
+
+	}
+
+	/*
+	 * Write ids of deleted rows of a table, one per line. The file is only created when
+	 * there are deleted rows
+	 */
+	private static class DeletedWriter implements Closeable {
+
+		private final File file;
+
+		private Writer writer;
+
+		DeletedWriter(File dir, String table) {
+			file = new File(dir, table + DELETED_FILE_SUFFIX);
+		}
+
+		void write(long id) {
+			try {
+				if (writer == null)
+					writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+				writer.write(String.valueOf(id));
+				writer.write("\n");
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (writer != null)
+				writer.close();
+		}
+
+	}
+
+	/*
+	 * Write rows of a table into data files in the same layout as exported data, that is,
+	 * <table>s.xml, <table>s.xml.2, etc. with at most BATCH_SIZE rows in each file
+	 */
+	private static class DataFileWriter implements Closeable {
+
+		private final File dir;
+
+		private final String table;
+
+		private int count;
+
+		private OutputStream os;
+
+		private XMLWriter writer;
+
+		private Element listElement;
+
+		DataFileWriter(File dir, String table) {
+			this.dir = dir;
+			this.table = table;
+		}
+
+		void write(Element element) {
+			try {
+				if (count % BATCH_SIZE == 0) {
+					closeFile();
+					int batch = count / BATCH_SIZE;
+					String fileName = table + "s.xml";
+					if (batch != 0)
+						fileName += "." + (batch + 1);
+					os = new BufferedOutputStream(new FileOutputStream(new File(dir, fileName)));
+					OutputFormat format = new OutputFormat();
+					format.setIndent(true);
+					format.setNewlines(true);
+					format.setEncoding(StandardCharsets.UTF_8.name());
+					writer = new XMLWriter(os, format);
+					writer.startDocument();
+					listElement = DocumentHelper.createElement("list");
+					writer.writeOpen(listElement);
+				}
+				writer.write(element);
+				count++;
+			} catch (Exception e) {
+				throw ExceptionUtils.unchecked(e);
+			}
+		}
+
+		private void closeFile() throws Exception {
+			if (os != null) {
+				try {
+					writer.writeClose(listElement);
+					writer.endDocument();
+				} finally {
+					os.close();
+					os = null;
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				closeFile();
+			} catch (Exception e) {
+				throw ExceptionUtils.unchecked(e);
+			}
+		}
+
+	}
+
+}
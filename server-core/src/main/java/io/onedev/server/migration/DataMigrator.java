@@ -2332,4 +2332,21 @@ public class DataMigrator {
 		}
 	}
 	
+	// Forks now share code index of the fork root, clean up index written before sharing
+	private void migrate50(File dataDir, Stack<Integer> versions) {
+		for (File file: dataDir.listFiles()) {
+			if (file.getName().startsWith("Projects.xml")) {
+				VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
+				for (Element element: dom.getRootElement().elements()) {
+					if (element.element("forkedFrom") != null) {
+						String projectId = element.elementTextTrim("id");
+						File indexDir = new File(Bootstrap.installDir, "site/projects/" + projectId + "/index");
+						if (indexDir.exists())
+							FileUtils.cleanDir(indexDir);
+					}
+				}
+			}
+		}
+	}
+	
 }
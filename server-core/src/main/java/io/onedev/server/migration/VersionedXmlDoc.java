@@ -1,19 +1,24 @@
 package io.onedev.server.migration;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Externalizable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.io.StringReader;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import javax.annotation.Nullable;
 
@@ -27,6 +32,8 @@ import org.dom4j.Document;
 import org.dom4j.DocumentHelper;
 import org.dom4j.DocumentType;
 import org.dom4j.Element;
+import org.dom4j.ElementHandler;
+import org.dom4j.ElementPath;
 import org.dom4j.InvalidXPathException;
 import org.dom4j.Node;
 import org.dom4j.ProcessingInstruction;
@@ -421,6 +428,51 @@ public final class VersionedXmlDoc implements Document, Externalizable {
 		}
 	}
 
+	/**
+	 * Read child elements of root element of specified file one by one, without loading 
+	 * the whole file into memory. Each element is detached before passing to the consumer.
+	 * 
+	 * @param file
+	 * 			xml file to read
+	 * @param consumer
+	 * 			consumer of child elements of the root element
+	 */
+	public static void readElements(File file, Consumer<Element> consumer) {
+		SAXReader reader = new SAXReader();
+		reader.setDefaultHandler(new ElementHandler() {
+
+			@Override
+			public void onStart(ElementPath elementPath) {
+			}
+
+			@Override
+			public void onEnd(ElementPath elementPath) {
+				if (elementPath.size() == 2) {
+					Element element = elementPath.getCurrent();
+					element.detach();
+					consumer.accept(element);
+				}
+			}
+			
+		});
+		
+		// May contain some invalid characters, parse with 1.1 as in fromXML
+		byte[] xml10Declaration = "<?xml version=\"1.0\"".getBytes(StandardCharsets.UTF_8);
+		byte[] xml11Declaration = "<?xml version=\"1.1\"".getBytes(StandardCharsets.UTF_8);
+		try (PushbackInputStream is = new PushbackInputStream(
+				new BufferedInputStream(new FileInputStream(file)), xml10Declaration.length)) {
+			byte[] declaration = new byte[xml10Declaration.length];
+			int length = IOUtils.read(is, declaration);
+			if (length == declaration.length && Arrays.equals(declaration, xml10Declaration))
+				is.unread(xml11Declaration);
+			else if (length != 0)
+				is.unread(declaration, 0, length);
+			reader.read(is);
+		} catch (Exception e) {
+			throw ExceptionUtils.unchecked(e);
+		}
+	}
+	
 	public synchronized Document getWrapped() {
 		if (wrapped == null) {
 			wrapped = fromXML(Preconditions.checkNotNull(xml)).getWrapped();
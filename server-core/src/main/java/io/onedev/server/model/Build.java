@@ -988,7 +988,6 @@ public class Build extends AbstractEntity implements Referenceable {
 		CommitInfoManager commitInfoManager = OneDev.getInstance(CommitInfoManager.class);
 		Collection<ObjectId> descendants = commitInfoManager.getDescendants(
 				getProject(), Sets.newHashSet(getCommitId()));
-		descendants.add(getCommitId());
 	
 		Collection<String> branches = new ArrayList<>();
 		for (RefInfo ref: getProject().getBranchRefInfos()) {
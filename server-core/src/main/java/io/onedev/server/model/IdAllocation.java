@@ -0,0 +1,43 @@
+package io.onedev.server.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+/**
+ * Next id to be reserved for entities of a particular type. Rows of this table are only 
+ * accessed via JDBC by the id manager, and are mapped as an entity so that the table is 
+ * created, cleaned, backed up and restored together with other tables 
+ */
+@Entity
+@Table
+public class IdAllocation extends AbstractEntity {
+
+	private static final long serialVersionUID = 1L;
+	
+	public static final String PROP_ENTITY_NAME = "entityName";
+	
+	public static final String PROP_NEXT_ID = "nextId";
+	
+	@Column(nullable=false, unique=true)
+	private String entityName;
+	
+	private long nextId;
+
+	public String getEntityName() {
+		return entityName;
+	}
+
+	public void setEntityName(String entityName) {
+		this.entityName = entityName;
+	}
+
+	public long getNextId() {
+		return nextId;
+	}
+
+	public void setNextId(long nextId) {
+		this.nextId = nextId;
+	}
+
+}
@@ -89,10 +89,10 @@ import io.onedev.server.git.BlobIdentFilter;
 import io.onedev.server.git.GitUtils;
 import io.onedev.server.git.RefInfo;
 import io.onedev.server.git.Submodule;
-import io.onedev.server.git.command.BlameCommand;
 import io.onedev.server.git.command.ListChangedFilesCommand;
 import io.onedev.server.git.exception.NotFileException;
 import io.onedev.server.git.exception.ObjectNotFoundException;
+import io.onedev.server.infomanager.BlameInfoManager;
 import io.onedev.server.infomanager.CommitInfoManager;
 import io.onedev.server.model.Build.Status;
 import io.onedev.server.model.support.BranchProtection;
@@ -1272,14 +1272,10 @@ public class Project extends AbstractEntity {
 	}
 
 	public List<User> getAuthors(String filePath, ObjectId commitId, @Nullable LinearRange range) {
-		BlameCommand cmd = new BlameCommand(getGitDir());
-		cmd.commitHash(commitId.name());
-		cmd.file(filePath);
-		cmd.range(range);
-
 		List<User> authors = new ArrayList<>();
 		UserManager userManager = OneDev.getInstance(UserManager.class);
-		for (BlameBlock block: cmd.call()) {
+		BlameInfoManager blameInfoManager = OneDev.getInstance(BlameInfoManager.class);
+		for (BlameBlock block: blameInfoManager.getBlame(this, commitId, filePath, range)) {
 			User author = userManager.find(block.getCommit().getAuthor());
 			if (author != null && !authors.contains(author))
 				authors.add(author);
@@ -1395,7 +1391,6 @@ public class Project extends AbstractEntity {
 		if (commitId != null) {
 			CommitInfoManager commitInfoManager = OneDev.getInstance(CommitInfoManager.class);
 			Collection<ObjectId> descendants = commitInfoManager.getDescendants(this, Sets.newHashSet(commitId));
-			descendants.add(commitId);
 		
 			PatternSet branchPatterns = PatternSet.parse(branches);
 			for (RefInfo ref: getBranchRefInfos()) {
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
+import javax.annotation.Nullable;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -243,17 +244,23 @@ public class Role extends AbstractEntity implements Permission {
 
 	@Override
 	public boolean implies(Permission p) {
-		for (Permission each: getPermissions()) {
+		for (Permission each: getPrivileges(SecurityUtils.getUser())) {
 			if (each.implies(p))
 				return true;
 		}
 		return false;
 	}
 	
-	private Collection<Permission> getPermissions() {
+	/**
+	 * Get privileges granted by this role to specified user
+	 * 
+	 * @param user
+	 * 			user to get privileges for, <tt>null</tt> for anonymous user
+	 */
+	public Collection<Permission> getPrivileges(@Nullable User user) {
 		Collection<Permission> permissions = Lists.newArrayList(new AccessProject());
 		
-		if (SecurityUtils.getUser() != null) {
+		if (user != null) {
 			if (manageProject) 
 				permissions.add(new ManageProject());
 			if (manageCodeComments)
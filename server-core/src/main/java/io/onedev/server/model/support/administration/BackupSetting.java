@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.text.ParseException;
 
 import javax.validation.ConstraintValidatorContext;
+import javax.validation.constraints.Min;
 
 import org.hibernate.validator.constraints.NotEmpty;
 import org.quartz.CronExpression;
@@ -20,6 +21,8 @@ public class BackupSetting implements Serializable, Validatable {
 	
 	private String schedule;
 	
+	private int maxIncrementalBackups;
+	
 	@Editable(order=100, name="Backup Schedule", description=
 		"Optionally specify a cron expression to schedule database auto-backup. The cron expression format is " +
 		"<em>&lt;seconds&gt; &lt;minutes&gt; &lt;hours&gt; &lt;day-of-month&gt; &lt;month&gt; &lt;day-of-week&gt;</em>." +
@@ -37,6 +40,19 @@ public class BackupSetting implements Serializable, Validatable {
 		this.schedule = schedule;
 	}
 
+	@Editable(order=200, name="Max Incremental Backups", description=
+		"Specify max number of incremental backups to take after each full backup. An incremental " +
+		"backup only contains data changed since previous backup, and restoring it requires all " +
+		"previous backups up to the full backup in the same folder. Use 0 to always take full backup")
+	@Min(0)
+	public int getMaxIncrementalBackups() {
+		return maxIncrementalBackups;
+	}
+
+	public void setMaxIncrementalBackups(int maxIncrementalBackups) {
+		this.maxIncrementalBackups = maxIncrementalBackups;
+	}
+
 	@Override
 	public boolean isValid(ConstraintValidatorContext context) {
 		boolean hasErrors = false;
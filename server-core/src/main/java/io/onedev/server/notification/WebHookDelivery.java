@@ -0,0 +1,132 @@
+package io.onedev.server.notification;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.annotation.Nullable;
+
+public class WebHookDelivery implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public enum Status {PENDING, SUCCEEDED, FAILED};
+
+	private final long id;
+
+	private final String postUrl;
+
+	private final String eventType;
+
+	private final Date createDate;
+
+	private String payload;
+
+	private Status status = Status.PENDING;
+
+	private int attempts;
+
+	private Date lastAttemptDate;
+
+	private Integer lastStatusCode;
+
+	private String lastError;
+
+	private long lastDuration;
+
+	public WebHookDelivery(long id, String postUrl, String eventType, String payload) {
+		this.id = id;
+		this.postUrl = postUrl;
+		this.eventType = eventType;
+		this.payload = payload;
+		createDate = new Date();
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getPostUrl() {
+		return postUrl;
+	}
+
+	public String getEventType() {
+		return eventType;
+	}
+
+	public Date getCreateDate() {
+		return createDate;
+	}
+
+	/**
+	 * @return
+	 * 			json of the event, or <tt>null</tt> for deliveries in history
+	 */
+	@Nullable
+	public String getPayload() {
+		return payload;
+	}
+
+	public void setPayload(@Nullable String payload) {
+		this.payload = payload;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public void setStatus(Status status) {
+		this.status = status;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+
+	@Nullable
+	public Date getLastAttemptDate() {
+		return lastAttemptDate;
+	}
+
+	public void setLastAttemptDate(@Nullable Date lastAttemptDate) {
+		this.lastAttemptDate = lastAttemptDate;
+	}
+
+	/**
+	 * @return
+	 * 			http status code of last attempt, or <tt>null</tt> if no response is received
+	 */
+	@Nullable
+	public Integer getLastStatusCode() {
+		return lastStatusCode;
+	}
+
+	public void setLastStatusCode(@Nullable Integer lastStatusCode) {
+		this.lastStatusCode = lastStatusCode;
+	}
+
+	@Nullable
+	public String getLastError() {
+		return lastError;
+	}
+
+	public void setLastError(@Nullable String lastError) {
+		this.lastError = lastError;
+	}
+
+	/**
+	 * @return
+	 * 			milliseconds spent by last attempt
+	 */
+	public long getLastDuration() {
+		return lastDuration;
+	}
+
+	public void setLastDuration(long lastDuration) {
+		this.lastDuration = lastDuration;
+	}
+
+}
@@ -1,21 +1,41 @@
 package io.onedev.server.notification;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 
-import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,84 +44,697 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.event.ProjectEvent;
+import io.onedev.server.event.entity.EntityPersisted;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.infomanager.AbstractEnvironmentManager;
+import io.onedev.server.infomanager.EnvironmentPool;
+import io.onedev.server.model.Project;
 import io.onedev.server.model.support.WebHook;
+import io.onedev.server.persistence.SessionManager;
 import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.storage.StorageManager;
 import io.onedev.server.util.jackson.RestView;
+import jetbrains.exodus.ArrayByteIterable;
+import jetbrains.exodus.ByteIterable;
+import jetbrains.exodus.env.Cursor;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.Store;
+import jetbrains.exodus.env.Transaction;
+import jetbrains.exodus.env.TransactionalComputable;
+import jetbrains.exodus.env.TransactionalExecutable;
 
+/**
+ * Web hook deliveries are persisted before being sent, and are removed only after they succeed
+ * or all retries fail, so that pending deliveries survive server restart. A dispatcher thread
+ * sends deliveries with a shared pooled http client, limiting concurrent deliveries both in
+ * total and for each web hook. Failed deliveries are retried with exponential backoff.
+ */
 @Singleton
-public class WebHookManager {
+public class WebHookManager extends AbstractEnvironmentManager implements Runnable {
 
 	private static final Logger logger = LoggerFactory.getLogger(WebHookManager.class);
-	
+
 	private static final String SIGNATURE_HEAD = "X-OneDev-Signature";
-	
+
+	private static final int INFO_VERSION = 1;
+
+	private static final String INFO_DIR = "webHook";
+
+	private static final String DEFAULT_STORE = "default";
+
+	private static final String DELIVERIES_STORE = "deliveries";
+
+	private static final String HISTORIES_STORE = "histories";
+
+	private static final ByteIterable NEXT_DELIVERY_ID_KEY = new ArrayByteIterable(
+			"nextDeliveryId".getBytes(StandardCharsets.UTF_8));
+
+	private static final int MAX_CONCURRENCY = 20;
+
+	private static final int MAX_CONCURRENCY_PER_WEB_HOOK = 2;
+
+	private static final int MAX_BACKLOG_PER_WEB_HOOK = 10000;
+
+	private static final int MAX_ATTEMPTS = 10;
+
+	private static final long RETRY_BASE_DELAY = 10000;
+
+	private static final long RETRY_MAX_DELAY = 3600000;
+
+	private static final int MAX_HISTORY = 20;
+
+	private static final int MAX_ERROR_LENGTH = 1000;
+
+	private static final int CONNECT_TIMEOUT = 10000;
+
+	private static final int SOCKET_TIMEOUT = 30000;
+
+	private static final long STOP_TIMEOUT = 10000;
+
 	private final ObjectMapper mapper;
-	
+
 	private final ExecutorService executor;
 
+	private final ProjectManager projectManager;
+
+	private final StorageManager storageManager;
+
+	private final SessionManager sessionManager;
+
+	private final CloseableHttpClient httpClient;
+
+	private final Map<String, Endpoint> endpoints = new HashMap<>();
+
+	private final Map<String, WebHookStats> stats = new HashMap<>();
+
+	private int sending;
+
+	private Thread thread;
+
 	@Inject
-	public WebHookManager(ObjectMapper mapper, ExecutorService executor) {
+	public WebHookManager(ObjectMapper mapper, ExecutorService executor, ProjectManager projectManager,
+			StorageManager storageManager, SessionManager sessionManager, EnvironmentPool envPool) {
+		super(envPool);
 		this.mapper = mapper.copy();
 		this.mapper.setConfig(this.mapper.getSerializationConfig().withView(RestView.class));
 		this.executor = executor;
+		this.projectManager = projectManager;
+		this.storageManager = storageManager;
+		this.sessionManager = sessionManager;
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(MAX_CONCURRENCY);
+		connectionManager.setDefaultMaxPerRoute(MAX_CONCURRENCY);
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(CONNECT_TIMEOUT)
+				.setConnectionRequestTimeout(CONNECT_TIMEOUT)
+				.setSocketTimeout(SOCKET_TIMEOUT)
+				.build();
+		httpClient = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.evictExpiredConnections()
+				.evictIdleConnections(60, TimeUnit.SECONDS)
+				.build();
+	}
+
+	private static String getEndpointKey(Long projectId, String postUrl) {
+		return projectId + ":" + postUrl;
+	}
+
+	private synchronized WebHookStats getStats(Long projectId, String postUrl) {
+		String key = getEndpointKey(projectId, postUrl);
+		WebHookStats statsOfWebHook = stats.get(key);
+		if (statsOfWebHook == null) {
+			statsOfWebHook = new WebHookStats(projectId, postUrl);
+			stats.put(key, statsOfWebHook);
+		}
+		return statsOfWebHook;
+	}
+
+	private synchronized Endpoint getEndpoint(Long projectId, String postUrl) {
+		String key = getEndpointKey(projectId, postUrl);
+		Endpoint endpoint = endpoints.get(key);
+		if (endpoint == null) {
+			endpoint = new Endpoint(projectId, postUrl, getStats(projectId, postUrl));
+			endpoints.put(key, endpoint);
+		}
+		return endpoint;
 	}
-	
+
 	@Sessional
 	@Listen
 	public void on(ProjectEvent event) {
+		List<WebHook> webHooks = new ArrayList<>();
+		for (WebHook webHook: event.getProject().getWebHooks()) {
+			for (WebHook.EventType eventType: webHook.getEventTypes()) {
+				if (eventType.includes(event)) {
+					webHooks.add(webHook);
+					break;
+				}
+			}
+		}
+		if (webHooks.isEmpty())
+			return;
+
 		String jsonOfEvent;
 		try {
 			jsonOfEvent = mapper.writeValueAsString(event);
 		} catch (JsonProcessingException e) {
 			throw new RuntimeException(e);
 		}
-		
-		for (WebHook webHook: event.getProject().getWebHooks()) {
-			for (WebHook.EventType eventType: webHook.getEventTypes()) {
-				if (eventType.includes(event)) {
-					executor.submit(new Runnable() {
-
-						@Override
-						public void run() {
-							CloseableHttpClient client = HttpClients.createDefault();
-							try {
-							    HttpPost httpPost = new HttpPost(webHook.getPostUrl());
-							 
-							    StringEntity entity = new StringEntity(jsonOfEvent, StandardCharsets.UTF_8.name());
-							    httpPost.setEntity(entity);
-							    httpPost.setHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
-							    httpPost.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
-							    httpPost.setHeader(HttpHeaders.ACCEPT_CHARSET, StandardCharsets.UTF_8.name());
-							    httpPost.setHeader(SIGNATURE_HEAD, webHook.getSecret());
-							 
-							    CloseableHttpResponse response = client.execute(httpPost);
-							    try {
-							    	HttpEntity responseEntity = response.getEntity();
-							    	String responseText = EntityUtils.toString(responseEntity);
-							    	if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK)
-							    		logger.error("Error calling web hooks: " + responseText);
-							    } finally {
-							    	try {
-										response.close();
-									} catch (IOException e) {
-									}
-							    }
-							} catch (IOException e) {
-								logger.error("Error calling web hooks", e);
-							} finally {
+
+		for (WebHook webHook: webHooks)
+			submit(event.getProject().getId(), webHook.getPostUrl(), event.getClass().getSimpleName(), jsonOfEvent);
+	}
+
+	void submit(Long projectId, String postUrl, String eventType, String payload) {
+		WebHookStats statsOfWebHook = getStats(projectId, postUrl);
+		statsOfWebHook.onSubmitted();
+		if (statsOfWebHook.getBacklog() >= MAX_BACKLOG_PER_WEB_HOOK) {
+			statsOfWebHook.onDropped();
+			logger.warn("Too many pending deliveries, discarding event (web hook: {})", postUrl);
+			return;
+		}
+		WebHookDelivery delivery = createDelivery(projectId, postUrl, eventType, payload);
+		synchronized (this) {
+			Endpoint endpoint = getEndpoint(projectId, postUrl);
+			endpoint.queue.add(new QueuedDelivery(delivery.getId(), delivery.getCreateDate().getTime(),
+					System.currentTimeMillis()));
+			endpoint.updateBacklog();
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Get delay before next attempt of a failed delivery
+	 *
+	 * @param attempts
+	 * 			number of attempts made so far
+	 */
+	long getRetryDelay(int attempts) {
+		return Math.min(RETRY_BASE_DELAY << (attempts-1), RETRY_MAX_DELAY);
+	}
+
+	private WebHookDelivery createDelivery(Long projectId, String postUrl, String eventType, String payload) {
+		Environment env = getEnv(projectId.toString());
+		Store defaultStore = getStore(env, DEFAULT_STORE);
+		Store deliveriesStore = getStore(env, DELIVERIES_STORE);
+		return env.computeInTransaction(new TransactionalComputable<WebHookDelivery>() {
+
+			@Override
+			public WebHookDelivery compute(Transaction txn) {
+				long id = readLong(defaultStore, txn, NEXT_DELIVERY_ID_KEY, 1);
+				writeLong(defaultStore, txn, NEXT_DELIVERY_ID_KEY, id+1);
+				WebHookDelivery delivery = new WebHookDelivery(id, postUrl, eventType, payload);
+				deliveriesStore.put(txn, getDeliveryKey(id),
+						new ArrayByteIterable(SerializationUtils.serialize(delivery)));
+				return delivery;
+			}
+
+		});
+	}
+
+	private ByteIterable getDeliveryKey(long id) {
+		return new ArrayByteIterable(ByteBuffer.allocate(Long.BYTES).putLong(id).array());
+	}
+
+	@Nullable
+	private WebHookDelivery readDelivery(Long projectId, long id) {
+		Environment env = getEnv(projectId.toString());
+		Store deliveriesStore = getStore(env, DELIVERIES_STORE);
+		byte[] bytes = env.computeInReadonlyTransaction(new TransactionalComputable<byte[]>() {
+
+			@Override
+			public byte[] compute(Transaction txn) {
+				return readBytes(deliveriesStore, txn, getDeliveryKey(id));
+			}
+
+		});
+		if (bytes != null)
+			return (WebHookDelivery) SerializationUtils.deserialize(bytes);
+		else
+			return null;
+	}
+
+	private void updateDelivery(Long projectId, WebHookDelivery delivery) {
+		Environment env = getEnv(projectId.toString());
+		Store deliveriesStore = getStore(env, DELIVERIES_STORE);
+		Store historiesStore = getStore(env, HISTORIES_STORE);
+		env.executeInTransaction(new TransactionalExecutable() {
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public void execute(Transaction txn) {
+				ByteIterable deliveryKey = getDeliveryKey(delivery.getId());
+				if (delivery.getStatus() == WebHookDelivery.Status.PENDING) {
+					deliveriesStore.put(txn, deliveryKey,
+							new ArrayByteIterable(SerializationUtils.serialize(delivery)));
+				} else {
+					deliveriesStore.delete(txn, deliveryKey);
+
+					delivery.setPayload(null);
+					ByteIterable historyKey = getHistoryKey(delivery.getPostUrl());
+					byte[] bytes = readBytes(historiesStore, txn, historyKey);
+					ArrayList<WebHookDelivery> history;
+					if (bytes != null)
+						history = (ArrayList<WebHookDelivery>) SerializationUtils.deserialize(bytes);
+					else
+						history = new ArrayList<>();
+					history.add(0, delivery);
+					while (history.size() > MAX_HISTORY)
+						history.remove(history.size()-1);
+					historiesStore.put(txn, historyKey, new ArrayByteIterable(SerializationUtils.serialize(history)));
+				}
+			}
+
+		});
+	}
+
+	private void deleteDelivery(Long projectId, long id) {
+		Environment env = getEnv(projectId.toString());
+		Store deliveriesStore = getStore(env, DELIVERIES_STORE);
+		env.executeInTransaction(new TransactionalExecutable() {
+
+			@Override
+			public void execute(Transaction txn) {
+				deliveriesStore.delete(txn, getDeliveryKey(id));
+			}
+
+		});
+	}
+
+	private ByteIterable getHistoryKey(String postUrl) {
+		return new ArrayByteIterable(postUrl.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Get recent finished deliveries of specified web hook
+	 *
+	 * @return
+	 * 			list of deliveries, with most recent delivery comes first. Payload of returned
+	 * 			deliveries are not kept
+	 */
+	@SuppressWarnings("unchecked")
+	public List<WebHookDelivery> getDeliveryHistory(Project project, String postUrl) {
+		Environment env = getEnv(project.getId().toString());
+		Store historiesStore = getStore(env, HISTORIES_STORE);
+		byte[] bytes = env.computeInReadonlyTransaction(new TransactionalComputable<byte[]>() {
+
+			@Override
+			public byte[] compute(Transaction txn) {
+				return readBytes(historiesStore, txn, getHistoryKey(postUrl));
+			}
+
+		});
+		if (bytes != null)
+			return (List<WebHookDelivery>) SerializationUtils.deserialize(bytes);
+		else
+			return new ArrayList<>();
+	}
+
+	/**
+	 * Get delivery statistics of specified web hook since server start
+	 */
+	public WebHookStats getStats(Project project, String postUrl) {
+		return getStats(project.getId(), postUrl);
+	}
+
+	private void send(Endpoint endpoint, QueuedDelivery queuedDelivery) {
+		// Secret is read at delivery time so that changes to it take effect for pending deliveries
+		Optional<String> secret = sessionManager.call(new Callable<Optional<String>>() {
+
+			@Override
+			public Optional<String> call() throws Exception {
+				Project project = projectManager.get(endpoint.projectId);
+				if (project != null) {
+					for (WebHook webHook: project.getWebHooks()) {
+						if (webHook.getPostUrl().equals(endpoint.postUrl))
+							return Optional.of(webHook.getSecret());
+					}
+					return Optional.empty();
+				} else {
+					return null;
+				}
+			}
+
+		});
+		if (secret == null)
+			return;
+
+		WebHookDelivery delivery;
+		synchronized (endpoint) {
+			if (endpoint.removed)
+				return;
+			delivery = readDelivery(endpoint.projectId, queuedDelivery.id);
+		}
+		if (delivery == null) {
+			return;
+		} else if (!secret.isPresent()) {
+			logger.debug("Web hook removed, discarding delivery (web hook: {})", endpoint.postUrl);
+			synchronized (endpoint) {
+				if (!endpoint.removed)
+					deleteDelivery(endpoint.projectId, delivery.getId());
+			}
+			return;
+		}
+
+		long time = System.currentTimeMillis();
+		Integer statusCode = null;
+		String error = null;
+		try {
+		    HttpPost httpPost = new HttpPost(endpoint.postUrl);
+
+		    StringEntity entity = new StringEntity(delivery.getPayload(), StandardCharsets.UTF_8.name());
+		    httpPost.setEntity(entity);
+		    httpPost.setHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
+		    httpPost.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+		    httpPost.setHeader(HttpHeaders.ACCEPT_CHARSET, StandardCharsets.UTF_8.name());
+		    httpPost.setHeader(SIGNATURE_HEAD, secret.get());
+
+		    try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+		    	// Consume the entity so that the connection can be reused
+		    	HttpEntity responseEntity = response.getEntity();
+		    	String responseText = responseEntity != null? EntityUtils.toString(responseEntity): "";
+		    	statusCode = response.getStatusLine().getStatusCode();
+		    	if (statusCode < 200 || statusCode >= 300)
+		    		error = StringUtils.abbreviate(responseText, MAX_ERROR_LENGTH);
+		    }
+		} catch (Exception e) {
+			error = StringUtils.abbreviate(e.toString(), MAX_ERROR_LENGTH);
+		}
+		long duration = System.currentTimeMillis() - time;
+
+		endpoint.stats.getResponseTimes().record(duration);
+		delivery.setAttempts(delivery.getAttempts() + 1);
+		delivery.setLastAttemptDate(new Date(time));
+		delivery.setLastStatusCode(statusCode);
+		delivery.setLastError(error);
+		delivery.setLastDuration(duration);
+
+		if (error == null) {
+			delivery.setStatus(WebHookDelivery.Status.SUCCEEDED);
+			endpoint.stats.onDelivered();
+			endpoint.stats.getDeliveryTimes().record(System.currentTimeMillis() - queuedDelivery.createTime);
+		} else {
+			endpoint.stats.onAttemptFailed();
+			if (delivery.getAttempts() >= MAX_ATTEMPTS) {
+				delivery.setStatus(WebHookDelivery.Status.FAILED);
+				endpoint.stats.onAbandoned();
+				logger.error("Error delivering web hook, giving up after {} attempts (web hook: {}): {}",
+						delivery.getAttempts(), endpoint.postUrl, error);
+			} else {
+				long delay = getRetryDelay(delivery.getAttempts());
+				queuedDelivery.nextAttemptTime = System.currentTimeMillis() + delay;
+				logger.debug("Error delivering web hook, will retry in {} seconds (web hook: {}): {}",
+						delay/1000, endpoint.postUrl, error);
+			}
+		}
+		/*
+		 * Project might be removed while sending. Check it with endpoint locked so that info
+		 * dir of removed project will not be re-created
+		 */
+		synchronized (endpoint) {
+			if (endpoint.removed)
+				return;
+			updateDelivery(endpoint.projectId, delivery);
+		}
+
+		if (delivery.getStatus() == WebHookDelivery.Status.PENDING) {
+			synchronized (this) {
+				if (!endpoint.removed)
+					endpoint.queue.add(queuedDelivery);
+			}
+		}
+	}
+
+	@Override
+	public synchronized void run() {
+		while (thread != null) {
+			long now = System.currentTimeMillis();
+			long nextAttemptTime = Long.MAX_VALUE;
+			for (Iterator<Endpoint> it = endpoints.values().iterator(); it.hasNext();) {
+				Endpoint endpoint = it.next();
+				while (!endpoint.queue.isEmpty() && endpoint.sending < MAX_CONCURRENCY_PER_WEB_HOOK
+						&& sending < MAX_CONCURRENCY) {
+					QueuedDelivery queuedDelivery = endpoint.queue.peek();
+					if (queuedDelivery.nextAttemptTime <= now) {
+						endpoint.queue.poll();
+						endpoint.sending++;
+						sending++;
+						executor.execute(new Runnable() {
+
+							@Override
+							public void run() {
 								try {
-									client.close();
-								} catch (IOException e) {
+									send(endpoint, queuedDelivery);
+								} catch (Exception e) {
+									logger.error("Error delivering web hook", e);
+								} finally {
+									synchronized (WebHookManager.this) {
+										endpoint.sending--;
+										sending--;
+										endpoint.updateBacklog();
+										WebHookManager.this.notifyAll();
+									}
 								}
 							}
+
+						});
+					} else {
+						nextAttemptTime = Math.min(nextAttemptTime, queuedDelivery.nextAttemptTime);
+						break;
+					}
+				}
+				if (endpoint.queue.isEmpty() && endpoint.sending == 0)
+					it.remove();
+			}
+			try {
+				if (nextAttemptTime != Long.MAX_VALUE)
+					wait(Math.max(nextAttemptTime - now, 1));
+				else
+					wait();
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+
+	@Sessional
+	@Listen
+	public void on(SystemStarted event) {
+		for (Project project: projectManager.query()) {
+			if (!project.getWebHooks().isEmpty()) {
+				Environment env = getEnv(project.getId().toString());
+				Store deliveriesStore = getStore(env, DELIVERIES_STORE);
+				List<WebHookDelivery> deliveries = env.computeInReadonlyTransaction(
+						new TransactionalComputable<List<WebHookDelivery>>() {
+
+					@Override
+					public List<WebHookDelivery> compute(Transaction txn) {
+						List<WebHookDelivery> deliveries = new ArrayList<>();
+						Cursor cursor = deliveriesStore.openCursor(txn);
+						try {
+							while (cursor.getNext()) {
+								ByteIterable value = cursor.getValue();
+								byte[] bytes = Arrays.copyOf(value.getBytesUnsafe(), value.getLength());
+								deliveries.add((WebHookDelivery) SerializationUtils.deserialize(bytes));
+							}
+						} finally {
+							cursor.close();
+						}
+						return deliveries;
+					}
+
+				});
+
+				long now = System.currentTimeMillis();
+				for (WebHookDelivery delivery: deliveries) {
+					synchronized (this) {
+						Endpoint endpoint = getEndpoint(project.getId(), delivery.getPostUrl());
+						// Deliveries of events fired during startup might be queued already
+						if (!endpoint.queue.stream().anyMatch(it -> it.id == delivery.getId())) {
+							endpoint.queue.add(new QueuedDelivery(delivery.getId(),
+									delivery.getCreateDate().getTime(), now));
+							endpoint.updateBacklog();
 						}
-						
-					});
+					}
+				}
+				if (!deliveries.isEmpty())
+					logger.info("Resuming {} pending web hook deliveries (project: {})", deliveries.size(), project);
+			}
+		}
+
+		thread = new Thread(this);
+		thread.start();
+	}
+
+	/*
+	 * Stop dispatching deliveries and wait for deliveries being sent before closing http client. 
+	 * Deliveries still being sent after timeout are aborted, and will be resumed after restart 
+	 * as they are still pending
+	 */
+	@Listen
+	public void on(SystemStopping event) {
+		synchronized (this) {
+			thread = null;
+			notifyAll();
+			long deadline = System.currentTimeMillis() + STOP_TIMEOUT;
+			while (sending != 0) {
+				long timeout = deadline - System.currentTimeMillis();
+				if (timeout <= 0) {
+					logger.warn("Timed out waiting for {} web hook deliveries being sent", sending);
+					break;
+				}
+				try {
+					wait(timeout);
+				} catch (InterruptedException e) {
 					break;
 				}
 			}
 		}
+		try {
+			httpClient.close();
+		} catch (IOException e) {
+		}
 	}
-	
+
+	@Sessional
+	@Listen
+	public void on(EntityPersisted event) {
+		if (event.getEntity() instanceof Project && !event.isNew()) {
+			Project project = (Project) event.getEntity();
+			Set<String> postUrls = new HashSet<>();
+			for (WebHook webHook: project.getWebHooks())
+				postUrls.add(webHook.getPostUrl());
+
+			/*
+			 * Drop stats and history of removed web hooks. Endpoints of removed web hooks are
+			 * left alone as their pending deliveries will be discarded when sent
+			 */
+			Set<String> removedPostUrls = new HashSet<>();
+			synchronized (this) {
+				for (Iterator<WebHookStats> it = stats.values().iterator(); it.hasNext();) {
+					WebHookStats statsOfWebHook = it.next();
+					if (statsOfWebHook.getProjectId().equals(project.getId())
+							&& !postUrls.contains(statsOfWebHook.getPostUrl())) {
+						removedPostUrls.add(statsOfWebHook.getPostUrl());
+						it.remove();
+					}
+				}
+			}
+			if (!removedPostUrls.isEmpty()) {
+				Environment env = getEnv(project.getId().toString());
+				Store historiesStore = getStore(env, HISTORIES_STORE);
+				env.executeInTransaction(new TransactionalExecutable() {
+
+					@Override
+					public void execute(Transaction txn) {
+						for (String postUrl: removedPostUrls)
+							historiesStore.delete(txn, getHistoryKey(postUrl));
+					}
+
+				});
+			}
+		}
+	}
+
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project) {
+			Long projectId = event.getEntity().getId();
+			List<Endpoint> removedEndpoints = new ArrayList<>();
+			synchronized (this) {
+				for (Iterator<Endpoint> it = endpoints.values().iterator(); it.hasNext();) {
+					Endpoint endpoint = it.next();
+					if (endpoint.projectId.equals(projectId)) {
+						endpoint.queue.clear();
+						removedEndpoints.add(endpoint);
+						it.remove();
+					}
+				}
+				stats.values().removeIf(it -> it.getProjectId().equals(projectId));
+			}
+
+			// Wait for deliveries being persisted so that env can be removed safely
+			for (Endpoint endpoint: removedEndpoints) {
+				synchronized (endpoint) {
+					endpoint.removed = true;
+				}
+			}
+			removeEnv(projectId.toString());
+		}
+	}
+
+	@Override
+	protected File getEnvDir(String envKey) {
+		File infoDir = new File(storageManager.getProjectInfoDir(Long.valueOf(envKey)), INFO_DIR);
+		if (!infoDir.exists())
+			FileUtils.createDir(infoDir);
+		return infoDir;
+	}
+
+	@Override
+	protected int getEnvVersion() {
+		return INFO_VERSION;
+	}
+
+	private static class Endpoint {
+
+		final Long projectId;
+
+		final String postUrl;
+
+		final WebHookStats stats;
+
+		final PriorityQueue<QueuedDelivery> queue = new PriorityQueue<>(new Comparator<QueuedDelivery>() {
+
+			@Override
+			public int compare(QueuedDelivery o1, QueuedDelivery o2) {
+				if (o1.nextAttemptTime != o2.nextAttemptTime)
+					return Long.compare(o1.nextAttemptTime, o2.nextAttemptTime);
+				else
+					return Long.compare(o1.id, o2.id);
+			}
+
+		});
+
+		int sending;
+
+		volatile boolean removed;
+
+		Endpoint(Long projectId, String postUrl, WebHookStats stats) {
+			this.projectId = projectId;
+			this.postUrl = postUrl;
+			this.stats = stats;
+		}
+
+		void updateBacklog() {
+			stats.setBacklog(queue.size() + sending);
+		}
+
+	}
+
+	private static class QueuedDelivery {
+
+		final long id;
+
+		final long createTime;
+
+		long nextAttemptTime;
+
+		QueuedDelivery(long id, long createTime, long nextAttemptTime) {
+			this.id = id;
+			this.createTime = createTime;
+			this.nextAttemptTime = nextAttemptTime;
+		}
+
+	}
+
 }
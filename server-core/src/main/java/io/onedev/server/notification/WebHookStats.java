@@ -0,0 +1,136 @@
+package io.onedev.server.notification;
+
+import io.onedev.server.util.DurationHistogram;
+
+/**
+ * Statistics of deliveries to a particular web hook since server start
+ */
+public class WebHookStats {
+
+	private final Long projectId;
+
+	private final String postUrl;
+
+	private final long since = System.currentTimeMillis();
+
+	private long submitted;
+
+	private long delivered;
+
+	private long failedAttempts;
+
+	private long abandoned;
+
+	private long dropped;
+
+	private int backlog;
+
+	private final DurationHistogram responseTimes = new DurationHistogram();
+
+	private final DurationHistogram deliveryTimes = new DurationHistogram();
+
+	public WebHookStats(Long projectId, String postUrl) {
+		this.projectId = projectId;
+		this.postUrl = postUrl;
+	}
+
+	public Long getProjectId() {
+		return projectId;
+	}
+
+	public String getPostUrl() {
+		return postUrl;
+	}
+
+	public synchronized long getSubmitted() {
+		return submitted;
+	}
+
+	synchronized void onSubmitted() {
+		submitted++;
+	}
+
+	public synchronized long getDelivered() {
+		return delivered;
+	}
+
+	synchronized void onDelivered() {
+		delivered++;
+	}
+
+	/**
+	 * @return
+	 * 			number of attempts failed, including attempts to be retried
+	 */
+	public synchronized long getFailedAttempts() {
+		return failedAttempts;
+	}
+
+	synchronized void onAttemptFailed() {
+		failedAttempts++;
+	}
+
+	/**
+	 * @return
+	 * 			number of deliveries given up after all retries failed
+	 */
+	public synchronized long getAbandoned() {
+		return abandoned;
+	}
+
+	synchronized void onAbandoned() {
+		abandoned++;
+	}
+
+	/**
+	 * @return
+	 * 			number of deliveries not queued as backlog of the web hook is full
+	 */
+	public synchronized long getDropped() {
+		return dropped;
+	}
+
+	synchronized void onDropped() {
+		dropped++;
+	}
+
+	/**
+	 * @return
+	 * 			number of deliveries waiting to be sent or retried, including deliveries
+	 * 			being sent
+	 */
+	public synchronized int getBacklog() {
+		return backlog;
+	}
+
+	synchronized void setBacklog(int backlog) {
+		this.backlog = backlog;
+	}
+
+	/**
+	 * @return
+	 * 			average number of successful deliveries per minute since server start
+	 */
+	public synchronized double getThroughput() {
+		long elapsed = Math.max(System.currentTimeMillis() - since, 1);
+		return delivered * 60000.0 / elapsed;
+	}
+
+	/**
+	 * @return
+	 * 			histogram of milliseconds spent by each attempt
+	 */
+	public DurationHistogram getResponseTimes() {
+		return responseTimes;
+	}
+
+	/**
+	 * @return
+	 * 			histogram of milliseconds from event happening to successful delivery,
+	 * 			including time waiting in queue and retrying
+	 */
+	public DurationHistogram getDeliveryTimes() {
+		return deliveryTimes;
+	}
+
+}
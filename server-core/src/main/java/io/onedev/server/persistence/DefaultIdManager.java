@@ -1,70 +1,350 @@
 package io.onedev.server.persistence;
 
-import java.util.HashMap;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import javax.persistence.EntityManagerFactory;
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Root;
-import javax.persistence.metamodel.EntityType;
 
-import io.onedev.server.persistence.annotation.Sessional;
-import io.onedev.server.persistence.dao.Dao;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import io.onedev.commons.utils.ExceptionUtils;
+import io.onedev.server.model.IdAllocation;
+import io.onedev.server.util.ServerConfig;
+
+/**
+ * Id manager reserving blocks of ids from a database table (hi/lo style), so that multiple
+ * server processes sharing the same database never hand out same id. Each process hands out
+ * ids from its reserved block in memory, and only touches the table when the block is used
+ * up. Block size of an entity grows if its blocks are used up quickly, so that entities
+ * inserted at high rate rarely touch the table.
+ * <p>
+ * Blocks are reserved over a dedicated connection outside of the connection pool, and each 
+ * reservation is committed immediately, so that reserving never waits for a pooled connection 
+ * while caller is holding one, and never holds locks of the table till commit of the caller. 
+ * As a result, max id of an entity read when seeding or checking its row only covers committed 
+ * data. Entities saved with explicit ids should be reported via {@link #useId(Class, long)} 
+ * for their ids to be covered before the caller commits.
+ * <p>
+ * Row of an entity in the table is checked against max id of the entity the first time a
+ * block is reserved in current process, so that the table catches up if the database is
+ * restored or cleaned. Ids not used in a reserved block are simply skipped.
+ */
 @Singleton
 public class DefaultIdManager implements IdManager {
 
-	private final Dao dao;
-	
+	private static final Logger logger = LoggerFactory.getLogger(DefaultIdManager.class);
+
+	private static final int MAX_BLOCK_SIZE_FACTOR = 64;
+
+	private static final long FAST_ALLOCATION_INTERVAL = 10000L;
+
+	private static final long SLOW_ALLOCATION_INTERVAL = 600000L;
+
+	private static final int MAX_RESERVE_ATTEMPTS = 3;
+
 	private final PersistManager persistManager;
-	
-	private final Map<Class<?>, AtomicLong> nextIds = new HashMap<>();
-	
+
+	private final ServerConfig serverConfig;
+
+	private final Map<Class<?>, IdBlock> idBlocks = new ConcurrentHashMap<>();
+
+	private String tableName;
+
+	private String idColumnName;
+
+	private String entityColumnName;
+
+	private String nextIdColumnName;
+
+	private Connection connection;
+
 	@Inject
-	public DefaultIdManager(Dao dao, PersistManager persistManager) {
-		this.dao = dao;
+	public DefaultIdManager(PersistManager persistManager, ServerConfig serverConfig) {
 		this.persistManager = persistManager;
+		this.serverConfig = serverConfig;
+	}
+
+	private SessionFactoryImplementor getSessionFactory() {
+		return (SessionFactoryImplementor) persistManager.getSessionFactory();
 	}
 
-	private long getMaxId(Class<?> entityClass) {
-		CriteriaBuilder builder = persistManager.getSessionFactory().getCriteriaBuilder();
-		CriteriaQuery<Number> query = builder.createQuery(Number.class);
-		Root<?> root = query.from(entityClass);
-		query.select(builder.max(root.get("id")));
-		Number result = dao.getSession().createQuery(query).getSingleResult();
-		return result!=null?result.longValue():0;
+	private AbstractEntityPersister getPersister(Class<?> entityClass) {
+		return (AbstractEntityPersister) getSessionFactory().getMetamodel().entityPersister(entityClass);
 	}
-	
-	@Sessional
+
+	@Override
+	public synchronized void init() {
+		// Table is created with other tables as IdAllocation is mapped as an entity
+		AbstractEntityPersister persister = getPersister(IdAllocation.class);
+		tableName = persister.getTableName();
+		idColumnName = persister.getIdentifierColumnNames()[0];
+		entityColumnName = persister.getPropertyColumnNames(IdAllocation.PROP_ENTITY_NAME)[0];
+		nextIdColumnName = persister.getPropertyColumnNames(IdAllocation.PROP_NEXT_ID)[0];
+		idBlocks.clear();
+		closeConnection();
+	}
+
 	@Override
-	public void init() {
-		for (EntityType<?> entityType: ((EntityManagerFactory)persistManager.getSessionFactory()).getMetamodel().getEntities()) {
-			Class<?> entityClass = entityType.getJavaType();
-			nextIds.put(entityClass, new AtomicLong(getMaxId(entityClass)+1));
+	public synchronized void stop() {
+		closeConnection();
+	}
+
+	private void closeConnection() {
+		if (connection != null) {
+			try {
+				connection.close();
+			} catch (SQLException e) {
+			}
+			connection = null;
+		}
+	}
+
+	/*
+	 * Run specified work in its own transaction over the dedicated connection, so that 
+	 * allocation is committed immediately regardless of transaction of the caller. The 
+	 * connection is reopened if the work fails, in case it is broken
+	 */
+	private synchronized <T> T doWork(Work<T> work) {
+		if (connection == null) {
+			connection = persistManager.getConnection();
+			try {
+				connection.setAutoCommit(false);
+			} catch (SQLException e) {
+				closeConnection();
+				throw new RuntimeException(e);
+			}
+		}
+		try {
+			T result = work.doWork(connection);
+			connection.commit();
+			return result;
+		} catch (Exception e) {
+			try {
+				connection.rollback();
+			} catch (SQLException e2) {
+			}
+			closeConnection();
+			throw ExceptionUtils.unchecked(e);
+		}
+	}
+
+	private long getMaxId(Connection conn, Class<?> entityClass) throws SQLException {
+		AbstractEntityPersister persister = getPersister(entityClass);
+		String sql = "select max(" + persister.getIdentifierColumnNames()[0] + ") from " + persister.getTableName();
+		try (	Statement stmt = conn.createStatement();
+				ResultSet resultset = stmt.executeQuery(sql)) {
+			if (resultset.next())
+				return resultset.getLong(1);
+			else
+				return 0;
 		}
 	}
 
+	private void setNextId(Connection conn, String entity, long nextId) throws SQLException {
+		String sql = "update " + tableName + " set " + nextIdColumnName + "=? where " + entityColumnName + "=?";
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			stmt.setLong(1, nextId);
+			stmt.setString(2, entity);
+			stmt.executeUpdate();
+		}
+	}
+
+	/*
+	 * Insert row of specified entity. Id of the row can not be allocated by this manager 
+	 * itself, and is derived from max id of the table instead. Insert fails if other process 
+	 * inserts a row concurrently, and caller should retry in that case
+	 */
+	private void insertNextId(Connection conn, String entity, long nextId) throws SQLException {
+		long id;
+		String sql = "select max(" + idColumnName + ") from " + tableName;
+		try (	Statement stmt = conn.createStatement();
+				ResultSet resultset = stmt.executeQuery(sql)) {
+			id = resultset.next()? resultset.getLong(1) + 1: 1;
+		}
+		sql = "insert into " + tableName + " (" + idColumnName + ", " + entityColumnName + ", " 
+				+ nextIdColumnName + ") values (?, ?, ?)";
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			stmt.setLong(1, id);
+			stmt.setString(2, entity);
+			stmt.setLong(3, nextId);
+			stmt.executeUpdate();
+		}
+	}
+
+	/**
+	 * Reserve a block of ids in the table
+	 *
+	 * @return
+	 * 			first id of the reserved block
+	 */
+	private long reserve(Class<?> entityClass, int blockSize, boolean checkMaxId) {
+		String entity = entityClass.getSimpleName();
+		for (int attempt=1;; attempt++) {
+			try {
+				return doWork(new Work<Long>() {
+
+					@Override
+					public Long doWork(Connection conn) throws SQLException {
+						// Update first to lock the row until transaction is committed
+						String sql = "update " + tableName + " set " + nextIdColumnName + "=" + nextIdColumnName
+								+ "+? where " + entityColumnName + "=?";
+						int updated;
+						try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+							stmt.setLong(1, blockSize);
+							stmt.setString(2, entity);
+							updated = stmt.executeUpdate();
+						}
+						if (updated != 0) {
+							long nextId;
+							sql = "select " + nextIdColumnName + " from " + tableName + " where " + entityColumnName + "=?";
+							try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+								stmt.setString(1, entity);
+								try (ResultSet resultset = stmt.executeQuery()) {
+									resultset.next();
+									nextId = resultset.getLong(1);
+								}
+							}
+							long blockStart = nextId - blockSize;
+							if (checkMaxId) {
+								long maxId = getMaxId(conn, entityClass);
+								if (blockStart <= maxId) {
+									blockStart = maxId + 1;
+									setNextId(conn, entity, blockStart + blockSize);
+								}
+							}
+							return blockStart;
+						} else {
+							long blockStart = getMaxId(conn, entityClass) + 1;
+							insertNextId(conn, entity, blockStart + blockSize);
+							return blockStart;
+						}
+					}
+
+				});
+			} catch (Exception e) {
+				// Insert may fail if other process inserts the same row concurrently
+				if (attempt < MAX_RESERVE_ATTEMPTS)
+					logger.debug("Error reserving ids, retrying...", e);
+				else
+					throw e;
+			}
+		}
+	}
+
+	private IdBlock getIdBlock(Class<?> entityClass) {
+		return idBlocks.computeIfAbsent(entityClass, key->new IdBlock());
+	}
+
 	@Override
 	public long nextId(Class<?> entityClass) {
-		return nextIds.get(entityClass).getAndIncrement();
+		IdBlock idBlock = getIdBlock(entityClass);
+		synchronized (idBlock) {
+			if (idBlock.next == idBlock.end) {
+				int baseSize = serverConfig.getIdBlockSize();
+				if (idBlock.size == 0) {
+					idBlock.size = baseSize;
+				} else {
+					long elapsed = System.currentTimeMillis() - idBlock.reserveTime;
+					if (elapsed < FAST_ALLOCATION_INTERVAL)
+						idBlock.size = Math.min(idBlock.size*2, baseSize*MAX_BLOCK_SIZE_FACTOR);
+					else if (elapsed > SLOW_ALLOCATION_INTERVAL)
+						idBlock.size = Math.max(idBlock.size/2, baseSize);
+				}
+				idBlock.next = reserve(entityClass, idBlock.size, !idBlock.checked);
+				idBlock.end = idBlock.next + idBlock.size;
+				idBlock.checked = true;
+				idBlock.reserveTime = System.currentTimeMillis();
+			}
+			return idBlock.next++;
+		}
 	}
 
+	/*
+	 * Called when an entity is saved with specified id, for instance when replicating
+	 * entities. The id is recorded in the table immediately, as max id read when seeding 
+	 * the table does not cover the entity until the caller commits. This only prevents the 
+	 * id from being handed out by current process and by blocks reserved afterwards, so it 
+	 * should not be used while other processes are inserting same type of entities
+	 */
 	@Override
 	public void useId(Class<?> entityClass, long id) {
-		AtomicLong nextIdAtom = nextIds.get(entityClass);
-		while (true) {
-			long nextId = nextIdAtom.get();
-			if (id+1 > nextId) {
-				if (nextIdAtom.compareAndSet(nextId, id+1))
-					break;
-			} else {
-				break;
+		IdBlock idBlock = getIdBlock(entityClass);
+		synchronized (idBlock) {
+			if (id >= idBlock.next && id < idBlock.end) {
+				idBlock.next = id + 1;
+			} else if (id >= idBlock.end) {
+				String entity = entityClass.getSimpleName();
+				for (int attempt=1;; attempt++) {
+					try {
+						doWork(new Work<Void>() {
+
+							@Override
+							public Void doWork(Connection conn) throws SQLException {
+								String sql = "update " + tableName + " set " + nextIdColumnName + "=? where "
+										+ entityColumnName + "=? and " + nextIdColumnName + "<=?";
+								int updated;
+								try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+									stmt.setLong(1, id + 1);
+									stmt.setString(2, entity);
+									stmt.setLong(3, id);
+									updated = stmt.executeUpdate();
+								}
+								if (updated == 0) {
+									sql = "select count(*) from " + tableName + " where " + entityColumnName + "=?";
+									try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+										stmt.setString(1, entity);
+										try (ResultSet resultset = stmt.executeQuery()) {
+											resultset.next();
+											if (resultset.getLong(1) == 0) 
+												insertNextId(conn, entity, Math.max(getMaxId(conn, entityClass), id) + 1);
+										}
+									}
+								}
+								return null;
+							}
+
+						});
+						break;
+					} catch (Exception e) {
+						if (attempt < MAX_RESERVE_ATTEMPTS)
+							logger.debug("Error recording used id, retrying...", e);
+						else
+							throw e;
+					}
+				}
+				// Discard current block as ids after it might be used already
+				idBlock.next = idBlock.end = 0;
 			}
 		}
 	}
 
+	private static class IdBlock {
+
+		long next;
+
+		long end;
+
+		int size;
+
+		long reserveTime;
+
+		boolean checked;
+
+	}
+
+	private static interface Work<T> {
+
+		T doWork(Connection conn) throws SQLException;
+
+	}
+
 }
@@ -1,34 +1,46 @@
 package io.onedev.server.persistence;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.ManyToOne;
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Root;
 import javax.persistence.metamodel.EntityType;
 
 import org.dom4j.DocumentHelper;
 import org.dom4j.Element;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.XMLWriter;
+import org.hibernate.CacheMode;
 import org.hibernate.Interceptor;
-import org.hibernate.ReplicationMode;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 import org.hibernate.Transaction;
 import org.hibernate.boot.Metadata;
 import org.hibernate.boot.MetadataBuilder;
@@ -43,6 +55,7 @@ import org.hibernate.tool.hbm2ddl.SchemaExport;
 import org.hibernate.tool.schema.TargetType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
@@ -57,7 +70,6 @@ import io.onedev.server.migration.MigrationHelper;
 import io.onedev.server.migration.VersionedXmlDoc;
 import io.onedev.server.model.AbstractEntity;
 import io.onedev.server.model.ModelVersion;
-import io.onedev.server.persistence.annotation.Sessional;
 import io.onedev.server.persistence.dao.Dao;
 import io.onedev.server.util.BeanUtils;
 import io.onedev.server.util.validation.EntityValidator;
@@ -67,6 +79,12 @@ public class DefaultPersistManager implements PersistManager {
 
 	private static final int BACKUP_BATCH_SIZE = 1000;
 	
+	private static final int IMPORT_JDBC_BATCH_SIZE = 100;
+	
+	private static final int MAX_TRANSFER_PARALLELISM = 8;
+	
+	private static final int PROGRESS_LOG_INTERVAL = 100000;
+	
 	private static final Logger logger = LoggerFactory.getLogger(DefaultPersistManager.class);
 	
 	protected final PhysicalNamingStrategy physicalNamingStrategy;
@@ -203,13 +221,15 @@ public class DefaultPersistManager implements PersistManager {
 
 	@Override
 	public void stop() {
+		idManager.stop();
 		if (sessionFactory != null) {
 			sessionFactory.close();
 			sessionFactory = null;
 		}
 	}
 
-	protected Connection getConnection() {
+	@Override
+	public Connection getConnection() {
 		try {
 			Driver driver = (Driver) Class.forName(properties.getDriver(), true, 
 					Thread.currentThread().getContextClassLoader()).newInstance();
@@ -387,128 +407,250 @@ public class DefaultPersistManager implements PersistManager {
 		exportData(exportDir, BACKUP_BATCH_SIZE);
 	}
 	
-	@Sessional
+	/*
+	 * Tables are exported in parallel, each with its own session. Rows of a table are loaded 
+	 * batch by batch via id ranges, and each row is written to data file as soon as it is 
+	 * converted, so that neither ids of the whole table nor XML of the whole batch are kept 
+	 * in memory.
+	 */
 	@Override
 	public void exportData(File exportDir, int batchSize) {
-		Session session = sessionFactory.openSession();
+		long time = System.currentTimeMillis();
+		AtomicLong count = new AtomicLong(0);
+		List<Callable<Void>> tasks = new ArrayList<>();
 		for (Class<?> entityType: getEntityTypes(sessionFactory)) {
-			logger.info("Exporting table '" + entityType.getSimpleName() + "'...");
-			
-			logger.info("Querying table ids...");
-			
-			CriteriaBuilder builder = sessionFactory.getCriteriaBuilder();
-			CriteriaQuery<Number> query = builder.createQuery(Number.class);
-			Root<?> root = query.from(entityType);
-			query.select(root.get("id")).orderBy(builder.asc(root.get("id")));
-			
-			List<Number> ids = session.createQuery(query).list();
-			
-			int count = ids.size();
-			
-			for (int i=0; i<count/batchSize; i++) {
-				exportEntity(session, entityType, ids, i*batchSize, batchSize, batchSize, exportDir);
+			tasks.add(new Callable<Void>() {
+
+				@Override
+				public Void call() throws Exception {
+					count.addAndGet(exportEntities(entityType, batchSize, exportDir));
+					return null;
+				}
+				
+			});
+		}
+		runInParallel(tasks);
+		logger.info("Exported {} rows in {}", count.get(), describeThroughput(count.get(), time));
+	}
+
+	private long exportEntities(Class<?> entityType, int batchSize, File exportDir) throws IOException {
+		String entityName = entityType.getSimpleName();
+		logger.info("Exporting table '" + entityName + "'...");
+		
+		long time = System.currentTimeMillis();
+		long count = 0;
+		try (Session session = sessionFactory.openSession()) {
+			session.setDefaultReadOnly(true);
+			session.setCacheMode(CacheMode.IGNORE);
+			Long lastId = null;
+			for (int batch=0;; batch++) {
+				Query<?> query;
+				if (lastId != null) {
+					query = session.createQuery("from " + entityName + " where id>:lastId order by id");
+					query.setParameter("lastId", lastId);
+				} else {
+					query = session.createQuery("from " + entityName + " order by id");
+				}
+				query.setMaxResults(batchSize);
+				List<?> entities = query.list();
+				if (entities.isEmpty())
+					break;
+				
+				try (OutputStream os = new BufferedOutputStream(new FileOutputStream(
+						new File(exportDir, getDataFileName(entityType, batch))))) {
+					OutputFormat format = new OutputFormat();
+					format.setIndent(true);
+					format.setNewlines(true);
+					format.setEncoding(StandardCharsets.UTF_8.name());
+					XMLWriter writer = new XMLWriter(os, format);
+					writer.startDocument();
+					Element listElement = DocumentHelper.createElement("list");
+					writer.writeOpen(listElement);
+					for (Object entity: entities) 
+						writer.write(VersionedXmlDoc.fromBean(entity).getRootElement());
+					writer.writeClose(listElement);
+					writer.endDocument();
+				} catch (SAXException e) {
+					throw new RuntimeException(e);
+				}
+				
+				count += entities.size();
+				lastId = ((AbstractEntity) entities.get(entities.size()-1)).getId();
+				
 				// clear session to free memory
 				session.clear();
+				
+				if (entities.size() < batchSize)
+					break;
+				if (count / PROGRESS_LOG_INTERVAL != (count - entities.size()) / PROGRESS_LOG_INTERVAL) {
+					logger.info("Exported {} rows of table '{}' so far ({})", 
+							count, entityName, describeThroughput(count, time));
+				}
 			}
-			
-			if (count%batchSize != 0) {
-				exportEntity(session, entityType, ids, count/batchSize*batchSize, count%batchSize, batchSize, exportDir);
-			}
-			logger.info("");
 		}
+		logger.info("Exported {} rows of table '{}' in {}", count, entityName, describeThroughput(count, time));
+		return count;
 	}
-
-	private void exportEntity(Session session, Class<?> entityType, List<Number> ids, int start, int count, int batchSize, File exportDir) {
-		logger.info("Loading table rows ({}->{}) from database...", String.valueOf(start+1), (start + count));
-		
-		Query<?> query = session.createQuery("from " + entityType.getSimpleName() + " where id>=:fromId and id<=:toId");
-		query.setParameter("fromId", ids.get(start));
-		query.setParameter("toId", ids.get(start+count-1));
-		
-		logger.info("Converting table rows to XML...");
-		VersionedXmlDoc dom = new VersionedXmlDoc();
-		Element rootElement = dom.addElement("list");
-		for (Object entity: query.list())
-			rootElement.appendContent(VersionedXmlDoc.fromBean(entity));
-		String fileName;
-
-		if (start == 0)
-			fileName = entityType.getSimpleName() + "s.xml";
+	
+	private String getDataFileName(Class<?> entityType, int batch) {
+		if (batch == 0)
+			return entityType.getSimpleName() + "s.xml";
 		else
-			fileName = entityType.getSimpleName() + "s.xml." + (start/batchSize + 1);
-		
-		logger.info("Writing resulting XML to file '" + fileName + "...");
-		dom.writeToFile(new File(exportDir, fileName), true);
+			return entityType.getSimpleName() + "s.xml." + (batch + 1);
 	}
+	
+	private File[] getDataFiles(File dataDir, Class<?> entityType) {
+		return dataDir.listFiles(new FilenameFilter() {
 
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(entityType.getSimpleName() + "s.xml");
+			}
+			
+		});
+	}
+	
+	private void readDataFile(File file, Consumer<AbstractEntity> consumer) {
+		VersionedXmlDoc.readElements(file, new Consumer<Element>() {
+
+			@Override
+			public void accept(Element element) {
+				consumer.accept((AbstractEntity) new VersionedXmlDoc(DocumentHelper.createDocument(element)).toBean());
+			}
+			
+		});
+	}
+	
+	private long getDataSize(File dataDir, Class<?> entityType) {
+		long size = 0;
+		for (File file: getDataFiles(dataDir, entityType))
+			size += file.length();
+		return size;
+	}
+	
+	private String describeThroughput(long count, long startTime) {
+		long elapsed = Math.max(System.currentTimeMillis() - startTime, 1);
+		return String.format("%.1fs, %d rows/s", elapsed/1000.0, count*1000/elapsed);
+	}
+	
 	/*
-	 * We do not use @Transactional annotation and will manage the session and transaction manually 
-	 * in this method to reduce memory usage if importing a large database.
+	 * Run specified tasks with a bounded thread pool and wait for all of them. Remaining 
+	 * tasks will be cancelled if any task fails 
+	 */
+	private void runInParallel(List<Callable<Void>> tasks) {
+		int parallelism = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_TRANSFER_PARALLELISM));
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			List<Future<Void>> futures = new ArrayList<>();
+			for (Callable<Void> task: tasks)
+				futures.add(executor.submit(task));
+			for (Future<Void> future: futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw ExceptionUtils.unchecked(e.getCause());
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/*
+	 * Tables are imported in parallel, as foreign key constraints are only applied after 
+	 * import. Each data file is imported with a stateless session in its own transaction, 
+	 * with entities streamed from the file and inserted via JDBC batches.
 	 */
-	@Sessional
 	@Override
 	public void importData(Metadata metadata, File dataDir) {
-		Session session = dao.getSession();
+		long time = System.currentTimeMillis();
+		AtomicLong count = new AtomicLong(0);
 		List<Class<?>> entityTypes = getEntityTypes(sessionFactory);
-		Collections.reverse(entityTypes);
+		
+		// start with large tables to balance load of import threads
+		Map<Class<?>, Long> dataSizes = new HashMap<>();
+		for (Class<?> entityType: entityTypes)
+			dataSizes.put(entityType, getDataSize(dataDir, entityType));
+		entityTypes.sort((o1, o2) -> Long.compare(dataSizes.get(o2), dataSizes.get(o1)));
+		
+		List<Callable<Void>> tasks = new ArrayList<>();
 		for (Class<?> entityType: entityTypes) {
-			File[] dataFiles = dataDir.listFiles(new FilenameFilter() {
+			tasks.add(new Callable<Void>() {
 
 				@Override
-				public boolean accept(File dir, String name) {
-					return name.startsWith(entityType.getSimpleName() + "s.xml");
+				public Void call() throws Exception {
+					count.addAndGet(importEntities(entityType, dataDir));
+					return null;
 				}
 				
 			});
-			for (File file: dataFiles) {
+		}
+		runInParallel(tasks);
+		logger.info("Imported {} rows in {}", count.get(), describeThroughput(count.get(), time));
+	}
+	
+	private long importEntities(Class<?> entityType, File dataDir) {
+		String entityName = entityType.getSimpleName();
+		long time = System.currentTimeMillis();
+		AtomicLong count = new AtomicLong(0);
+		for (File file: getDataFiles(dataDir, entityType)) {
+			logger.info("Importing from data file '" + file.getName() + "'...");
+			IdGenerator.setKeepAssignedId(true);
+			try (StatelessSession session = sessionFactory.openStatelessSession()) {
+				session.setJdbcBatchSize(IMPORT_JDBC_BATCH_SIZE);
 				Transaction transaction = session.beginTransaction();
 				try {
-					logger.info("Importing from data file '" + file.getName() + "'...");
-					VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
-					
-					for (Element element: dom.getRootElement().elements()) {
-						element.detach();
-						AbstractEntity entity = (AbstractEntity) new VersionedXmlDoc(DocumentHelper.createDocument(element)).toBean();
-						session.replicate(entity, ReplicationMode.EXCEPTION);
-					}
-					session.flush();
-					session.clear();
+					readDataFile(file, new Consumer<AbstractEntity>() {
+
+						@Override
+						public void accept(AbstractEntity entity) {
+							session.insert(entity);
+							if (count.incrementAndGet() % PROGRESS_LOG_INTERVAL == 0) {
+								logger.info("Imported {} rows of table '{}' so far ({})", 
+										count.get(), entityName, describeThroughput(count.get(), time));
+							}
+						}
+						
+					});
 					transaction.commit();
 				} catch (Exception e) {
 					transaction.rollback();
 					throw ExceptionUtils.unchecked(e);
 				}
+			} finally {
+				IdGenerator.setKeepAssignedId(false);
 			}
-		}	
+		}
+		logger.info("Imported {} rows of table '{}' in {}", count.get(), entityName, describeThroughput(count.get(), time));
+		return count.get();
 	}
 	
 	protected void validateData(Metadata metadata, File dataDir) {
-		List<Class<?>> entityTypes = getEntityTypes(sessionFactory);
-		Collections.reverse(entityTypes);
-		for (Class<?> entityType: entityTypes) {
-			File[] dataFiles = dataDir.listFiles(new FilenameFilter() {
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (Class<?> entityType: getEntityTypes(sessionFactory)) {
+			tasks.add(new Callable<Void>() {
 
 				@Override
-				public boolean accept(File dir, String name) {
-					return name.startsWith(entityType.getSimpleName() + "s.xml");
+				public Void call() throws Exception {
+					for (File file: getDataFiles(dataDir, entityType)) {
+						logger.info("Validating data file '" + file.getName() + "'...");
+						readDataFile(file, new Consumer<AbstractEntity>() {
+
+							@Override
+							public void accept(AbstractEntity entity) {
+								validator.validate(entity);
+							}
+							
+						});
+					}
+					return null;
 				}
 				
 			});
-			for (File file: dataFiles) {
-				try {
-					logger.info("Validating data file '" + file.getName() + "'...");
-					VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
-					
-					for (Element element: dom.getRootElement().elements()) {
-						element.detach();
-						AbstractEntity entity = (AbstractEntity) new VersionedXmlDoc(DocumentHelper.createDocument(element)).toBean();
-						validator.validate(entity);
-					}
-				} catch (Exception e) {
-					throw ExceptionUtils.unchecked(e);
-				}
-			}
-		}	
+		}
+		runInParallel(tasks);
 	}
 	
 	protected void applyConstraints(Metadata metadata) {
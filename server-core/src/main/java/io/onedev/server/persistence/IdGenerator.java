@@ -12,15 +12,28 @@ import org.hibernate.service.ServiceRegistry;
 import org.hibernate.type.Type;
 
 import io.onedev.commons.launcher.loader.AppLoader;
+import io.onedev.server.model.AbstractEntity;
 
 public class IdGenerator implements IdentifierGenerator, Configurable {
 
+	private static final ThreadLocal<Boolean> keepAssignedId = ThreadLocal.withInitial(() -> false);
+	
+	/*
+	 * Stateless insert always generates id. When importing data, ids of inserted entities 
+	 * are already assigned and should be kept, so importing threads enable this flag 
+	 */
+	static void setKeepAssignedId(boolean keepAssignedId) {
+		IdGenerator.keepAssignedId.set(keepAssignedId);
+	}
+	
 	@Override
 	public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
 	}
 
 	@Override
 	public Serializable generate(SharedSessionContractImplementor session, Object object) throws HibernateException {
+		if (keepAssignedId.get() && object instanceof AbstractEntity && ((AbstractEntity)object).getId() != null)
+			return ((AbstractEntity)object).getId();
 		return AppLoader.getInstance(IdManager.class).nextId(object.getClass());
 	}
 
@@ -4,6 +4,8 @@ public interface IdManager {
 	
 	void init();
 	
+	void stop();
+	
 	long nextId(Class<?> entityClass);
 	
 	void useId(Class<?> entityClass, long id);
@@ -1,6 +1,7 @@
 package io.onedev.server.persistence;
 
 import java.io.File;
+import java.sql.Connection;
 
 import org.hibernate.SessionFactory;
 import org.hibernate.boot.Metadata;
@@ -9,6 +10,12 @@ public interface PersistManager {
 	
 	SessionFactory getSessionFactory();
 	
+	/**
+	 * Open a new connection to the database. The connection is not managed by the 
+	 * connection pool, and should be closed by the caller
+	 */
+	Connection getConnection();
+	
 	void start();
 	
 	void stop();
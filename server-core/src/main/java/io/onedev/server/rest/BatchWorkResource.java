@@ -0,0 +1,39 @@
+package io.onedev.server.rest;
+
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.apache.shiro.authz.UnauthorizedException;
+
+import io.onedev.server.security.SecurityUtils;
+import io.onedev.server.util.work.BatchWorkManager;
+import io.onedev.server.util.work.BatchWorkerStats;
+
+@Path("/batch-works")
+@Consumes(MediaType.WILDCARD)
+@Produces(MediaType.APPLICATION_JSON)
+@Singleton
+public class BatchWorkResource {
+
+	private final BatchWorkManager batchWorkManager;
+	
+	@Inject
+	public BatchWorkResource(BatchWorkManager batchWorkManager) {
+		this.batchWorkManager = batchWorkManager;
+	}
+	
+	@GET
+    public List<BatchWorkerStats> getWorkerStats() {
+		if (!SecurityUtils.isAdministrator())
+			throw new UnauthorizedException("This operation requires administrator permission");
+		return batchWorkManager.getWorkerStats();
+    }
+	
+}
@@ -21,10 +21,18 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicReference;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -33,20 +41,26 @@ import org.apache.commons.lang.SerializationUtils;
 import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexFormatTooOldException;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.TermInSetQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
@@ -83,6 +97,7 @@ import io.onedev.server.persistence.annotation.Sessional;
 import io.onedev.server.storage.StorageManager;
 import io.onedev.server.util.ContentDetector;
 import io.onedev.server.util.IndexResult;
+import io.onedev.server.util.ServerConfig;
 import io.onedev.server.util.concurrent.Prioritized;
 import io.onedev.server.util.work.BatchWorkManager;
 import io.onedev.server.util.work.BatchWorker;
@@ -98,6 +113,10 @@ public class DefaultIndexManager implements IndexManager {
 	
 	private static final int DATA_VERSION = 5;
 	
+	private static final int PROGRESS_LOG_INTERVAL = 10000;
+	
+	private static final int VERSION_LOOKUP_BATCH = 1000;
+	
 	private final StorageManager storageManager;
 	
 	private final BatchWorkManager batchWorkManager;
@@ -108,14 +127,23 @@ public class DefaultIndexManager implements IndexManager {
 	
 	private final ListenerRegistry listenerRegistry;
 	
+	private final ExecutorService executorService;
+	
+	private final ServerConfig serverConfig;
+	
+	private final Map<Long, IndexResult> indexingProgresses = new ConcurrentHashMap<>();
+	
 	@Inject
 	public DefaultIndexManager(ListenerRegistry listenerRegistry, StorageManager storageManager, 
-			BatchWorkManager batchWorkManager, SessionManager sessionManager, ProjectManager projectManager) {
+			BatchWorkManager batchWorkManager, SessionManager sessionManager, ProjectManager projectManager, 
+			ExecutorService executorService, ServerConfig serverConfig) {
 		this.listenerRegistry = listenerRegistry;
 		this.storageManager = storageManager;
 		this.batchWorkManager = batchWorkManager;
 		this.sessionManager = sessionManager;
 		this.projectManager = projectManager;
+		this.executorService = executorService;
+		this.serverConfig = serverConfig;
 	}
 
 	private String getCommitIndexVersion(final IndexSearcher searcher, AnyObjectId commitId) throws IOException {
@@ -144,7 +172,7 @@ public class DefaultIndexManager implements IndexManager {
 		return indexVersion.get();
 	}
 	
-	private IndexResult index(Repository repository, AnyObjectId commitId, 
+	private IndexResult index(Long projectId, Repository repository, AnyObjectId commitId, 
 			IndexWriter writer, final IndexSearcher searcher) throws Exception {
 		try (	RevWalk revWalk = new RevWalk(repository); 
 				TreeWalk treeWalk = new TreeWalk(repository)) {
@@ -152,7 +180,13 @@ public class DefaultIndexManager implements IndexManager {
 			treeWalk.setRecursive(true);
 			
 			if (searcher != null) {
-				TopDocs topDocs = searcher.search(META.query(LAST_COMMIT.name()), 1);
+				/*
+				 * Projects in a fork tree share the index, so last commit is recorded per project. 
+				 * Fall back to the single last commit recorded by earlier versions  
+				 */
+				TopDocs topDocs = searcher.search(META.query(getLastCommitMeta(projectId)), 1);
+				if (topDocs.scoreDocs.length == 0)
+					topDocs = searcher.search(META.query(LAST_COMMIT.name()), 1);
 				if (topDocs.scoreDocs.length != 0) {
 					Document doc = searcher.doc(topDocs.scoreDocs[0].doc);
 					String lastCommitIndexVersion = doc.get(LAST_COMMIT_INDEX_VERSION.name());
@@ -167,59 +201,18 @@ public class DefaultIndexManager implements IndexManager {
 				}
 			}
 	
-			int indexed = 0;
-			int checked = 0;
-			while (treeWalk.next()) {
-				if ((treeWalk.getRawMode(0) & FileMode.TYPE_MASK) == FileMode.TYPE_FILE 
-						&& (treeWalk.getTreeCount() == 1 || !treeWalk.idEqual(0, 1))) {
-					ObjectId blobId = treeWalk.getObjectId(0);
-					String blobPath = treeWalk.getPathString();
-					String blobName = treeWalk.getNameString();
-					
-					BooleanQuery.Builder builder = new BooleanQuery.Builder();
-					builder.add(BLOB_HASH.query(blobId.name()), Occur.MUST);
-					builder.add(BLOB_PATH.query(blobPath), Occur.MUST);
-					BooleanQuery query = builder.build();
-					
-					final AtomicReference<String> blobIndexVersionRef = new AtomicReference<>(null);
-					if (searcher != null) {
-						searcher.search(query, new SimpleCollector() {
-	
-							private LeafReaderContext context;
-	
-							@Override
-							public void collect(int doc) throws IOException {
-								blobIndexVersionRef.set(searcher.doc(context.docBase+doc).get(BLOB_INDEX_VERSION.name()));
-							}
-	
-							@Override
-							protected void doSetNextReader(LeafReaderContext context) throws IOException {
-								this.context = context;
-							}
-	
-							@Override
-							public boolean needsScores() {
-								return false;
-							}
-							
-						});
-						checked++;
-					}
-	
-					SymbolExtractor<Symbol> extractor = SymbolExtractorRegistry.getExtractor(blobName);
-					String currentBlobIndexVersion = getIndexVersion(extractor);
-					String blobIndexVersion = blobIndexVersionRef.get();
-					if (blobIndexVersion != null) {
-						if (!blobIndexVersion.equals(currentBlobIndexVersion)) {
-							writer.deleteDocuments(query);
-							indexBlob(writer, repository, extractor, blobId, blobPath);
-							indexed++;
-						}
-					} else {
-						indexBlob(writer, repository, extractor, blobId, blobPath);
-						indexed++;
-					}
-				}
+			IndexResult progress = new IndexResult(0, 0);
+			indexingProgresses.put(projectId, progress);
+			IndexPipeline pipeline = new IndexPipeline(executorService, writer, serverConfig.getCodeIndexParallelism());
+			boolean finished = false;
+			try {
+				index(repository, treeWalk, writer, searcher, pipeline, progress);
+				pipeline.finish();
+				finished = true;
+			} finally {
+				if (!finished)
+					pipeline.abort();
+				indexingProgresses.remove(projectId);
 			}
 	
 			// record current commit so that we know which commit has been indexed
@@ -230,21 +223,205 @@ public class DefaultIndexManager implements IndexManager {
 			
 			// record last commit so that we only need to indexing changed files for subsequent commits
 			document = new Document();
-			document.add(new StringField(META.name(), LAST_COMMIT.name(), Store.NO));
+			document.add(new StringField(META.name(), getLastCommitMeta(projectId), Store.NO));
 			document.add(new StoredField(LAST_COMMIT_INDEX_VERSION.name(), getIndexVersion()));
 			document.add(new StoredField(LAST_COMMIT_HASH.name(), commitId.getName()));
-			writer.updateDocument(META.term(LAST_COMMIT.name()), document);
+			writer.updateDocument(META.term(getLastCommitMeta(projectId)), document);
+			
+			return progress;
+		}
+	}
+	
+	private String getLastCommitMeta(Long projectId) {
+		return LAST_COMMIT.name() + ":" + projectId;
+	}
+	
+	/*
+	 * Walk the tree on calling thread to find blobs needing to be indexed, and leave reading 
+	 * and extracting symbols of blobs to the pipeline. Changed blobs are collected in batches 
+	 * so that their index versions can be resolved with a single query per batch
+	 */
+	private void index(Repository repository, TreeWalk treeWalk, IndexWriter writer, 
+			IndexSearcher searcher, IndexPipeline pipeline, IndexResult progress) throws Exception {
+		List<BlobToIndex> blobs = new ArrayList<>();
+		while (treeWalk.next()) {
+			if ((treeWalk.getRawMode(0) & FileMode.TYPE_MASK) == FileMode.TYPE_FILE 
+					&& (treeWalk.getTreeCount() == 1 || !treeWalk.idEqual(0, 1))) {
+				blobs.add(new BlobToIndex(treeWalk.getObjectId(0), treeWalk.getPathString(), treeWalk.getNameString()));
+				if (blobs.size() == VERSION_LOOKUP_BATCH) {
+					index(repository, blobs, writer, searcher, pipeline, progress);
+					blobs.clear();
+				}
+			}
+		}
+		if (!blobs.isEmpty())
+			index(repository, blobs, writer, searcher, pipeline, progress);
+	}
+	
+	private void index(Repository repository, List<BlobToIndex> blobs, IndexWriter writer, 
+			IndexSearcher searcher, IndexPipeline pipeline, IndexResult progress) throws Exception {
+		int checked = progress.getChecked();
+		int indexed = progress.getIndexed();
+		
+		Map<String, String> blobIndexVersions;
+		Set<String> legacyBlobPaths = new HashSet<>();
+		Map<String, Integer> symbolDocs = new HashMap<>();
+		if (searcher != null) {
+			blobIndexVersions = getBlobIndexVersions(searcher, blobs, legacyBlobPaths, symbolDocs);
+			checked += blobs.size();
+		} else {
+			blobIndexVersions = new HashMap<>();
+		}
+		
+		for (BlobToIndex blob: blobs) {
+			String blobIndexVersion;
+			if (legacyBlobPaths.contains(blob.getPath()))
+				blobIndexVersion = getBlobIndexVersion(searcher, blob);
+			else
+				blobIndexVersion = blobIndexVersions.get(blob.getPath());
 			
-			return new IndexResult(checked, indexed);
+			SymbolExtractor<Symbol> extractor = SymbolExtractorRegistry.getExtractor(blob.getName());
+			String currentBlobIndexVersion = getIndexVersion(extractor);
+			Integer symbolDoc = symbolDocs.get(getSymbolKey(blob.getId().name(), blob.getName(), currentBlobIndexVersion));
+			if (blobIndexVersion != null) {
+				if (!blobIndexVersion.equals(currentBlobIndexVersion)) {
+					writer.deleteDocuments(getBlobQuery(blob));
+					pipeline.submit(() -> buildDocument(repository, extractor, blob.getId(), blob.getPath(), searcher, symbolDoc));
+					indexed++;
+				}
+			} else {
+				pipeline.submit(() -> buildDocument(repository, extractor, blob.getId(), blob.getPath(), searcher, symbolDoc));
+				indexed++;
+			}
+		}
+		
+		if (checked / PROGRESS_LOG_INTERVAL != progress.getChecked() / PROGRESS_LOG_INTERVAL
+				|| indexed / PROGRESS_LOG_INTERVAL != progress.getIndexed() / PROGRESS_LOG_INTERVAL) {
+			logger.info("Indexing in progress (checked: {}, submitted: {}, written: {})", 
+					checked, indexed, pipeline.getWritten());
 		}
+		progress.setChecked(checked);
+		progress.setIndexed(indexed);
+	}
+	
+	private Query getBlobQuery(BlobToIndex blob) {
+		BooleanQuery.Builder builder = new BooleanQuery.Builder();
+		builder.add(BLOB_HASH.query(blob.getId().name()), Occur.MUST);
+		builder.add(BLOB_PATH.query(blob.getPath()), Occur.MUST);
+		return builder.build();
+	}
+	
+	private String getSymbolKey(String blobHash, String blobName, String blobIndexVersion) {
+		return blobHash + ":" + blobName + ":" + blobIndexVersion;
+	}
+	
+	/*
+	 * Resolve index versions of specified blobs with a single query over their hashes. Hash, 
+	 * path and index version of matched documents are read from doc values, so stored fields 
+	 * do not need to be loaded. Documents indexed before doc values of hash and index version 
+	 * were introduced are reported via legacyBlobPaths, and should be looked up individually. 
+	 * Documents of same content and file name at other paths (moved files, or same file in 
+	 * other branches and forks) are reported via symbolDocs, so that their symbols can be 
+	 * reused instead of being extracted again
+	 * 
+	 * @return
+	 * 			map of blob path to index version of blobs already indexed
+	 */
+	private Map<String, String> getBlobIndexVersions(IndexSearcher searcher, List<BlobToIndex> blobs, 
+			Set<String> legacyBlobPaths, Map<String, Integer> symbolDocs) throws IOException {
+		Map<String, String> blobHashes = new HashMap<>();
+		List<BytesRef> terms = new ArrayList<>();
+		for (BlobToIndex blob: blobs) {
+			blobHashes.put(blob.getPath(), blob.getId().name());
+			terms.add(new BytesRef(blob.getId().name()));
+		}
+		
+		Map<String, String> blobIndexVersions = new HashMap<>();
+		searcher.search(new TermInSetQuery(BLOB_HASH.name(), terms), new SimpleCollector() {
+
+			private BinaryDocValues blobPathValues;
+			
+			private SortedDocValues blobHashValues;
+			
+			private SortedDocValues blobIndexVersionValues;
+			
+			private int docBase;
+			
+			@Override
+			public void collect(int doc) throws IOException {
+				if (blobPathValues.advanceExact(doc)) {
+					String blobPath = blobPathValues.binaryValue().utf8ToString();
+					if (blobHashValues.advanceExact(doc) && blobIndexVersionValues.advanceExact(doc)) {
+						String docBlobHash = blobHashValues.binaryValue().utf8ToString();
+						String docBlobIndexVersion = blobIndexVersionValues.binaryValue().utf8ToString();
+						if (docBlobHash.equals(blobHashes.get(blobPath))) 
+							blobIndexVersions.put(blobPath, docBlobIndexVersion);
+						String blobName = StringUtils.substringAfterLast("/" + blobPath, "/");
+						symbolDocs.putIfAbsent(getSymbolKey(docBlobHash, blobName, docBlobIndexVersion), docBase+doc);
+					} else if (blobHashes.containsKey(blobPath)) {
+						legacyBlobPaths.add(blobPath);
+					}
+				}
+			}
+
+			@Override
+			protected void doSetNextReader(LeafReaderContext context) throws IOException {
+				docBase = context.docBase;
+				blobPathValues = DocValues.getBinary(context.reader(), BLOB_PATH.name());
+				blobHashValues = DocValues.getSorted(context.reader(), BLOB_HASH.name());
+				blobIndexVersionValues = DocValues.getSorted(context.reader(), BLOB_INDEX_VERSION.name());
+			}
+
+			@Override
+			public boolean needsScores() {
+				return false;
+			}
+			
+		});
+		return blobIndexVersions;
+	}
+	
+	@Nullable
+	private String getBlobIndexVersion(IndexSearcher searcher, BlobToIndex blob) throws IOException {
+		AtomicReference<String> blobIndexVersionRef = new AtomicReference<>(null);
+		searcher.search(getBlobQuery(blob), new SimpleCollector() {
+
+			private LeafReaderContext context;
+
+			@Override
+			public void collect(int doc) throws IOException {
+				blobIndexVersionRef.set(searcher.doc(context.docBase+doc).get(BLOB_INDEX_VERSION.name()));
+			}
+
+			@Override
+			protected void doSetNextReader(LeafReaderContext context) throws IOException {
+				this.context = context;
+			}
+
+			@Override
+			public boolean needsScores() {
+				return false;
+			}
+			
+		});
+		return blobIndexVersionRef.get();
 	}
 	
-	private void indexBlob(IndexWriter writer, Repository repository, 
-			SymbolExtractor<Symbol> extractor, ObjectId blobId, String blobPath) throws IOException {
+	/*
+	 * Build index document of specified blob. This method is called concurrently from 
+	 * index pipeline workers. If symbolDoc is specified, symbols stored in that document 
+	 * will be reused instead of being extracted from blob content
+	 */
+	private Document buildDocument(Repository repository, SymbolExtractor<Symbol> extractor, 
+			ObjectId blobId, String blobPath, @Nullable IndexSearcher searcher, 
+			@Nullable Integer symbolDoc) throws IOException {
 		Document document = new Document();
 		
-		document.add(new StoredField(BLOB_INDEX_VERSION.name(), getIndexVersion(extractor)));
+		String blobIndexVersion = getIndexVersion(extractor);
+		document.add(new StoredField(BLOB_INDEX_VERSION.name(), blobIndexVersion));
+		document.add(new SortedDocValuesField(BLOB_INDEX_VERSION.name(), new BytesRef(blobIndexVersion)));
 		document.add(new StringField(BLOB_HASH.name(), blobId.name(), Store.NO));
+		document.add(new SortedDocValuesField(BLOB_HASH.name(), new BytesRef(blobId.name())));
 		document.add(new StringField(BLOB_PATH.name(), blobPath, Store.NO));
 		document.add(new BinaryDocValuesField(BLOB_PATH.name(), new BytesRef(blobPath.getBytes(StandardCharsets.UTF_8))));
 		
@@ -263,10 +440,14 @@ public class DefaultIndexManager implements IndexManager {
 				
 				if (extractor != null) {
 					List<Symbol> symbols = null;
-					try {
-						symbols = extractor.extract(blobName, StringUtils.removeBOM(content));
-					} catch (Exception e) {
-						logger.trace("Can not extract symbols from blob (hash:" + blobId.name() + ", path:" + blobPath + ")", e);
+					if (searcher != null && symbolDoc != null)
+						symbols = getSymbols(searcher, symbolDoc);
+					if (symbols == null) {
+						try {
+							symbols = extractor.extract(blobName, StringUtils.removeBOM(content));
+						} catch (Exception e) {
+							logger.trace("Can not extract symbols from blob (hash:" + blobId.name() + ", path:" + blobPath + ")", e);
+						}
 					}
 					if (symbols != null) {
 						for (Symbol symbol: symbols) {
@@ -293,11 +474,29 @@ public class DefaultIndexManager implements IndexManager {
 			logger.debug("Ignore content of large file '{}'.", blobPath);
 		}
 
-		writer.addDocument(document);
+		return document;
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Nullable
+	private List<Symbol> getSymbols(IndexSearcher searcher, int doc) throws IOException {
+		BytesRef bytesRef = searcher.doc(doc).getBinaryValue(BLOB_SYMBOL_LIST.name());
+		if (bytesRef != null) {
+			try {
+				return (List<Symbol>) SerializationUtils.deserialize(bytesRef.bytes);
+			} catch (Exception e) {
+				logger.error("Error deserializing symbols", e);
+			}
+		} 
+		return null;
 	}
 	
-	private BatchWorker getBatchWorker(Long projectId) {
-		return new BatchWorker("project-" + projectId + "-indexBlob", 1) {
+	/*
+	 * Projects in a fork tree share index of the fork root, so works indexing them are 
+	 * serialized via the same batch worker 
+	 */
+	private BatchWorker getBatchWorker(Project project) {
+		return new BatchWorker("project-" + project.getForkRoot().getId() + "-indexBlob", 1) {
 
 			@Override
 			public void doWorks(Collection<Prioritized> works) {
@@ -307,8 +506,9 @@ public class DefaultIndexManager implements IndexManager {
 					public void run() {
 						Preconditions.checkState(works.size() == 1);
 
-						Project project = projectManager.load(projectId);
-						ObjectId commitId = ((IndexWork) works.iterator().next()).getCommitId();
+						IndexWork work = (IndexWork) works.iterator().next();
+						Project project = projectManager.load(work.getProjectId());
+						ObjectId commitId = work.getCommitId();
 						doIndex(project, commitId);
 						
 						listenerRegistry.post(new CommitIndexed(project, commitId.copy()));
@@ -326,7 +526,7 @@ public class DefaultIndexManager implements IndexManager {
 		try (IndexWriter writer = new IndexWriter(directory, writerConfig)) {
 			try {
 				logger.debug("Indexing commit (project: {}, commit: {})", project.getName(), commit.getName());
-				IndexResult indexResult = index(project.getRepository(), commit, writer, searcher);
+				IndexResult indexResult = index(project.getId(), project.getRepository(), commit, writer, searcher);
 				writer.commit();
 				return indexResult;
 			} catch (Exception e) {
@@ -339,7 +539,8 @@ public class DefaultIndexManager implements IndexManager {
 	}
 	
 	private IndexResult doIndex(Project project, ObjectId commit) {
-		try (Directory directory = FSDirectory.open(storageManager.getProjectIndexDir(project.getId()).toPath())) {
+		File indexDir = storageManager.getProjectIndexDir(project.getForkRoot().getId());
+		try (Directory directory = FSDirectory.open(indexDir.toPath())) {
 			if (DirectoryReader.indexExists(directory)) {
 				try (IndexReader reader = DirectoryReader.open(directory)) {
 					IndexSearcher searcher = new IndexSearcher(reader);
@@ -373,7 +574,7 @@ public class DefaultIndexManager implements IndexManager {
 
 	@Override
 	public boolean isIndexed(Project project, ObjectId commit) {
-		File indexDir = storageManager.getProjectIndexDir(project.getId());
+		File indexDir = storageManager.getProjectIndexDir(project.getForkRoot().getId());
 		try (Directory directory = FSDirectory.open(indexDir.toPath())) {
 			if (DirectoryReader.indexExists(directory)) {
 				try (IndexReader reader = DirectoryReader.open(directory)) {
@@ -394,8 +595,8 @@ public class DefaultIndexManager implements IndexManager {
 		// only index branches at back end, tags will be indexed on demand from GUI 
 		// as many tags might be pushed all at once when the repository is imported 
 		if (event.getRefName().startsWith(Constants.R_HEADS) && !event.getNewCommitId().equals(ObjectId.zeroId())) {
-			IndexWork work = new IndexWork(BACKEND_INDEXING_PRIORITY, event.getNewCommitId());
-			batchWorkManager.submit(getBatchWorker(event.getProject().getId()), work);
+			IndexWork work = new IndexWork(BACKEND_INDEXING_PRIORITY, event.getProject().getId(), event.getNewCommitId());
+			batchWorkManager.submit(getBatchWorker(event.getProject()), work);
 		}
 	}
 	
@@ -403,6 +604,9 @@ public class DefaultIndexManager implements IndexManager {
 	@Listen
 	public void on(SystemStarted event) {
 		for (Project project: projectManager.query()) {
+			// Forks share index of the fork root
+			if (project.getForkedFrom() != null)
+				continue;
 			File indexDir = storageManager.getProjectIndexDir(project.getId());
 			if (indexDir.exists()) {
 				try (Directory directory = FSDirectory.open(indexDir.toPath())) {
@@ -419,6 +623,11 @@ public class DefaultIndexManager implements IndexManager {
 		}
 	}
 	
+	@Override
+	public IndexResult getIndexingProgress(Project project) {
+		return indexingProgresses.get(project.getId());
+	}
+	
 	@Sessional
 	@Override
 	public void indexAsync(Project project, ObjectId commit) {
@@ -427,23 +636,58 @@ public class DefaultIndexManager implements IndexManager {
 			priority = UI_INDEXING_PRIORITY;
 		else
 			priority = BACKEND_INDEXING_PRIORITY;
-		IndexWork work = new IndexWork(priority, commit);
-		batchWorkManager.submit(getBatchWorker(project.getId()), work);
+		IndexWork work = new IndexWork(priority, project.getId(), commit);
+		batchWorkManager.submit(getBatchWorker(project), work);
 	}
 	
 	private static class IndexWork extends Prioritized {
 
+		private final Long projectId;
+		
 		private final ObjectId commitId;
 		
-		public IndexWork(int priority, ObjectId commitId) {
+		public IndexWork(int priority, Long projectId, ObjectId commitId) {
 			super(priority);
+			this.projectId = projectId;
 			this.commitId = commitId;
 		}
 
+		public Long getProjectId() {
+			return projectId;
+		}
+
 		public ObjectId getCommitId() {
 			return commitId;
 		}
 		
 	}
 
+	private static class BlobToIndex {
+		
+		private final ObjectId id;
+		
+		private final String path;
+		
+		private final String name;
+		
+		public BlobToIndex(ObjectId id, String path, String name) {
+			this.id = id;
+			this.path = path;
+			this.name = name;
+		}
+
+		public ObjectId getId() {
+			return id;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public String getName() {
+			return name;
+		}
+		
+	}
+	
 }
@@ -8,12 +8,19 @@ import static io.onedev.server.search.code.FieldConstants.BLOB_SYMBOL_LIST;
 import java.io.IOException;
 import java.nio.channels.ClosedByInterruptException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -23,16 +30,24 @@ import org.apache.commons.lang.SerializationUtils;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BulkScorer;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.Weight;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.BytesRef;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.TreeWalk;
@@ -40,6 +55,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import io.onedev.commons.jsymbol.Symbol;
 import io.onedev.commons.jsymbol.SymbolExtractorRegistry;
@@ -64,10 +80,14 @@ public class DefaultSearchManager implements SearchManager {
 	
 	private final IndexManager indexManager;
 	
+	private final ExecutorService executorService;
+	
 	@Inject
-	public DefaultSearchManager(StorageManager storageManager, IndexManager indexManager) {
+	public DefaultSearchManager(StorageManager storageManager, IndexManager indexManager, 
+			ExecutorService executorService) {
 		this.storageManager = storageManager;
 		this.indexManager = indexManager;
+		this.executorService = executorService;
 	}
 	
 	@Nullable
@@ -101,60 +121,125 @@ public class DefaultSearchManager implements SearchManager {
 	public List<QueryHit> search(Project project, ObjectId commit, final BlobQuery query) 
 			throws InterruptedException {
 		List<QueryHit> hits = new ArrayList<>();
+		search(project, commit, query, null, new Consumer<List<QueryHit>>() {
 
+			@Override
+			public void accept(List<QueryHit> blobHits) {
+				hits.addAll(blobHits);
+			}
+			
+		});
+		
+		if (hits.size() > query.getCount())
+			return new ArrayList<>(hits.subList(0, query.getCount()));
+		else
+			return hits;
+	}
+	
+	@Override
+	public SearchCursor search(Project project, ObjectId commit, BlobQuery query, 
+			SearchCursor cursor, Consumer<List<QueryHit>> consumer) throws InterruptedException {
 		SearcherManager searcherManager = getSearcherManager(project.getForkRoot());
-		if (searcherManager != null) {
+		if (searcherManager == null)
+			return null;
+		
+		try {
+			IndexSearcher searcher = searcherManager.acquire();
 			try {
-				final IndexSearcher searcher = searcherManager.acquire();
-				try {
-					try (RevWalk revWalk = new RevWalk(project.getRepository())){
-						final RevTree revTree = revWalk.parseCommit(commit).getTree();
-						final Set<String> checkedBlobPaths = new HashSet<>();
-						
-						searcher.search(query.asLuceneQuery(), new SimpleCollector() {
-	
-							private BinaryDocValues blobPathValues;
-							
-							@Override
-							public void collect(int doc) throws IOException {
-								if (hits.size() < query.getCount() && !Thread.currentThread().isInterrupted()) {
-									Preconditions.checkState(blobPathValues.advanceExact(doc));
-									String blobPath = blobPathValues.binaryValue().utf8ToString();
-									
-									if (!checkedBlobPaths.contains(blobPath)) {
-										TreeWalk treeWalk = TreeWalk.forPath(project.getRepository(), blobPath, revTree);									
-										if (treeWalk != null)
-											query.collect(searcher, treeWalk, hits);
-										checkedBlobPaths.add(blobPath);
-									}
-								}
-							}
+				long indexVersion = ((DirectoryReader) searcher.getIndexReader()).getVersion();
+				Map<Integer, Integer> nextDocs = new HashMap<>();
+				Set<String> checkedBlobPaths = new HashSet<>();
+				if (cursor != null) {
+					// If index is changed since last search, segments need to be checked again, 
+					// and checked blob paths make sure that same hits are not reported again
+					if (cursor.getIndexVersion() == indexVersion)
+						nextDocs.putAll(cursor.getNextDocs());
+					checkedBlobPaths.addAll(cursor.getCheckedBlobPaths());
+				}
+				
+				RevTree revTree;
+				try (RevWalk revWalk = new RevWalk(project.getRepository())) {
+					revTree = revWalk.parseCommit(commit).getTree();
+				}
+				
+				Weight weight = searcher.createNormalizedWeight(query.asLuceneQuery(), false);
+				
+				int hitCount = 0;
+				while (hitCount < query.getCount()) {
+					List<LeafReaderContext> contexts = new ArrayList<>();
+					for (LeafReaderContext context: searcher.getIndexReader().leaves()) {
+						if (nextDocs.getOrDefault(context.ord, 0) != DocIdSetIterator.NO_MORE_DOCS)
+							contexts.add(context);
+					}
+					if (contexts.isEmpty())
+						break;
+					
+					SegmentSearch segmentSearch = new SegmentSearch(project.getRepository(), revTree, 
+							searcher, weight, query, contexts, nextDocs, checkedBlobPaths, 
+							query.getCount() - hitCount);
+					
+					List<Future<?>> futures = new ArrayList<>();
+					for (int i=0; i<contexts.size(); i++) {
+						int index = i;
+						futures.add(executorService.submit(new Callable<Void>() {
 	
 							@Override
-							protected void doSetNextReader(LeafReaderContext context) throws IOException {
-								blobPathValues  = context.reader().getBinaryDocValues(FieldConstants.BLOB_PATH.name());
+							public Void call() throws Exception {
+								segmentSearch.search(index);
+								return null;
 							}
-
-							@Override
-							public boolean needsScores() {
-								return false;
+							
+						}));
+					}
+					
+					RuntimeException error = null;
+					for (Future<?> future: futures) {
+						try {
+							if (segmentSearch.isCancelled())
+								Uninterruptibles.getUninterruptibly(future);
+							else
+								future.get();
+						} catch (InterruptedException e) {
+							// Segment searches use the searcher, wait for them to stop before 
+							// releasing it
+							segmentSearch.cancel();
+							try {
+								Uninterruptibles.getUninterruptibly(future);
+							} catch (ExecutionException e2) {
 							}
-	
-						});
+						} catch (ExecutionException e) {
+							segmentSearch.cancel();
+							if (error == null)
+								error = ExceptionUtils.unchecked(e.getCause());
+						}
 					}
-				} finally {
-					searcherManager.release(searcher);
+					if (error != null)
+						throw error;
+					if (segmentSearch.isCancelled() || Thread.interrupted())
+						throw new InterruptedException();
+					
+					/*
+					 * Segments may stop early if hits of a same blob path are found in multiple 
+					 * segments, in which case we search again from where merge stops 
+					 */
+					hitCount += segmentSearch.merge(consumer);
 				}
-			} catch (IOException e) {
-				throw ExceptionUtils.unchecked(e);
+				
+				for (LeafReaderContext context: searcher.getIndexReader().leaves()) {
+					if (nextDocs.getOrDefault(context.ord, 0) != DocIdSetIterator.NO_MORE_DOCS)
+						return new SearchCursor(indexVersion, nextDocs, checkedBlobPaths);
+				}
+				return null;
+			} finally {
+				searcherManager.release(searcher);
 			}
+		} catch (InterruptedException e) {
+			throw e;
+		} catch (Exception e) {
+			throw ExceptionUtils.unchecked(e);
 		}
-		if (Thread.interrupted())
-			throw new InterruptedException();
-
-		return hits;
 	}
-
+	
 	@Override
 	public List<Symbol> getSymbols(Project project, ObjectId blobId, String blobPath) {
 		try {
@@ -271,5 +356,181 @@ public class DefaultSearchManager implements SearchManager {
 			searcherManagers.clear();
 		}
 	}
+	
+	/**
+	 * Search of index segments in parallel. Each segment records checked blobs in document 
+	 * order, and hits are then merged in segment order, so that the result is the same as 
+	 * searching segments sequentially. A segment stops as soon as hits of itself and all 
+	 * previous segments reach the maximum, as hits after that will be dropped by merge 
+	 * anyway
+	 */
+	private static class SegmentSearch {
+		
+		private final Repository repository;
+		
+		private final RevTree revTree;
+		
+		private final IndexSearcher searcher;
+		
+		private final Weight weight;
+		
+		private final BlobQuery query;
+		
+		private final List<LeafReaderContext> contexts;
+		
+		private final Map<Integer, Integer> nextDocs;
+		
+		private final Set<String> checkedBlobPaths;
+		
+		private final int maxHits;
+		
+		private final Segment[] segments;
+		
+		private volatile boolean cancelled;
+		
+		SegmentSearch(Repository repository, RevTree revTree, IndexSearcher searcher, Weight weight, 
+				BlobQuery query, List<LeafReaderContext> contexts, Map<Integer, Integer> nextDocs, 
+				Set<String> checkedBlobPaths, int maxHits) {
+			this.repository = repository;
+			this.revTree = revTree;
+			this.searcher = searcher;
+			this.weight = weight;
+			this.query = query;
+			this.contexts = contexts;
+			this.nextDocs = nextDocs;
+			this.checkedBlobPaths = checkedBlobPaths;
+			this.maxHits = maxHits;
+			
+			segments = new Segment[contexts.size()];
+			for (int i=0; i<segments.length; i++) 
+				segments[i] = new Segment(nextDocs.getOrDefault(contexts.get(i).ord, 0));
+		}
+		
+		void cancel() {
+			cancelled = true;
+		}
+		
+		boolean isCancelled() {
+			return cancelled;
+		}
+		
+		private int getHitCountUpTo(int index) {
+			int hitCount = 0;
+			for (int i=0; i<=index; i++)
+				hitCount += segments[i].hitCount.get();
+			return hitCount;
+		}
+		
+		/*
+		 * Checked blob paths are only read here, and are updated by merge after all segments 
+		 * are searched
+		 */
+		void search(int index) throws IOException {
+			LeafReaderContext context = contexts.get(index);
+			Segment segment = segments[index];
+			BulkScorer scorer = weight.bulkScorer(context);
+			if (scorer == null) {
+				segment.nextDoc = DocIdSetIterator.NO_MORE_DOCS;
+				return;
+			}
+			
+			BinaryDocValues blobPathValues = DocValues.getBinary(context.reader(), BLOB_PATH.name());
+			Set<String> segmentBlobPaths = new HashSet<>();
+			LeafCollector collector = new LeafCollector() {
 
+				@Override
+				public void setScorer(Scorer scorer) throws IOException {
+				}
+
+				@Override
+				public void collect(int doc) throws IOException {
+					if (cancelled || getHitCountUpTo(index) >= maxHits)
+						throw new CollectionTerminatedException();
+					
+					Preconditions.checkState(blobPathValues.advanceExact(doc));
+					String blobPath = blobPathValues.binaryValue().utf8ToString();
+					if (!checkedBlobPaths.contains(blobPath) && segmentBlobPaths.add(blobPath)) {
+						List<QueryHit> blobHits = new ArrayList<>();
+						TreeWalk treeWalk = TreeWalk.forPath(repository, blobPath, revTree);
+						if (treeWalk != null) 
+							query.collect(searcher, treeWalk, blobHits);
+						segment.checkedBlobs.add(new CheckedBlob(doc, blobPath, blobHits));
+						segment.hitCount.addAndGet(blobHits.size());
+					}
+					segment.nextDoc = doc+1;
+				}
+				
+			};
+			
+			try {
+				segment.nextDoc = scorer.score(collector, context.reader().getLiveDocs(), 
+						segment.nextDoc, DocIdSetIterator.NO_MORE_DOCS);
+			} catch (CollectionTerminatedException e) {
+			}
+		}
+		
+		/**
+		 * Report hits of checked blobs to specified consumer in segment order until maximum 
+		 * number of hits is reached, and advance next docs and checked blob paths accordingly
+		 * 
+		 * @return
+		 * 			number of hits reported
+		 */
+		int merge(Consumer<List<QueryHit>> consumer) {
+			int hitCount = 0;
+			for (int i=0; i<segments.length; i++) {
+				Segment segment = segments[i];
+				int nextDoc = segment.nextDoc;
+				for (CheckedBlob checkedBlob: segment.checkedBlobs) {
+					if (checkedBlobPaths.add(checkedBlob.blobPath) && !checkedBlob.hits.isEmpty()) {
+						consumer.accept(checkedBlob.hits);
+						hitCount += checkedBlob.hits.size();
+					}
+					if (hitCount >= maxHits) {
+						nextDoc = checkedBlob.doc + 1;
+						break;
+					}
+				}
+				nextDocs.put(contexts.get(i).ord, nextDoc);
+				
+				// Progress of subsequent segments is discarded, they will be searched again 
+				// when search continues
+				if (hitCount >= maxHits)
+					break;
+			}
+			return hitCount;
+		}
+		
+	}
+	
+	private static class Segment {
+		
+		private final List<CheckedBlob> checkedBlobs = new ArrayList<>();
+		
+		private final AtomicInteger hitCount = new AtomicInteger(0);
+		
+		private volatile int nextDoc;
+		
+		Segment(int nextDoc) {
+			this.nextDoc = nextDoc;
+		}
+		
+	}
+	
+	private static class CheckedBlob {
+		
+		private final int doc;
+		
+		private final String blobPath;
+		
+		private final List<QueryHit> hits;
+		
+		CheckedBlob(int doc, String blobPath, List<QueryHit> hits) {
+			this.doc = doc;
+			this.blobPath = blobPath;
+			this.hits = hits;
+		}
+		
+	}
+	
 }
@@ -7,6 +7,7 @@ import org.eclipse.jgit.lib.ObjectId;
 import io.onedev.commons.jsymbol.Symbol;
 import io.onedev.commons.jsymbol.SymbolExtractor;
 import io.onedev.server.model.Project;
+import io.onedev.server.util.IndexResult;
 
 public interface IndexManager {
 	
@@ -18,4 +19,14 @@ public interface IndexManager {
 	
 	String getIndexVersion(@Nullable SymbolExtractor<Symbol> extractor);
 	
+	/**
+	 * Get progress of indexing currently running for specified project
+	 * 
+	 * @return
+	 * 			number of files checked and submitted for indexing so far, or <tt>null</tt> 
+	 * 			if the project is not being indexed
+	 */
+	@Nullable
+	IndexResult getIndexingProgress(Project project);
+	
 }
@@ -0,0 +1,167 @@
+package io.onedev.server.search.code;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+
+import io.onedev.commons.utils.ExceptionUtils;
+
+/**
+ * Pipeline to build and write index documents concurrently. Tasks submitted by the caller
+ * (normally the thread walking the tree) are put into a bounded queue, executed by a pool
+ * of workers to build documents (reading blob content and extracting symbols), and the
+ * resulting documents are added to index by a single writer stage. Bounded queues make
+ * the caller wait if workers or writer fall behind, so memory usage stays bounded
+ * regardless of number of blobs being indexed.
+ */
+class IndexPipeline {
+
+	private static final int QUEUE_CAPACITY_PER_WORKER = 16;
+
+	private static final Callable<Document> END_OF_TASKS = () -> null;
+
+	private static final Document END_OF_DOCUMENTS = new Document();
+
+	private final int parallelism;
+
+	private final BlockingQueue<Callable<Document>> tasks;
+
+	private final BlockingQueue<Document> documents;
+
+	private final List<Future<?>> futures = new ArrayList<>();
+
+	private volatile boolean aborted;
+
+	private volatile int written;
+
+	IndexPipeline(ExecutorService executorService, IndexWriter writer, int parallelism) {
+		this.parallelism = parallelism;
+		tasks = new ArrayBlockingQueue<>(parallelism * QUEUE_CAPACITY_PER_WORKER);
+		documents = new ArrayBlockingQueue<>(parallelism * QUEUE_CAPACITY_PER_WORKER);
+
+		for (int i=0; i<parallelism; i++) {
+			futures.add(executorService.submit(new Callable<Void>() {
+
+				@Override
+				public Void call() throws Exception {
+					try {
+						while (true) {
+							Callable<Document> task = take(tasks);
+							if (task == END_OF_TASKS)
+								break;
+							put(documents, task.call());
+						}
+						put(documents, END_OF_DOCUMENTS);
+						return null;
+					} catch (Exception e) {
+						aborted = true;
+						throw e;
+					}
+				}
+
+			}));
+		}
+
+		futures.add(executorService.submit(new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				try {
+					int ended = 0;
+					while (ended < parallelism) {
+						Document document = take(documents);
+						if (document != END_OF_DOCUMENTS) {
+							writer.addDocument(document);
+							written++;
+						} else {
+							ended++;
+						}
+					}
+					return null;
+				} catch (Exception e) {
+					aborted = true;
+					throw e;
+				}
+			}
+
+		}));
+	}
+
+	private <T> T take(BlockingQueue<T> queue) throws InterruptedException {
+		while (true) {
+			T item = queue.poll(1, TimeUnit.SECONDS);
+			if (item != null)
+				return item;
+			else if (aborted)
+				throw new InterruptedException("Index pipeline aborted");
+		}
+	}
+
+	private <T> void put(BlockingQueue<T> queue, T item) throws InterruptedException {
+		while (!queue.offer(item, 1, TimeUnit.SECONDS)) {
+			if (aborted)
+				throw new InterruptedException("Index pipeline aborted");
+		}
+	}
+
+	/**
+	 * Submit a task to build index document. This method blocks if the pipeline is full
+	 */
+	void submit(Callable<Document> task) throws InterruptedException {
+		put(tasks, task);
+	}
+
+	/**
+	 * @return
+	 * 			number of documents added to index so far
+	 */
+	int getWritten() {
+		return written;
+	}
+
+	/**
+	 * Wait until all submitted tasks are executed and their documents are added to index
+	 *
+	 * @throws Exception
+	 * 			first error encountered by workers or writer
+	 */
+	void finish() throws Exception {
+		for (int i=0; i<parallelism; i++)
+			put(tasks, END_OF_TASKS);
+		Exception error = null;
+		for (Future<?> future: futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				if (error == null)
+					error = ExceptionUtils.unchecked(e.getCause());
+			}
+		}
+		if (error != null)
+			throw error;
+	}
+
+	/**
+	 * Stop all workers and writer, and wait for them to exit. Index writer will no longer
+	 * be accessed by this pipeline after this method returns
+	 */
+	void abort() {
+		aborted = true;
+		for (Future<?> future: futures) {
+			try {
+				future.get();
+			} catch (Exception e) {
+			}
+		}
+	}
+
+}
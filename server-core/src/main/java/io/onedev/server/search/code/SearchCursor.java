@@ -0,0 +1,56 @@
+package io.onedev.server.search.code;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Position of a streaming search, returned by {@link SearchManager#search(io.onedev.server.model.Project,
+ * org.eclipse.jgit.lib.ObjectId, io.onedev.server.search.code.query.BlobQuery, SearchCursor,
+ * java.util.function.Consumer)} to continue the search from where it stops.
+ */
+public class SearchCursor implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long indexVersion;
+
+	private final HashMap<Integer, Integer> nextDocs;
+
+	private final HashSet<String> checkedBlobPaths;
+
+	SearchCursor(long indexVersion, Map<Integer, Integer> nextDocs, Set<String> checkedBlobPaths) {
+		this.indexVersion = indexVersion;
+		this.nextDocs = new HashMap<>(nextDocs);
+		this.checkedBlobPaths = new HashSet<>(checkedBlobPaths);
+	}
+
+	/**
+	 * @return
+	 * 			version of the index reader the search was performed with. Positions in
+	 * 			{@link #getNextDocs()} are only meaningful for the same version
+	 */
+	long getIndexVersion() {
+		return indexVersion;
+	}
+
+	/**
+	 * @return
+	 * 			map of index segment ordinal to the next document to be checked in that segment
+	 */
+	Map<Integer, Integer> getNextDocs() {
+		return nextDocs;
+	}
+
+	/**
+	 * @return
+	 * 			blob paths already checked, so that they are not reported again when search
+	 * 			continues, even if index is changed in between
+	 */
+	Set<String> getCheckedBlobPaths() {
+		return checkedBlobPaths;
+	}
+
+}
@@ -1,6 +1,7 @@
 package io.onedev.server.search.code;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import javax.annotation.Nullable;
 
@@ -27,6 +28,28 @@ public interface SearchManager {
 	List<QueryHit> search(Project project, ObjectId commit, BlobQuery query) 
 			throws InterruptedException, TooGeneralQueryException;
 	
+	/**
+	 * Search specified project with specified revision and query, and stream hits to specified 
+	 * consumer as they are verified against blob content. Candidate blobs of different index 
+	 * segments are verified in parallel, and the search stops as soon as number of hits reaches 
+	 * count of the query. Hits are reported in the same order as {@link #search(Project, ObjectId, BlobQuery)}, 
+	 * regardless of how verification of different segments interleaves.
+	 * 
+	 * @param cursor
+	 * 			cursor returned by previous call to continue that search, or <tt>null</tt> to 
+	 * 			start a new search
+	 * @param consumer
+	 * 			consumer of hits found in a blob. It is called from the calling thread
+	 * @return
+	 * 			cursor to continue the search, or <tt>null</tt> if all hits have been found
+	 * @throws 
+	 * 			TooGeneralQueryException if supplied query term is too general to possibly cause query slow
+	 * 			InterruptedException if the search process is interrupted
+	 */
+	@Nullable
+	SearchCursor search(Project project, ObjectId commit, BlobQuery query, @Nullable SearchCursor cursor, 
+			Consumer<List<QueryHit>> consumer) throws InterruptedException, TooGeneralQueryException;
+	
 	@Nullable
 	List<Symbol> getSymbols(Project project, ObjectId blobId, String blobPath);
 	
@@ -0,0 +1,102 @@
+package io.onedev.server.security.permission;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.server.event.entity.EntityEvent;
+import io.onedev.server.event.entity.EntityPersisted;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.model.AbstractEntity;
+import io.onedev.server.model.Group;
+import io.onedev.server.model.GroupAuthorization;
+import io.onedev.server.model.Membership;
+import io.onedev.server.model.Project;
+import io.onedev.server.model.Role;
+import io.onedev.server.model.Setting;
+import io.onedev.server.model.User;
+import io.onedev.server.model.UserAuthorization;
+import io.onedev.server.persistence.TransactionManager;
+
+@Singleton
+public class DefaultPermissionIndexManager implements PermissionIndexManager {
+
+	private final TransactionManager transactionManager;
+	
+	private final Map<Long, PermissionIndex> permissionIndexes = new ConcurrentHashMap<>();
+	
+	private long generation;
+	
+	@Inject
+	public DefaultPermissionIndexManager(TransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
+	}
+	
+	@Override
+	public PermissionIndex getPermissionIndex(Long userId, Supplier<PermissionIndex> compiler) {
+		PermissionIndex permissionIndex = permissionIndexes.get(userId);
+		if (permissionIndex == null) {
+			long generationBeforeCompile;
+			synchronized (this) {
+				generationBeforeCompile = generation;
+			}
+			permissionIndex = compiler.get();
+			
+			/* 
+			 * Do not cache the index if it is invalidated while compiling, as it might be 
+			 * compiled from stale data
+			 */
+			synchronized (this) {
+				if (generation == generationBeforeCompile)
+					permissionIndexes.put(userId, permissionIndex);
+			}
+		}
+		return permissionIndex;
+	}
+	
+	private synchronized void invalidate() {
+		generation++;
+		permissionIndexes.clear();
+	}
+	
+	private void onChange(EntityEvent event, boolean removed) {
+		AbstractEntity entity = event.getEntity();
+		if (entity instanceof Membership || entity instanceof UserAuthorization 
+				|| entity instanceof GroupAuthorization || entity instanceof Role 
+				|| entity instanceof Group || entity instanceof Setting
+				|| removed && (entity instanceof User || entity instanceof Project)) {
+			invalidate();
+			
+			/*
+			 * Invalidate again after the transaction completes, as the index might be 
+			 * compiled before commit with old data, or with data of this transaction 
+			 * which is then rolled back
+			 */
+			if (transactionManager.getTransaction().isActive()) {
+				transactionManager.mustRunAfterTransaction(new Runnable() {
+	
+					@Override
+					public void run() {
+						invalidate();
+					}
+					
+				});
+			}
+		}
+	}
+	
+	@Listen
+	public void on(EntityPersisted event) {
+		onChange(event, false);
+	}
+	
+	@Listen
+	public void on(EntityRemoved event) {
+		onChange(event, true);
+	}
+	
+}
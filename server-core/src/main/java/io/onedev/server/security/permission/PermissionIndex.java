@@ -0,0 +1,143 @@
+package io.onedev.server.security.permission;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.shiro.authz.Permission;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Permissions of a user compiled for quick check. Project privileges are indexed by
+ * project id, and privileges without parameters are compiled into a bit mask of each
+ * project, so that checking a project permission does not need to go through all
+ * permissions of the user.
+ * <p>
+ * The index is cached across requests and threads, so it only keeps ids of entities
+ * and privileges not referencing any entity. Privileges of roles should be resolved
+ * against the user owning the index before being added.
+ * <p>
+ * Call {@link #compile()} after all permissions are added and before the index is used.
+ */
+public class PermissionIndex implements Permission {
+
+	private static final List<Permission> SIMPLE_PRIVILEGES = Lists.newArrayList(
+			new AccessProject(), new ReadCode(), new WriteCode(), new ManageProject(),
+			new ManageCodeComments(), new ManagePullRequests(), new ManageIssues(),
+			new ScheduleIssues(), new ManageBuilds());
+
+	private boolean systemAdministration;
+
+	private boolean createProjects;
+
+	private final Collection<Long> administeredUserIds = new HashSet<>();
+
+	private final Map<Long, ProjectPrivileges> projectPrivileges = new HashMap<>();
+
+	private final ProjectPrivileges allProjectPrivileges = new ProjectPrivileges();
+
+	public void addSystemAdministration() {
+		systemAdministration = true;
+	}
+
+	public void addCreateProjects() {
+		createProjects = true;
+	}
+
+	public void addUserAdministration(Long userId) {
+		administeredUserIds.add(userId);
+	}
+
+	/**
+	 * Add privilege applying to specified project
+	 *
+	 * @param privilege
+	 * 			privilege to add, should not reference any entity
+	 */
+	public void addToProject(Long projectId, Permission privilege) {
+		ProjectPrivileges privileges = projectPrivileges.get(projectId);
+		if (privileges == null) {
+			privileges = new ProjectPrivileges();
+			projectPrivileges.put(projectId, privileges);
+		}
+		privileges.add(privilege);
+	}
+
+	/**
+	 * Add privilege applying to all projects, including those created after the index
+	 * is compiled
+	 *
+	 * @param privilege
+	 * 			privilege to add, should not reference any entity
+	 */
+	public void addToAllProjects(Permission privilege) {
+		allProjectPrivileges.add(privilege);
+	}
+
+	public void compile() {
+		for (ProjectPrivileges privileges: projectPrivileges.values())
+			privileges.compile();
+		allProjectPrivileges.compile();
+	}
+
+	@Override
+	public boolean implies(Permission p) {
+		if (systemAdministration)
+			return true;
+		if (p instanceof CreateProjects) {
+			return createProjects;
+		} else if (p instanceof UserAdministration) {
+			return administeredUserIds.contains(((UserAdministration) p).getUser().getId());
+		} else if (p instanceof ProjectPermission) {
+			ProjectPermission projectPermission = (ProjectPermission) p;
+			Permission privilege = projectPermission.getPrivilege();
+			if (allProjectPrivileges.implies(privilege))
+				return true;
+			ProjectPrivileges privileges = projectPrivileges.get(projectPermission.getProject().getId());
+			return privileges != null && privileges.implies(privilege);
+		} else {
+			return false;
+		}
+	}
+
+	private static class ProjectPrivileges {
+
+		private final List<Permission> privileges = new ArrayList<>();
+
+		private int mask;
+
+		void add(Permission privilege) {
+			privileges.add(privilege);
+		}
+
+		void compile() {
+			mask = 0;
+			for (int i=0; i<SIMPLE_PRIVILEGES.size(); i++) {
+				for (Permission privilege: privileges) {
+					if (privilege.implies(SIMPLE_PRIVILEGES.get(i))) {
+						mask |= 1 << i;
+						break;
+					}
+				}
+			}
+		}
+
+		boolean implies(Permission privilege) {
+			for (int i=0; i<SIMPLE_PRIVILEGES.size(); i++) {
+				if (SIMPLE_PRIVILEGES.get(i).getClass() == privilege.getClass())
+					return (mask & (1 << i)) != 0;
+			}
+			for (Permission each: privileges) {
+				if (each.implies(privilege))
+					return true;
+			}
+			return false;
+		}
+
+	}
+
+}
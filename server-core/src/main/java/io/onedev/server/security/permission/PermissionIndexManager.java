@@ -0,0 +1,20 @@
+package io.onedev.server.security.permission;
+
+import java.util.function.Supplier;
+
+public interface PermissionIndexManager {
+
+	/**
+	 * Get permission index of specified user. The index is cached until entities affecting 
+	 * permissions, such as memberships, authorizations and roles, are changed
+	 * 
+	 * @param userId
+	 * 			id of the user, or <tt>0</tt> for anonymous user
+	 * @param compiler
+	 * 			compiler to build permission index of the user if it is not cached
+	 * @return
+	 * 			permission index of specified user
+	 */
+	PermissionIndex getPermissionIndex(Long userId, Supplier<PermissionIndex> compiler);
+	
+}
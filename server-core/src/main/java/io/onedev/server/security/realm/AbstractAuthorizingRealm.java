@@ -1,10 +1,7 @@
 package io.onedev.server.security.realm;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.concurrent.Callable;
 
 import javax.annotation.Nullable;
@@ -14,10 +11,8 @@ import org.apache.shiro.authz.AuthorizationInfo;
 import org.apache.shiro.authz.Permission;
 import org.apache.shiro.realm.AuthorizingRealm;
 import org.apache.shiro.subject.PrincipalCollection;
-import org.apache.wicket.MetaDataKey;
-import org.apache.wicket.request.cycle.RequestCycle;
 
-import com.google.common.collect.Sets;
+import com.google.common.collect.Lists;
 
 import io.onedev.server.OneDev;
 import io.onedev.server.entitymanager.GroupManager;
@@ -27,18 +22,17 @@ import io.onedev.server.entitymanager.UserManager;
 import io.onedev.server.model.Group;
 import io.onedev.server.model.GroupAuthorization;
 import io.onedev.server.model.Project;
+import io.onedev.server.model.Role;
 import io.onedev.server.model.User;
 import io.onedev.server.model.UserAuthorization;
 import io.onedev.server.model.support.issue.fieldspec.FieldSpec;
 import io.onedev.server.persistence.SessionManager;
 import io.onedev.server.security.permission.AccessBuildLog;
-import io.onedev.server.security.permission.CreateProjects;
 import io.onedev.server.security.permission.EditIssueField;
 import io.onedev.server.security.permission.JobPermission;
-import io.onedev.server.security.permission.ProjectPermission;
+import io.onedev.server.security.permission.PermissionIndex;
+import io.onedev.server.security.permission.PermissionIndexManager;
 import io.onedev.server.security.permission.ReadCode;
-import io.onedev.server.security.permission.SystemAdministration;
-import io.onedev.server.security.permission.UserAdministration;
 
 public abstract class AbstractAuthorizingRealm extends AuthorizingRealm {
 
@@ -50,66 +44,84 @@ public abstract class AbstractAuthorizingRealm extends AuthorizingRealm {
     
     protected final SessionManager sessionManager;
     
-    @SuppressWarnings("serial")
-	private static final MetaDataKey<Map<Long, AuthorizationInfo>> AUTHORIZATION_INFOS = 
-			new MetaDataKey<Map<Long, AuthorizationInfo>>() {};    
+    protected final PermissionIndexManager permissionIndexManager;
     
 	@Inject
     public AbstractAuthorizingRealm(UserManager userManager, GroupManager groupManager, 
-    		ProjectManager projectManager, SessionManager sessionManager) {
+    		ProjectManager projectManager, SessionManager sessionManager, 
+    		PermissionIndexManager permissionIndexManager) {
     	this.userManager = userManager;
     	this.groupManager = groupManager;
     	this.projectManager = projectManager;
     	this.sessionManager = sessionManager;
+    	this.permissionIndexManager = permissionIndexManager;
     }
 
-	private Collection<Permission> getGroupPermissions(Group group, @Nullable User user) {
-		Collection<Permission> permissions = new ArrayList<>();
+	private void addProjectPermissions(PermissionIndex permissionIndex, Project project, 
+			Role role, @Nullable User user) {
+		for (Permission privilege: role.getPrivileges(user))
+			permissionIndex.addToProject(project.getId(), privilege);
+	}
+	
+	private void addGroupPermissions(PermissionIndex permissionIndex, Group group, @Nullable User user) {
 		if (group.isAdministrator()) {
 			if (user != null) {
-				permissions.add(new SystemAdministration());
+				permissionIndex.addSystemAdministration();
 			} else {
-				for (Project project: projectManager.query()) {
-					permissions.add(new ProjectPermission(project, new ReadCode()));
-					for (FieldSpec field: OneDev.getInstance(SettingManager.class).getIssueSetting().getFieldSpecs())
-						permissions.add(new ProjectPermission(project, new EditIssueField(Sets.newHashSet(field.getName()))));
-					permissions.add(new ProjectPermission(project, new JobPermission("*", new AccessBuildLog())));
-				}
+				permissionIndex.addToAllProjects(new ReadCode());
+				Collection<String> fieldNames = new HashSet<>();
+				for (FieldSpec field: OneDev.getInstance(SettingManager.class).getIssueSetting().getFieldSpecs())
+					fieldNames.add(field.getName());
+				permissionIndex.addToAllProjects(new EditIssueField(fieldNames));
+				permissionIndex.addToAllProjects(new JobPermission("*", new AccessBuildLog()));
 			}
 		}
 		if (user != null && group.isCreateProjects())
-			permissions.add(new CreateProjects());
+			permissionIndex.addCreateProjects();
 		for (GroupAuthorization authorization: group.getAuthorizations()) 
-			permissions.add(new ProjectPermission(authorization.getProject(), authorization.getRole()));
-		return permissions;
+			addProjectPermissions(permissionIndex, authorization.getProject(), authorization.getRole(), user);
 	}
 	
-	private AuthorizationInfo newAuthorizationInfo(Long userId) {
-		Collection<Permission> permissions = sessionManager.call(new Callable<Collection<Permission>>() {
+	/*
+	 * Privileges of roles are resolved against the user being compiled instead of current
+	 * subject, and only ids are kept in the index, as the index is cached for the user 
+	 * and might be used by other threads after this session is closed
+	 */
+	private PermissionIndex newPermissionIndex(Long userId) {
+		return sessionManager.call(new Callable<PermissionIndex>() {
 
 			@Override
-			public Collection<Permission> call() throws Exception {
-				Collection<Permission> permissions = new ArrayList<>();
+			public PermissionIndex call() throws Exception {
+				PermissionIndex permissionIndex = new PermissionIndex();
 
 				User user = null;
 		        if (userId != 0L) { 
 		            user = userManager.load(userId);
 		        	if (user.isRoot() || user.isSystem()) 
-		        		permissions.add(new SystemAdministration());
-		        	permissions.add(new UserAdministration(user));
+		        		permissionIndex.addSystemAdministration();
+		        	permissionIndex.addUserAdministration(user.getId());
 		           	for (Group group: user.getGroups())
-		           		permissions.addAll(getGroupPermissions(group, user));
+		           		addGroupPermissions(permissionIndex, group, user);
 		        	for (UserAuthorization authorization: user.getAuthorizations()) 
-    					permissions.add(new ProjectPermission(authorization.getProject(), authorization.getRole()));
+		        		addProjectPermissions(permissionIndex, authorization.getProject(), authorization.getRole(), user);
 		        } 
 	        	Group group = groupManager.findAnonymous();
 	        	if (group != null)
-	           		permissions.addAll(getGroupPermissions(group, user));
-				return permissions;
+	        		addGroupPermissions(permissionIndex, group, user);
+	        	
+	        	permissionIndex.compile();
+				return permissionIndex;
 			}
 			
 		});
-		
+	}
+	
+	@Override
+	protected AuthorizationInfo doGetAuthorizationInfo(PrincipalCollection principals) {
+		Long userId = (Long) principals.getPrimaryPrincipal();						
+		PermissionIndex permissionIndex = permissionIndexManager.getPermissionIndex(userId, 
+				() -> newPermissionIndex(userId));
+		Collection<Permission> permissions = Lists.newArrayList(permissionIndex);
 		return new AuthorizationInfo() {
 			
 			private static final long serialVersionUID = 1L;
@@ -130,26 +142,5 @@ public abstract class AbstractAuthorizingRealm extends AuthorizingRealm {
 			}
 		};		
 	}
-	
-	@Override
-	protected AuthorizationInfo doGetAuthorizationInfo(PrincipalCollection principals) {
-		Long userId = (Long) principals.getPrimaryPrincipal();						
-		RequestCycle requestCycle = RequestCycle.get();
-		if (requestCycle != null) {
-			Map<Long, AuthorizationInfo> authorizationInfos = requestCycle.getMetaData(AUTHORIZATION_INFOS);
-			if (authorizationInfos == null) {
-				authorizationInfos = new HashMap<>();
-				requestCycle.setMetaData(AUTHORIZATION_INFOS, authorizationInfos);
-			}
-			AuthorizationInfo authorizationInfo = authorizationInfos.get(userId);
-			if (authorizationInfo == null) {
-				authorizationInfo = newAuthorizationInfo(userId);
-				authorizationInfos.put(userId, authorizationInfo);
-			}
-			return authorizationInfo;
-		} else {
-			return newAuthorizationInfo(userId);
-		}
-	}
 
 }
\ No newline at end of file
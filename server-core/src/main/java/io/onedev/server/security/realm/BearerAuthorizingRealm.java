@@ -13,14 +13,16 @@ import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.entitymanager.UserManager;
 import io.onedev.server.persistence.SessionManager;
 import io.onedev.server.security.BearerAuthenticationToken;
+import io.onedev.server.security.permission.PermissionIndexManager;
 
 @Singleton
 public class BearerAuthorizingRealm extends AbstractAuthorizingRealm {
 
 	@Inject
     public BearerAuthorizingRealm(UserManager userManager, GroupManager groupManager, 
-    		ProjectManager projectManager, SessionManager sessionManager) {
-		super(userManager, groupManager, projectManager, sessionManager);
+    		ProjectManager projectManager, SessionManager sessionManager, 
+    		PermissionIndexManager permissionIndexManager) {
+		super(userManager, groupManager, projectManager, sessionManager, permissionIndexManager);
 		setCredentialsMatcher(new AllowAllCredentialsMatcher());
     }
 
@@ -31,6 +31,7 @@ import io.onedev.server.model.support.administration.authenticator.Authenticated
 import io.onedev.server.model.support.administration.authenticator.Authenticator;
 import io.onedev.server.persistence.SessionManager;
 import io.onedev.server.persistence.TransactionManager;
+import io.onedev.server.security.permission.PermissionIndexManager;
 
 @Singleton
 public class PasswordAuthorizingRealm extends AbstractAuthorizingRealm {
@@ -50,8 +51,8 @@ public class PasswordAuthorizingRealm extends AbstractAuthorizingRealm {
     		MembershipManager membershipManager, GroupManager groupManager, 
     		ProjectManager projectManager, SessionManager sessionManager, 
     		TransactionManager transactionManager, SshKeyManager sshKeyManager, 
-    		PasswordService passwordService) {
-		super(userManager, groupManager, projectManager, sessionManager);
+    		PasswordService passwordService, PermissionIndexManager permissionIndexManager) {
+		super(userManager, groupManager, projectManager, sessionManager, permissionIndexManager);
 		
 	    PasswordMatcher passwordMatcher = new PasswordMatcher();
 	    passwordMatcher.setPasswordService(passwordService);
@@ -23,6 +23,7 @@ import io.onedev.server.model.support.SsoInfo;
 import io.onedev.server.model.support.administration.sso.SsoAuthenticated;
 import io.onedev.server.persistence.SessionManager;
 import io.onedev.server.persistence.TransactionManager;
+import io.onedev.server.security.permission.PermissionIndexManager;
 
 @Singleton
 public class SsoAuthorizingRealm extends AbstractAuthorizingRealm {
@@ -36,8 +37,9 @@ public class SsoAuthorizingRealm extends AbstractAuthorizingRealm {
 	@Inject
     public SsoAuthorizingRealm(UserManager userManager, MembershipManager membershipManager, 
     		GroupManager groupManager, ProjectManager projectManager, SessionManager sessionManager, 
-    		TransactionManager transactionManager, SshKeyManager sshKeyManager) {
-		super(userManager, groupManager, projectManager, sessionManager);
+    		TransactionManager transactionManager, SshKeyManager sshKeyManager, 
+    		PermissionIndexManager permissionIndexManager) {
+		super(userManager, groupManager, projectManager, sessionManager, permissionIndexManager);
 		setCredentialsMatcher(new AllowAllCredentialsMatcher());
 		
     	this.membershipManager = membershipManager;
@@ -2,6 +2,12 @@ package io.onedev.server.storage;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -9,11 +15,14 @@ import javax.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+
 import io.onedev.commons.launcher.bootstrap.Bootstrap;
 import io.onedev.commons.launcher.loader.Listen;
 import io.onedev.commons.utils.FileUtils;
 import io.onedev.server.event.entity.EntityRemoved;
 import io.onedev.server.event.system.SystemStarting;
+import io.onedev.server.git.GitUtils;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.User;
 import io.onedev.server.persistence.TransactionManager;
@@ -32,9 +41,12 @@ public class DefaultStorageManager implements StorageManager {
 	
 	private final TransactionManager transactionManager;
 	
+	private final ExecutorService executorService;
+	
     @Inject
-    public DefaultStorageManager(TransactionManager transactionManager) {
+    public DefaultStorageManager(TransactionManager transactionManager, ExecutorService executorService) {
         this.transactionManager = transactionManager;
+        this.executorService = executorService;
     }
 
     private File getProjectsDir() {
@@ -85,14 +97,25 @@ public class DefaultStorageManager implements StorageManager {
 
 	@Listen
 	public void on(SystemStarting event) {
+		List<File> projectDirsToDelete = new ArrayList<>();
         for (File projectDir: getProjectsDir().listFiles()) {
         	if (new File(projectDir, OLD_DELETE_MARK1).exists()
         			|| new File(projectDir, OLD_DELETE_MARK2).exists()
         			|| new File(projectDir, DELETE_MARK).exists()) { 
-        		logger.info("Deleting directory marked for deletion: " + projectDir);
-        		FileUtils.deleteDir(projectDir);
+        		projectDirsToDelete.add(projectDir);
         	}
         }
+        
+        if (!projectDirsToDelete.isEmpty()) {
+        	// Forks may still borrow git objects of deleted projects if server was stopped 
+        	// before objects are copied into the forks
+        	dissociateForks(projectDirsToDelete);
+        }
+        
+        for (File projectDir: projectDirsToDelete) {
+    		logger.info("Deleting directory marked for deletion: " + projectDir);
+    		FileUtils.deleteDir(projectDir);
+        }
         for (File userDir: getUsersDir().listFiles()) {
         	if (new File(userDir, OLD_DELETE_MARK1).exists()
         			|| new File(userDir, OLD_DELETE_MARK2).exists()
@@ -125,8 +148,28 @@ public class DefaultStorageManager implements StorageManager {
 			@Override
 			public void run() {
 				try {
-					if (projectDir != null) 
+					if (projectDir != null) {
 						new File(projectDir, DELETE_MARK).createNewFile();
+						
+						/*
+						 * Copy objects into forks borrowing them in background, as repacking 
+						 * forks can take long. Project directory is still deleted at next 
+						 * startup, which also copies objects for forks not handled here 
+						 * because server is stopped in between
+						 */
+						executorService.execute(new Runnable() {
+
+							@Override
+							public void run() {
+								try {
+									dissociateForks(Lists.newArrayList(projectDir));
+								} catch (Exception e) {
+									logger.error("Error copying shared git objects of deleted project into forks", e);
+								}
+							}
+							
+						});
+					}
 					if (userDir != null)
 						new File(userDir, DELETE_MARK).createNewFile();
 				} catch (IOException e) {
@@ -137,6 +180,33 @@ public class DefaultStorageManager implements StorageManager {
 		});
 	}
 
+	/*
+	 * Copy git objects of specified project directories into repositories borrowing them 
+	 * via alternates. Synchronized so that a fork is not repacked concurrently 
+	 */
+	private synchronized void dissociateForks(Collection<File> projectDirs) {
+		Set<File> objectsDirs = new HashSet<>();
+		for (File projectDir: projectDirs) {
+			try {
+				objectsDirs.add(new File(projectDir, "git/objects").getCanonicalFile());
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+        for (File projectDir: getProjectsDir().listFiles()) {
+        	File gitDir = new File(projectDir, "git");
+        	if (!projectDirs.contains(projectDir) && gitDir.exists()) {
+        		for (File alternate: GitUtils.getAlternates(gitDir)) {
+        			if (objectsDirs.contains(alternate)) {
+        				logger.info("Copying shared git objects into repository '" + gitDir + "'...");
+        				GitUtils.dissociate(gitDir);
+        				break;
+        			}
+        		}
+        	}
+        }
+	}
+	
     private File getUsersDir() {
     	File usersDir = new File(Bootstrap.getSiteDir(), "users");
     	FileUtils.createDir(usersDir);
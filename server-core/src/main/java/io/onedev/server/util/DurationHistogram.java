@@ -0,0 +1,39 @@
+package io.onedev.server.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Running statistics of durations in milliseconds, additionally counting samples falling 
+ * into exponentially growing buckets
+ */
+public class DurationHistogram extends RunningStats {
+
+	private static final long[] BOUNDS = new long[] {10, 100, 1000, 10000, 60000, 600000};
+	
+	private static final String[] LABELS = new String[] {"<10ms", "<100ms", "<1s", "<10s", "<1m", "<10m", ">=10m"};
+	
+	private final long[] counts = new long[LABELS.length];
+	
+	@Override
+	public synchronized void record(long value) {
+		super.record(value);
+		int index = 0;
+		while (index < BOUNDS.length && value >= BOUNDS[index])
+			index++;
+		counts[index]++;
+	}
+	
+	/**
+	 * @return
+	 * 			map of bucket label to number of samples in the bucket, in ascending order of 
+	 * 			bucket bounds
+	 */
+	public synchronized Map<String, Long> getBuckets() {
+		Map<String, Long> buckets = new LinkedHashMap<>();
+		for (int i=0; i<LABELS.length; i++)
+			buckets.put(LABELS[i], counts[i]);
+		return buckets;
+	}
+	
+}
@@ -2,9 +2,9 @@ package io.onedev.server.util;
 
 public class IndexResult {
 	
-	private int checked;
+	private volatile int checked;
 	
-	private int indexed;
+	private volatile int indexed;
 	
 	public IndexResult(int checked, int indexed) {
 		this.checked = checked;
@@ -0,0 +1,46 @@
+package io.onedev.server.util;
+
+/**
+ * Thread-safe accumulator of samples such as durations or sizes. Only count, total and
+ * maximum of recorded samples are kept, so it can be updated from hot paths.
+ */
+public class RunningStats {
+
+	private long count;
+
+	private long total;
+
+	private long max;
+
+	public synchronized void record(long value) {
+		count++;
+		total += value;
+		if (value > max)
+			max = value;
+	}
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+	public synchronized long getTotal() {
+		return total;
+	}
+
+	public synchronized long getMax() {
+		return max;
+	}
+
+	public synchronized double getMean() {
+		if (count != 0)
+			return total * 1.0 / count;
+		else
+			return 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("count: %d, mean: %.1f, max: %d", count, getMean(), max);
+	}
+
+}
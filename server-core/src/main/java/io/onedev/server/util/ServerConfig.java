@@ -44,5 +44,72 @@ public interface ServerConfig {
      *          ssh port of the server
      */
     int getSshPort();
+    
+	/**
+	 * Get interval in milliseconds to flush buffered build log lines.
+	 * <p>
+	 * @return
+	 * 			build log flush interval in milliseconds, or <i>0</i> to write and 
+	 * 			notify each log line immediately
+	 */
+	int getBuildLogFlushInterval();
+	
+	/**
+	 * Get maximum number of git transports (clone, fetch and push over http or ssh) 
+	 * allowed to run concurrently.
+	 */
+	int getGitTransportConcurrency();
+	
+	/**
+	 * Get maximum number of git transports allowed to run concurrently against a 
+	 * single project.
+	 */
+	int getGitTransportProjectConcurrency();
+	
+	/**
+	 * Get number of threads used to read and extract symbols of blobs when indexing 
+	 * code of a project.
+	 */
+	int getCodeIndexParallelism();
+	
+	/**
+	 * Get maximum number of Xodus environments (used by commit, pull request and user 
+	 * information) kept open.
+	 */
+	int getInfoEnvPoolSize();
+	
+	/**
+	 * Get maximum number of projects collecting commit information concurrently.
+	 */
+	int getCommitInfoCollectConcurrency();
+	
+	/**
+	 * Get initial number of entity ids reserved from database at a time. Block size of 
+	 * an entity grows automatically if ids of the entity are allocated at high rate.
+	 */
+	int getIdBlockSize();
+	
+	/**
+	 * Whether or not a fork shares git objects of its parent via git alternates instead of 
+	 * copying them.
+	 */
+	boolean isForkSharingObjects();
+	
+	/**
+	 * Get maximum number of projects running repository maintenance (repack, bitmaps and 
+	 * commit-graph) concurrently.
+	 */
+	int getRepositoryMaintenanceConcurrency();
+	
+	/**
+	 * Get maximum number of diff lines cached in memory.
+	 */
+	int getDiffCacheMaxLines();
+	
+	/**
+	 * Get maximum size of diffs cached on disk in megabytes. <tt>0</tt> means diffs are 
+	 * only cached in memory.
+	 */
+	int getDiffCacheDiskSize();
 	
 }
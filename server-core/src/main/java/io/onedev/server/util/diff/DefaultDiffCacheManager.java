@@ -0,0 +1,307 @@
+package io.onedev.server.util.diff;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.SerializationUtils;
+import org.eclipse.jgit.lib.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import io.onedev.commons.jsyntax.Tokenized;
+import io.onedev.commons.launcher.bootstrap.Bootstrap;
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.util.ServerConfig;
+
+/**
+ * Diff cache with a memory tier bounded by number of diff lines, and an optional disk
+ * tier bounded by size. Least recently used diffs are evicted from both tiers.
+ */
+@Singleton
+public class DefaultDiffCacheManager implements DiffCacheManager {
+
+	private static final Logger logger = LoggerFactory.getLogger(DefaultDiffCacheManager.class);
+
+	// Change this if format of diff blocks or the diff algorithm changes
+	private static final int FORMAT_VERSION = 2;
+
+	private static final double DISK_CLEANUP_RATIO = 0.8;
+
+	private final ServerConfig serverConfig;
+
+	private final Cache<Key, List<DiffBlock<Tokenized>>> memoryCache;
+
+	private final AtomicLong requests = new AtomicLong(0);
+
+	private final AtomicLong diskHits = new AtomicLong(0);
+
+	private final AtomicLong misses = new AtomicLong(0);
+
+	private final AtomicLong diskSize = new AtomicLong(0);
+
+	private final Lock diskCleanupLock = new ReentrantLock();
+
+	@Inject
+	public DefaultDiffCacheManager(ServerConfig serverConfig) {
+		this.serverConfig = serverConfig;
+		/*
+		 * Guava splits maximum weight evenly across segments, use a single segment so that 
+		 * a large diff can still fit as long as it is within the overall limit
+		 */
+		memoryCache = CacheBuilder.newBuilder()
+				.concurrencyLevel(1)
+				.maximumWeight(serverConfig.getDiffCacheMaxLines())
+				.weigher(new Weigher<Key, List<DiffBlock<Tokenized>>>() {
+
+					@Override
+					public int weigh(Key key, List<DiffBlock<Tokenized>> value) {
+						int weight = 1;
+						for (DiffBlock<Tokenized> block: value)
+							weight += block.getUnits().size();
+						return weight;
+					}
+
+				})
+				.build();
+	}
+
+	private boolean isDiskCacheEnabled() {
+		return serverConfig.getDiffCacheDiskSize() > 0;
+	}
+
+	private long getMaxDiskSize() {
+		return serverConfig.getDiffCacheDiskSize() * 1024L * 1024L;
+	}
+
+	private File getDiskCacheDir() {
+		return new File(Bootstrap.getSiteDir(), "diff-cache");
+	}
+
+	private File getDiskCacheFile(Key key) {
+		String hash = DigestUtils.sha1Hex(key.toString().getBytes(StandardCharsets.UTF_8));
+		return new File(getDiskCacheDir(), hash.substring(0, 2) + "/" + hash.substring(2));
+	}
+
+	private Collection<File> listDiskCacheFiles() {
+		Collection<File> files = new ArrayList<>();
+		File[] subDirs = getDiskCacheDir().listFiles();
+		if (subDirs != null) {
+			for (File subDir: subDirs) {
+				File[] subFiles = subDir.listFiles();
+				if (subFiles != null)
+					Collections.addAll(files, subFiles);
+			}
+		}
+		return files;
+	}
+
+	@Listen
+	public void on(SystemStarted event) {
+		if (isDiskCacheEnabled()) {
+			long size = 0;
+			for (File file: listDiskCacheFiles())
+				size += file.length();
+			diskSize.set(size);
+			cleanupDiskCacheIfNecessary();
+		} else if (getDiskCacheDir().exists()) {
+			FileUtils.deleteDir(getDiskCacheDir());
+		}
+	}
+
+	@Override
+	public List<DiffBlock<Tokenized>> getDiffBlocks(ObjectId oldBlobId, String oldFileName,
+			ObjectId newBlobId, String newFileName, WhitespaceOption whitespaceOption,
+			Supplier<List<DiffBlock<Tokenized>>> calculator) {
+		requests.incrementAndGet();
+		Key key = new Key(oldBlobId, oldFileName, newBlobId, newFileName, whitespaceOption);
+		try {
+			return memoryCache.get(key, () -> {
+				List<DiffBlock<Tokenized>> diffBlocks = null;
+				if (isDiskCacheEnabled()) {
+					diffBlocks = readFromDisk(key);
+					if (diffBlocks != null)
+						diskHits.incrementAndGet();
+				}
+				if (diffBlocks == null) {
+					misses.incrementAndGet();
+					diffBlocks = calculator.get();
+					if (isDiskCacheEnabled())
+						writeToDisk(key, diffBlocks);
+				}
+				return Collections.unmodifiableList(diffBlocks);
+			});
+		} catch (ExecutionException e) {
+			Throwables.throwIfUnchecked(e.getCause());
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Nullable
+	private List<DiffBlock<Tokenized>> readFromDisk(Key key) {
+		File file = getDiskCacheFile(key);
+		if (file.exists()) {
+			try (InputStream is = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+				List<DiffBlock<Tokenized>> diffBlocks = (List<DiffBlock<Tokenized>>) SerializationUtils.deserialize(is);
+				// Record access time for eviction of least recently used files
+				file.setLastModified(System.currentTimeMillis());
+				return diffBlocks;
+			} catch (Exception e) {
+				logger.warn("Error reading cached diff, discarding: " + file, e);
+				long length = file.length();
+				if (file.delete())
+					diskSize.addAndGet(-length);
+			}
+		}
+		return null;
+	}
+
+	private void writeToDisk(Key key, List<DiffBlock<Tokenized>> diffBlocks) {
+		File file = getDiskCacheFile(key);
+		File tempFile = null;
+		try {
+			FileUtils.createDir(file.getParentFile());
+			tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+			try (OutputStream os = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+				SerializationUtils.serialize(new ArrayList<>(diffBlocks), os);
+			}
+			long length = tempFile.length();
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			tempFile = null;
+			if (diskSize.addAndGet(length) > getMaxDiskSize())
+				cleanupDiskCacheIfNecessary();
+		} catch (Exception e) {
+			logger.warn("Error caching diff on disk", e);
+		} finally {
+			if (tempFile != null)
+				tempFile.delete();
+		}
+	}
+
+	/*
+	 * Delete least recently used files until disk cache shrinks to a portion of max size, so
+	 * that cleanup does not happen on every write. Only one thread cleans up at a time, and
+	 * other threads simply continue
+	 */
+	private void cleanupDiskCacheIfNecessary() {
+		if (diskSize.get() > getMaxDiskSize() && diskCleanupLock.tryLock()) {
+			try {
+				List<File> files = new ArrayList<>(listDiskCacheFiles());
+				List<Long> lastModifieds = new ArrayList<>();
+				long size = 0;
+				for (File file: files) {
+					lastModifieds.add(file.lastModified());
+					size += file.length();
+				}
+				List<Integer> indexes = new ArrayList<>();
+				for (int i=0; i<files.size(); i++)
+					indexes.add(i);
+				indexes.sort((index1, index2) -> lastModifieds.get(index1).compareTo(lastModifieds.get(index2)));
+
+				long targetSize = (long) (getMaxDiskSize() * DISK_CLEANUP_RATIO);
+				for (int index: indexes) {
+					if (size <= targetSize)
+						break;
+					File file = files.get(index);
+					long length = file.length();
+					if (file.delete())
+						size -= length;
+				}
+				diskSize.set(size);
+			} catch (Exception e) {
+				logger.error("Error cleaning up diff cache", e);
+			} finally {
+				diskCleanupLock.unlock();
+			}
+		}
+	}
+
+	@Override
+	public DiffCacheStats getStats() {
+		long diskHits = this.diskHits.get();
+		long misses = this.misses.get();
+		long memoryHits = Math.max(0, requests.get() - diskHits - misses);
+		return new DiffCacheStats(memoryHits, diskHits, misses, memoryCache.size(), diskSize.get());
+	}
+
+	private static class Key {
+
+		private final ObjectId oldBlobId;
+
+		private final String oldFileName;
+
+		private final ObjectId newBlobId;
+
+		private final String newFileName;
+
+		private final WhitespaceOption whitespaceOption;
+
+		Key(ObjectId oldBlobId, @Nullable String oldFileName, ObjectId newBlobId,
+				@Nullable String newFileName, WhitespaceOption whitespaceOption) {
+			this.oldBlobId = oldBlobId.copy();
+			this.oldFileName = oldFileName;
+			this.newBlobId = newBlobId.copy();
+			this.newFileName = newFileName;
+			this.whitespaceOption = whitespaceOption;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key))
+				return false;
+			if (this == other)
+				return true;
+			Key otherKey = (Key) other;
+			return oldBlobId.equals(otherKey.oldBlobId) && newBlobId.equals(otherKey.newBlobId)
+					&& Objects.equals(oldFileName, otherKey.oldFileName)
+					&& Objects.equals(newFileName, otherKey.newFileName)
+					&& whitespaceOption == otherKey.whitespaceOption;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(oldBlobId, oldFileName, newBlobId, newFileName, whitespaceOption);
+		}
+
+		@Override
+		public String toString() {
+			return FORMAT_VERSION + ":" + oldBlobId.name() + ":" + newBlobId.name() + ":"
+					+ whitespaceOption.name() + ":" + oldFileName + ":" + newFileName;
+		}
+
+	}
+
+}
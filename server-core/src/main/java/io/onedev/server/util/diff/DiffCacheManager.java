@@ -0,0 +1,33 @@
+package io.onedev.server.util.diff;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import io.onedev.commons.jsyntax.Tokenized;
+
+public interface DiffCacheManager {
+
+	/**
+	 * Get diff blocks of specified blob pair from cache, or calculate them with specified 
+	 * calculator and cache the result. As blob ids identify content, cached diffs never 
+	 * need to be invalidated. File names are part of the key as they decide how lines 
+	 * are tokenized
+	 * 
+	 * @param oldBlobId
+	 * 			id of old blob, or {@link ObjectId#zeroId()} if there is no old blob
+	 * @param newBlobId
+	 * 			id of new blob, or {@link ObjectId#zeroId()} if there is no new blob
+	 * @return
+	 * 			diff blocks which should not be modified
+	 */
+	List<DiffBlock<Tokenized>> getDiffBlocks(ObjectId oldBlobId, @Nullable String oldFileName, 
+			ObjectId newBlobId, @Nullable String newFileName, WhitespaceOption whitespaceOption, 
+			Supplier<List<DiffBlock<Tokenized>>> calculator);
+	
+	DiffCacheStats getStats();
+	
+}
@@ -0,0 +1,75 @@
+package io.onedev.server.util.diff;
+
+import java.io.Serializable;
+
+import io.onedev.commons.utils.FileUtils;
+
+/**
+ * Statistics of diff cache since server start.
+ */
+public class DiffCacheStats implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long memoryHits;
+	
+	private final long diskHits;
+	
+	private final long misses;
+	
+	private final long memoryEntries;
+	
+	private final long diskSize;
+	
+	public DiffCacheStats(long memoryHits, long diskHits, long misses, long memoryEntries, long diskSize) {
+		this.memoryHits = memoryHits;
+		this.diskHits = diskHits;
+		this.misses = misses;
+		this.memoryEntries = memoryEntries;
+		this.diskSize = diskSize;
+	}
+
+	public long getMemoryHits() {
+		return memoryHits;
+	}
+
+	public long getDiskHits() {
+		return diskHits;
+	}
+
+	/**
+	 * @return
+	 * 			number of diffs calculated as they are not found in cache
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getMemoryEntries() {
+		return memoryEntries;
+	}
+
+	/**
+	 * @return
+	 * 			total size of diffs cached on disk in bytes
+	 */
+	public long getDiskSize() {
+		return diskSize;
+	}
+	
+	public double getHitRate() {
+		long requests = memoryHits + diskHits + misses;
+		if (requests != 0)
+			return (double)(memoryHits + diskHits) / requests;
+		else
+			return 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("hit rate: %.1f%%, memory hits: %d, disk hits: %d, misses: %d, "
+				+ "memory entries: %d, disk size: %s", getHitRate()*100, memoryHits, diskHits, 
+				misses, memoryEntries, FileUtils.byteCountToDisplaySize(diskSize));
+	}
+	
+}
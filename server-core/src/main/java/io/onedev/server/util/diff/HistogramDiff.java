@@ -0,0 +1,348 @@
+package io.onedev.server.util.diff;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.onedev.server.util.diff.DiffMatchPatch.Operation;
+
+/**
+ * Line diff working on int ids of interned lines instead of characters, so that number of
+ * lines is not limited by range of char, and only a few int arrays are allocated.
+ * <p>
+ * Large regions are matched with the histogram algorithm: the longest common run containing
+ * the least frequent line of a region is taken as anchor, and regions before and after the
+ * anchor are processed the same way. Small regions, and regions where all lines occur too
+ * often, are diffed with Myers bisection in linear space, which gives minimal result as long
+ * as edit cost of the region does not exceed a limit growing with square root of number of
+ * lines. Beyond that limit, regions are split at the furthest reaching paths as git does,
+ * so that time is bounded and result is still close to minimal.
+ * <p>
+ * Regions are kept in a stack instead of recursion, so that large files do not overflow
+ * the call stack.
+ */
+public class HistogramDiff {
+
+	// common lines occurring more often than this in a region are not used as anchors
+	private static final int MAX_ANCHOR_COUNT = 64;
+
+	// regions with less lines than this are bisected directly to get minimal result
+	private static final int MIN_HISTOGRAM_REGION = 1024;
+
+	private static final int MIN_MYERS_COST = 256;
+
+	private static final int HISTOGRAM = 0;
+
+	private static final int MYERS = 1;
+
+	private final int[] a;
+
+	private final int[] b;
+
+	// line id occurrence count and head of occurrence chain in current region, indexed by line id
+	private final int[] counts;
+
+	private final int[] heads;
+
+	// next occurrence of same line in current region, indexed by line index in a
+	private final int[] nexts;
+
+	// index of matched line in b, or -1 if not matched, indexed by line index in a
+	private final int[] matches;
+
+	private final Deque<int[]> regions = new ArrayDeque<>();
+
+	private final int maxMyersCost;
+
+	private HistogramDiff(int[] a, int[] b, int idCount) {
+		this.a = a;
+		this.b = b;
+		maxMyersCost = Math.max(MIN_MYERS_COST, (int) Math.sqrt(a.length + b.length));
+		counts = new int[idCount];
+		heads = new int[idCount];
+		Arrays.fill(heads, -1);
+		nexts = new int[a.length];
+		matches = new int[a.length];
+		Arrays.fill(matches, -1);
+	}
+
+	/**
+	 * Diff two lists of units. Units are compared with their <tt>equals</tt> method
+	 *
+	 * @return
+	 * 			diff blocks, with deletion placed before insertion if both happen at same
+	 * 			position
+	 */
+	public static <T> List<DiffBlock<T>> diff(List<T> oldUnits, List<T> newUnits) {
+		return diff(oldUnits, newUnits, oldUnits, newUnits);
+	}
+
+	/**
+	 * Diff two lists of keys, and build diff blocks with corresponding units
+	 */
+	public static <K, T> List<DiffBlock<T>> diff(List<K> oldKeys, List<K> newKeys,
+			List<T> oldUnits, List<T> newUnits) {
+		Map<K, Integer> ids = new HashMap<>();
+		int[] a = intern(oldKeys, ids);
+		int[] b = intern(newKeys, ids);
+		int[] matches = diff(a, b, ids.size());
+
+		List<DiffBlock<T>> diffBlocks = new ArrayList<>();
+		int i = 0, j = 0;
+		while (i < a.length || j < b.length) {
+			if (i < a.length && matches[i] == j) {
+				int oldStart = i, newStart = j;
+				while (i < a.length && matches[i] == j) {
+					i++;
+					j++;
+				}
+				diffBlocks.add(new DiffBlock<>(Operation.EQUAL, new ArrayList<>(newUnits.subList(newStart, j)),
+						oldStart, newStart));
+			} else {
+				int oldStart = i, newStart = j;
+				while (i < a.length && matches[i] == -1)
+					i++;
+				if (i > oldStart) {
+					diffBlocks.add(new DiffBlock<>(Operation.DELETE, new ArrayList<>(oldUnits.subList(oldStart, i)),
+							oldStart, newStart));
+				}
+				int newEnd = i < a.length? matches[i]: b.length;
+				if (newEnd > j) {
+					j = newEnd;
+					diffBlocks.add(new DiffBlock<>(Operation.INSERT, new ArrayList<>(newUnits.subList(newStart, j)),
+							i, newStart));
+				}
+			}
+		}
+		return diffBlocks;
+	}
+
+	private static <K> int[] intern(List<K> keys, Map<K, Integer> ids) {
+		int[] result = new int[keys.size()];
+		int index = 0;
+		for (K key: keys) {
+			Integer id = ids.get(key);
+			if (id == null) {
+				id = ids.size();
+				ids.put(key, id);
+			}
+			result[index++] = id;
+		}
+		return result;
+	}
+
+	/**
+	 * Diff two sequences of line ids
+	 *
+	 * @param idCount
+	 * 			number of distinct ids. Ids should be in range of <tt>[0, idCount)</tt>
+	 * @return
+	 * 			array indexed by position in <tt>a</tt>, with value being matched position
+	 * 			in <tt>b</tt>, or <tt>-1</tt> if not matched. Matched positions are increasing
+	 */
+	public static int[] diff(int[] a, int[] b, int idCount) {
+		HistogramDiff diff = new HistogramDiff(a, b, idCount);
+		diff.regions.push(new int[] {0, a.length, 0, b.length, HISTOGRAM});
+		while (!diff.regions.isEmpty())
+			diff.process(diff.regions.pop());
+		return diff.matches;
+	}
+
+	private void process(int[] region) {
+		int aStart = region[0], aEnd = region[1], bStart = region[2], bEnd = region[3];
+
+		while (aStart < aEnd && bStart < bEnd && a[aStart] == b[bStart])
+			matches[aStart++] = bStart++;
+		while (aStart < aEnd && bStart < bEnd && a[aEnd-1] == b[bEnd-1])
+			matches[--aEnd] = --bEnd;
+		if (aStart == aEnd || bStart == bEnd)
+			return;
+
+		if (region[4] == HISTOGRAM && aEnd - aStart + bEnd - bStart >= MIN_HISTOGRAM_REGION)
+			anchor(aStart, aEnd, bStart, bEnd);
+		else
+			bisect(aStart, aEnd, bStart, bEnd);
+	}
+
+	/*
+	 * Split the region at longest common run containing the least frequent line, or bisect
+	 * the region if all common lines occur too often to be a meaningful anchor
+	 */
+	private void anchor(int aStart, int aEnd, int bStart, int bEnd) {
+		for (int i = aEnd-1; i >= aStart; i--) {
+			int id = a[i];
+			nexts[i] = heads[id];
+			heads[id] = i;
+			counts[id]++;
+		}
+
+		int bestCount = MAX_ANCHOR_COUNT + 1;
+		int bestLength = 0, bestAStart = 0, bestBStart = 0;
+		try {
+			int j = bStart;
+			while (j < bEnd) {
+				int id = b[j];
+				int nextJ = j + 1;
+				if (counts[id] != 0 && counts[id] <= bestCount) {
+					for (int i = heads[id]; i != -1; i = nexts[i]) {
+						int count = counts[id];
+						int matchAStart = i, matchBStart = j;
+						while (matchAStart > aStart && matchBStart > bStart
+								&& a[matchAStart-1] == b[matchBStart-1]) {
+							matchAStart--;
+							matchBStart--;
+							count = Math.min(count, counts[a[matchAStart]]);
+						}
+						int matchAEnd = i + 1, matchBEnd = j + 1;
+						while (matchAEnd < aEnd && matchBEnd < bEnd && a[matchAEnd] == b[matchBEnd]) {
+							count = Math.min(count, counts[a[matchAEnd]]);
+							matchAEnd++;
+							matchBEnd++;
+						}
+						int length = matchAEnd - matchAStart;
+						if (length > bestLength && count <= bestCount || count < bestCount) {
+							bestLength = length;
+							bestCount = count;
+							bestAStart = matchAStart;
+							bestBStart = matchBStart;
+						}
+						nextJ = Math.max(nextJ, matchBEnd);
+					}
+				}
+				j = nextJ;
+			}
+		} finally {
+			for (int i = aStart; i < aEnd; i++) {
+				counts[a[i]] = 0;
+				heads[a[i]] = -1;
+			}
+		}
+
+		if (bestLength != 0) {
+			for (int k = 0; k < bestLength; k++)
+				matches[bestAStart+k] = bestBStart+k;
+			regions.push(new int[] {aStart, bestAStart, bStart, bestBStart, HISTOGRAM});
+			regions.push(new int[] {bestAStart+bestLength, aEnd, bestBStart+bestLength, bEnd, HISTOGRAM});
+		} else {
+			bisect(aStart, aEnd, bStart, bEnd);
+		}
+	}
+
+	/*
+	 * Find middle snake of the region with Myers algorithm, and split the region at the
+	 * snake. Sub regions are bisected as well, so that the result is minimal. If edit cost
+	 * exceeds the limit, the region is split at the furthest reaching path instead, which
+	 * keeps time bounded at the expense of minimality. Common prefix and suffix of the
+	 * region should have been removed
+	 */
+	private void bisect(int aStart, int aEnd, int bStart, int bEnd) {
+		int aLength = aEnd - aStart;
+		int bLength = bEnd - bStart;
+		int maxD = Math.min((aLength + bLength + 1) / 2, maxMyersCost);
+		int vOffset = maxD + 1;
+		int vLength = 2 * vOffset;
+		int[] v1 = new int[vLength];
+		int[] v2 = new int[vLength];
+		Arrays.fill(v1, -1);
+		Arrays.fill(v2, -1);
+		v1[vOffset + 1] = 0;
+		v2[vOffset + 1] = 0;
+		int delta = aLength - bLength;
+		boolean front = (delta % 2 != 0);
+		int k1Start = 0, k1End = 0, k2Start = 0, k2End = 0;
+		int d = 0;
+		for (; d < maxD; d++) {
+			for (int k1 = -d + k1Start; k1 <= d - k1End; k1 += 2) {
+				int k1Offset = vOffset + k1;
+				int x1;
+				if (k1 == -d || (k1 != d && v1[k1Offset - 1] < v1[k1Offset + 1]))
+					x1 = v1[k1Offset + 1];
+				else
+					x1 = v1[k1Offset - 1] + 1;
+				int y1 = x1 - k1;
+				while (x1 < aLength && y1 < bLength && a[aStart + x1] == b[bStart + y1]) {
+					x1++;
+					y1++;
+				}
+				v1[k1Offset] = x1;
+				if (x1 > aLength) {
+					k1End += 2;
+				} else if (y1 > bLength) {
+					k1Start += 2;
+				} else if (front) {
+					int k2Offset = vOffset + delta - k1;
+					if (k2Offset >= 0 && k2Offset < vLength && v2[k2Offset] != -1) {
+						int x2 = aLength - v2[k2Offset];
+						if (x1 >= x2) {
+							split(aStart, aEnd, bStart, bEnd, x1, y1);
+							return;
+						}
+					}
+				}
+			}
+
+			for (int k2 = -d + k2Start; k2 <= d - k2End; k2 += 2) {
+				int k2Offset = vOffset + k2;
+				int x2;
+				if (k2 == -d || (k2 != d && v2[k2Offset - 1] < v2[k2Offset + 1]))
+					x2 = v2[k2Offset + 1];
+				else
+					x2 = v2[k2Offset - 1] + 1;
+				int y2 = x2 - k2;
+				while (x2 < aLength && y2 < bLength
+						&& a[aEnd - x2 - 1] == b[bEnd - y2 - 1]) {
+					x2++;
+					y2++;
+				}
+				v2[k2Offset] = x2;
+				if (x2 > aLength) {
+					k2End += 2;
+				} else if (y2 > bLength) {
+					k2Start += 2;
+				} else if (!front) {
+					int k1Offset = vOffset + delta - k2;
+					if (k1Offset >= 0 && k1Offset < vLength && v1[k1Offset] != -1) {
+						int x1 = v1[k1Offset];
+						int y1 = vOffset + x1 - k1Offset;
+						if (x1 >= aLength - x2) {
+							split(aStart, aEnd, bStart, bEnd, x1, y1);
+							return;
+						}
+					}
+				}
+			}
+		}
+
+		// Cost limit exceeded, split at the point closest to either end
+		int bestX = 0, bestY = 0, bestProgress = 0;
+		for (int k = -d + 1; k <= d - 1; k++) {
+			int x1 = v1[vOffset + k];
+			int y1 = x1 - k;
+			if (x1 != -1 && x1 <= aLength && y1 >= 0 && y1 <= bLength && x1 + y1 > bestProgress) {
+				bestProgress = x1 + y1;
+				bestX = x1;
+				bestY = y1;
+			}
+			int x2 = v2[vOffset + k];
+			int y2 = x2 - k;
+			if (x2 != -1 && x2 <= aLength && y2 >= 0 && y2 <= bLength && x2 + y2 > bestProgress) {
+				bestProgress = x2 + y2;
+				bestX = aLength - x2;
+				bestY = bLength - y2;
+			}
+		}
+		split(aStart, aEnd, bStart, bEnd, bestX, bestY);
+	}
+
+	private void split(int aStart, int aEnd, int bStart, int bEnd, int x, int y) {
+		if ((x != 0 || y != 0) && (x != aEnd - aStart || y != bEnd - bStart)) {
+			regions.push(new int[] {aStart, aStart + x, bStart, bStart + y, MYERS});
+			regions.push(new int[] {aStart + x, aEnd, bStart + y, bEnd, MYERS});
+		}
+	}
+
+}
@@ -76,5 +76,10 @@ public class CodeProcessor implements MarkdownProcessor {
 		}
 		
 	}
+
+	@Override
+	public boolean isContextFree() {
+		return true;
+	}
 	
 }
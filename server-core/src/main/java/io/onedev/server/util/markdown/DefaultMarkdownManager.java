@@ -3,15 +3,23 @@ package io.onedev.server.util.markdown;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.text.StringEscapeUtils;
 import org.jsoup.nodes.Document;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.vladsch.flexmark.Extension;
 import com.vladsch.flexmark.ast.Node;
 import com.vladsch.flexmark.ext.anchorlink.AnchorLinkExtension;
@@ -29,21 +37,31 @@ import com.vladsch.flexmark.util.options.MutableDataSet;
 import io.onedev.commons.utils.HtmlUtils;
 import io.onedev.server.model.Project;
 
+/**
+ * Parser and renderer are thread-safe and are shared by all renderings. Rendered html and
+ * result of context free processors are cached by content hash, and context aware processors
+ * such as mentions and references are applied to cached result each time. The cache lives in
+ * memory only, so a processor change is always picked up with a restart.
+ */
 @Singleton
 public class DefaultMarkdownManager implements MarkdownManager {
 	
-	private final Set<Extension> contributedExtensions;
+	private static final int MAX_CACHE_WEIGHT = 16*1024*1024;
 	
 	private final Set<MarkdownProcessor> htmlTransformers;
 	
+	private final Parser parser;
+	
+	private final HtmlRenderer htmlRenderer;
+	
+	private final Cache<String, String> renderCache = newCache();
+	
+	private final Cache<String, String> processCache = newCache();
+	
 	@Inject
 	public DefaultMarkdownManager(Set<Extension> contributedExtensions, Set<MarkdownProcessor> htmlTransformers) {
-		this.contributedExtensions = contributedExtensions;
 		this.htmlTransformers = htmlTransformers;
-	}
-
-	@Override
-	public String render(String markdown) {
+		
 		List<Extension> extensions = new ArrayList<>();
 		extensions.add(AnchorLinkExtension.create());
 		extensions.add(TablesExtension.create());
@@ -66,12 +84,46 @@ public class DefaultMarkdownManager implements MarkdownManager {
 				.set(TablesExtension.HEADER_SEPARATOR_COLUMN_MATCH, true)
 				.set(Parser.EXTENSIONS, extensions);
 
-		Parser parser = Parser.builder(options).build();
+		parser = Parser.builder(options).build();
+		htmlRenderer = HtmlRenderer.builder(options).build();
+	}
+	
+	private static Cache<String, String> newCache() {
+		return CacheBuilder.newBuilder()
+				.maximumWeight(MAX_CACHE_WEIGHT)
+				.weigher(new Weigher<String, String>() {
 
-		HtmlRenderer htmlRenderer = HtmlRenderer.builder(options).build();
-		
-		Node document = parser.parse(markdown);
-		return htmlRenderer.render(document);
+					@Override
+					public int weigh(String key, String value) {
+						return key.length() + value.length();
+					}
+					
+				})
+				.build();
+	}
+	
+	private String getCached(Cache<String, String> cache, String content, Callable<String> loader) {
+		try {
+			return cache.get(DigestUtils.sha256Hex(content), loader);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} catch (UncheckedExecutionException e) {
+			Throwables.throwIfUnchecked(e.getCause());
+			throw e;
+		}
+	}
+
+	@Override
+	public String render(String markdown) {
+		return getCached(renderCache, markdown, new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				Node document = parser.parse(markdown);
+				return htmlRenderer.render(document);
+			}
+			
+		});
 	}
 
 	@Override
@@ -84,14 +136,39 @@ public class DefaultMarkdownManager implements MarkdownManager {
 	@Override
 	public Document process(Document document, @Nullable Project project, @Nullable Object context) {
 		document = HtmlUtils.sanitize(document);
-		for (MarkdownProcessor htmlTransformer: htmlTransformers)
-			htmlTransformer.process(document, project, context);
+		for (MarkdownProcessor htmlTransformer: htmlTransformers) {
+			if (htmlTransformer.isContextFree())
+				htmlTransformer.process(document, null, null);
+		}
+		for (MarkdownProcessor htmlTransformer: htmlTransformers) {
+			if (!htmlTransformer.isContextFree())
+				htmlTransformer.process(document, project, context);
+		}
 		return document;
 	}
 
 	@Override
 	public String process(String html, Project project, Object context) {
-		return process(HtmlUtils.parse(html), project, context).body().html();
+		String processed = getCached(processCache, html, new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				Document document = HtmlUtils.sanitize(HtmlUtils.parse(html));
+				for (MarkdownProcessor htmlTransformer: htmlTransformers) {
+					if (htmlTransformer.isContextFree())
+						htmlTransformer.process(document, null, null);
+				}
+				return document.body().html();
+			}
+			
+		});
+		
+		Document document = HtmlUtils.parse(processed);
+		for (MarkdownProcessor htmlTransformer: htmlTransformers) {
+			if (!htmlTransformer.isContextFree())
+				htmlTransformer.process(document, project, context);
+		}
+		return document.body().html();
 	}
 
 }
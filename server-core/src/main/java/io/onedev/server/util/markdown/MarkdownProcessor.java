@@ -12,4 +12,16 @@ public interface MarkdownProcessor {
 	
 	void process(Document rendered, @Nullable Project project, @Nullable Object context);
 	
+	/**
+	 * Whether or not result of this processor only depends on the rendered document. Results of 
+	 * context free processors are cached, and project and context passed to them are null.
+	 * <p>
+	 * Context free processors always run before context aware processors, whether or not their 
+	 * results come from cache. So a context free processor should not rely on output of context 
+	 * aware processors, while a context aware processor always sees output of context free ones
+	 */
+	default boolean isContextFree() {
+		return false;
+	}
+	
 }
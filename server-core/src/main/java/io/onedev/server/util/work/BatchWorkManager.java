@@ -1,9 +1,19 @@
 package io.onedev.server.util.work;
 
+import java.util.List;
+
 import io.onedev.server.util.concurrent.Prioritized;
 
 public interface BatchWorkManager {
 
 	void submit(BatchWorker worker, Prioritized work);
 
+	/**
+	 * Get statistics of all batch workers ever submitted works
+	 * 
+	 * @return
+	 * 			statistics of batch workers, with workers having larger backlog coming first
+	 */
+	List<BatchWorkerStats> getWorkerStats();
+	
 }
@@ -0,0 +1,83 @@
+package io.onedev.server.util.work;
+
+import io.onedev.server.util.DurationHistogram;
+import io.onedev.server.util.RunningStats;
+
+/**
+ * Statistics of works processed by batch workers of a particular type since server start. Type
+ * of a worker is its id with the entity prefix removed, for instance type of worker
+ * <tt>project-1-indexBlob</tt> is <tt>indexBlob</tt>
+ */
+public class BatchWorkerStats {
+
+	private final String workerType;
+	
+	private long submittedWorks;
+	
+	private long failedBatches;
+	
+	private int backlog;
+	
+	private final RunningStats batchSizes = new RunningStats();
+	
+	private final DurationHistogram waitTimes = new DurationHistogram();
+	
+	private final DurationHistogram runTimes = new DurationHistogram();
+	
+	public BatchWorkerStats(String workerType) {
+		this.workerType = workerType;
+	}
+
+	public String getWorkerType() {
+		return workerType;
+	}
+
+	public synchronized long getSubmittedWorks() {
+		return submittedWorks;
+	}
+
+	synchronized void onSubmitted() {
+		submittedWorks++;
+	}
+	
+	public synchronized long getFailedBatches() {
+		return failedBatches;
+	}
+
+	synchronized void onFailed() {
+		failedBatches++;
+	}
+	
+	/**
+	 * @return
+	 * 			number of works waiting to be processed, including works being processed
+	 */
+	public synchronized int getBacklog() {
+		return backlog;
+	}
+
+	synchronized void setBacklog(int backlog) {
+		this.backlog = backlog;
+	}
+
+	public RunningStats getBatchSizes() {
+		return batchSizes;
+	}
+
+	/**
+	 * @return
+	 * 			histogram of milliseconds works wait in queue before being processed
+	 */
+	public DurationHistogram getWaitTimes() {
+		return waitTimes;
+	}
+
+	/**
+	 * @return
+	 * 			histogram of milliseconds spent processing each batch
+	 */
+	public DurationHistogram getRunTimes() {
+		return runTimes;
+	}
+	
+}
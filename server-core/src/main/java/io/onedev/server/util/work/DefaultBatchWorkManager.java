@@ -2,11 +2,14 @@ package io.onedev.server.util.work;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
@@ -29,10 +32,15 @@ public class DefaultBatchWorkManager implements BatchWorkManager, Runnable {
 
 	private static final Logger logger = LoggerFactory.getLogger(DefaultBatchWorkManager.class);
 	
+	private static final Pattern ENTITY_PREFIX = Pattern.compile("^[a-zA-Z]+-\\d+-");
+	
 	private final WorkExecutor workExecutor;
 	
 	private final Map<BatchWorker, Works> works = new HashMap<>();
 	
+	// Keyed by worker type instead of worker id so that it does not grow with number of entities
+	private final Map<String, BatchWorkerStats> stats = new HashMap<>();
+	
 	private Thread thread;
 	
 	@Inject
@@ -43,11 +51,21 @@ public class DefaultBatchWorkManager implements BatchWorkManager, Runnable {
 	private Works getWorks(BatchWorker worker) {
 		Works worksOfWorker = works.get(worker);
 		if (worksOfWorker == null) {
-			worksOfWorker = new Works();
+			worksOfWorker = new Works(getStats(worker));
 			works.put(worker, worksOfWorker);
 		}
 		return worksOfWorker;
 	}
+	
+	private BatchWorkerStats getStats(BatchWorker worker) {
+		String workerType = ENTITY_PREFIX.matcher(worker.getId()).replaceFirst("");
+		BatchWorkerStats statsOfWorker = stats.get(workerType);
+		if (statsOfWorker == null) {
+			statsOfWorker = new BatchWorkerStats(workerType);
+			stats.put(workerType, statsOfWorker);
+		}
+		return statsOfWorker;
+	}
 
 	@Listen
 	public void on(SystemStarted event) {
@@ -69,18 +87,29 @@ public class DefaultBatchWorkManager implements BatchWorkManager, Runnable {
 				BatchWorker worker = entry.getKey();
 				Works works = entry.getValue();
 				if (works.working.isEmpty()) {
-					works.queued.drainTo(works.working, worker.getMaxBatchSize());
-					if (!works.working.isEmpty()) {
+					Collection<QueuedWork> drained = new ArrayList<>();
+					works.queued.drainTo(drained, worker.getMaxBatchSize());
+					if (!drained.isEmpty()) {
+						long now = System.currentTimeMillis();
+						for (QueuedWork queuedWork: drained) {
+							works.working.add(queuedWork.work);
+							works.stats.getWaitTimes().record(now - queuedWork.timestamp);
+						}
+						works.stats.getBatchSizes().record(drained.size());
+						
 						double priority = works.working.stream().collect(Collectors.averagingInt(Prioritized::getPriority));
 						workExecutor.execute(new PrioritizedRunnable((int)priority) {
 							
 							@Override
 							public void run() {
+								long time = System.currentTimeMillis();
 								try {
 									worker.doWorks(works.working);
 								} catch (Exception e) {
+									works.stats.onFailed();
 									logger.error("Error doing works", e);
 								} finally {
+									works.stats.getRunTimes().record(System.currentTimeMillis() - time);
 									synchronized(DefaultBatchWorkManager.this) {
 										works.working.clear();
 										DefaultBatchWorkManager.this.notify();
@@ -112,15 +141,53 @@ public class DefaultBatchWorkManager implements BatchWorkManager, Runnable {
 				worker.doWorks(works);
 			}
 			
-		}).queued.offer(work);
+		}).queued.offer(new QueuedWork(work));
+		getStats(worker).onSubmitted();
 		
 		notify();
 	}
 
+	@Override
+	public synchronized List<BatchWorkerStats> getWorkerStats() {
+		for (BatchWorkerStats statsOfWorker: stats.values()) 
+			statsOfWorker.setBacklog(0);
+		for (Works worksOfWorker: works.values()) {
+			BatchWorkerStats statsOfWorker = worksOfWorker.stats;
+			statsOfWorker.setBacklog(statsOfWorker.getBacklog() 
+					+ worksOfWorker.queued.size() + worksOfWorker.working.size());
+		}
+		
+		List<BatchWorkerStats> workerStats = new ArrayList<>(stats.values());
+		workerStats.sort(Comparator.comparing(BatchWorkerStats::getBacklog).reversed()
+				.thenComparing(BatchWorkerStats::getWorkerType));
+		return workerStats;
+	}
+	
+	private static class QueuedWork extends Prioritized {
+		
+		final Prioritized work;
+		
+		final long timestamp = System.currentTimeMillis();
+		
+		QueuedWork(Prioritized work) {
+			super(work.getPriority());
+			this.work = work;
+		}
+		
+	}
+	
 	private static class Works {
-		BlockingQueue<Prioritized> queued = new PriorityBlockingQueue<>();
+		
+		final BatchWorkerStats stats;
+		
+		BlockingQueue<QueuedWork> queued = new PriorityBlockingQueue<>();
 		
 		Collection<Prioritized> working = new ArrayList<>();
+		
+		Works(BatchWorkerStats stats) {
+			this.stats = stats;
+		}
+		
 	}
 
 }
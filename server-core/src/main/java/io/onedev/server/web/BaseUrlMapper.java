@@ -12,6 +12,7 @@ import io.onedev.server.web.mapper.BaseResourceMapper;
 import io.onedev.server.web.mapper.DynamicPathPageMapper;
 import io.onedev.server.web.mapper.DynamicPathResourceMapper;
 import io.onedev.server.web.page.admin.authenticator.AuthenticatorPage;
+import io.onedev.server.web.page.admin.batchwork.BatchWorkStatsPage;
 import io.onedev.server.web.page.admin.databasebackup.DatabaseBackupPage;
 import io.onedev.server.web.page.admin.generalsecuritysetting.GeneralSecuritySettingPage;
 import io.onedev.server.web.page.admin.groovyscript.GroovyScriptListPage;
@@ -27,6 +28,7 @@ import io.onedev.server.web.page.admin.issuesetting.statespec.IssueStateListPage
 import io.onedev.server.web.page.admin.issuesetting.transitionspec.StateTransitionListPage;
 import io.onedev.server.web.page.admin.jobexecutor.JobExecutorsPage;
 import io.onedev.server.web.page.admin.mailsetting.MailSettingPage;
+import io.onedev.server.web.page.admin.repositorymaintenance.RepositoryMaintenancePage;
 import io.onedev.server.web.page.admin.role.NewRolePage;
 import io.onedev.server.web.page.admin.role.RoleDetailPage;
 import io.onedev.server.web.page.admin.role.RoleListPage;
@@ -211,6 +213,8 @@ public class BaseUrlMapper extends CompoundRequestMapper {
 		
 		add(new DynamicPathPageMapper("administration/server-log", ServerLogPage.class));
 		add(new DynamicPathPageMapper("administration/server-information", ServerInformationPage.class));
+		add(new DynamicPathPageMapper("administration/background-works", BatchWorkStatsPage.class));
+		add(new DynamicPathPageMapper("administration/repository-maintenance", RepositoryMaintenancePage.class));
 	}
 	
 	private void addProjectPages() {
@@ -163,7 +163,10 @@ public abstract class RevisionDiffPanel extends Panel {
 				}
 				BlobIdent oldBlobIdent = GitUtils.getOldBlobIdent(entry, oldRev);
 				BlobIdent newBlobIdent = GitUtils.getNewBlobIdent(entry, newRev);
-	    		changes.add(newBlobChange(changeType, oldBlobIdent, newBlobIdent, whitespaceOptionModel.getObject()));
+				ObjectId oldBlobId = entry.getOldId().isComplete()? entry.getOldId().toObjectId(): null;
+				ObjectId newBlobId = entry.getNewId().isComplete()? entry.getNewId().toObjectId(): null;
+	    		changes.add(newBlobChange(changeType, oldBlobIdent, oldBlobId, newBlobIdent, newBlobId, 
+	    				whitespaceOptionModel.getObject()));
 			}
 			
 			List<BlobChange> filteredChanges = new ArrayList<>();
@@ -194,23 +197,25 @@ public abstract class RevisionDiffPanel extends Panel {
 	    	// for some unknown reason, some paths in the diff entries is DELETE/ADD 
 	    	// pair instead MODIFICATION, here we normalize those as a single 
 	    	// MODIFICATION entry
-	    	Map<String, BlobIdent> deleted = new HashMap<>();
-	    	Map<String, BlobIdent> added = new HashMap<>();
+	    	Map<String, BlobChange> deleted = new HashMap<>();
+	    	Map<String, BlobChange> added = new HashMap<>();
 	    	for (BlobChange change: filteredChanges) {
 	    		if (change.getType() == ChangeType.DELETE)
-	    			deleted.put(change.getPath(), change.getOldBlobIdent());
+	    			deleted.put(change.getPath(), change);
 	    		else if (change.getType() == ChangeType.ADD) 
-	    			added.put(change.getPath(), change.getNewBlobIdent());
+	    			added.put(change.getPath(), change);
 	    	}
 	    	
 	    	List<BlobChange> normalizedChanges = new ArrayList<>();
 	    	for (BlobChange change: filteredChanges) {
-	    		BlobIdent oldBlobIdent = deleted.get(change.getPath());
-	    		BlobIdent newBlobIdent = added.get(change.getPath());
-	    		if (oldBlobIdent != null && newBlobIdent != null) {
+	    		BlobChange deletedChange = deleted.get(change.getPath());
+	    		BlobChange addedChange = added.get(change.getPath());
+	    		if (deletedChange != null && addedChange != null) {
 	    			if (change.getType() == ChangeType.DELETE) {
 	        			BlobChange normalizedChange = newBlobChange(ChangeType.MODIFY, 
-	        					oldBlobIdent, newBlobIdent, whitespaceOptionModel.getObject());
+	        					deletedChange.getOldBlobIdent(), deletedChange.getOldBlobId(), 
+	        					addedChange.getNewBlobIdent(), addedChange.getNewBlobId(), 
+	        					whitespaceOptionModel.getObject());
 	    				normalizedChanges.add(normalizedChange);
 	    			}
 	    		} else {
@@ -718,9 +723,9 @@ public abstract class RevisionDiffPanel extends Panel {
 		setOutputMarkupId(true);
 	}
 	
-	private BlobChange newBlobChange(ChangeType type, BlobIdent oldBlobIdent, BlobIdent newBlobIdent, 
-			WhitespaceOption whitespaceOption) {
-		return new BlobChange(type, oldBlobIdent, newBlobIdent, whitespaceOption) {
+	private BlobChange newBlobChange(ChangeType type, BlobIdent oldBlobIdent, @Nullable ObjectId oldBlobId, 
+			BlobIdent newBlobIdent, @Nullable ObjectId newBlobId, WhitespaceOption whitespaceOption) {
+		return new BlobChange(type, oldBlobIdent, oldBlobId, newBlobIdent, newBlobId, whitespaceOption) {
 
 			@Override
 			public Project getProject() {
@@ -67,7 +67,6 @@ public abstract class RunJobLink extends AjaxLink<Void> {
 		
 		Collection<ObjectId> descendants = OneDev.getInstance(CommitInfoManager.class)
 				.getDescendants(getProject(), Sets.newHashSet(commitId));
-		descendants.add(commitId);
 	
 		List<RefInfo> refs = new ArrayList<>();
 		refs.addAll(getProject().getBranchRefInfos());
@@ -0,0 +1,66 @@
+package io.onedev.server.web.page.admin.batchwork;
+
+import java.util.List;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.markup.html.list.ListItem;
+import org.apache.wicket.markup.html.list.ListView;
+import org.apache.wicket.model.LoadableDetachableModel;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+
+import com.google.common.base.Joiner;
+
+import io.onedev.server.OneDev;
+import io.onedev.server.util.work.BatchWorkManager;
+import io.onedev.server.util.work.BatchWorkerStats;
+import io.onedev.server.web.page.admin.AdministrationPage;
+
+@SuppressWarnings("serial")
+public class BatchWorkStatsPage extends AdministrationPage {
+
+	private static final int MAX_DISPLAY_WORKERS = 200;
+	
+	public BatchWorkStatsPage(PageParameters params) {
+		super(params);
+	}
+
+	@Override
+	protected void onInitialize() {
+		super.onInitialize();
+
+		add(new ListView<BatchWorkerStats>("workers", new LoadableDetachableModel<List<BatchWorkerStats>>() {
+
+			@Override
+			protected List<BatchWorkerStats> load() {
+				List<BatchWorkerStats> workerStats = OneDev.getInstance(BatchWorkManager.class).getWorkerStats();
+				if (workerStats.size() > MAX_DISPLAY_WORKERS)
+					workerStats = workerStats.subList(0, MAX_DISPLAY_WORKERS);
+				return workerStats;
+			}
+			
+		}) {
+
+			@Override
+			protected void populateItem(ListItem<BatchWorkerStats> item) {
+				BatchWorkerStats stats = item.getModelObject();
+				item.add(new Label("type", stats.getWorkerType()));
+				item.add(new Label("backlog", stats.getBacklog()));
+				item.add(new Label("submitted", stats.getSubmittedWorks()));
+				item.add(new Label("failed", stats.getFailedBatches()));
+				item.add(new Label("batchSizes", stats.getBatchSizes().toString()));
+				item.add(new Label("waitTimes", stats.getWaitTimes().toString() + "\n" 
+						+ Joiner.on(", ").withKeyValueSeparator(": ").join(stats.getWaitTimes().getBuckets())));
+				item.add(new Label("runTimes", stats.getRunTimes().toString() + "\n" 
+						+ Joiner.on(", ").withKeyValueSeparator(": ").join(stats.getRunTimes().getBuckets())));
+			}
+			
+		});
+	}
+
+	@Override
+	protected Component newTopbarTitle(String componentId) {
+		return new Label(componentId, "Background Works");
+	}
+
+}
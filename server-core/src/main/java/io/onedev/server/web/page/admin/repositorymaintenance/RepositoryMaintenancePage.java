@@ -0,0 +1,132 @@
+package io.onedev.server.web.page.admin.repositorymaintenance;
+
+import java.util.List;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.ajax.markup.html.AjaxLink;
+import org.apache.wicket.markup.html.WebMarkupContainer;
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.markup.html.list.ListItem;
+import org.apache.wicket.markup.html.list.ListView;
+import org.apache.wicket.model.LoadableDetachableModel;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.OneDev;
+import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.git.RepositoryMaintenanceManager;
+import io.onedev.server.git.RepositoryMaintenanceStatus;
+import io.onedev.server.git.RepositoryStats;
+import io.onedev.server.model.Project;
+import io.onedev.server.util.DateUtils;
+import io.onedev.server.web.page.admin.AdministrationPage;
+
+@SuppressWarnings("serial")
+public class RepositoryMaintenancePage extends AdministrationPage {
+
+	private static final int MAX_DISPLAY_REPOSITORIES = 200;
+	
+	public RepositoryMaintenancePage(PageParameters params) {
+		super(params);
+	}
+
+	private RepositoryMaintenanceManager getMaintenanceManager() {
+		return OneDev.getInstance(RepositoryMaintenanceManager.class);
+	}
+	
+	@Override
+	protected void onInitialize() {
+		super.onInitialize();
+
+		add(new WebMarkupContainer("commitGraphNotSupported") {
+
+			@Override
+			protected void onConfigure() {
+				super.onConfigure();
+				setVisible(!getMaintenanceManager().isCommitGraphSupported());
+			}
+			
+		});
+		
+		add(new ListView<RepositoryMaintenanceStatus>("repositories", new LoadableDetachableModel<List<RepositoryMaintenanceStatus>>() {
+
+			@Override
+			protected List<RepositoryMaintenanceStatus> load() {
+				List<RepositoryMaintenanceStatus> statuses = getMaintenanceManager().getStatuses();
+				if (statuses.size() > MAX_DISPLAY_REPOSITORIES)
+					statuses = statuses.subList(0, MAX_DISPLAY_REPOSITORIES);
+				return statuses;
+			}
+			
+		}) {
+
+			@Override
+			protected void populateItem(ListItem<RepositoryMaintenanceStatus> item) {
+				RepositoryMaintenanceStatus status = item.getModelObject();
+				Long projectId = status.getProjectId();
+				Project project = OneDev.getInstance(ProjectManager.class).get(projectId);
+				item.add(new Label("project", project!=null?project.getName():"#" + projectId));
+				boolean projectExists = project != null;
+				
+				if (status.isRunning())
+					item.add(new Label("status", "Running"));
+				else if (status.isPending())
+					item.add(new Label("status", "Pending"));
+				else if (status.getLastError() != null)
+					item.add(new Label("status", "Failed: " + status.getLastError()));
+				else
+					item.add(new Label("status", "Idle"));
+				
+				RepositoryStats stats = status.getStats();
+				if (stats != null) {
+					item.add(new Label("looseObjects", "~" + stats.getLooseObjects()));
+					item.add(new Label("packs", stats.getPacks()));
+					item.add(new Label("packSize", FileUtils.byteCountToDisplaySize(stats.getPackSize())));
+					item.add(new Label("bitmap", stats.hasBitmap()?"Yes":"No"));
+					item.add(new Label("commitGraph", stats.getCommitGraphTime()!=0?"Yes":"No"));
+				} else {
+					item.add(new Label("looseObjects"));
+					item.add(new Label("packs"));
+					item.add(new Label("packSize"));
+					item.add(new Label("bitmap"));
+					item.add(new Label("commitGraph"));
+				}
+				
+				if (status.getLastRunDate() != null) {
+					String lastTasks = status.getLastRunTasks();
+					if (lastTasks == null || lastTasks.length() == 0)
+						lastTasks = "no task finished";
+					item.add(new Label("lastMaintenance", DateUtils.formatAge(status.getLastRunDate()) + "\n" 
+							+ lastTasks + " in " + DateUtils.formatDuration(status.getLastRunDuration())));
+				} else {
+					item.add(new Label("lastMaintenance", "Never since server start"));
+				}
+				
+				item.add(new AjaxLink<Void>("maintain") {
+
+					@Override
+					public void onClick(AjaxRequestTarget target) {
+						Project project = OneDev.getInstance(ProjectManager.class).load(projectId);
+						getMaintenanceManager().maintain(project);
+						setResponsePage(RepositoryMaintenancePage.class);
+					}
+
+					@Override
+					protected void onConfigure() {
+						super.onConfigure();
+						setVisible(projectExists && !status.isRunning() && !status.isPending());
+					}
+					
+				});
+			}
+			
+		});
+	}
+
+	@Override
+	protected Component newTopbarTitle(String componentId) {
+		return new Label(componentId, "Repository Maintenance");
+	}
+
+}
@@ -9,8 +9,14 @@ import org.apache.wicket.markup.html.link.Link;
 import org.apache.wicket.model.LoadableDetachableModel;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 
+import io.onedev.server.OneDev;
+import io.onedev.server.git.GitTransportManager;
+import io.onedev.server.infomanager.CommitInfoManager;
+import io.onedev.server.infomanager.EnvironmentPool;
 import io.onedev.server.util.DateUtils;
+import io.onedev.server.util.diff.DiffCacheManager;
 import io.onedev.server.web.page.admin.AdministrationPage;
+import io.onedev.server.web.websocket.WebSocketManager;
 
 @SuppressWarnings("serial")
 public class ServerInformationPage extends AdministrationPage {
@@ -66,6 +72,71 @@ public class ServerInformationPage extends AdministrationPage {
 		});
 		
 		add(new Label("osUserName", System.getProperty("user.name")));
+
+		add(new Label("webSocketFanOut", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				return OneDev.getInstance(WebSocketManager.class).getFanOutStats().toString();
+			}
+			
+		}));
+		add(new Label("webSocketNotifyLatency", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				return OneDev.getInstance(WebSocketManager.class).getNotifyLatencyStats().toString();
+			}
+			
+		}));
+		add(new Label("gitTransports", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				GitTransportManager gitTransportManager = OneDev.getInstance(GitTransportManager.class);
+				return "running: " + gitTransportManager.getRunningCount() 
+						+ ", queued: " + gitTransportManager.getQueuedCount();
+			}
+			
+		}));
+		add(new Label("gitTransportWait", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				return OneDev.getInstance(GitTransportManager.class).getWaitStats().toString();
+			}
+			
+		}));
+		add(new Label("infoEnvironments", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				EnvironmentPool envPool = OneDev.getInstance(EnvironmentPool.class);
+				return "open: " + envPool.getOpenCount() 
+						+ ", hits: " + envPool.getHitCount() 
+						+ ", misses: " + envPool.getMissCount() 
+						+ ", evictions: " + envPool.getEvictionCount();
+			}
+			
+		}));
+		add(new Label("commitInfoCollection", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				CommitInfoManager commitInfoManager = OneDev.getInstance(CommitInfoManager.class);
+				return "collecting: " + commitInfoManager.getCollectingCount() 
+						+ ", pending: " + commitInfoManager.getPendingCollectingCount();
+			}
+			
+		}));
+		add(new Label("diffCache", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				return OneDev.getInstance(DiffCacheManager.class).getStats().toString();
+			}
+			
+		}));
 		
 		add(new Link<Void>("gc") {
 
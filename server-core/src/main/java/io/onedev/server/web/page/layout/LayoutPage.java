@@ -43,6 +43,7 @@ import io.onedev.server.web.component.link.ViewStateAwarePageLink;
 import io.onedev.server.web.component.svg.SpriteImage;
 import io.onedev.server.web.component.user.UserAvatar;
 import io.onedev.server.web.page.admin.authenticator.AuthenticatorPage;
+import io.onedev.server.web.page.admin.batchwork.BatchWorkStatsPage;
 import io.onedev.server.web.page.admin.databasebackup.DatabaseBackupPage;
 import io.onedev.server.web.page.admin.generalsecuritysetting.GeneralSecuritySettingPage;
 import io.onedev.server.web.page.admin.groovyscript.GroovyScriptListPage;
@@ -56,6 +57,7 @@ import io.onedev.server.web.page.admin.issuesetting.statespec.IssueStateListPage
 import io.onedev.server.web.page.admin.issuesetting.transitionspec.StateTransitionListPage;
 import io.onedev.server.web.page.admin.jobexecutor.JobExecutorsPage;
 import io.onedev.server.web.page.admin.mailsetting.MailSettingPage;
+import io.onedev.server.web.page.admin.repositorymaintenance.RepositoryMaintenancePage;
 import io.onedev.server.web.page.admin.role.NewRolePage;
 import io.onedev.server.web.page.admin.role.RoleDetailPage;
 import io.onedev.server.web.page.admin.role.RoleListPage;
@@ -159,6 +161,10 @@ public abstract class LayoutPage extends BasePage {
 							ServerLogPage.class, new PageParameters()));
 					maintenanceMenuItems.add(new SidebarMenuItem.Page(null, "Server Information", 
 							ServerInformationPage.class, new PageParameters()));
+					maintenanceMenuItems.add(new SidebarMenuItem.Page(null, "Background Works", 
+							BatchWorkStatsPage.class, new PageParameters()));
+					maintenanceMenuItems.add(new SidebarMenuItem.Page(null, "Repository Maintenance", 
+							RepositoryMaintenancePage.class, new PageParameters()));
 					
 					administrationMenuItems.add(new SidebarMenuItem.SubMenu(null, "System Maintenance", maintenanceMenuItems));
 					
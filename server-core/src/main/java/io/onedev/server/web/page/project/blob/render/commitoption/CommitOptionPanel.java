@@ -378,7 +378,8 @@ public abstract class CommitOptionPanel extends Panel {
 			changeType = DiffEntry.ChangeType.DELETE;
 		}
 		
-		return new BlobChange(changeType, oldBlobIdent, newBlobIdent, WhitespaceOption.DEFAULT) {
+		return new BlobChange(changeType, oldBlobIdent, treeWalk.getObjectId(0), 
+				newBlobIdent, treeWalk.getObjectId(1), WhitespaceOption.DEFAULT) {
 
 			@Override
 			public Project getProject() {
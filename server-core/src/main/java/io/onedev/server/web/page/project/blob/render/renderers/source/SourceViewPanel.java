@@ -72,7 +72,7 @@ import io.onedev.server.git.BlameBlock;
 import io.onedev.server.git.Blob;
 import io.onedev.server.git.BlobIdent;
 import io.onedev.server.git.GitUtils;
-import io.onedev.server.git.command.BlameCommand;
+import io.onedev.server.infomanager.BlameInfoManager;
 import io.onedev.server.model.Build;
 import io.onedev.server.model.CodeComment;
 import io.onedev.server.model.CodeCommentReply;
@@ -785,11 +785,9 @@ public class SourceViewPanel extends BlobViewPanel implements Positionable, Sear
 		if (blamed) {
 			List<BlameInfo> blameInfos = new ArrayList<>();
 			
-			String commitHash = context.getCommit().name();
-			
-			BlameCommand cmd = new BlameCommand(context.getProject().getGitDir());
-			cmd.commitHash(commitHash).file(context.getBlobIdent().path);
-			for (BlameBlock blame: cmd.call()) {
+			BlameInfoManager blameInfoManager = OneDev.getInstance(BlameInfoManager.class);
+			for (BlameBlock blame: blameInfoManager.getBlame(context.getProject(), context.getCommit(), 
+					context.getBlobIdent().path, null)) {
 				BlameInfo blameInfo = new BlameInfo();
 				blameInfo.commitDate = DateUtils.formatDate(blame.getCommit().getCommitter().getWhen());
 				blameInfo.authorName = HtmlEscape.escapeHtml5(blame.getCommit().getAuthor().getName());
@@ -1,10 +1,16 @@
 package io.onedev.server.web.page.project.builds.detail.log;
 
 import org.apache.wicket.Component;
+import org.apache.wicket.ajax.AjaxSelfUpdatingTimerBehavior;
+import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.link.ResourceLink;
 import org.apache.wicket.markup.html.panel.Fragment;
+import org.apache.wicket.model.LoadableDetachableModel;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.util.time.Duration;
 
+import io.onedev.server.OneDev;
+import io.onedev.server.buildspec.job.log.LogManager;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.web.component.build.log.BuildLogPanel;
 import io.onedev.server.web.page.project.builds.detail.BuildDetailPage;
@@ -14,6 +20,8 @@ import io.onedev.server.web.resource.BuildLogResourceReference;
 @SuppressWarnings("serial")
 public class BuildLogPage extends BuildDetailPage {
 
+	private static final int RATE_REFRESH_INTERVAL = 5;
+
 	public BuildLogPage(PageParameters params) {
 		super(params);
 	}
@@ -32,6 +40,23 @@ public class BuildLogPage extends BuildDetailPage {
 
 	public Component renderOptions(String componentId) {
 		Fragment fragment = new Fragment(componentId, "optionsFrag", this);
+		fragment.add(new Label("loggingRate", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				double rate = OneDev.getInstance(LogManager.class).getLoggingRate(getBuild());
+				return String.format("%.1f lines/s", rate);
+			}
+			
+		}) {
+
+			@Override
+			protected void onConfigure() {
+				super.onConfigure();
+				setVisible(!getBuild().isFinished());
+			}
+			
+		}.add(new AjaxSelfUpdatingTimerBehavior(Duration.seconds(RATE_REFRESH_INTERVAL))));
 		fragment.add(new ResourceLink<Void>("download", new BuildLogResourceReference(), 
 				BuildLogResource.paramsOf(projectModel.getObject(), getBuild().getNumber())));
 		return fragment;
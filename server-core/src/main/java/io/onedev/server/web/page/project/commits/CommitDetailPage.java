@@ -237,7 +237,6 @@ public class CommitDetailPage extends ProjectPage implements RevisionDiff.Annota
 					protected List<RefInfo> load() {
 						Collection<ObjectId> descendants = OneDev.getInstance(CommitInfoManager.class)
 								.getDescendants(getProject(), Sets.newHashSet(getCommit().getId()));
-						descendants.add(getCommit().getId());
 					
 						List<RefInfo> refs = new ArrayList<>();
 						refs.addAll(getProject().getBranchRefInfos());
@@ -1,15 +1,27 @@
 package io.onedev.server.web.page.project.setting.webhook;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.wicket.Component;
 import org.apache.wicket.feedback.FencedFeedbackPanel;
 import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.form.Form;
+import org.apache.wicket.markup.html.list.ListItem;
+import org.apache.wicket.markup.html.list.ListView;
+import org.apache.wicket.model.LoadableDetachableModel;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 
+import com.google.common.base.Joiner;
+
 import io.onedev.server.OneDev;
 import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.model.support.WebHook;
+import io.onedev.server.notification.WebHookDelivery;
+import io.onedev.server.notification.WebHookManager;
+import io.onedev.server.notification.WebHookStats;
+import io.onedev.server.util.DateUtils;
 import io.onedev.server.web.editable.PropertyContext;
 import io.onedev.server.web.editable.PropertyEditor;
 import io.onedev.server.web.page.project.setting.ProjectSettingPage;
@@ -45,6 +57,53 @@ public class WebHooksPage extends ProjectSettingPage {
 		form.add(new FencedFeedbackPanel("feedback", form));
 		form.add(editor);
 		add(form);
+		
+		add(new ListView<String>("deliveries", new LoadableDetachableModel<List<String>>() {
+
+			@Override
+			protected List<String> load() {
+				List<String> postUrls = new ArrayList<>();
+				for (WebHook webHook: getProject().getWebHooks()) {
+					if (!postUrls.contains(webHook.getPostUrl()))
+						postUrls.add(webHook.getPostUrl());
+				}
+				return postUrls;
+			}
+			
+		}) {
+
+			@Override
+			protected void populateItem(ListItem<String> item) {
+				String postUrl = item.getModelObject();
+				WebHookManager webHookManager = OneDev.getInstance(WebHookManager.class);
+				WebHookStats stats = webHookManager.getStats(getProject(), postUrl);
+				item.add(new Label("postUrl", postUrl));
+				item.add(new Label("backlog", stats.getBacklog()));
+				item.add(new Label("delivered", stats.getDelivered() + " of " + stats.getSubmitted() 
+						+ String.format("\n%.2f per minute", stats.getThroughput())));
+				item.add(new Label("failed", stats.getFailedAttempts() + " attempts\n" 
+						+ stats.getAbandoned() + " abandoned\n" + stats.getDropped() + " dropped"));
+				item.add(new Label("responseTimes", stats.getResponseTimes().toString() + "\n" 
+						+ Joiner.on(", ").withKeyValueSeparator(": ").join(stats.getResponseTimes().getBuckets())));
+				item.add(new Label("deliveryTimes", stats.getDeliveryTimes().toString() + "\n" 
+						+ Joiner.on(", ").withKeyValueSeparator(": ").join(stats.getDeliveryTimes().getBuckets())));
+				
+				List<String> history = new ArrayList<>();
+				for (WebHookDelivery delivery: webHookManager.getDeliveryHistory(getProject(), postUrl)) {
+					String entry = DateUtils.formatAge(delivery.getLastAttemptDate() != null? 
+							delivery.getLastAttemptDate(): delivery.getCreateDate()); 
+					entry += " " + delivery.getEventType() + " " + delivery.getStatus().name().toLowerCase();
+					if (delivery.getLastStatusCode() != null)
+						entry += " (HTTP " + delivery.getLastStatusCode() + ")";
+					entry += ", " + delivery.getAttempts() + " attempts, " + delivery.getLastDuration() + "ms";
+					if (delivery.getLastError() != null)
+						entry += ": " + delivery.getLastError();
+					history.add(entry);
+				}
+				item.add(new Label("history", Joiner.on("\n").join(history)));
+			}
+			
+		});
 	}
 
 	@Override
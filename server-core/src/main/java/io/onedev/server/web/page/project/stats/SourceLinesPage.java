@@ -1,5 +1,6 @@
 package io.onedev.server.web.page.project.stats;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -8,12 +9,14 @@ import org.apache.wicket.markup.head.IHeaderResponse;
 import org.apache.wicket.markup.head.OnDomReadyHeaderItem;
 import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.joda.time.DateTime;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.onedev.server.OneDev;
 import io.onedev.server.infomanager.CommitInfoManager;
+import io.onedev.server.infomanager.TimeBucket;
 import io.onedev.server.util.Day;
 
 @SuppressWarnings("serial")
@@ -27,7 +30,20 @@ public class SourceLinesPage extends ProjectStatsPage {
 	public void renderHead(IHeaderResponse response) {
 		super.renderHead(response);
 		
-		Map<Day, Map<String, Integer>> lineIncrements = OneDev.getInstance(CommitInfoManager.class).getLineIncrements(getProject());
+		CommitInfoManager commitInfoManager = OneDev.getInstance(CommitInfoManager.class);
+		
+		// Monthly rollups are cheap to read and tell the range, read finer rollups only if the 
+		// range is short enough to chart them
+		Map<Day, Map<String, Integer>> lineIncrements = commitInfoManager.getLineIncrements(getProject(), TimeBucket.MONTH);
+		TimeBucket timeBucket = TimeBucket.MONTH;
+		if (!lineIncrements.isEmpty()) {
+			int fromDay = Collections.min(lineIncrements.keySet()).getValue();
+			int toDay = new Day(new DateTime()).getValue();
+			timeBucket = TimeBucket.forRange(fromDay, toDay);
+			if (timeBucket != TimeBucket.MONTH)
+				lineIncrements = commitInfoManager.getLineIncrements(getProject(), timeBucket);
+		}
+		
 		Map<Integer, Map<String, Integer>> data = new HashMap<>();
 		for (Map.Entry<Day, Map<String, Integer>> entry: lineIncrements.entrySet()) 
 			data.put(entry.getKey().getValue(), entry.getValue());
@@ -35,8 +51,8 @@ public class SourceLinesPage extends ProjectStatsPage {
 			ObjectMapper mapper = OneDev.getInstance(ObjectMapper.class);
 			String jsonOfData = mapper.writeValueAsString(data);
 			String jsonOfDefaultBranch = mapper.writeValueAsString(getProject().getDefaultBranch());
-			String script = String.format("onedev.server.stats.sourceLines.onDomReady(%s, %s);", 
-					jsonOfData, jsonOfDefaultBranch);
+			String script = String.format("onedev.server.stats.sourceLines.onDomReady(%s, '%s', %s);", 
+					jsonOfData, timeBucket.name(), jsonOfDefaultBranch);
 			response.render(OnDomReadyHeaderItem.forScript(script));
 		} catch (JsonProcessingException e) {
 			throw new RuntimeException(e);
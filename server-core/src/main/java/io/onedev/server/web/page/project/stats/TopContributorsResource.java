@@ -16,6 +16,7 @@ import io.onedev.server.OneDev;
 import io.onedev.server.git.GitContribution;
 import io.onedev.server.git.GitContributor;
 import io.onedev.server.infomanager.CommitInfoManager;
+import io.onedev.server.infomanager.TimeBucket;
 import io.onedev.server.model.Project;
 import io.onedev.server.persistence.dao.Dao;
 import io.onedev.server.security.SecurityUtils;
@@ -59,7 +60,7 @@ class TopContributorsResource extends AbstractResource {
 				
 				AvatarManager avatarManager = OneDev.getInstance(AvatarManager.class);
 
-				List<Map<String, Object>> data = new ArrayList<>();
+				List<Map<String, Object>> contributorsData = new ArrayList<>();
 				for (GitContributor contributor: topContributors) {
 					Map<String, Object> contributorData = new HashMap<>();
 					contributorData.put("authorName", contributor.getAuthor().getName());
@@ -69,13 +70,17 @@ class TopContributorsResource extends AbstractResource {
 					contributorData.put("totalAdditions", contributor.getTotalContribution().getAdditions());
 					contributorData.put("totalDeletions", contributor.getTotalContribution().getDeletions());
 					
-					Map<Integer, Integer> dailyContributionsData = new HashMap<>();
-					for (Map.Entry<Day, Integer> entry: contributor.getDailyContributions().entrySet()) 
-						dailyContributionsData.put(entry.getKey().getValue(), entry.getValue());
+					Map<Integer, Integer> contributionsData = new HashMap<>();
+					for (Map.Entry<Day, Integer> entry: contributor.getContributions().entrySet()) 
+						contributionsData.put(entry.getKey().getValue(), entry.getValue());
 					
-					contributorData.put("dailyContributions", dailyContributionsData);
-					data.add(contributorData);
+					contributorData.put("contributions", contributionsData);
+					contributorsData.add(contributorData);
 				}
+				
+				Map<String, Object> data = new HashMap<>();
+				data.put("timeBucket", TimeBucket.forRange(fromDay, toDay).name());
+				data.put("contributors", contributorsData);
 				attributes.getResponse().write(OneDev.getInstance(ObjectMapper.class).writeValueAsBytes(data));
 			}
 			
@@ -9,6 +9,44 @@ onedev.server.stats = {
 			value: useKilo? (value/1000).toFixed(1) + " k": value
 		}
 	},
+	/*
+	 * Time buckets statistics are rolled up by on server side. A bucket is identified by value 
+	 * of its first day, that is, the day itself, Monday of the week, or first day of the month
+	 */
+	timeBucket: {
+		start: function(dayValue, timeBucket) {
+			var day = onedev.server.day.fromValue(dayValue);
+			if (timeBucket == "WEEK") 
+				day = onedev.server.day.plus(day, -((onedev.server.day.toDate(day).getDay()+6)%7));
+			else if (timeBucket == "MONTH")
+				day.dayOfMonth = 1;
+			return onedev.server.day.toValue(day);
+		},
+		next: function(dayValue, timeBucket) {
+			var day = onedev.server.day.fromValue(dayValue);
+			if (timeBucket == "WEEK") {
+				day = onedev.server.day.plus(day, 7);
+			} else if (timeBucket == "MONTH") {
+				day = onedev.server.day.fromDate(onedev.server.day.toDate({
+					year: day.year,
+					monthOfYear: day.monthOfYear+1,
+					dayOfMonth: 1
+				}));
+			} else {
+				day = onedev.server.day.plus(day, 1);
+			}
+			return onedev.server.day.toValue(day);
+		},
+		list: function(fromDay, toDay, timeBucket) {
+			var buckets = [];
+			var currentBucket = onedev.server.stats.timeBucket.start(fromDay, timeBucket);
+			while (currentBucket <= toDay) {
+				buckets.push(currentBucket);
+				currentBucket = onedev.server.stats.timeBucket.next(currentBucket, timeBucket);
+			}
+			return buckets;
+		}
+	},
 	
 	contribs: {
 		onDomReady : function(overallContributions, topContributorsDataUrl, userCardCallback) {
@@ -166,17 +204,17 @@ onedev.server.stats = {
 							xhr.setRequestHeader('Wicket-Ajax', 'true');
 							xhr.setRequestHeader('Wicket-Ajax-BaseURL', Wicket.Ajax.baseUrl || '.');
 						},
-						success: function(topContributors) {
+						success: function(data) {
+							var topContributors = data.contributors;
+							var buckets = onedev.server.stats.timeBucket.list(fromDay, toDay, data.timeBucket);
 							var xAxisData = [];
-							for (var i=0; i<days.length; i++) {
-								if (days[i] >= fromDay && days[i] <= toDay) 
-									xAxisData.push(onedev.server.day.format(onedev.server.day.fromValue(days[i])));
-							}
+							for (var i=0; i<buckets.length; i++) 
+								xAxisData.push(onedev.server.day.format(onedev.server.day.fromValue(buckets[i])));
 							
 							var maxValue = 0;
 							for (var i=0; i<topContributors.length; i++) {
-								for (var day in topContributors[i].dailyContributions) {
-									var value = topContributors[i].dailyContributions[day];
+								for (var day in topContributors[i].contributions) {
+									var value = topContributors[i].contributions[day];
 									if (maxValue < value)
 										maxValue = value;
 								}
@@ -221,16 +259,14 @@ onedev.server.stats = {
 								
 								var seriesData = [];
 								var maxValueOfContributor = 0;
-								for (var i=0; i<days.length; i++) {
-									if (days[i] >= fromDay && days[i] <= toDay) {
-										var contribution = contributor.dailyContributions[days[i]];
-										if (contribution) {
-											seriesData.push(contribution);
-											if (maxValueOfContributor < contribution)
-												maxValueOfContributor = contribution;
-										} else {
-											seriesData.push(0);
-										}
+								for (var i=0; i<buckets.length; i++) {
+									var contribution = contributor.contributions[buckets[i]];
+									if (contribution) {
+										seriesData.push(contribution);
+										if (maxValueOfContributor < contribution)
+											maxValueOfContributor = contribution;
+									} else {
+										seriesData.push(0);
 									}
 								}
 								
@@ -317,7 +353,7 @@ onedev.server.stats = {
 	},
 	
 	sourceLines: {
-		onDomReady: function(lineIncrements, defaultBranch) {
+		onDomReady: function(lineIncrements, timeBucket, defaultBranch) {
 			var numOfTopLanguages = 10;
 			
 			var $chart = $(".source-lines>div>.chart");
@@ -374,9 +410,8 @@ onedev.server.stats = {
 					else
 						dailyLines.push(increments);
 				}
-				var currentDayObj = onedev.server.day.fromValue(currentDay);
-				xAxisData.push(onedev.server.day.format(currentDayObj));
-				currentDay = onedev.server.day.toValue(onedev.server.day.plus(currentDayObj, 1));
+				xAxisData.push(onedev.server.day.format(onedev.server.day.fromValue(currentDay)));
+				currentDay = onedev.server.stats.timeBucket.next(currentDay, timeBucket);
 			}
 			
 			var chart = echarts.init($chart[0]);
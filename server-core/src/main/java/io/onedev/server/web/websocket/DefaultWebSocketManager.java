@@ -34,6 +34,7 @@ import io.onedev.server.event.system.SystemStarted;
 import io.onedev.server.event.system.SystemStopping;
 import io.onedev.server.persistence.TransactionManager;
 import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.util.RunningStats;
 import io.onedev.server.util.schedule.SchedulableTask;
 import io.onedev.server.util.schedule.TaskScheduler;
 import io.onedev.server.web.page.base.BasePage;
@@ -55,6 +56,16 @@ public class DefaultWebSocketManager implements WebSocketManager {
 	
 	private final Map<String, Map<IKey, Collection<String>>> registeredObservables = new ConcurrentHashMap<>();
 	
+	/*
+	 * Reverse index of registeredObservables so that an observable change only needs 
+	 * to visit pages observing it
+	 */
+	private final Map<String, Set<PageKey>> observers = new ConcurrentHashMap<>();
+	
+	private final RunningStats fanOutStats = new RunningStats();
+	
+	private final RunningStats notifyLatencyStats = new RunningStats();
+	
 	private final IWebSocketConnectionRegistry connectionRegistry = new SimpleWebSocketConnectionRegistry();
 	
 	private final Map<String, Date> notifiedObservables = new ConcurrentHashMap<>();
@@ -85,6 +96,17 @@ public class DefaultWebSocketManager implements WebSocketManager {
 			IKey pageKey = new PageIdKey(page.getPageId());
 			Collection<String> observables = page.findWebSocketObservables();
 			Collection<String> prevObservables = sessionPages.put(pageKey, observables);
+			
+			PageKey observer = new PageKey(sessionId, pageKey);
+			if (prevObservables != null) {
+				for (String observable: prevObservables) {
+					if (!observables.contains(observable))
+						removeObserver(observable, observer);
+				}
+			}
+			for (String observable: observables) 
+				addObserver(observable, observer);
+			
 			if (prevObservables != null && !prevObservables.containsAll(observables)) {
 				IWebSocketConnection connection = connectionRegistry.getConnection(application, sessionId, pageKey);
 				if (connection != null)
@@ -95,7 +117,30 @@ public class DefaultWebSocketManager implements WebSocketManager {
 	
 	@Override
 	public void onDestroySession(String sessionId) {
-		registeredObservables.remove(sessionId);
+		Map<IKey, Collection<String>> sessionPages = registeredObservables.remove(sessionId);
+		if (sessionPages != null) {
+			for (Map.Entry<IKey, Collection<String>> entry: sessionPages.entrySet()) {
+				PageKey observer = new PageKey(sessionId, entry.getKey());
+				for (String observable: entry.getValue())
+					removeObserver(observable, observer);
+			}
+		}
+	}
+	
+	private void addObserver(String observable, PageKey observer) {
+		observers.compute(observable, (key, value) -> {
+			if (value == null)
+				value = ConcurrentHashMap.newKeySet();
+			value.add(observer);
+			return value;
+		});
+	}
+	
+	private void removeObserver(String observable, PageKey observer) {
+		observers.computeIfPresent(observable, (key, value) -> {
+			value.remove(observer);
+			return value.isEmpty()? null: value;
+		});
 	}
 	
 	@Nullable
@@ -128,16 +173,26 @@ public class DefaultWebSocketManager implements WebSocketManager {
 
 			@Override
 			public void run() {
+				long timestamp = System.currentTimeMillis();
 				executorService.execute(new Runnable() {
 
 					@Override
 					public void run() {
 						notifiedObservables.put(observable, new Date());
-						for (IWebSocketConnection connection: connectionRegistry.getConnections(application)) {
-							Collection<String> registeredObservables = getRegisteredObservables(connection); 
-							if (registeredObservables != null && registeredObservables.contains(observable))
-								notifyObservables(connection, Sets.newHashSet(observable));
+						int fanOut = 0;
+						Set<PageKey> pageKeys = observers.get(observable);
+						if (pageKeys != null) {
+							for (PageKey pageKey: pageKeys) {
+								IWebSocketConnection connection = connectionRegistry.getConnection(
+										application, pageKey.getSessionId(), pageKey.getPageId());
+								if (connection != null && connection.isOpen()) {
+									notifyObservables(connection, Sets.newHashSet(observable));
+									fanOut++;
+								}
+							}
 						}
+						fanOutStats.record(fanOut);
+						notifyLatencyStats.record(System.currentTimeMillis() - timestamp);
 					}
 					
 				});
@@ -146,6 +201,16 @@ public class DefaultWebSocketManager implements WebSocketManager {
 		});
 	}
 	
+	@Override
+	public RunningStats getFanOutStats() {
+		return fanOutStats;
+	}
+
+	@Override
+	public RunningStats getNotifyLatencyStats() {
+		return notifyLatencyStats;
+	}
+	
 	@Listen
 	public void on(SystemStarted event) {
 		keepAliveTaskId = taskScheduler.schedule(new SchedulableTask() {
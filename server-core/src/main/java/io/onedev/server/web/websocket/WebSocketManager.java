@@ -2,6 +2,7 @@ package io.onedev.server.web.websocket;
 
 import org.apache.wicket.protocol.ws.api.IWebSocketConnection;
 
+import io.onedev.server.util.RunningStats;
 import io.onedev.server.web.page.base.BasePage;
 
 public interface WebSocketManager {
@@ -19,4 +20,18 @@ public interface WebSocketManager {
 	void notifyObservableChange(String observable);
 	
 	void onConnect(IWebSocketConnection connection);
+	
+	/**
+	 * @return
+	 * 			statistics of number of connections notified for each observable change
+	 */
+	RunningStats getFanOutStats();
+	
+	/**
+	 * @return
+	 * 			statistics of milliseconds spent from committing an observable change to 
+	 * 			notifying all its observers
+	 */
+	RunningStats getNotifyLatencyStats();
+	
 }
@@ -0,0 +1,169 @@
+package io.onedev.server.buildspec.job.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.onedev.commons.utils.FileUtils;
+
+public class IndexedLogFileTest {
+
+	private File buildDir;
+
+	@Before
+	public void before() {
+		buildDir = FileUtils.createTempDir();
+	}
+
+	@After
+	public void after() {
+		FileUtils.deleteDir(buildDir);
+	}
+
+	@Test
+	public void shouldReadEntriesAfterReopen() throws IOException {
+		List<JobLogEntry> entries = createEntries(0, 3);
+		IndexedLogFile logFile = new IndexedLogFile(buildDir);
+		assertFalse(logFile.exists());
+		logFile.append(entries);
+
+		List<JobLogEntry> moreEntries = createEntries(3, 2);
+		logFile = new IndexedLogFile(buildDir);
+		assertTrue(logFile.exists());
+		logFile.append(moreEntries);
+		entries.addAll(moreEntries);
+
+		logFile = new IndexedLogFile(buildDir);
+		assertEquals(5, logFile.count());
+		assertEntries(entries, logFile.read(0, 0));
+		assertEntries(entries.subList(2, 4), logFile.read(2, 2));
+		assertEntries(entries.subList(4, 5), logFile.read(4, 10));
+		assertTrue(logFile.read(5, 0).isEmpty());
+	}
+
+	@Test
+	public void shouldIgnorePartiallyAppendedEntries() throws IOException {
+		List<JobLogEntry> entries = createEntries(0, 3);
+		IndexedLogFile logFile = new IndexedLogFile(buildDir);
+		logFile.append(entries);
+
+		// Interrupted append leaving partial data and a partial index slot
+		appendBytes(new File(buildDir, IndexedLogFile.DATA_FILE), new byte[] {1, 2, 3, 4, 5});
+		appendBytes(new File(buildDir, IndexedLogFile.INDEX_FILE), new byte[] {0, 0, 0});
+
+		logFile = new IndexedLogFile(buildDir);
+		assertEquals(3, logFile.count());
+		assertEntries(entries, logFile.read(0, 0));
+
+		List<JobLogEntry> moreEntries = createEntries(3, 2);
+		logFile.append(moreEntries);
+		entries.addAll(moreEntries);
+		assertEquals(5, logFile.count());
+		assertEntries(entries, logFile.read(0, 0));
+	}
+
+	@Test
+	public void shouldIgnoreEntriesWithoutIndexSlot() throws IOException {
+		List<JobLogEntry> entries = createEntries(0, 3);
+		IndexedLogFile logFile = new IndexedLogFile(buildDir);
+		logFile.append(entries);
+
+		// Interrupted append with data synced but last slot not written
+		File indexFile = new File(buildDir, IndexedLogFile.INDEX_FILE);
+		try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+			raf.setLength(indexFile.length() - 8);
+		}
+
+		logFile = new IndexedLogFile(buildDir);
+		assertEquals(2, logFile.count());
+		assertEntries(entries.subList(0, 2), logFile.read(0, 0));
+
+		List<JobLogEntry> moreEntries = createEntries(3, 1);
+		logFile.append(moreEntries);
+		assertEquals(3, logFile.count());
+		assertEntries(moreEntries, logFile.read(2, 0));
+		entries = new ArrayList<>(entries.subList(0, 2));
+		entries.addAll(moreEntries);
+		assertEntries(entries, logFile.read(0, 0));
+	}
+
+	@Test
+	public void shouldReadTail() throws IOException {
+		List<JobLogEntry> entries = createEntries(0, 10);
+		IndexedLogFile logFile = new IndexedLogFile(buildDir);
+
+		LogSnippet snippet = logFile.readTail(3);
+		assertEquals(0, snippet.offset);
+		assertTrue(snippet.entries.isEmpty());
+
+		logFile.append(entries);
+
+		snippet = logFile.readTail(3);
+		assertEquals(7, snippet.offset);
+		assertEntries(entries.subList(7, 10), snippet.entries);
+
+		snippet = logFile.readTail(20);
+		assertEquals(0, snippet.offset);
+		assertEntries(entries, snippet.entries);
+
+		snippet = logFile.readTail(0);
+		assertEquals(10, snippet.offset);
+		assertTrue(snippet.entries.isEmpty());
+	}
+
+	@Test
+	public void shouldMigrateLegacyLogFile() throws IOException {
+		List<JobLogEntry> entries = createEntries(0, 25000);
+		File legacyLogFile = new File(buildDir, "build.log");
+		try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(legacyLogFile))) {
+			for (JobLogEntry entry: entries)
+				oos.writeObject(entry);
+		}
+
+		// Content left by a previous migration interrupted in the middle should be replaced
+		IndexedLogFile logFile = new IndexedLogFile(buildDir);
+		logFile.append(createEntries(100, 5));
+
+		logFile.migrate(legacyLogFile);
+		assertFalse(legacyLogFile.exists());
+
+		logFile = new IndexedLogFile(buildDir);
+		assertEquals(entries.size(), logFile.count());
+		assertEntries(entries, logFile.read(0, 0));
+	}
+
+	private List<JobLogEntry> createEntries(int from, int count) {
+		List<JobLogEntry> entries = new ArrayList<>();
+		for (int i=from; i<from+count; i++)
+			entries.add(new JobLogEntry(new Date(1000L*i), "line " + i + " \u00e9\u4e2d"));
+		return entries;
+	}
+
+	private void appendBytes(File file, byte[] bytes) throws IOException {
+		try (FileOutputStream os = new FileOutputStream(file, true)) {
+			os.write(bytes);
+		}
+	}
+
+	private void assertEntries(List<JobLogEntry> expected, List<JobLogEntry> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i=0; i<expected.size(); i++) {
+			assertEquals(expected.get(i).getDate(), actual.get(i).getDate());
+			assertEquals(expected.get(i).getMessage(), actual.get(i).getMessage());
+		}
+	}
+
+}
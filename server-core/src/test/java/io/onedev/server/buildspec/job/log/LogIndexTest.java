@@ -0,0 +1,101 @@
+package io.onedev.server.buildspec.job.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.onedev.commons.utils.FileUtils;
+
+public class LogIndexTest {
+
+	private static final int ENTRY_COUNT = 10*LogIndex.CHUNK_SIZE + 17;
+
+	private File buildDir;
+
+	private IndexedLogFile logFile;
+
+	@Before
+	public void before() throws IOException {
+		buildDir = FileUtils.createTempDir();
+		logFile = new IndexedLogFile(buildDir);
+		List<JobLogEntry> entries = new ArrayList<>();
+		for (int i=0; i<ENTRY_COUNT; i++) {
+			String message;
+			if (i % 300 == 0 || i == ENTRY_COUNT-1)
+				message = "Connection refused by host-" + i;
+			else
+				message = "Downloading artifact-" + i;
+			entries.add(new JobLogEntry(new Date(), message));
+		}
+		logFile.append(entries);
+	}
+
+	@After
+	public void after() {
+		FileUtils.deleteDir(buildDir);
+	}
+
+	@Test
+	public void shouldReturnChunksOfAllMatchingEntries() throws IOException {
+		LogIndex logIndex = new LogIndex(buildDir);
+		assertNull(logIndex.query(Pattern.compile("refused")));
+
+		logIndex.build(logFile);
+		assertFalse(logIndex.exists());
+		logIndex.install();
+		assertTrue(logIndex.exists());
+
+		assertMatches(logIndex, Pattern.compile("refused by", Pattern.LITERAL));
+		assertMatches(logIndex, Pattern.compile("Conn\\w+ refused"));
+		assertMatches(logIndex, Pattern.compile("host-(600|1296)$"));
+		assertMatches(logIndex, Pattern.compile("not-in-log"));
+	}
+
+	@Test
+	public void shouldNotNarrowDownTooGeneralPatterns() throws IOException {
+		LogIndex logIndex = new LogIndex(buildDir);
+		logIndex.build(logFile);
+		logIndex.install();
+
+		assertNull(logIndex.query(Pattern.compile("a", Pattern.LITERAL)));
+		assertNull(logIndex.query(Pattern.compile(".*")));
+	}
+
+	private void assertMatches(LogIndex logIndex, Pattern pattern) throws IOException {
+		List<Integer> expected = new ArrayList<>();
+		List<JobLogEntry> entries = logFile.read(0, 0);
+		for (int i=0; i<entries.size(); i++) {
+			if (pattern.matcher(entries.get(i).getMessage()).find())
+				expected.add(i);
+		}
+
+		List<Integer> candidates = logIndex.query(pattern);
+		assertNotNull(candidates);
+		assertTrue(candidates.size() < (ENTRY_COUNT + LogIndex.CHUNK_SIZE - 1) / LogIndex.CHUNK_SIZE);
+
+		List<Integer> actual = new ArrayList<>();
+		for (int from: candidates) {
+			assertEquals(0, from % LogIndex.CHUNK_SIZE);
+			List<JobLogEntry> chunk = logFile.read(from, LogIndex.CHUNK_SIZE);
+			for (int i=0; i<chunk.size(); i++) {
+				if (pattern.matcher(chunk.get(i).getMessage()).find())
+					actual.add(from+i);
+			}
+		}
+		assertEquals(expected, actual);
+	}
+
+}
@@ -0,0 +1,147 @@
+package io.onedev.server.infomanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.git.AbstractGitTest;
+
+public class CommitGraphTest extends AbstractGitTest {
+
+	private File infoDir;
+	
+	private ObjectId initial;
+	
+	private ObjectId master1;
+	
+	private ObjectId dev1;
+	
+	private ObjectId merged;
+	
+	private ObjectId dev2;
+	
+	@Override
+	protected void setup() {
+		super.setup();
+		infoDir = FileUtils.createTempDir();
+	}
+
+	@Override
+	protected void teardown() {
+		FileUtils.deleteDir(infoDir);
+		super.teardown();
+	}
+	
+	/*
+	 * Create below history:
+	 * 
+	 * initial -- master1 -- merged
+	 *        \              /
+	 *         ---- dev1 ------ dev2
+	 */
+	private void createHistory() throws Exception {
+		initial = ObjectId.fromString(addFileAndCommit("initial", "", "initial"));
+		git.checkout().setCreateBranch(true).setName("dev").call();
+		dev1 = ObjectId.fromString(addFileAndCommit("dev1", "", "dev1"));
+		git.checkout().setName("master").call();
+		master1 = ObjectId.fromString(addFileAndCommit("master1", "", "master1"));
+		merged = git.merge().include(dev1).setMessage("merged").call().getNewHead().copy();
+		git.checkout().setName("dev").call();
+		dev2 = ObjectId.fromString(addFileAndCommit("dev2", "", "dev2"));
+	}
+	
+	private Set<ObjectId> getDescendants(CommitGraph graph, ObjectId...ancestors) {
+		Collection<ObjectId> descendants = graph.getDescendants(Lists.newArrayList(ancestors));
+		return descendants != null? new HashSet<>(descendants): null;
+	}
+	
+	private void assertGraph(CommitGraph graph) {
+		assertEquals(5, graph.getCount());
+		
+		assertEquals(Sets.newHashSet(initial, master1, dev1, merged, dev2), getDescendants(graph, initial));
+		assertEquals(Sets.newHashSet(master1, merged), getDescendants(graph, master1));
+		assertEquals(Sets.newHashSet(dev1, merged, dev2), getDescendants(graph, dev1));
+		assertEquals(Sets.newHashSet(master1, merged, dev2), getDescendants(graph, master1, dev2));
+		assertTrue(graph.getDescendants(Lists.newArrayList(initial)).contains(dev2));
+		assertFalse(graph.getDescendants(Lists.newArrayList(master1)).contains(dev1));
+		
+		assertTrue(graph.isAncestor(initial, merged));
+		assertTrue(graph.isAncestor(dev1, merged));
+		assertTrue(graph.isAncestor(dev1, dev2));
+		assertTrue(graph.isAncestor(merged, merged));
+		assertFalse(graph.isAncestor(master1, dev2));
+		assertFalse(graph.isAncestor(merged, master1));
+		assertFalse(graph.isAncestor(dev2, merged));
+	}
+	
+	@Test
+	public void shouldQueryDescendantsAndAncestors() throws Exception {
+		createHistory();
+		
+		CommitGraph graph = new CommitGraph(infoDir);
+		assertEquals(4, graph.update(git.getRepository(), merged));
+		assertNull(graph.getDescendants(Lists.newArrayList(dev2)));
+		assertNull(graph.isAncestor(dev1, dev2));
+		assertEquals(1, graph.update(git.getRepository(), dev2));
+		assertEquals(0, graph.update(git.getRepository(), dev2));
+		assertGraph(graph);
+		
+		assertGraph(new CommitGraph(infoDir));
+	}
+	
+	@Test
+	public void shouldRecoverFromTruncatedFile() throws Exception {
+		createHistory();
+		
+		CommitGraph graph = new CommitGraph(infoDir);
+		graph.update(git.getRepository(), merged);
+		graph.update(git.getRepository(), dev2);
+		
+		// Simulate a crash in the middle of appending record of last commit
+		File file = new File(infoDir, "commit-graph");
+		long length = file.length();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(length - 3);
+		}
+		
+		graph = new CommitGraph(infoDir);
+		assertEquals(4, graph.getCount());
+		assertTrue(graph.isAncestor(dev1, merged));
+		assertNull(graph.isAncestor(dev1, dev2));
+		assertEquals(length - 20 - Integer.BYTES*2, file.length());
+		
+		assertEquals(1, graph.update(git.getRepository(), dev2));
+		assertEquals(length, file.length());
+		assertGraph(new CommitGraph(infoDir));
+	}
+	
+	@Test
+	public void shouldRebuildMalformedFile() throws Exception {
+		createHistory();
+		
+		File file = new File(infoDir, "commit-graph");
+		FileUtils.writeFile(file, "malformed content");
+		
+		CommitGraph graph = new CommitGraph(infoDir);
+		assertEquals(0, graph.getCount());
+		assertFalse(file.exists());
+		
+		assertEquals(5, graph.update(git.getRepository(), merged) + graph.update(git.getRepository(), dev2));
+		assertGraph(new CommitGraph(infoDir));
+	}
+	
+}
@@ -0,0 +1,153 @@
+package io.onedev.server.infomanager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.LinearRange;
+import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.git.AbstractGitTest;
+import io.onedev.server.git.BlameBlock;
+import io.onedev.server.git.command.BlameCommand;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.SessionManager;
+import io.onedev.server.storage.StorageManager;
+import io.onedev.server.util.work.BatchWorkManager;
+
+public class DefaultBlameInfoManagerTest extends AbstractGitTest {
+
+	private File infoDir;
+
+	private TestEnvironmentPool envPool;
+
+	private Project project;
+
+	private DefaultBlameInfoManager blameInfoManager;
+
+	@Override
+	protected void setup() {
+		super.setup();
+		infoDir = FileUtils.createTempDir();
+		envPool = new TestEnvironmentPool();
+
+		StorageManager storageManager = Mockito.mock(StorageManager.class);
+		Mockito.when(storageManager.getProjectInfoDir(1L)).thenReturn(infoDir);
+
+		project = Mockito.mock(Project.class);
+		Mockito.when(project.getId()).thenReturn(1L);
+		Mockito.when(project.getRepository()).thenReturn(git.getRepository());
+		Mockito.when(project.getGitDir()).thenReturn(gitDir);
+
+		blameInfoManager = new DefaultBlameInfoManager(Mockito.mock(ProjectManager.class), storageManager,
+				Mockito.mock(BatchWorkManager.class), Mockito.mock(SessionManager.class), envPool);
+	}
+
+	@Override
+	protected void teardown() {
+		envPool.close();
+		FileUtils.deleteDir(infoDir);
+		super.teardown();
+	}
+
+	/*
+	 * Create below history, with lines of file being unique so that blame does not depend
+	 * on diff algorithm:
+	 *
+	 * c1 -- c2 -- master1 -- merged -- renamed -- modified
+	 *          \            /
+	 *           --- dev1 ---
+	 */
+	@Test
+	public void shouldMatchGitBlameAcrossMergesAndRenames() throws Exception {
+		List<String> commits = new ArrayList<>();
+		commits.add(addFileAndCommit("a.txt", "line1\nline2\nline3\nline4\nline5\n", "c1"));
+		commits.add(addFileAndCommit("a.txt", "line1\nline2\nline3 changed\nline4\nline5\nline6\n", "c2"));
+		git.checkout().setCreateBranch(true).setName("dev").call();
+		commits.add(addFileAndCommit("a.txt", "line1 dev\nline2\nline3 changed\nline4\nline5\nline6\n", "dev1"));
+		git.checkout().setName("master").call();
+		commits.add(addFileAndCommit("a.txt", "line1\nline2\nline3 changed\nline4\nline5\nline6 master\n", "master1"));
+		commits.add(git.merge().include(git.getRepository().resolve("dev"))
+				.setMessage("merged").call().getNewHead().name());
+
+		for (String commit: commits)
+			assertBlame(commit, "a.txt", null);
+
+		rm("a.txt");
+		addFile("b.txt", "line1 dev\nline2\nline3 changed\nline4\nline5\nline6 master\nline7\n");
+		String renamed = commit("renamed");
+		String modified = addFileAndCommit("b.txt", "line1 dev\nline2\nline4\nline5 modified\nline6 master\nline7\n", "modified");
+		assertBlame(renamed, "b.txt", null);
+		assertBlame(modified, "b.txt", null);
+
+		// Blames are stored and should be read back the same, including for ranges
+		for (String commit: commits) {
+			assertBlame(commit, "a.txt", null);
+			assertBlame(commit, "a.txt", new LinearRange(1, 3));
+		}
+		assertBlame(modified, "b.txt", new LinearRange(2, 4));
+		assertEquals(commits.size() + 2, countBlames());
+	}
+
+	@Test
+	public void shouldNotRunGitBlameOfWholeFileForRange() throws Exception {
+		addFileAndCommit("a.txt", "line1\nline2\nline3\n", "c1");
+		String commit = addFileAndCommit("a.txt", "line1\nline2 changed\nline3\n", "c2");
+		assertBlame(commit, "a.txt", new LinearRange(1, 2));
+		assertEquals(0, countBlames());
+	}
+
+	@Test
+	public void shouldPruneOldBlames() throws Exception {
+		List<String> commits = new ArrayList<>();
+		StringBuilder content = new StringBuilder();
+		for (int i=0; i<30; i++) {
+			content.append("line" + i + "\n");
+			commits.add(addFileAndCommit("a.txt", content.toString(), "c" + i));
+			assertBlame(commits.get(i), "a.txt", null);
+		}
+		assertTrue(countBlames() < commits.size());
+
+		// Blame of removed commits is calculated again, and should still be correct
+		assertBlame(commits.get(0), "a.txt", null);
+		assertBlame(commits.get(commits.size()-1), "a.txt", null);
+	}
+
+	private void assertBlame(String commit, String path, @Nullable LinearRange range) {
+		Collection<BlameBlock> expected = new BlameCommand(gitDir).commitHash(commit).file(path).range(range).call();
+		Collection<BlameBlock> actual = blameInfoManager.getBlame(project, ObjectId.fromString(commit), path, range);
+		assertArrayEquals(toLines(expected), toLines(actual));
+	}
+
+	private String[] toLines(Collection<BlameBlock> blocks) {
+		int lineCount = 0;
+		for (BlameBlock block: blocks) {
+			for (LinearRange range: block.getRanges())
+				lineCount = Math.max(lineCount, range.getTo()+1);
+		}
+		String[] lines = new String[lineCount];
+		for (BlameBlock block: blocks) {
+			for (LinearRange range: block.getRanges()) {
+				for (int i=range.getFrom(); i<=range.getTo(); i++)
+					lines[i] = block.getCommit().getHash();
+			}
+		}
+		return lines;
+	}
+
+	private long countBlames() {
+		return envPool.count("blames");
+	}
+
+}
@@ -0,0 +1,79 @@
+package io.onedev.server.infomanager;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.StoreConfig;
+
+/**
+ * Environment pool for tests, which keeps environments open until they are removed or
+ * the pool is closed
+ */
+public class TestEnvironmentPool implements EnvironmentPool {
+
+	private final Map<File, Environment> envs = new HashMap<>();
+
+	@Override
+	public synchronized Environment getEnv(File envDir, Supplier<Environment> opener) {
+		Environment env = envs.get(envDir);
+		if (env == null) {
+			env = opener.get();
+			envs.put(envDir, env);
+		}
+		return env;
+	}
+
+	@Override
+	public synchronized void removeEnv(File envDir) {
+		Environment env = envs.remove(envDir);
+		if (env != null)
+			env.close();
+	}
+
+	@Override
+	public synchronized int getOpenCount() {
+		return envs.size();
+	}
+
+	@Override
+	public long getHitCount() {
+		return 0;
+	}
+
+	@Override
+	public long getMissCount() {
+		return 0;
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return 0;
+	}
+
+	/**
+	 * @return
+	 * 			number of entries in specified store of all open environments
+	 */
+	public synchronized long count(String storeName) {
+		long count = 0;
+		for (Environment env: envs.values()) {
+			count += env.computeInReadonlyTransaction(txn -> {
+				if (env.storeExists(storeName, txn))
+					return env.openStore(storeName, StoreConfig.WITHOUT_DUPLICATES, txn).count(txn);
+				else
+					return 0L;
+			});
+		}
+		return count;
+	}
+
+	public synchronized void close() {
+		for (Environment env: envs.values())
+			env.close();
+		envs.clear();
+	}
+
+}
@@ -0,0 +1,113 @@
+package io.onedev.server.infomanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.joda.time.DateTimeConstants;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import io.onedev.server.util.Day;
+import io.onedev.server.util.Pair;
+
+public class TimeBucketTest {
+
+	private int day(int year, int monthOfYear, int dayOfMonth) {
+		return new Day(year, monthOfYear-1, dayOfMonth).getValue();
+	}
+	
+	private LocalDate toLocalDate(int dayValue) {
+		Day day = new Day(dayValue);
+		return new LocalDate(day.getYear(), day.getMonthOfYear()+1, day.getDayOfMonth());
+	}
+	
+	private int toDayValue(LocalDate date) {
+		return day(date.getYear(), date.getMonthOfYear(), date.getDayOfMonth());
+	}
+	
+	@Test
+	public void shouldSplitIntoMonthsWeeksAndDays() {
+		List<Pair<TimeBucket, Integer>> expected = new ArrayList<>();
+		expected.add(new Pair<>(TimeBucket.WEEK, day(2026, 10, 5)));
+		expected.add(new Pair<>(TimeBucket.WEEK, day(2026, 10, 12)));
+		expected.add(new Pair<>(TimeBucket.WEEK, day(2026, 10, 19)));
+		// week starting from Oct 26 crosses month boundary
+		for (int dayOfMonth=26; dayOfMonth<=31; dayOfMonth++)
+			expected.add(new Pair<>(TimeBucket.DAY, day(2026, 10, dayOfMonth)));
+		expected.add(new Pair<>(TimeBucket.MONTH, day(2026, 11, 1)));
+		for (int dayOfMonth=1; dayOfMonth<=6; dayOfMonth++)
+			expected.add(new Pair<>(TimeBucket.DAY, day(2026, 12, dayOfMonth)));
+		expected.add(new Pair<>(TimeBucket.WEEK, day(2026, 12, 7)));
+		expected.add(new Pair<>(TimeBucket.DAY, day(2026, 12, 14)));
+		expected.add(new Pair<>(TimeBucket.DAY, day(2026, 12, 15)));
+		
+		assertEquals(expected, TimeBucket.split(day(2026, 10, 5), day(2026, 12, 15)));
+		
+		assertEquals(Lists.newArrayList(new Pair<>(TimeBucket.MONTH, day(2024, 2, 1))), 
+				TimeBucket.split(day(2024, 2, 1), day(2024, 2, 29)));
+		assertEquals(Lists.newArrayList(new Pair<>(TimeBucket.DAY, day(2026, 10, 17))), 
+				TimeBucket.split(day(2026, 10, 17), day(2026, 10, 17)));
+	}
+	
+	@Test
+	public void shouldCoverEachDayExactlyOnce() {
+		Random random = new Random(0);
+		LocalDate base = new LocalDate(2020, 1, 1);
+		for (int i=0; i<1000; i++) {
+			LocalDate from = base.plusDays(random.nextInt(2000));
+			LocalDate to = from.plusDays(random.nextInt(800));
+			
+			LocalDate expectedStart = from;
+			int monthBuckets = 0;
+			for (Pair<TimeBucket, Integer> bucket: TimeBucket.split(toDayValue(from), toDayValue(to))) {
+				LocalDate start = toLocalDate(bucket.getSecond());
+				assertEquals(expectedStart, start);
+				assertEquals(bucket.getSecond().intValue(), bucket.getFirst().getKey(bucket.getSecond()));
+				
+				LocalDate next = bucket.getFirst().getNext(start);
+				assertTrue(!next.isAfter(to.plusDays(1)));
+				if (bucket.getFirst() == TimeBucket.WEEK) {
+					assertEquals(DateTimeConstants.MONDAY, start.getDayOfWeek());
+					assertEquals(start.getMonthOfYear(), next.minusDays(1).getMonthOfYear());
+				} else if (bucket.getFirst() == TimeBucket.MONTH) {
+					assertEquals(1, start.getDayOfMonth());
+					monthBuckets++;
+				}
+				expectedStart = next;
+			}
+			assertEquals(to.plusDays(1), expectedStart);
+			
+			// Every whole month in the range should be covered by a month bucket 
+			int wholeMonths = 0;
+			for (LocalDate month = from.withDayOfMonth(1); !month.isAfter(to); month = month.plusMonths(1)) {
+				if (!month.isBefore(from) && !month.plusMonths(1).minusDays(1).isAfter(to))
+					wholeMonths++;
+			}
+			assertEquals(wholeMonths, monthBuckets);
+		}
+	}
+	
+	@Test
+	public void shouldGetBucketKeys() {
+		assertEquals(day(2026, 10, 12), TimeBucket.WEEK.getKey(day(2026, 10, 18)));
+		assertEquals(day(2026, 10, 19), TimeBucket.WEEK.getKey(day(2026, 10, 19)));
+		assertEquals(day(2026, 10, 1), TimeBucket.MONTH.getKey(day(2026, 10, 31)));
+		assertEquals(day(2026, 10, 17), TimeBucket.DAY.getKey(day(2026, 10, 17)));
+		
+		assertEquals(Lists.newArrayList(day(2026, 9, 28), day(2026, 10, 5), day(2026, 10, 12)), 
+				TimeBucket.WEEK.getKeys(day(2026, 10, 1), day(2026, 10, 12)));
+		assertEquals(Lists.newArrayList(day(2025, 12, 1), day(2026, 1, 1), day(2026, 2, 1)), 
+				TimeBucket.MONTH.getKeys(day(2025, 12, 31), day(2026, 2, 1)));
+		
+		assertEquals(TimeBucket.DAY, TimeBucket.forRange(day(2026, 1, 1), day(2026, 12, 31)));
+		assertEquals(TimeBucket.WEEK, TimeBucket.forRange(day(2026, 1, 1), day(2027, 1, 2)));
+		assertEquals(TimeBucket.MONTH, TimeBucket.forRange(day(2016, 1, 1), day(2026, 1, 1)));
+	}
+	
+}
@@ -0,0 +1,232 @@
+package io.onedev.server.maintenance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.dom4j.Element;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.migration.VersionedXmlDoc;
+
+public class IncrementalBackupTest {
+
+	private static final String DATA_VERSION = "1";
+
+	private File workDir;
+
+	private File backupDir;
+
+	@Before
+	public void before() {
+		workDir = FileUtils.createTempDir();
+		backupDir = new File(workDir, "backup");
+		FileUtils.createDir(backupDir);
+	}
+
+	@After
+	public void after() {
+		FileUtils.deleteDir(workDir);
+	}
+
+	@Test
+	public void shouldRestoreIncrementalBackups() {
+		Map<String, Map<Long, String>> data = new TreeMap<>();
+		Map<Long, String> projects = new TreeMap<>();
+		for (long id=1; id<=2500; id++) {
+			if (id % 100 != 0)
+				projects.put(id, "project" + id);
+		}
+		data.put("Project", projects);
+		Map<Long, String> users = new TreeMap<>();
+		for (long id=1; id<=3; id++)
+			users.put(id, "user" + id);
+		data.put("User", users);
+		Map<Long, String> settings = new TreeMap<>();
+		settings.put(1L, "setting1");
+		settings.put(2L, "setting2");
+		data.put("Setting", settings);
+
+		File fullBackup = IncrementalBackup.backup(export(data, "export1"), backupDir, "20261017-000001", 5, DATA_VERSION);
+		assertFalse(isIncremental(fullBackup));
+
+		// deletes, including first and last rows of data files
+		projects.remove(1L);
+		projects.remove(1010L);
+		projects.remove(1011L);
+		projects.remove(2499L);
+		// updates
+		projects.put(7L, "project7 renamed");
+		projects.put(1500L, "project1500 renamed");
+		settings.put(2L, "setting2 changed");
+		// inserts, including rows between existing rows
+		projects.put(300L, "project300");
+		projects.put(2000L, "project2000");
+		for (long id=2501; id<=2600; id++)
+			projects.put(id, "project" + id);
+
+		File firstIncrement = IncrementalBackup.backup(export(data, "export2"), backupDir, "20261017-000002", 5, DATA_VERSION);
+		assertNotNull(readManifest(firstIncrement));
+		assertEquals(fullBackup.getName(), readManifest(firstIncrement).getProperty("base"));
+		assertEquals(data, restore(firstIncrement, "restore1"));
+
+		users.remove(2L);
+		users.put(4L, "user4");
+		projects.put(2L, "project2 renamed");
+
+		File secondIncrement = IncrementalBackup.backup(export(data, "export3"), backupDir, "20261017-000003", 5, DATA_VERSION);
+		assertEquals(firstIncrement.getName(), readManifest(secondIncrement).getProperty("base"));
+		assertEquals(data, restore(secondIncrement, "restore2"));
+	}
+
+	@Test
+	public void shouldRestoreTableWhoseRowsAreAllDeleted() {
+		Map<String, Map<Long, String>> data = new TreeMap<>();
+		Map<Long, String> groups = new TreeMap<>();
+		groups.put(1L, "group1");
+		groups.put(2L, "group2");
+		data.put("Group", groups);
+		Map<Long, String> users = new TreeMap<>();
+		users.put(1L, "user1");
+		data.put("User", users);
+		Map<Long, String> memberships = new TreeMap<>();
+		memberships.put(1L, "membership1");
+		data.put("Membership", memberships);
+
+		IncrementalBackup.backup(export(data, "export1"), backupDir, "20261017-000001", 5, DATA_VERSION);
+
+		// tables before, between and after remaining tables lose all their rows
+		data.remove("Group");
+		data.remove("Membership");
+		users.put(2L, "user2");
+
+		File increment = IncrementalBackup.backup(export(data, "export2"), backupDir, "20261017-000002", 5, DATA_VERSION);
+		assertNotNull(readManifest(increment));
+
+		File dataDir = new File(workDir, "restore");
+		FileUtils.createDir(dataDir);
+		IncrementalBackup.restore(increment, dataDir);
+		assertFalse(new File(dataDir, "Groups.xml").exists());
+		assertFalse(new File(dataDir, "Memberships.xml").exists());
+		assertEquals(data, readData(dataDir));
+	}
+
+	@Test
+	public void shouldCreateFullBackupIfDataVersionChanges() {
+		Map<String, Map<Long, String>> data = new TreeMap<>();
+		Map<Long, String> users = new TreeMap<>();
+		users.put(1L, "user1");
+		users.put(2L, "user2");
+		data.put("User", users);
+
+		IncrementalBackup.backup(export(data, "export1"), backupDir, "20261017-000001", 5, DATA_VERSION);
+
+		users.put(2L, "user2 renamed");
+		File backup = IncrementalBackup.backup(export(data, "export2"), backupDir, "20261017-000002", 5, "2");
+		assertFalse(isIncremental(backup));
+		assertEquals(data, restore(backup, "restore1"));
+
+		// subsequent backups are based on the new full backup
+		users.put(3L, "user3");
+		File increment = IncrementalBackup.backup(export(data, "export3"), backupDir, "20261017-000003", 5, "2");
+		assertEquals(backup.getName(), readManifest(increment).getProperty("base"));
+		assertEquals(data, restore(increment, "restore2"));
+	}
+
+	/*
+	 * Write data files the same way as data export, that is, rows ordered by id and at most
+	 * 1000 rows in each file
+	 */
+	private File export(Map<String, Map<Long, String>> data, String dirName) {
+		File exportDir = new File(workDir, dirName);
+		FileUtils.createDir(exportDir);
+		for (Map.Entry<String, Map<Long, String>> entry: data.entrySet()) {
+			List<Map.Entry<Long, String>> rows = new ArrayList<>(entry.getValue().entrySet());
+			for (int batch=0; batch*1000<rows.size(); batch++) {
+				StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<list>\n");
+				for (Map.Entry<Long, String> row: rows.subList(batch*1000, Math.min(rows.size(), (batch+1)*1000))) {
+					xml.append("  <io.onedev.server.model.").append(entry.getKey()).append(">\n");
+					xml.append("    <id>").append(row.getKey()).append("</id>\n");
+					xml.append("    <name>").append(row.getValue()).append("</name>\n");
+					xml.append("  </io.onedev.server.model.").append(entry.getKey()).append(">\n");
+				}
+				xml.append("</list>\n");
+
+				String fileName = entry.getKey() + "s.xml";
+				if (batch != 0)
+					fileName += "." + (batch + 1);
+				FileUtils.writeFile(new File(exportDir, fileName), xml.toString());
+			}
+		}
+		return exportDir;
+	}
+
+	private Map<String, Map<Long, String>> restore(File backupFile, String dirName) {
+		File dataDir = new File(workDir, dirName);
+		FileUtils.createDir(dataDir);
+		IncrementalBackup.restore(backupFile, dataDir);
+		return readData(dataDir);
+	}
+
+	/*
+	 * Read rows of all tables, and verify that rows are stored in id order
+	 */
+	private Map<String, Map<Long, String>> readData(File dataDir) {
+		Map<String, Map<Long, String>> data = new TreeMap<>();
+		for (File file: dataDir.listFiles()) {
+			if (file.getName().endsWith("s.xml")) {
+				String table = file.getName().substring(0, file.getName().length() - "s.xml".length());
+				Map<Long, String> rows = new TreeMap<>();
+				List<Long> ids = new ArrayList<>();
+				File dataFile = file;
+				for (int batch=1; dataFile.exists(); batch++) {
+					VersionedXmlDoc.readElements(dataFile, (Element element) -> {
+						long id = Long.parseLong(element.elementTextTrim("id"));
+						ids.add(id);
+						rows.put(id, element.elementTextTrim("name"));
+					});
+					dataFile = new File(dataDir, table + "s.xml." + (batch + 1));
+				}
+				assertEquals(new ArrayList<>(rows.keySet()), ids);
+				data.put(table, rows);
+			}
+		}
+		return data;
+	}
+
+	private boolean isIncremental(File backupFile) {
+		return readManifest(backupFile) != null;
+	}
+
+	private Properties readManifest(File backupFile) {
+		try (ZipFile zipFile = new ZipFile(backupFile)) {
+			ZipEntry entry = zipFile.getEntry("backup.properties");
+			if (entry != null) {
+				Properties manifest = new Properties();
+				try (InputStream is = zipFile.getInputStream(entry)) {
+					manifest.load(is);
+				}
+				return manifest;
+			} else {
+				return null;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
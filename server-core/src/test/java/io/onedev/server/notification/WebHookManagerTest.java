@@ -0,0 +1,293 @@
+package io.onedev.server.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.infomanager.TestEnvironmentPool;
+import io.onedev.server.model.Project;
+import io.onedev.server.model.support.WebHook;
+import io.onedev.server.persistence.SessionManager;
+import io.onedev.server.storage.StorageManager;
+
+public class WebHookManagerTest {
+
+	private static final long TIMEOUT = 30000;
+
+	private static final String SECRET = "secret";
+
+	private File infoDir;
+
+	private TestEnvironmentPool envPool;
+
+	private ExecutorService executor;
+
+	private Receiver receiver;
+
+	private HttpServer server;
+
+	private ArrayList<WebHook> webHooks;
+
+	private Project project;
+
+	private ProjectManager projectManager;
+
+	private StorageManager storageManager;
+
+	private SessionManager sessionManager;
+
+	private List<WebHookManager> webHookManagers;
+
+	@Before
+	public void before() throws Exception {
+		infoDir = FileUtils.createTempDir();
+		envPool = new TestEnvironmentPool();
+		executor = Executors.newCachedThreadPool();
+		webHookManagers = new ArrayList<>();
+
+		receiver = new Receiver();
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", receiver);
+		server.setExecutor(executor);
+		server.start();
+
+		webHooks = new ArrayList<>();
+		project = Mockito.mock(Project.class);
+		Mockito.when(project.getId()).thenReturn(1L);
+		Mockito.when(project.getWebHooks()).thenReturn(webHooks);
+
+		projectManager = Mockito.mock(ProjectManager.class);
+		Mockito.when(projectManager.get(1L)).thenReturn(project);
+		Mockito.when(projectManager.query()).thenReturn(Lists.newArrayList(project));
+
+		storageManager = Mockito.mock(StorageManager.class);
+		Mockito.when(storageManager.getProjectInfoDir(1L)).thenReturn(infoDir);
+
+		sessionManager = Mockito.mock(SessionManager.class);
+		Mockito.when(sessionManager.call(Mockito.any())).thenAnswer(
+				invocation -> ((Callable<?>) invocation.getArguments()[0]).call());
+	}
+
+	@After
+	public void after() {
+		for (WebHookManager webHookManager: webHookManagers)
+			webHookManager.on(new SystemStopping());
+		server.stop(0);
+		executor.shutdownNow();
+		envPool.close();
+		FileUtils.deleteDir(infoDir);
+	}
+
+	@Test
+	public void shouldIncreaseRetryDelayExponentially() {
+		WebHookManager webHookManager = new WebHookManager(new ObjectMapper(), executor, projectManager,
+				storageManager, sessionManager, envPool);
+		webHookManagers.add(webHookManager);
+		assertEquals(10000, webHookManager.getRetryDelay(1));
+		assertEquals(20000, webHookManager.getRetryDelay(2));
+		assertEquals(40000, webHookManager.getRetryDelay(3));
+		assertEquals(3600000, webHookManager.getRetryDelay(10));
+	}
+
+	@Test
+	public void shouldGiveUpAfterMaxAttempts() {
+		receiver.statusCode = 500;
+		String postUrl = addWebHook("/hook");
+		WebHookManager webHookManager = createWebHookManager(1);
+		webHookManager.on(new SystemStarted());
+		webHookManager.submit(1L, postUrl, "RefUpdated", "{}");
+
+		waitFor(() -> !webHookManager.getDeliveryHistory(project, postUrl).isEmpty());
+		WebHookDelivery delivery = webHookManager.getDeliveryHistory(project, postUrl).get(0);
+		assertEquals(WebHookDelivery.Status.FAILED, delivery.getStatus());
+		assertEquals(10, delivery.getAttempts());
+		assertEquals(Integer.valueOf(500), delivery.getLastStatusCode());
+		assertEquals(10, receiver.received.get());
+
+		WebHookStats stats = webHookManager.getStats(project, postUrl);
+		assertEquals(10, stats.getFailedAttempts());
+		assertEquals(1, stats.getAbandoned());
+		assertEquals(0, stats.getDelivered());
+		waitFor(() -> stats.getBacklog() == 0);
+		assertEquals(0, envPool.count("deliveries"));
+	}
+
+	@Test
+	public void shouldLimitConcurrentDeliveries() throws Exception {
+		List<String> postUrls = new ArrayList<>();
+		for (int i=0; i<15; i++)
+			postUrls.add(addWebHook("/hook" + i));
+		receiver.release = new CountDownLatch(1);
+
+		WebHookManager webHookManager = createWebHookManager(1);
+		webHookManager.on(new SystemStarted());
+		for (String postUrl: postUrls) {
+			for (int i=0; i<3; i++)
+				webHookManager.submit(1L, postUrl, "RefUpdated", "{}");
+		}
+
+		waitFor(() -> receiver.sending.get() == 20);
+		Thread.sleep(500);
+		assertEquals(20, receiver.maxSending.get());
+		receiver.release.countDown();
+
+		for (String postUrl: postUrls)
+			waitFor(() -> webHookManager.getDeliveryHistory(project, postUrl).size() == 3);
+		assertEquals(45, receiver.received.get());
+		assertEquals(20, receiver.maxSending.get());
+		int maxSendingOfWebHook = 0;
+		for (int maxSendingOfPath: receiver.maxSendingOfPaths.values()) {
+			assertTrue(maxSendingOfPath <= 2);
+			maxSendingOfWebHook = Math.max(maxSendingOfWebHook, maxSendingOfPath);
+		}
+		assertEquals(2, maxSendingOfWebHook);
+	}
+
+	@Test
+	public void shouldResumePendingDeliveriesAfterRestart() {
+		receiver.statusCode = 500;
+		String postUrl = addWebHook("/hook");
+		WebHookManager webHookManager = createWebHookManager(TIMEOUT*10);
+		webHookManager.on(new SystemStarted());
+		webHookManager.submit(1L, postUrl, "RefUpdated", "{\"key\": \"value\"}");
+		waitFor(() -> webHookManager.getStats(project, postUrl).getFailedAttempts() == 1);
+		webHookManager.on(new SystemStopping());
+		assertEquals(1, envPool.count("deliveries"));
+
+		receiver.statusCode = 200;
+		WebHookManager restartedWebHookManager = createWebHookManager(TIMEOUT*10);
+		restartedWebHookManager.on(new SystemStarted());
+		waitFor(() -> !restartedWebHookManager.getDeliveryHistory(project, postUrl).isEmpty());
+		WebHookDelivery delivery = restartedWebHookManager.getDeliveryHistory(project, postUrl).get(0);
+		assertEquals(WebHookDelivery.Status.SUCCEEDED, delivery.getStatus());
+		assertEquals(2, delivery.getAttempts());
+		assertEquals(2, receiver.received.get());
+		assertEquals("{\"key\": \"value\"}", receiver.lastPayload);
+		assertEquals(0, envPool.count("deliveries"));
+	}
+
+	@Test
+	public void shouldDiscardDeliveriesOfRemovedWebHooks() {
+		String postUrl = addWebHook("/removed");
+		addWebHook("/remaining");
+		WebHookManager webHookManager = createWebHookManager(1);
+		webHookManager.submit(1L, postUrl, "RefUpdated", "{}");
+		assertEquals(1, envPool.count("deliveries"));
+
+		webHooks.remove(0);
+		webHookManager.on(new SystemStarted());
+		waitFor(() -> envPool.count("deliveries") == 0);
+		assertEquals(0, receiver.received.get());
+		assertTrue(webHookManager.getDeliveryHistory(project, postUrl).isEmpty());
+	}
+
+	private String addWebHook(String path) {
+		WebHook webHook = new WebHook();
+		webHook.setPostUrl("http://localhost:" + server.getAddress().getPort() + path);
+		webHook.setSecret(SECRET);
+		webHooks.add(webHook);
+		return webHook.getPostUrl();
+	}
+
+	private WebHookManager createWebHookManager(long retryDelay) {
+		WebHookManager webHookManager = new WebHookManager(new ObjectMapper(), executor, projectManager,
+				storageManager, sessionManager, envPool) {
+
+			@Override
+			long getRetryDelay(int attempts) {
+				return retryDelay;
+			}
+
+		};
+		webHookManagers.add(webHookManager);
+		return webHookManager;
+	}
+
+	private void waitFor(BooleanSupplier condition) {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (!condition.getAsBoolean()) {
+			assertTrue("Timed out waiting for condition", System.currentTimeMillis() < deadline);
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	private static class Receiver implements HttpHandler {
+
+		volatile int statusCode = 200;
+
+		volatile CountDownLatch release = new CountDownLatch(0);
+
+		volatile String lastPayload;
+
+		final AtomicInteger received = new AtomicInteger();
+
+		final AtomicInteger sending = new AtomicInteger();
+
+		final AtomicInteger maxSending = new AtomicInteger();
+
+		final Map<String, AtomicInteger> sendingOfPaths = new ConcurrentHashMap<>();
+
+		final Map<String, Integer> maxSendingOfPaths = new ConcurrentHashMap<>();
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try (InputStream is = exchange.getRequestBody()) {
+				lastPayload = IOUtils.toString(is, "UTF-8");
+			}
+			String path = exchange.getRequestURI().getPath();
+			AtomicInteger sendingOfPath = sendingOfPaths.computeIfAbsent(path, key -> new AtomicInteger());
+			maxSending.accumulateAndGet(sending.incrementAndGet(), Math::max);
+			maxSendingOfPaths.merge(path, sendingOfPath.incrementAndGet(), Math::max);
+			try {
+				if (!SECRET.equals(exchange.getRequestHeaders().getFirst("X-OneDev-Signature")))
+					throw new IllegalStateException("Unexpected signature");
+				release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} finally {
+				sendingOfPath.decrementAndGet();
+				sending.decrementAndGet();
+				received.incrementAndGet();
+			}
+			exchange.sendResponseHeaders(statusCode, -1);
+			exchange.close();
+		}
+
+	}
+
+}
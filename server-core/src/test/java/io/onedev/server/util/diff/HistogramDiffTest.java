@@ -0,0 +1,157 @@
+package io.onedev.server.util.diff;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import io.onedev.server.util.diff.DiffMatchPatch.Operation;
+
+public class HistogramDiffTest {
+
+	private void assertValid(List<String> oldLines, List<String> newLines, List<DiffBlock<String>> diffBlocks) {
+		List<String> rebuiltOldLines = new ArrayList<>();
+		List<String> rebuiltNewLines = new ArrayList<>();
+		Operation lastOperation = null;
+		for (DiffBlock<String> block: diffBlocks) {
+			assertFalse(block.getUnits().isEmpty());
+			assertTrue(lastOperation != block.getOperation());
+			assertFalse(lastOperation == Operation.INSERT && block.getOperation() == Operation.DELETE);
+			lastOperation = block.getOperation();
+
+			assertEquals(rebuiltOldLines.size(), block.getOldStart());
+			assertEquals(rebuiltNewLines.size(), block.getNewStart());
+			if (block.getOperation() != Operation.INSERT)
+				rebuiltOldLines.addAll(block.getUnits());
+			if (block.getOperation() != Operation.DELETE)
+				rebuiltNewLines.addAll(block.getUnits());
+			if (block.getOperation() == Operation.EQUAL) {
+				assertEquals(oldLines.subList(block.getOldStart(), block.getOldEnd()),
+						newLines.subList(block.getNewStart(), block.getNewEnd()));
+			}
+		}
+		assertEquals(oldLines, rebuiltOldLines);
+		assertEquals(newLines, rebuiltNewLines);
+	}
+
+	@Test
+	public void testDiff() {
+		List<String> oldLines = Lists.newArrayList("a", "b", "c", "d", "e");
+		List<String> newLines = Lists.newArrayList("a", "x", "c", "d", "y", "e", "f");
+		List<DiffBlock<String>> diffBlocks = HistogramDiff.diff(oldLines, newLines);
+		assertValid(oldLines, newLines, diffBlocks);
+		assertEquals(7, diffBlocks.size());
+		assertEquals(Operation.DELETE, diffBlocks.get(1).getOperation());
+		assertEquals(Lists.newArrayList("b"), diffBlocks.get(1).getUnits());
+		assertEquals(Operation.INSERT, diffBlocks.get(2).getOperation());
+		assertEquals(Lists.newArrayList("x"), diffBlocks.get(2).getUnits());
+		assertEquals(Lists.newArrayList("c", "d"), diffBlocks.get(3).getUnits());
+
+		assertTrue(HistogramDiff.diff(new ArrayList<String>(), new ArrayList<String>()).isEmpty());
+
+		Random random = new Random(0);
+		for (int i=0; i<1000; i++) {
+			oldLines = new ArrayList<>();
+			newLines = new ArrayList<>();
+			int alphabetSize = random.nextInt(10) + 1;
+			for (int j=random.nextInt(50); j>0; j--)
+				oldLines.add(String.valueOf(random.nextInt(alphabetSize)));
+			for (int j=random.nextInt(50); j>0; j--)
+				newLines.add(String.valueOf(random.nextInt(alphabetSize)));
+			assertValid(oldLines, newLines, HistogramDiff.diff(oldLines, newLines));
+		}
+
+		// Much larger than what can be represented by chars
+		oldLines = new ArrayList<>();
+		for (int i=0; i<300000; i++)
+			oldLines.add(i%10==0? "}": "line " + i);
+		newLines = new ArrayList<>(oldLines);
+		for (int i=0; i<100; i++)
+			newLines.set(random.nextInt(newLines.size()), "changed " + i);
+		diffBlocks = HistogramDiff.diff(oldLines, newLines);
+		assertValid(oldLines, newLines, diffBlocks);
+		int equalLines = 0;
+		for (DiffBlock<String> block: diffBlocks) {
+			if (block.getOperation() == Operation.EQUAL)
+				equalLines += block.getUnits().size();
+		}
+		assertTrue(equalLines >= oldLines.size() - 100);
+	}
+
+	private int lcs(List<String> oldLines, List<String> newLines) {
+		int[][] lengths = new int[oldLines.size()+1][newLines.size()+1];
+		for (int i=oldLines.size()-1; i>=0; i--) {
+			for (int j=newLines.size()-1; j>=0; j--) {
+				if (oldLines.get(i).equals(newLines.get(j)))
+					lengths[i][j] = lengths[i+1][j+1] + 1;
+				else
+					lengths[i][j] = Math.max(lengths[i+1][j], lengths[i][j+1]);
+			}
+		}
+		return lengths[0][0];
+	}
+
+	private int countLines(List<DiffBlock<String>> diffBlocks, boolean equal) {
+		int count = 0;
+		for (DiffBlock<String> block: diffBlocks) {
+			if ((block.getOperation() == Operation.EQUAL) == equal)
+				count += block.getUnits().size();
+		}
+		return count;
+	}
+
+	@Test
+	public void testRepetitiveLines() {
+		// All lines occur frequently, result should still be minimal
+		Random random = new Random(0);
+		for (int i=0; i<2000; i++) {
+			List<String> oldLines = new ArrayList<>();
+			List<String> newLines = new ArrayList<>();
+			int alphabetSize = random.nextInt(3) + 1;
+			for (int j=random.nextInt(60); j>0; j--)
+				oldLines.add(String.valueOf(random.nextInt(alphabetSize)));
+			for (int j=random.nextInt(60); j>0; j--)
+				newLines.add(String.valueOf(random.nextInt(alphabetSize)));
+			List<DiffBlock<String>> diffBlocks = HistogramDiff.diff(oldLines, newLines);
+			assertValid(oldLines, newLines, diffBlocks);
+			assertEquals(lcs(oldLines, newLines), countLines(diffBlocks, true));
+		}
+
+		// Large file without any line suitable as anchor
+		List<String> oldLines = new ArrayList<>();
+		for (int i=0; i<50000; i++)
+			oldLines.add(String.valueOf(random.nextInt(2)));
+		List<String> newLines = new ArrayList<>(oldLines);
+		for (int i=0; i<20; i++) {
+			int index = random.nextInt(newLines.size());
+			if (random.nextBoolean())
+				newLines.remove(index);
+			else
+				newLines.add(index, "new " + i);
+		}
+		List<DiffBlock<String>> diffBlocks = HistogramDiff.diff(oldLines, newLines);
+		assertValid(oldLines, newLines, diffBlocks);
+		assertTrue(countLines(diffBlocks, false) <= 20);
+
+		/*
+		 * Edit cost far exceeds the limit. Common lines should still be found instead of 
+		 * treating whole files as changed. Longest common subsequence of random sequences 
+		 * over three symbols is about 0.717 of their length
+		 */
+		oldLines = new ArrayList<>();
+		newLines = new ArrayList<>();
+		for (int i=0; i<100000; i++) {
+			oldLines.add(String.valueOf(random.nextInt(3)));
+			newLines.add(String.valueOf(random.nextInt(3)));
+		}
+		diffBlocks = HistogramDiff.diff(oldLines, newLines);
+		assertValid(oldLines, newLines, diffBlocks);
+		assertTrue(countLines(diffBlocks, true) >= oldLines.size() * 0.65);
+	}
+
+}
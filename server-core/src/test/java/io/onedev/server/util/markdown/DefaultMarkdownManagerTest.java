@@ -0,0 +1,101 @@
+package io.onedev.server.util.markdown;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import io.onedev.commons.utils.HtmlUtils;
+import io.onedev.server.model.Issue;
+import io.onedev.server.model.Project;
+import io.onedev.server.util.ProjectScopedNumber;
+
+public class DefaultMarkdownManagerTest {
+
+	private static final String MARKDOWN = ""
+			+ "Fixed issue #12 reported by @robin, see below code:\n"
+			+ "\n"
+			+ "```java\n"
+			+ "// @robin issue #12\n"
+			+ "int count = 0;\n"
+			+ "```\n"
+			+ "\n"
+			+ "Also `@inline issue #13`, issue #15 in a [link](http://example.com) and @admin.\n";
+
+	private Project project;
+
+	private DefaultMarkdownManager markdownManager;
+
+	@Before
+	public void before() {
+		project = Mockito.mock(Project.class);
+		Mockito.when(project.getName()).thenReturn("test");
+
+		Set<MarkdownProcessor> processors = new LinkedHashSet<>();
+		processors.add(new TestMentionProcessor());
+		processors.add(new CodeProcessor());
+		processors.add(new TestIssueProcessor());
+		markdownManager = new DefaultMarkdownManager(new HashSet<>(), processors);
+	}
+
+	@Test
+	public void shouldProcessSameWithOrWithoutCache() {
+		String html = markdownManager.render(MARKDOWN);
+		String uncached = markdownManager.process(HtmlUtils.parse(html), project, null).body().html();
+		String cached = markdownManager.process(html, project, null);
+		assertEquals(uncached, cached);
+
+		// Processed again with result of context free processors read from cache
+		assertEquals(uncached, markdownManager.process(html, project, null));
+
+		Document document = Jsoup.parseBodyFragment(cached);
+		assertEquals(2, document.select("a.mention").size());
+		assertEquals(2, document.select("a.issue").size());
+		assertEquals("test#12", document.select("a.issue").first().attr("data-reference"));
+		assertEquals(1, document.select("pre.highlight").size());
+		assertTrue(document.select("code a").isEmpty());
+	}
+
+	private static class TestMentionProcessor extends MentionParser implements MarkdownProcessor {
+
+		@Override
+		public void process(Document document, Project project, Object context) {
+			parseMentions(document);
+		}
+
+		@Override
+		protected String toHtml(String userName) {
+			return String.format("<a class='reference mention' data-reference='%s'>@%s</a>",
+					userName, userName);
+		}
+
+	}
+
+	private static class TestIssueProcessor extends ReferenceParser implements MarkdownProcessor {
+
+		TestIssueProcessor() {
+			super(Issue.class);
+		}
+
+		@Override
+		public void process(Document document, Project project, Object context) {
+			parseReferences(document, project);
+		}
+
+		@Override
+		protected String toHtml(ProjectScopedNumber referenceable, String referenceText) {
+			return String.format("<a class='issue reference' data-reference='%s'>%s</a>",
+					referenceable.toString(), referenceText);
+		}
+
+	}
+
+}
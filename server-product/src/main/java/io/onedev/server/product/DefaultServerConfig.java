@@ -35,6 +35,40 @@ public class DefaultServerConfig implements ServerConfig {
 	
 	private static final String PROP_SESSION_TIMEOUT = "session_timeout";
 	
+	private static final String PROP_BUILD_LOG_FLUSH_INTERVAL = "build_log_flush_interval";
+	
+	private static final int DEFAULT_BUILD_LOG_FLUSH_INTERVAL = 500;
+	
+	private static final String PROP_GIT_TRANSPORT_CONCURRENCY = "git_transport_concurrency";
+	
+	private static final int DEFAULT_GIT_TRANSPORT_CONCURRENCY = 32;
+	
+	private static final String PROP_GIT_TRANSPORT_PROJECT_CONCURRENCY = "git_transport_project_concurrency";
+	
+	private static final int DEFAULT_GIT_TRANSPORT_PROJECT_CONCURRENCY = 8;
+	
+	private static final String PROP_CODE_INDEX_PARALLELISM = "code_index_parallelism";
+	
+	private static final String PROP_INFO_ENV_POOL_SIZE = "info_env_pool_size";
+	
+	private static final int DEFAULT_INFO_ENV_POOL_SIZE = 256;
+	
+	private static final String PROP_COMMIT_INFO_COLLECT_CONCURRENCY = "commit_info_collect_concurrency";
+	
+	private static final String PROP_ID_BLOCK_SIZE = "id_block_size";
+	
+	private static final int DEFAULT_ID_BLOCK_SIZE = 32;
+	
+	private static final String PROP_FORK_SHARE_OBJECTS = "fork_share_objects";
+	
+	private static final String PROP_REPOSITORY_MAINTENANCE_CONCURRENCY = "repository_maintenance_concurrency";
+	
+	private static final String PROP_DIFF_CACHE_MAX_LINES = "diff_cache_max_lines";
+	
+	private static final String PROP_DIFF_CACHE_DISK_SIZE = "diff_cache_disk_size";
+	
+	private static final int DEFAULT_DIFF_CACHE_MAX_LINES = 500000;
+	
 	private int httpPort;
 	
 	private int sessionTimeout;
@@ -49,6 +83,28 @@ public class DefaultServerConfig implements ServerConfig {
 	
 	private String keystorePassword;
 	
+	private int buildLogFlushInterval = DEFAULT_BUILD_LOG_FLUSH_INTERVAL;
+	
+	private int gitTransportConcurrency = DEFAULT_GIT_TRANSPORT_CONCURRENCY;
+	
+	private int gitTransportProjectConcurrency = DEFAULT_GIT_TRANSPORT_PROJECT_CONCURRENCY;
+	
+	private int codeIndexParallelism = Runtime.getRuntime().availableProcessors();
+	
+	private int infoEnvPoolSize = DEFAULT_INFO_ENV_POOL_SIZE;
+	
+	private int commitInfoCollectConcurrency = Math.max(1, Runtime.getRuntime().availableProcessors()/2);
+	
+	private int idBlockSize = DEFAULT_ID_BLOCK_SIZE;
+	
+	private boolean forkSharingObjects = true;
+	
+	private int repositoryMaintenanceConcurrency = Math.max(1, Runtime.getRuntime().availableProcessors()/4);
+	
+	private int diffCacheMaxLines = DEFAULT_DIFF_CACHE_MAX_LINES;
+	
+	private int diffCacheDiskSize;
+	
 	@Inject
 	public DefaultServerConfig(ServerProperties props) {
 		String httpPortStr = System.getenv(PROP_HTTPPORT);
@@ -127,6 +183,72 @@ public class DefaultServerConfig implements ServerConfig {
 			sessionTimeout = Integer.parseInt(sessionTimeoutStr.trim());
 		else
 			throw new ExplicitException(PROP_SESSION_TIMEOUT + " should be specified");
+		
+		String buildLogFlushIntervalStr = System.getenv(PROP_BUILD_LOG_FLUSH_INTERVAL);
+		if (StringUtils.isBlank(buildLogFlushIntervalStr))
+			buildLogFlushIntervalStr = props.getProperty(PROP_BUILD_LOG_FLUSH_INTERVAL);
+		if (StringUtils.isNotBlank(buildLogFlushIntervalStr))
+			buildLogFlushInterval = Integer.parseInt(buildLogFlushIntervalStr.trim());
+		
+		String gitTransportConcurrencyStr = System.getenv(PROP_GIT_TRANSPORT_CONCURRENCY);
+		if (StringUtils.isBlank(gitTransportConcurrencyStr))
+			gitTransportConcurrencyStr = props.getProperty(PROP_GIT_TRANSPORT_CONCURRENCY);
+		if (StringUtils.isNotBlank(gitTransportConcurrencyStr))
+			gitTransportConcurrency = Integer.parseInt(gitTransportConcurrencyStr.trim());
+		
+		String gitTransportProjectConcurrencyStr = System.getenv(PROP_GIT_TRANSPORT_PROJECT_CONCURRENCY);
+		if (StringUtils.isBlank(gitTransportProjectConcurrencyStr))
+			gitTransportProjectConcurrencyStr = props.getProperty(PROP_GIT_TRANSPORT_PROJECT_CONCURRENCY);
+		if (StringUtils.isNotBlank(gitTransportProjectConcurrencyStr))
+			gitTransportProjectConcurrency = Integer.parseInt(gitTransportProjectConcurrencyStr.trim());
+		
+		String codeIndexParallelismStr = System.getenv(PROP_CODE_INDEX_PARALLELISM);
+		if (StringUtils.isBlank(codeIndexParallelismStr))
+			codeIndexParallelismStr = props.getProperty(PROP_CODE_INDEX_PARALLELISM);
+		if (StringUtils.isNotBlank(codeIndexParallelismStr))
+			codeIndexParallelism = Integer.parseInt(codeIndexParallelismStr.trim());
+		
+		String infoEnvPoolSizeStr = System.getenv(PROP_INFO_ENV_POOL_SIZE);
+		if (StringUtils.isBlank(infoEnvPoolSizeStr))
+			infoEnvPoolSizeStr = props.getProperty(PROP_INFO_ENV_POOL_SIZE);
+		if (StringUtils.isNotBlank(infoEnvPoolSizeStr))
+			infoEnvPoolSize = Integer.parseInt(infoEnvPoolSizeStr.trim());
+		
+		String commitInfoCollectConcurrencyStr = System.getenv(PROP_COMMIT_INFO_COLLECT_CONCURRENCY);
+		if (StringUtils.isBlank(commitInfoCollectConcurrencyStr))
+			commitInfoCollectConcurrencyStr = props.getProperty(PROP_COMMIT_INFO_COLLECT_CONCURRENCY);
+		if (StringUtils.isNotBlank(commitInfoCollectConcurrencyStr))
+			commitInfoCollectConcurrency = Integer.parseInt(commitInfoCollectConcurrencyStr.trim());
+		
+		String idBlockSizeStr = System.getenv(PROP_ID_BLOCK_SIZE);
+		if (StringUtils.isBlank(idBlockSizeStr))
+			idBlockSizeStr = props.getProperty(PROP_ID_BLOCK_SIZE);
+		if (StringUtils.isNotBlank(idBlockSizeStr))
+			idBlockSize = Integer.parseInt(idBlockSizeStr.trim());
+		
+		String forkShareObjectsStr = System.getenv(PROP_FORK_SHARE_OBJECTS);
+		if (StringUtils.isBlank(forkShareObjectsStr))
+			forkShareObjectsStr = props.getProperty(PROP_FORK_SHARE_OBJECTS);
+		if (StringUtils.isNotBlank(forkShareObjectsStr))
+			forkSharingObjects = Boolean.parseBoolean(forkShareObjectsStr.trim());
+		
+		String repositoryMaintenanceConcurrencyStr = System.getenv(PROP_REPOSITORY_MAINTENANCE_CONCURRENCY);
+		if (StringUtils.isBlank(repositoryMaintenanceConcurrencyStr))
+			repositoryMaintenanceConcurrencyStr = props.getProperty(PROP_REPOSITORY_MAINTENANCE_CONCURRENCY);
+		if (StringUtils.isNotBlank(repositoryMaintenanceConcurrencyStr))
+			repositoryMaintenanceConcurrency = Integer.parseInt(repositoryMaintenanceConcurrencyStr.trim());
+		
+		String diffCacheMaxLinesStr = System.getenv(PROP_DIFF_CACHE_MAX_LINES);
+		if (StringUtils.isBlank(diffCacheMaxLinesStr))
+			diffCacheMaxLinesStr = props.getProperty(PROP_DIFF_CACHE_MAX_LINES);
+		if (StringUtils.isNotBlank(diffCacheMaxLinesStr))
+			diffCacheMaxLines = Integer.parseInt(diffCacheMaxLinesStr.trim());
+		
+		String diffCacheDiskSizeStr = System.getenv(PROP_DIFF_CACHE_DISK_SIZE);
+		if (StringUtils.isBlank(diffCacheDiskSizeStr))
+			diffCacheDiskSizeStr = props.getProperty(PROP_DIFF_CACHE_DISK_SIZE);
+		if (StringUtils.isNotBlank(diffCacheDiskSizeStr))
+			diffCacheDiskSize = Integer.parseInt(diffCacheDiskSizeStr.trim());
 	}
 	
 	@Override
@@ -163,5 +285,60 @@ public class DefaultServerConfig implements ServerConfig {
     public int getSshPort() {
         return sshPort;
     }
+
+	@Override
+	public int getBuildLogFlushInterval() {
+		return buildLogFlushInterval;
+	}
+
+	@Override
+	public int getGitTransportConcurrency() {
+		return gitTransportConcurrency;
+	}
+
+	@Override
+	public int getGitTransportProjectConcurrency() {
+		return gitTransportProjectConcurrency;
+	}
+
+	@Override
+	public int getCodeIndexParallelism() {
+		return codeIndexParallelism;
+	}
+
+	@Override
+	public int getInfoEnvPoolSize() {
+		return infoEnvPoolSize;
+	}
+
+	@Override
+	public int getCommitInfoCollectConcurrency() {
+		return commitInfoCollectConcurrency;
+	}
+
+	@Override
+	public int getIdBlockSize() {
+		return idBlockSize;
+	}
+	
+	@Override
+	public boolean isForkSharingObjects() {
+		return forkSharingObjects;
+	}
+	
+	@Override
+	public int getRepositoryMaintenanceConcurrency() {
+		return repositoryMaintenanceConcurrency;
+	}
+	
+	@Override
+	public int getDiffCacheMaxLines() {
+		return diffCacheMaxLines;
+	}
+	
+	@Override
+	public int getDiffCacheDiskSize() {
+		return diffCacheDiskSize;
+	}
 	
 }